@@ -9,6 +9,7 @@ import java.awt.image.BufferedImage;
 import java.util.Map;
 import javax.swing.JPanel;
 import org.jfree.text.TextUtilities;
+import uk.ac.isc.seisdata.OffscreenView;
 import uk.ac.isc.seisdata.PhasesList;
 
 /**
@@ -16,7 +17,7 @@ import uk.ac.isc.seisdata.PhasesList;
  *
  *  
  */
-public class AgencyPieChartView extends JPanel {
+public class AgencyPieChartView extends JPanel implements OffscreenView {
 
     //sorted data 
     PieChartData piedata = null;
@@ -74,6 +75,23 @@ public class AgencyPieChartView extends JPanel {
         return pieChartImg;
     }
 
+    @Override
+    public BufferedImage renderImage(int width, int height) {
+        if (piedata == null) {
+            return null;
+        }
+
+        drawPieChart();
+        if (width == viewWidth && height == viewHeight) {
+            return pieChartImg;
+        }
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2 = image.createGraphics();
+        g2.drawImage(pieChartImg, 0, 0, width, height, null);
+        g2.dispose();
+        return image;
+    }
+
     //function to generate the piechart image
     //check the number of agencies which contribution is smaller than 5
     //if the number smaller than 25, use one column to show the names of these agencies
@@ -23,6 +23,7 @@ import org.jfree.chart.plot.CategoryPlot;
 import org.jfree.chart.renderer.category.StandardBarPainter;
 import org.jfree.data.category.DefaultCategoryDataset;
 import uk.ac.isc.seisdata.Hypocentre;
+import uk.ac.isc.seisdata.OffscreenView;
 import uk.ac.isc.seisdata.VBASLogger;
 
 
@@ -30,7 +31,7 @@ import uk.ac.isc.seisdata.VBASLogger;
  *
  * The panel to show the depth of hypocentres
  */
-public class HypoDepthViewPanel extends JPanel {
+public class HypoDepthViewPanel extends JPanel implements OffscreenView {
 
     int width = 600, height = 300;
     //copy the hypocentre list as it is required to be sorted
@@ -208,6 +209,14 @@ public class HypoDepthViewPanel extends JPanel {
         return depthHistImg;
     }
 
+    @Override
+    public BufferedImage renderImage(int width, int height) {
+        if (this.freeChart == null) {
+            return null;
+        }
+        return freeChart.createBufferedImage(width, height);
+    }
+
     public int getViewWidth() {
         return width;
     }
@@ -5,6 +5,7 @@ import java.awt.Dimension;
 import java.awt.Font;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
+import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.util.ArrayList;
@@ -26,6 +27,7 @@ import org.jfree.chart.renderer.category.BarRenderer;
 import org.jfree.chart.renderer.category.StandardBarPainter;
 import org.jfree.data.category.DefaultCategoryDataset;
 import uk.ac.isc.seisdata.Hypocentre;
+import uk.ac.isc.seisdata.OffscreenView;
 import uk.ac.isc.seisdata.SeisUtils;
 import uk.ac.isc.seisdata.VBASLogger;
 
@@ -33,7 +35,7 @@ import uk.ac.isc.seisdata.VBASLogger;
  * The panel to draw the view
  *
  */
-public class HypoMagnitudeViewPanel extends JPanel {
+public class HypoMagnitudeViewPanel extends JPanel implements OffscreenView {
 
     private final ArrayList<Hypocentre> hyposList = new ArrayList<Hypocentre>();
 
@@ -382,6 +384,23 @@ public class HypoMagnitudeViewPanel extends JPanel {
         return combined;
     }
 
+    /*
+     * The two charts side by side, at half the width each.
+     */
+    @Override
+    public BufferedImage renderImage(int width, int height) {
+        if (this.freeChartMain == null || this.freeChartDelta == null) {
+            return null;
+        }
+
+        BufferedImage combined = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2 = combined.createGraphics();
+        freeChartMain.draw(g2, new Rectangle2D.Double(0, 0, width / 2, height));
+        freeChartDelta.draw(g2, new Rectangle2D.Double(width / 2, 0, width - width / 2, height));
+        g2.dispose();
+        return combined;
+    }
+
     public int getViewWidth() {
         return viewWidth;
     }
@@ -0,0 +1,65 @@
+package uk.ac.isc.hypooverview;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import org.openstreetmap.gui.jmapviewer.Tile;
+import org.openstreetmap.gui.jmapviewer.interfaces.TileJob;
+import org.openstreetmap.gui.jmapviewer.interfaces.TileLoader;
+import org.openstreetmap.gui.jmapviewer.interfaces.TileLoaderListener;
+import uk.ac.isc.seisdata.TileArchive;
+
+/**
+ * TileController loader reading the tiles from the TileArchive instead of the
+ * tile source URLs (one file per tile).
+ */
+public class ArchiveTileLoader implements TileLoader {
+
+    private final TileArchive archive;
+    private final TileLoaderListener listener;
+
+    public ArchiveTileLoader(TileArchive archive, TileLoaderListener listener) {
+        this.archive = archive;
+        this.listener = listener;
+    }
+
+    @Override
+    public TileJob createTileLoaderJob(final Tile tile) {
+        return new TileJob() {
+
+            @Override
+            public void run() {
+                synchronized (tile) {
+                    if ((tile.isLoaded() && !tile.hasError()) || tile.isLoading()) {
+                        return;
+                    }
+                    tile.initLoading();
+                }
+
+                boolean isLoaded = false;
+                try {
+                    BufferedImage image = archive.getTile(tile.getZoom(), tile.getXtile(), tile.getYtile());
+                    if (image == null) {
+                        tile.setError("Tile not in " + archive.getFile().getName());
+                    } else {
+                        tile.setImage(image);
+                        isLoaded = true;
+                    }
+                } catch (IOException ex) {
+                    tile.setError(ex.getMessage());
+                }
+                tile.finishLoading();
+                listener.tileLoadingFinished(tile, isLoaded);
+            }
+
+            @Override
+            public Tile getTile() {
+                return tile;
+            }
+        };
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + " " + archive.getFile();
+    }
+}
@@ -0,0 +1,125 @@
+package uk.ac.isc.hypooverview;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import javax.swing.JComponent;
+
+/**
+ * Frame clock of an animation of the overview map (depth bands, hypocentres).
+ * All the animations tick on one shared scheduler thread, which only advances
+ * the frame number and asks Swing to repaint the animated region; the frame
+ * itself is painted by the component on the EDT from its own buffers. A
+ * paused animation, or one of a component not showing, does not repaint.
+ */
+final class FrameScheduler {
+
+    private static final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "FrameScheduler");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+
+    /**
+     * The region of the component to repaint for a new frame.
+     */
+    interface Region {
+
+        void repaintFrame(JComponent target);
+    }
+
+    private final JComponent target;
+    private final Region region;
+
+    private ScheduledFuture<?> task;
+    private int frameCount = 0;
+    private volatile int frame = 0;
+    private double frameRate = 1.0;
+    private volatile boolean paused = false;
+
+    FrameScheduler(JComponent target, Region region) {
+        this.target = target;
+        this.region = region;
+    }
+
+    /**
+     * Run an animation of frameCount frames from the first one, or stop the
+     * animation if frameCount is 0. Does nothing if that animation runs.
+     */
+    synchronized void animate(int frameCount) {
+        if (frameCount == this.frameCount && (task != null || frameCount == 0)) {
+            return;
+        }
+        stop();
+        this.frameCount = frameCount;
+        this.frame = 0;
+        if (frameCount > 0) {
+            schedule();
+        }
+    }
+
+    synchronized void stop() {
+        if (task != null) {
+            task.cancel(false);
+            task = null;
+        }
+        frameCount = 0;
+    }
+
+    /**
+     * @param fps frames per second
+     */
+    synchronized void setFrameRate(double fps) {
+        if (fps <= 0 || fps == frameRate) {
+            return;
+        }
+        frameRate = fps;
+        if (task != null) {
+            task.cancel(false);
+            schedule();
+        }
+    }
+
+    double getFrameRate() {
+        return frameRate;
+    }
+
+    /**
+     * Pause, e.g., when the window is hidden; the frame is kept.
+     */
+    void setPaused(boolean paused) {
+        this.paused = paused;
+    }
+
+    boolean isPaused() {
+        return paused;
+    }
+
+    /**
+     * @return the frame to paint
+     */
+    int getFrame() {
+        return frame;
+    }
+
+    private void schedule() {
+        long period = Math.max(1, (long) (1000000 / frameRate));
+        final int count = frameCount;
+        task = scheduler.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                if (paused || !target.isShowing()) {
+                    return;
+                }
+                frame = (frame + 1) % count;
+                region.repaintFrame(target);
+            }
+        }, period, period, TimeUnit.MICROSECONDS);
+    }
+}
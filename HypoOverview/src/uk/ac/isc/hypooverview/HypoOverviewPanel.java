@@ -35,6 +35,7 @@ import uk.ac.isc.seisdata.Hypocentre;
 import uk.ac.isc.seisdata.HypocentresList;
 import uk.ac.isc.seisdatainterface.SeisDataDAO;
 import uk.ac.isc.seisdata.SeisUtils;
+import uk.ac.isc.seisdata.TileArchive;
 
 /**
  * This the main map panel to show the seismicity, hypocentres and minimap for the location
@@ -152,6 +153,11 @@ public final class HypoOverviewPanel extends JPanel implements TileLoaderListene
         //tileSource = new OsmTileSource.Mapnik();  
         tileSource = new OfflineOsmTileSource("file:/export/home/hui/perl",0,7);
         tileController = new TileController(tileSource, new MemoryTileCache(), this);
+        // the packed tiles if installed, the tile source URLs otherwise
+        TileArchive tileArchive = TileArchive.getDefault();
+        if (tileArchive != null) {
+            tileController.setTileLoader(new ArchiveTileLoader(tileArchive, this));
+        }
         tileController.setTileSource(tileSource);
         
         //setMinimumSize(new Dimension(tileSource.getTileSize(), tileSource.getTileSize()));
@@ -1,5 +1,6 @@
 package uk.ac.isc.hypooverview;
 
+import java.awt.AlphaComposite;
 import java.awt.BasicStroke;
 import java.awt.Color;
 import java.awt.Dimension;
@@ -12,13 +13,11 @@ import java.awt.Stroke;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
-import static java.lang.Thread.sleep;
 import java.net.URL;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collections;
 import javax.imageio.ImageIO;
+import javax.swing.JComponent;
 import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
 import org.jfree.text.TextUtilities;
 import org.jfree.ui.TextAnchor;
 import org.openide.util.Exceptions;
@@ -34,11 +33,14 @@ import org.openstreetmap.gui.jmapviewer.interfaces.TileLoaderListener;
 import org.openstreetmap.gui.jmapviewer.interfaces.TileSource;
 import org.openstreetmap.gui.jmapviewer.tilesources.OfflineOsmTileSource;
 import uk.ac.isc.seisdata.ColorUtils;
+import uk.ac.isc.seisdata.GlyphSprite;
 import uk.ac.isc.seisdatainterface.Global;
-import uk.ac.isc.seisdata.HistoricEvent;
+import uk.ac.isc.seisdata.HistoricSeismicity;
 import uk.ac.isc.seisdata.Hypocentre;
 import uk.ac.isc.seisdata.HypocentresList;
+import uk.ac.isc.seisdata.OffscreenView;
 import uk.ac.isc.seisdata.SeisUtils;
+import uk.ac.isc.seisdata.TileArchive;
 import uk.ac.isc.seisdata.VBASLogger;
 import uk.ac.isc.seisdatainterface.SeisDataDAO;
 
@@ -50,7 +52,7 @@ import uk.ac.isc.seisdatainterface.SeisDataDAO;
  * requirement)
  *
  */
-public final class HypoOverviewPanel2 extends JPanel implements TileLoaderListener {
+public final class HypoOverviewPanel2 extends JPanel implements TileLoaderListener, OffscreenView {
 
     public static final Paint[] seisNewPaints = ColorUtils.createSeismicityPaintArray3();
     //public static final Paint[] seisNewPaints = ColorUtils.createSeismicityPaintArray3Translucent();
@@ -91,12 +93,15 @@ public final class HypoOverviewPanel2 extends JPanel implements TileLoaderListen
     // a depth cutoff value to show seismicity
     private int depthCutoff = 8;
 
-    //new thread to show animation of the seismicity
-    private Thread mapAnimThread;
-    private MapAnimation mapAnim;
-    //new thread to show animation of the hypocentres
-    private Thread hypoAnimThread;
-    private HypocenterAnimation hypoAnim;
+    // frames of the animation of the depth bands (8) or of the hypocentres
+    // (hypoFrameNumber), painted in the map region
+    private final FrameScheduler animation = new FrameScheduler(this, new FrameScheduler.Region() {
+        @Override
+        public void repaintFrame(JComponent target) {
+            target.repaint(xOffset, yOffset, mapWidth, mapHeight);
+        }
+    });
+    private static final int hypoFrameNumber = 25;
 
     //offset on the panel
     private int xOffset, yOffset;
@@ -111,9 +116,21 @@ public final class HypoOverviewPanel2 extends JPanel implements TileLoaderListen
     private int seisPixelSize;
     private int hypoVisOption;
 
-    private BufferedImage baseMap = new BufferedImage(mapWidth, mapHeight, BufferedImage.TYPE_INT_ARGB);
+    // the tiles, and the tiles with the seismicity and hypocentres, redrawn
+    // in place
+    private final BufferedImage tileMap = new BufferedImage(mapWidth, mapHeight, BufferedImage.TYPE_INT_ARGB);
+    private final BufferedImage baseMap = new BufferedImage(mapWidth, mapHeight, BufferedImage.TYPE_INT_ARGB);
+    // tiles of the last drawBaseMap() not loaded yet
+    private volatile int tilesLoading = 0;
+    private static final long tileWaitMillis = 5000;
+    private static final long renderWaitMillis = 60000;
     private static BufferedImage dotImg = null;
-    private final BufferedImage[] animMaps = new BufferedImage[8];
+    // the seismicity layers of the view, drawn off the EDT by renderJob
+    // (SeismicityRenderer); renderVisible: the bands of a random order job
+    private final SeismicityLayers seisLayers = new SeismicityLayers(8);
+    private volatile SeismicityRenderer.Job renderJob;
+    private boolean[] renderVisible;
+    private int renderGeneration = 0;
     // rawMiniMap for the mini base map miniMap labelled with current prime hypocentre
     private BufferedImage rawMiniMap = new BufferedImage(256, 256, BufferedImage.TYPE_INT_ARGB);
     // mini map with the prime hypo on top to show the position of the event
@@ -121,8 +138,9 @@ public final class HypoOverviewPanel2 extends JPanel implements TileLoaderListen
 
     // hypocentre lists // (?)the range of the seismicity map
     private final HypocentresList hyposList;
-    // seisList for loading the historic data to show the seismicity map
-    ArrayList<HistoricEvent> seisList;
+    // historic data to show the seismicity map, kept in primitive arrays,
+    // replaced (not cleared) by a load as a render may still read it
+    HistoricSeismicity seismicity = new HistoricSeismicity();
 
     public HypoOverviewPanel2(HypocentresList hyposList) {
         VBASLogger.logDebug("Here...");
@@ -134,6 +152,11 @@ public final class HypoOverviewPanel2 extends JPanel implements TileLoaderListen
         tileSource = new OfflineOsmTileSource("file:/export/home/hui/perl", 0, 7);      // TODO:
         tileController = new TileController(tileSource, new MemoryTileCache(), this);
         tileController.setTileSource(tileSource);
+        // the packed tiles if installed, the tile source URLs otherwise
+        TileArchive tileArchive = TileArchive.getDefault();
+        if (tileArchive != null) {
+            tileController.setTileLoader(new ArchiveTileLoader(tileArchive, this));
+        }
 
         //there must be one prime, so center won't be null
         for (Hypocentre hypo : hyposList.getHypocentres()) {
@@ -144,9 +167,6 @@ public final class HypoOverviewPanel2 extends JPanel implements TileLoaderListen
             }
         }
 
-        //initialise the array for saving seismicity data
-        seisList = new ArrayList<HistoricEvent>();
-
         for (int i = 0; i < 8; i++) {
             depthBandVisible[i] = true;
         }
@@ -179,31 +199,60 @@ public final class HypoOverviewPanel2 extends JPanel implements TileLoaderListen
         calculateAnnotation();
 
         // get the seismicity data based on the visible range from zoom level
-        SeisDataDAO.retrieveHistEvents(seisList, latHigh, latLow, lonLeft, lonRight);
+        HistoricSeismicity loaded = new HistoricSeismicity();
+        SeisDataDAO.retrieveHistSeismicity(loaded, latHigh, latLow, lonLeft, lonRight);
+        seismicity = loaded;
+        cancelRender();
     }
 
     public BufferedImage getBufferedImage() {
+        return renderImage(mapWidth, mapHeight);
+    }
 
-        //return baseMap;
-        BufferedImage combined = new BufferedImage(getMapWidth(), getMapHeight(), BufferedImage.TYPE_INT_ARGB);
-        Graphics graphics = combined.getGraphics();
-        graphics.drawImage(baseMap, 0, 0, null);
+    /*
+     * The map with the seismicity and hypocentres, and the mini map at the
+     * top right, without painting the panel: waits for the tiles of the view
+     * (up to tileWaitMillis) and for the seismicity layers.
+     */
+    @Override
+    public BufferedImage renderImage(int width, int height) {
 
-        // draw mini map
-        int miniXOffset = 0, miniYOffset = 0;
-        // minimap on the right side
-        if (getWidth() > mapWidth) {
-            miniXOffset = Math.max(0, (getWidth() + mapWidth) / 2 - miniWidth);
-        } else {
-            miniXOffset = Math.max(0, getWidth() - miniWidth);
-        }
-        // minimap at the top
-        if (getHeight() > mapHeight) {
-            miniYOffset = (getHeight() - mapHeight) / 2;
-        } else {
-            miniYOffset = 0;
+        drawBaseMap();
+        try {
+            long deadline = System.currentTimeMillis() + tileWaitMillis;
+            while (tilesLoading > 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(20);
+                drawBaseMap();
+            }
+            // drawBaseMap() starts the render of the missing layers, if any
+            SeismicityRenderer.Job job;
+            while ((job = renderJob) != null) {
+                if (!job.await(renderWaitMillis)) {
+                    // the map without the seismicity not drawn
+                    if (!job.isCancelled()) {
+                        VBASLogger.logSevere("The historic seismicity was not drawn"
+                                + (job.isFailed() ? "." : " in " + renderWaitMillis + " ms."));
+                        job.cancel();
+                        if (job == renderJob) {
+                            cancelRender();
+                        }
+                    }
+                    break;
+                }
+                publishLayers(job);
+                drawBaseMap();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
         }
-        graphics.drawImage(miniMap, miniXOffset, miniYOffset, miniWidth, miniHeight, this);
+        drawMiniMap();
+
+        BufferedImage combined = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2 = combined.createGraphics();
+        g2.scale((double) width / mapWidth, (double) height / mapHeight);
+        g2.drawImage(baseMap, 0, 0, null);
+        g2.drawImage(miniMap, mapWidth - miniWidth, 0, miniWidth, miniHeight, null);
+        g2.dispose();
 
         return combined;
     }
@@ -249,6 +298,7 @@ public final class HypoOverviewPanel2 extends JPanel implements TileLoaderListen
 
     public void setSingleDepthBandVisible(int band, boolean visible) {
         depthBandVisible[band] = visible;
+        cancelRandomRender();
         repaint();
     }
 
@@ -256,6 +306,7 @@ public final class HypoOverviewPanel2 extends JPanel implements TileLoaderListen
         for (int i = 0; i < visible.length; i++) {
             depthBandVisible[i] = visible[i];
         }
+        cancelRandomRender();
         repaint();
     }
 
@@ -265,17 +316,11 @@ public final class HypoOverviewPanel2 extends JPanel implements TileLoaderListen
 
     public void setDepthBandOrder(int bandOrder) {
         this.depthBandOrder = bandOrder;
-        if (mapAnimThread != null) {
-            mapAnim.terminate();
-        }
-
-        if (hypoAnimThread != null) {
-            hypoAnim.terminate();
-        }
 
         if (depthBandOrder != 6) {
             setAllBandsSelected();
         }
+        cancelRandomRender();
 
         if (depthBandOrder == 5) //if the depth band is animation, set hypo to static
         {
@@ -292,14 +337,6 @@ public final class HypoOverviewPanel2 extends JPanel implements TileLoaderListen
     public void setHypoVisOptions(int visOption) {
         this.hypoVisOption = visOption;
 
-        if (hypoAnimThread != null) {
-            hypoAnim.terminate();
-        }
-
-        if (mapAnimThread != null) {
-            mapAnim.terminate();
-        }
-
         if (hypoVisOption == 3) {
             setDepthBandOrder(4);
         }
@@ -311,8 +348,37 @@ public final class HypoOverviewPanel2 extends JPanel implements TileLoaderListen
         return this.hypoVisOption;
     }
 
+    /**
+     * @param fps frames per second of the depth band and hypocentre
+     * animations
+     */
+    public void setAnimationFrameRate(double fps) {
+        animation.setFrameRate(fps);
+    }
+
+    public double getAnimationFrameRate() {
+        return animation.getFrameRate();
+    }
+
+    /**
+     * Pause the animations, e.g., while the window is hidden.
+     */
+    public void setAnimationPaused(boolean paused) {
+        animation.setPaused(paused);
+        if (!paused) {
+            repaint();
+        }
+    }
+
+    @Override
+    public void removeNotify() {
+        animation.stop();
+        super.removeNotify();
+    }
+
     public void setPixelSize(int pixelSize) {
         this.seisPixelSize = pixelSize;
+        cancelRender();
         this.repaint();
     }
 
@@ -372,6 +438,7 @@ public final class HypoOverviewPanel2 extends JPanel implements TileLoaderListen
         //p.y = y - mapPoint.y + getHeight() / 2;
         p.y = y - mapPoint.y + mapHeight / 2;
         center = p;
+        cancelRender();
         setIgnoreRepaint(true);
         try {
             int oldZoom = this.zoom;
@@ -454,11 +521,13 @@ public final class HypoOverviewPanel2 extends JPanel implements TileLoaderListen
      */
     public void setCenter(Point center) {
         this.center = center;
+        cancelRender();
     }
 
     public void setCentLatLon(double lat, double lon) {
         this.cenLat = lat;
         this.cenLon = lon;
+        cancelRender();
     }
 
     public void setCentDepth(int depth) {
@@ -663,25 +732,24 @@ public final class HypoOverviewPanel2 extends JPanel implements TileLoaderListen
             g2.drawImage(baseMap, xOffset, yOffset, mapWidth, mapHeight, this);
         }
 
-        if (mapAnim != null) {
-            mapAnim.terminate();
-        }
-
+        // the animations: a frame of one depth band over the tiles, or the
+        // hypocentres over the base map
         if (depthBandOrder == 5) {
-            mapAnim = new MapAnimation(xOffset, yOffset, mapWidth, mapHeight, animMaps, this);
-
-            mapAnimThread = new Thread(mapAnim);
-        }
-
-        // if animation
-        if (hypoAnim != null) {
-            hypoAnim.terminate();
-        }
-
-        if (hypoVisOption == 3) {
-            hypoAnim = new HypocenterAnimation(baseMap, hyposList, this);
-
-            hypoAnimThread = new Thread(hypoAnim);
+            animation.animate(8);
+            int band = animation.getFrame();
+            g2.drawImage(tileMap, xOffset, yOffset, mapWidth, mapHeight, this);
+            if (depthBandVisible[band] && seisLayers.getBandLayer(band) != null) {
+                g2.drawImage(seisLayers.getBandLayer(band), xOffset, yOffset, mapWidth, mapHeight, this);
+            }
+        } else if (hypoVisOption == 3) {
+            animation.animate(hypoFrameNumber);
+            if (hyposList.getHypocentres().size() > 1) {
+                Graphics2D gMap = (Graphics2D) g2.create(xOffset, yOffset, mapWidth, mapHeight);
+                drawHypoAnimation(gMap, animation.getFrame());
+                gMap.dispose();
+            }
+        } else {
+            animation.stop();
         }
 
         // draw mini map
@@ -858,14 +926,6 @@ public final class HypoOverviewPanel2 extends JPanel implements TileLoaderListen
         g2.setStroke(savedStroke);
         g2.setFont(savedFont);
 
-        if (depthBandOrder == 5 && Thread.State.NEW == mapAnimThread.getState()) {
-            mapAnimThread.start();
-        }
-
-        if (hypoVisOption == 3 && Thread.State.NEW == hypoAnimThread.getState()) {
-            hypoAnimThread.start();
-        }
-
         // TEST:
         //VBASLogger.logDebug("Write BufferedImage.");
         /*try {
@@ -881,8 +941,10 @@ public final class HypoOverviewPanel2 extends JPanel implements TileLoaderListen
 
     void drawBaseMap() {
 
-        baseMap = new BufferedImage(mapWidth, mapHeight, BufferedImage.TYPE_INT_ARGB);
-        Graphics2D g2 = baseMap.createGraphics();
+        Graphics2D g2 = tileMap.createGraphics();
+        g2.setComposite(AlphaComposite.Clear);
+        g2.fillRect(0, 0, mapWidth, mapHeight);
+        g2.setComposite(AlphaComposite.SrcOver);
 
         int iMove = 0;
 
@@ -923,8 +985,9 @@ public final class HypoOverviewPanel2 extends JPanel implements TileLoaderListen
 
         int x_min = -tilesize;
         int y_min = -tilesize;
-        int x_max = getWidth();
-        int y_max = getHeight();
+        int x_max = mapWidth;
+        int y_max = mapHeight;
+        int loading = 0;
 
         // calculate the length of the grid (number of squares per edge)
         int gridLength = 1 << this.zoom;
@@ -951,6 +1014,9 @@ public final class HypoOverviewPanel2 extends JPanel implements TileLoaderListen
                         }
                         if (tile != null) {
                             tile.paint(g2, posx, posy);
+                            if (!tile.isLoaded()) {
+                                loading++;
+                            }
                         }
                         painted = true;
                     }
@@ -977,268 +1043,128 @@ public final class HypoOverviewPanel2 extends JPanel implements TileLoaderListen
         if (scrollWrapEnabled) {
             center.x = center.x % mapSize;
         }
+        tilesLoading = loading;
 
-        Graphics2D[] gCopy = new Graphics2D[8];
-        //if animation, assign the memory
-        if (depthBandOrder == 5) {
-            for (int i = 0; i < 8; i++) {
-                animMaps[i] = new BufferedImage(mapWidth, mapHeight, BufferedImage.TYPE_INT_ARGB);
-                gCopy[i] = animMaps[i].createGraphics();
-                gCopy[i].drawImage(baseMap, 0, 0, null);
-            }
+        // the seismicity layers of this view, drawn off the EDT; the bands
+        // are kept, so their visibility and order only composite the layers
+        if (!seisLayers.isFor(seismicity, zoom, center.x, center.y, seisPixelSize)) {
+            cancelRender();
+            seisLayers.reset(seismicity, zoom, center.x, center.y, seisPixelSize);
+        }
+        if (renderJob == null) {
+            startRender();
         }
 
- 
-        /* */
-
-        Paint savedPaint = g2.getPaint();
-        int xpos, ypos;
-        if (depthBandOrder == 1) //shallow first
-        {
-
-            for (HistoricEvent he : seisList) {
-                //set depth band
-                int depthBand;
-
-                depthBand = SeisUtils.getNewDepthBand(he.getDepth());
-
-                if (depthBandVisible[depthBand] == true) {
-                    g2.setPaint(seisNewPaints[depthBand]);
-
-                    xpos = tileSource.LonToX(he.getLon(), this.zoom) - center.x + w2;
-                    if (xpos > mapSize) {
-                        xpos -= mapSize;
-                    } else if (xpos < 0) {
-                        xpos += mapSize;
-                    }
-
-                    ypos = tileSource.LatToY(he.getLat(), this.zoom) - center.y + h2;
-
-                    //draw dots
-                    g2.fillOval(xpos - seisPixelSize / 2, ypos - seisPixelSize / 2, seisPixelSize, seisPixelSize);
-
-                }
-            }
-
-            g2.setPaint(savedPaint);
-
-        } else if (depthBandOrder == 2) { //deep first
-
-            for (int i = seisList.size() - 1; i >= 0; i--) {
-                HistoricEvent he = seisList.get(i);
-
-                //set depth band
-                int depthBand;
-
-                depthBand = SeisUtils.getNewDepthBand(he.getDepth());
-
-                if (depthBandVisible[depthBand] == true) {
-
-                    g2.setPaint(seisNewPaints[depthBand]);
-
-                    xpos = tileSource.LonToX(he.getLon(), this.zoom) - center.x + w2;
-                    if (xpos > mapSize) {
-                        xpos -= mapSize;
-                    } else if (xpos < 0) {
-                        xpos += mapSize;
-                    }
-
-                    ypos = tileSource.LatToY(he.getLat(), this.zoom) - center.y + h2;
-                    //draw dots
-                    g2.fillOval(xpos - seisPixelSize / 2, ypos - seisPixelSize / 2, seisPixelSize, seisPixelSize);
-                    //g2.fillOval(xpos-3, ypos-3, 6, 6);
-                }
-            }
-
-            g2.setPaint(savedPaint);
-        } else if (depthBandOrder == 3) //random order
-        {
-            Integer[] plotIndex = new Integer[seisList.size()];
-            for (int i = 0; i < seisList.size(); i++) {
-                plotIndex[i] = i;
-            }
-            Collections.shuffle(Arrays.asList(plotIndex));
-
-            for (int i = seisList.size() - 1; i >= 0; i--) {
-                HistoricEvent he = seisList.get(plotIndex[i]);
-
-                //set depth band
-                int depthBand;
-                //if(forceFit)
-                {
-                    depthBand = SeisUtils.getNewDepthBand(he.getDepth());
-                }
-                //else
-                //{
-                //    depthBand = SeisUtils.getOldDepthBand(he.getDepth());
-                //}
-
-                if (depthBandVisible[depthBand] == true) {
-                    //if(forceFit)
-                    {
-                        g2.setPaint(seisNewPaints[depthBand]);
-                    }
-                    //else
-                    //{
-                    //    g2.setPaint(seisPaints[depthBand]);
-                    //}
-
-                    xpos = tileSource.LonToX(he.getLon(), this.zoom) - center.x + w2;
-                    if (xpos > mapSize) {
-                        xpos -= mapSize;
-                    } else if (xpos < 0) {
-                        xpos += mapSize;
-                    }
-
-                    ypos = tileSource.LatToY(he.getLat(), this.zoom) - center.y + h2;
-                    //draw dots
-                    g2.fillOval(xpos - seisPixelSize / 2, ypos - seisPixelSize / 2, seisPixelSize, seisPixelSize);
-
-                }
+        // the animation of the depth bands paints a band layer over the
+        // tiles, the base map is the tiles with the seismicity and glyphs
+        g2.dispose();
+        g2 = baseMap.createGraphics();
+        g2.setComposite(AlphaComposite.Src);
+        g2.drawImage(tileMap, 0, 0, null);
+        g2.setComposite(AlphaComposite.SrcOver);
+
+        BufferedImage[] randomLayers = null;
+        if (depthBandOrder == 3) {
+            randomLayers = seisLayers.getRandomLayers(depthBandVisible);
+        }
+        if (randomLayers != null) {
+            for (BufferedImage layer : randomLayers) {
+                g2.drawImage(layer, 0, 0, null);
             }
-
-            g2.setPaint(savedPaint);
-        } else if (depthBandOrder == 4) //close neighbour order
-        {
-            int centBand = SeisUtils.getNewDepthBand(cenDepth);
-            int maxDist = 0;
-            for (int i = 0; i < 8; i++) {
-                int tmpDist = Math.abs(i - centBand);
-                if (tmpDist > maxDist) {
-                    maxDist = tmpDist;
+        } else {
+            // the random order is shallow first until drawn
+            for (int band : SeismicityRenderer.getLayerBands(depthBandVisible, depthBandOrder,
+                    SeisUtils.getNewDepthBand(cenDepth))) {
+                if (seisLayers.getBandLayer(band) != null) {
+                    g2.drawImage(seisLayers.getBandLayer(band), 0, 0, null);
                 }
             }
+        }
 
-            for (int j = maxDist; j >= 0; j--) {
-
-                for (int i = seisList.size() - 1; i >= 0; i--) {
-                    HistoricEvent he = seisList.get(i);
-
-                    //set depth band
-                    int depthBand;
-                    //if(forceFit)
-                    {
-                        depthBand = SeisUtils.getNewDepthBand(he.getDepth());
-                    }
-                    //else
-                    //{
-                    //    depthBand = SeisUtils.getOldDepthBand(he.getDepth());
-                    //}
+        //drawing hypocentres over the seismicty
+        if (hypoVisOption == 2) {
+            drawHypoGlyphs(g2, mapSize, this.zoom);
+        }
+        g2.dispose();
+    }
 
-                    if (Math.abs(depthBand - centBand) == j && (depthBandVisible[depthBand] == true)) {
-                        //if(forceFit)
-                        {
-                            g2.setPaint(seisNewPaints[depthBand]);
-                        }
-                        //else
-                        //{
-                        //    g2.setPaint(seisPaints[depthBand]);
-                        //}
-
-                        xpos = tileSource.LonToX(he.getLon(), this.zoom) - center.x + w2;
-                        if (xpos > mapSize) {
-                            xpos -= mapSize;
-                        } else if (xpos < 0) {
-                            xpos += mapSize;
+    /*
+     * Draw the visible depth bands missing from the layers, or the random
+     * order of the visible bands, on the SeismicityRenderer workers.
+     */
+    private void startRender() {
+        final int generation = ++renderGeneration;
+        // a job started by renderImage() off the EDT is published by the
+        // drawing thread, not on the EDT
+        final boolean offscreen = !SwingUtilities.isEventDispatchThread();
+        Runnable onDone = new Runnable() {
+            @Override
+            public void run() {
+                SwingUtilities.invokeLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        // not cancelled since, and not drawn offscreen
+                        SeismicityRenderer.Job job = renderJob;
+                        if (generation == renderGeneration && job != null && !offscreen) {
+                            publishLayers(job);
+                            repaint();
                         }
-
-                        ypos = tileSource.LatToY(he.getLat(), this.zoom) - center.y + h2;
-                        //draw dots
-                        g2.fillOval(xpos - seisPixelSize / 2, ypos - seisPixelSize / 2, seisPixelSize, seisPixelSize);
                     }
-                }
+                });
             }
-
-            g2.setPaint(savedPaint);
-
-        } else if (depthBandOrder == 5) //anim set 8 bufferedimages
-        {
-
-            for (HistoricEvent he : seisList) {
-                //set depth band
-                int depthBand;
-                //if(forceFit)
-                {
-                    depthBand = SeisUtils.getNewDepthBand(he.getDepth());
-                }
-                //else
-                //{
-                //    depthBand = SeisUtils.getOldDepthBand(he.getDepth());
-                // }
-
-                if (depthBandVisible[depthBand] == true) {
-                    //if(forceFit)
-                    {
-                        g2.setPaint(seisNewPaints[depthBand]);
-
-                        gCopy[depthBand].setPaint(seisNewPaints[depthBand]);
-                    }
-                    //else
-                    //{
-                    //     g2.setPaint(seisPaints[depthBand]);
-                    // }
-
-                    xpos = tileSource.LonToX(he.getLon(), this.zoom) - center.x + w2;
-                    if (xpos > mapSize) {
-                        xpos -= mapSize;
-                    } else if (xpos < 0) {
-                        xpos += mapSize;
-                    }
-
-                    ypos = tileSource.LatToY(he.getLat(), this.zoom) - center.y + h2;
-
-                    //draw dots
-                    g2.fillOval(xpos - seisPixelSize / 2, ypos - seisPixelSize / 2, seisPixelSize, seisPixelSize);
-
-                    gCopy[depthBand].fillOval(xpos - seisPixelSize / 2, ypos - seisPixelSize / 2, seisPixelSize, seisPixelSize);
-                }
+        };
+
+        if (depthBandOrder == 3) {
+            if (seisLayers.getRandomLayers(depthBandVisible) == null) {
+                renderVisible = depthBandVisible.clone();
+                renderJob = SeismicityRenderer.renderRandom(seismicity, seisLayers.getPermutation(),
+                        zoom, center.x, center.y, mapWidth, mapHeight, seisPixelSize,
+                        renderVisible, seisNewPaints, onDone);
             }
-
-            g2.setPaint(savedPaint);
-        } else if (depthBandOrder == 6) //only one band
-        {
-
-            for (HistoricEvent he : seisList) {
-                //set depth band
-                int depthBand;
-                //if(forceFit)
-                {
-                    depthBand = SeisUtils.getNewDepthBand(he.getDepth());
-                }
-                //else
-                //{
-                //    depthBand = SeisUtils.getOldDepthBand(he.getDepth());
-                // }
-
-                if (depthBandVisible[depthBand] == true) {
-                    //if(forceFit)
-                    {
-                        g2.setPaint(seisNewPaints[depthBand]);
-
-                    }
-
-                    xpos = tileSource.LonToX(he.getLon(), this.zoom) - center.x + w2;
-                    if (xpos > mapSize) {
-                        xpos -= mapSize;
-                    } else if (xpos < 0) {
-                        xpos += mapSize;
-                    }
-
-                    ypos = tileSource.LatToY(he.getLat(), this.zoom) - center.y + h2;
-
-                    //draw dots
-                    g2.fillOval(xpos - seisPixelSize / 2, ypos - seisPixelSize / 2, seisPixelSize, seisPixelSize);
-                }
+        } else {
+            int[] bands = seisLayers.getMissingBands(depthBandVisible);
+            if (bands.length > 0) {
+                renderVisible = null;
+                renderJob = SeismicityRenderer.renderBands(seismicity, zoom, center.x, center.y,
+                        mapWidth, mapHeight, seisPixelSize, bands, seisNewPaints, onDone);
             }
+        }
+    }
 
-            g2.setPaint(savedPaint);
+    /*
+     * Keep the layers of the job, if it is still the current one: on the EDT,
+     * or on the thread drawing the panel offscreen.
+     */
+    private void publishLayers(SeismicityRenderer.Job job) {
+        if (job != renderJob) {
+            return;
         }
+        seisLayers.put(job, renderVisible);
+        renderJob = null;
+        renderVisible = null;
+        VBASLogger.logDebug("#HistoricEvents=" + seismicity.size()
+                + ", layers memory=" + seisLayers.getMemoryBytes() / 1024 + " KB");
+    }
 
-        //drawing hypocentres over the seismicty
-        if (hypoVisOption == 2) {
-            drawHypoGlyphs(g2, mapSize, this.zoom);
+    /*
+     * Cancel the render of the seismicity, the next paint starts a new one.
+     */
+    private void cancelRender() {
+        if (renderJob != null) {
+            renderJob.cancel();
+            renderJob = null;
+            renderVisible = null;
         }
+        renderGeneration++;
+    }
 
+    /*
+     * Cancel the render of a random order, drawn for the visible bands.
+     */
+    private void cancelRandomRender() {
+        if (renderVisible != null) {
+            cancelRender();
+        }
     }
 
     private void drawHypoGlyphs(Graphics2D g2, int mapSize, int seisZoom) {
@@ -1246,18 +1172,16 @@ public final class HypoOverviewPanel2 extends JPanel implements TileLoaderListen
         int w2 = mapWidth / 2;
         int h2 = mapHeight / 2;
 
-        // line thickness for drawing the shape
-        g2.setStroke(new BasicStroke(2));
-        g2.setPaint(Color.BLACK);
-
+        // square and diamond outlines of line thickness 2 (GlyphSprite)
         for (Hypocentre h : hyposList.getHypocentres()) {
 
             // Saiful: if the hypocentre is the selected hypocentre then color it red.
+            Color colour;
             if (h.getHypid() == Global.getSelectedHypocentre().getHypid()) {
-                g2.setPaint(Color.RED);
+                colour = Color.RED;
                 //System.out.println(Global.debugAt() + "hypid=" + h.getHypid() + ", red");
             } else {
-                g2.setPaint(Color.BLACK);
+                colour = Color.BLACK;
                 //System.out.println(Global.debugAt() + "hypid=" + h.getHypid() + ", black");
             }
 
@@ -1271,18 +1195,12 @@ public final class HypoOverviewPanel2 extends JPanel implements TileLoaderListen
             ypos = tileSource.LatToY(h.getLat(), seisZoom) - center.y + h2;
 
             if (h.getIsPrime() != true) {
-                g2.drawRect(xpos - 12, ypos - 12, 24, 24);
+                GlyphSprite.getSprite(colour, 24, GlyphSprite.SQUARE).draw(g2, xpos - 12, ypos - 12);
             } else {
-
-                g2.drawLine(mapWidth / 2, mapHeight / 2 - 12, mapWidth / 2 - 12, mapHeight / 2);
-                g2.drawLine(mapWidth / 2 - 12, mapHeight / 2, mapWidth / 2, mapHeight / 2 + 12);
-                g2.drawLine(mapWidth / 2, mapHeight / 2 + 12, mapWidth / 2 + 12, mapHeight / 2);
-                g2.drawLine(mapWidth / 2 + 12, mapHeight / 2, mapWidth / 2, mapHeight / 2 - 12);
+                GlyphSprite.getSprite(colour, 24, GlyphSprite.DIAMOND).draw(g2, mapWidth / 2 - 12, mapHeight / 2 - 12);
             }
 
         }
-
-        g2.setStroke(new BasicStroke(1));
     }
 
     
@@ -1345,225 +1263,101 @@ public final class HypoOverviewPanel2 extends JPanel implements TileLoaderListen
     }
 
     /*
-     *****************************************************************************************
-     * XX
-     *****************************************************************************************
+     * Frame count of the hypocentre animation, over the base map: the prime
+     * hypocentre and the others with dots going round them.
      */
-    class HypocenterAnimation implements Runnable {
-
-        HypocentresList hyposList;
-        BufferedImage baseImage;
-        BufferedImage tmpImage;
-        JPanel parent;
-        private final int frameNumber = 24;
-
-        private volatile boolean running = true;
-
-        public HypocenterAnimation(BufferedImage baseImage, HypocentresList hyposList, JPanel parent) {
-
-            this.baseImage = baseImage;
-
-            this.hyposList = hyposList;
-            this.parent = parent;
+    private void drawHypoAnimation(Graphics2D g2, int count) {
+        int xpos, ypos;
+        int w2 = mapWidth / 2;
+        int h2 = mapHeight / 2;
 
-            tmpImage = new BufferedImage(mapWidth, mapHeight, BufferedImage.TYPE_INT_ARGB);
-        }
+        //line thickness for drawing the shape
+        g2.setStroke(new BasicStroke(2));
 
-        public void terminate() {
-            running = false;
+        //draw the prime hypocentre in the middle
+        g2.setPaint(Color.BLACK);
+        g2.drawLine(mapWidth / 2, mapHeight / 2 - 18, mapWidth / 2 - 12, mapHeight / 2);
+        g2.drawLine(mapWidth / 2 - 12, mapHeight / 2, mapWidth / 2, mapHeight / 2 + 18);
+        g2.drawLine(mapWidth / 2, mapHeight / 2 + 18, mapWidth / 2 + 12, mapHeight / 2);
+        g2.drawLine(mapWidth / 2 + 12, mapHeight / 2, mapWidth / 2, mapHeight / 2 - 18);
+
+        //draw each hypocentre
+        int interval = 0;
+        if (hyposList.getHypocentres().size() > 1) {
+            interval = 24 / (hyposList.getHypocentres().size() - 1);
         }
 
-        @Override
-        public void run() {
-            int count = 0;
-            //for(int i = 0; i<8; i++)
-            while (running) {
-                if (count > frameNumber) {
-                    count = 0;
-                }
-
-                if (hyposList.getHypocentres().size() > 1) {
-                    genNewBufferImage(count);
-                } else {
-                    Graphics2D g2 = tmpImage.createGraphics();
-                    g2.drawImage(baseImage, null, mapWidth, mapHeight);
-                }
-                Graphics g = parent.getGraphics();
-                g.drawImage(tmpImage, xOffset, yOffset, mapWidth, mapHeight, null);
-                //g.dispose();
-                count++;
-
-                try {
-                    sleep(1000);
-                } catch (InterruptedException ex) {
-                    Exceptions.printStackTrace(ex);
+        int startDot = 0;
+        int animPos;
+        for (Hypocentre h : hyposList.getHypocentres()) {
+            if (h.getIsPrime() != true) {
+                xpos = tileSource.LonToX(h.getLon(), zoom) - center.x + w2;
+                if (xpos > (256 << zoom)) {
+                    xpos -= (256 << zoom);
+                } else if (xpos < 0) {
+                    xpos += (256 << zoom);
                 }
-            }
-        }
-
-        private void genNewBufferImage(int count) {
-            int xpos, ypos;
-            int w2 = mapWidth / 2;
-            int h2 = mapHeight / 2;
 
-            tmpImage = new BufferedImage(baseImage.getColorModel(), baseImage.copyData(null), baseImage.getColorModel().isAlphaPremultiplied(), null);
-            Graphics2D g2 = tmpImage.createGraphics();
-            //line thickness for drawing the shape
+                ypos = tileSource.LatToY(h.getLat(), zoom) - center.y + h2;
 
-            //g2.drawImage(baseImage, null, mapWidth, mapHeight);
-            g2.setStroke(new BasicStroke(2));
-
-            int cellWidth = 0;
-            int cellHeight = 0;
-            if (dotImg != null) {
-                cellWidth = dotImg.getWidth();
-                cellHeight = dotImg.getHeight();
-            }
-
-            //draw the prime hypocentre in the middle
-            g2.setPaint(Color.BLACK);
-            g2.drawLine(mapWidth / 2, mapHeight / 2 - 18, mapWidth / 2 - 12, mapHeight / 2);
-            g2.drawLine(mapWidth / 2 - 12, mapHeight / 2, mapWidth / 2, mapHeight / 2 + 18);
-            g2.drawLine(mapWidth / 2, mapHeight / 2 + 18, mapWidth / 2 + 12, mapHeight / 2);
-            g2.drawLine(mapWidth / 2 + 12, mapHeight / 2, mapWidth / 2, mapHeight / 2 - 18);
-
-            //draw each hypocentre
-            int interval = 0;
-            if (hyposList.getHypocentres().size() > 1) {
-                interval = 24 / (hyposList.getHypocentres().size() - 1);
+                g2.drawRect(xpos - 12, ypos - 12, 24, 24);
             }
+        }
 
-            int startDot = 0;
-            int animPos;
-            for (Hypocentre h : hyposList.getHypocentres()) {
-                if (h.getIsPrime() != true) {
-                    xpos = tileSource.LonToX(h.getLon(), zoom) - center.x + w2;
-                    if (xpos > (256 << zoom)) {
-                        xpos -= (256 << zoom);
-                    } else if (xpos < 0) {
-                        xpos += (256 << zoom);
-                    }
-
-                    ypos = tileSource.LatToY(h.getLat(), zoom) - center.y + h2;
+        g2.setPaint(Color.WHITE);
+        //if(dotImg!=null)
+        //{
+        //    g2.setClip(new Ellipse2D.Double(0,0,cellWidth,cellHeight));
+        //}
 
-                    g2.drawRect(xpos - 12, ypos - 12, 24, 24);
+        for (Hypocentre h : hyposList.getHypocentres()) {
+            if (h.getIsPrime() != true) {
+                xpos = tileSource.LonToX(h.getLon(), zoom) - center.x + w2;
+                if (xpos > (256 << zoom)) {
+                    xpos -= (256 << zoom);
+                } else if (xpos < 0) {
+                    xpos += (256 << zoom);
                 }
-            }
 
-            g2.setPaint(Color.WHITE);
-            //if(dotImg!=null)
-            //{
-            //    g2.setClip(new Ellipse2D.Double(0,0,cellWidth,cellHeight));
-            //}
+                ypos = tileSource.LatToY(h.getLat(), zoom) - center.y + h2;
 
-            for (Hypocentre h : hyposList.getHypocentres()) {
-                if (h.getIsPrime() != true) {
-                    xpos = tileSource.LonToX(h.getLon(), zoom) - center.x + w2;
-                    if (xpos > (256 << zoom)) {
-                        xpos -= (256 << zoom);
-                    } else if (xpos < 0) {
-                        xpos += (256 << zoom);
+                if (count == 0) {
+                    if (dotImg != null) {
+                        g2.drawImage(dotImg, xpos - 15 + startDot * interval, ypos - 15, 7, 7, null);
+                    } else {
+                        g2.fillOval(xpos - 14 + startDot * interval, ypos - 14, 5, 5);
                     }
+                } else {
+                    animPos = (startDot * interval - count * 4) < 0 ? (startDot * interval - count * 4 + 96) : (startDot * interval - count * 4);
 
-                    ypos = tileSource.LatToY(h.getLat(), zoom) - center.y + h2;
-
-                    if (count == 0) {
+                    if (animPos <= 24) {
+                        if (dotImg != null) {
+                            g2.drawImage(dotImg, xpos - 15 + animPos, ypos - 15, 7, 7, null);
+                        } else {
+                            g2.fillOval(xpos - 14 + animPos, ypos - 14, 5, 5);
+                        }
+                    } else if (animPos <= 48) {
                         if (dotImg != null) {
-                            g2.drawImage(dotImg, xpos - 15 + startDot * interval, ypos - 15, 7, 7, null);
+                            g2.drawImage(dotImg, xpos + 9, ypos - 15 + (animPos - 24), 7, 7, null);
                         } else {
-                            g2.fillOval(xpos - 14 + startDot * interval, ypos - 14, 5, 5);
+                            g2.fillOval(xpos + 10, ypos - 14 + (animPos - 24), 5, 5);
+                        }
+                    } else if (animPos <= 72) {
+                        if (dotImg != null) {
+                            g2.drawImage(dotImg, xpos + 9 - (animPos - 48), ypos + 9, 7, 7, null);
+                        } else {
+                            g2.fillOval(xpos + 10 - (animPos - 48), ypos + 10, 5, 5);
                         }
                     } else {
-                        animPos = (startDot * interval - count * 4) < 0 ? (startDot * interval - count * 4 + 96) : (startDot * interval - count * 4);
-
-                        if (animPos <= 24) {
-                            if (dotImg != null) {
-                                g2.drawImage(dotImg, xpos - 15 + animPos, ypos - 15, 7, 7, null);
-                            } else {
-                                g2.fillOval(xpos - 14 + animPos, ypos - 14, 5, 5);
-                            }
-                        } else if (animPos <= 48) {
-                            if (dotImg != null) {
-                                g2.drawImage(dotImg, xpos + 9, ypos - 15 + (animPos - 24), 7, 7, null);
-                            } else {
-                                g2.fillOval(xpos + 10, ypos - 14 + (animPos - 24), 5, 5);
-                            }
-                        } else if (animPos <= 72) {
-                            if (dotImg != null) {
-                                g2.drawImage(dotImg, xpos + 9 - (animPos - 48), ypos + 9, 7, 7, null);
-                            } else {
-                                g2.fillOval(xpos + 10 - (animPos - 48), ypos + 10, 5, 5);
-                            }
+                        if (dotImg != null) {
+                            g2.drawImage(dotImg, xpos - 15, ypos + 9 - (animPos - 72), 7, 7, null);
                         } else {
-                            if (dotImg != null) {
-                                g2.drawImage(dotImg, xpos - 15, ypos + 9 - (animPos - 72), 7, 7, null);
-                            } else {
-                                g2.fillOval(xpos - 14, ypos + 10 - (animPos - 72), 5, 5);
-                            }
+                            g2.fillOval(xpos - 14, ypos + 10 - (animPos - 72), 5, 5);
                         }
                     }
-                    startDot++;
                 }
+                startDot++;
             }
-            g2.dispose();
-
         }
     }
 }
-
-
-/*
- *****************************************************************************************
- * XX
- *****************************************************************************************
- */
-class MapAnimation implements Runnable {
-
-    int xOffset, yOffset;
-    int mapWidth, mapHeight;
-    BufferedImage[] tmpImages;
-    JPanel parent;
-    private volatile boolean running = true;
-
-    public MapAnimation(int xOffset,
-            int yOffset,
-            int mapWidth,
-            int mapHeight,
-            BufferedImage[] images,
-            JPanel parent) {
-
-        this.xOffset = xOffset;
-        this.yOffset = yOffset;
-        this.tmpImages = images;
-        this.mapWidth = mapWidth;
-        this.mapHeight = mapHeight;
-        this.parent = parent;
-    }
-
-    public void terminate() {
-        running = false;
-    }
-
-    @Override
-    public void run() {
-        int count = 0;
-        //for(int i = 0; i<8; i++)
-        while (running) {
-            if (count >= 8) {
-                count = 0;
-            }
-
-            Graphics g = parent.getGraphics();
-            g.drawImage(tmpImages[count], xOffset, yOffset, mapWidth, mapHeight, null);
-
-            count++;
-
-            try {
-                sleep(1000);
-            } catch (InterruptedException ex) {
-                Exceptions.printStackTrace(ex);
-            }
-        }
-    }
-
-}
@@ -148,6 +148,17 @@ public final class HypoOverviewTopComponent extends TopComponent implements Seis
         // hypoList.removeChangeListener(this);
     }
 
+    @Override
+    protected void componentShowing() {
+        overviewPanel.setAnimationPaused(false);
+    }
+
+    @Override
+    protected void componentHidden() {
+        // no animation frames behind another tab
+        overviewPanel.setAnimationPaused(true);
+    }
+
     void writeProperties(java.util.Properties p) {
         // better to version settings since initial version as advocated at
         // http://wiki.apidesign.org/wiki/PropertyFiles
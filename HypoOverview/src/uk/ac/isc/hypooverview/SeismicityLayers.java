@@ -0,0 +1,131 @@
+package uk.ac.isc.hypooverview;
+
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import uk.ac.isc.seisdata.HistoricSeismicity;
+
+/**
+ * The seismicity layers of the overview map drawn by SeismicityRenderer, for
+ * one seismicity, zoom, centre and dot size: a transparent raster per depth
+ * band, so showing, hiding or reordering the bands only composites them, and
+ * the layers of the random order with the bands they show. The shuffled
+ * event order of the random order is kept with the seismicity.
+ */
+final class SeismicityLayers {
+
+    private HistoricSeismicity seismicity;
+    private int zoom, centerX, centerY, pixelSize;
+
+    // null for a band without events
+    private final BufferedImage[] bandLayers;
+    private final boolean[] bandDrawn;
+
+    private int[] permutation;
+    private BufferedImage[] randomLayers;
+    private boolean[] randomVisible;
+
+    SeismicityLayers(int bands) {
+        bandLayers = new BufferedImage[bands];
+        bandDrawn = new boolean[bands];
+    }
+
+    /**
+     * @return true if the layers are of this seismicity and view
+     */
+    boolean isFor(HistoricSeismicity seismicity, int zoom, int centerX, int centerY, int pixelSize) {
+        return this.seismicity == seismicity && this.zoom == zoom
+                && this.centerX == centerX && this.centerY == centerY && this.pixelSize == pixelSize;
+    }
+
+    /**
+     * Drop the layers, for another seismicity or view.
+     */
+    void reset(HistoricSeismicity seismicity, int zoom, int centerX, int centerY, int pixelSize) {
+        if (this.seismicity != seismicity) {
+            permutation = null;
+        }
+        this.seismicity = seismicity;
+        this.zoom = zoom;
+        this.centerX = centerX;
+        this.centerY = centerY;
+        this.pixelSize = pixelSize;
+        Arrays.fill(bandLayers, null);
+        Arrays.fill(bandDrawn, false);
+        randomLayers = null;
+        randomVisible = null;
+    }
+
+    /**
+     * @return the layer of the depth band, null if not drawn yet or empty
+     */
+    BufferedImage getBandLayer(int band) {
+        return bandLayers[band];
+    }
+
+    /**
+     * @return the visible depth bands not drawn yet
+     */
+    int[] getMissingBands(boolean[] visible) {
+        int[] bands = new int[bandLayers.length];
+        int n = 0;
+        for (int b = 0; b < bandLayers.length; b++) {
+            if (visible[b] && !bandDrawn[b]) {
+                bands[n++] = b;
+            }
+        }
+        return Arrays.copyOf(bands, n);
+    }
+
+    /**
+     * @return the layers of the random order of the visible bands, null if
+     * not drawn yet
+     */
+    BufferedImage[] getRandomLayers(boolean[] visible) {
+        return Arrays.equals(visible, randomVisible) ? randomLayers : null;
+    }
+
+    int[] getPermutation() {
+        return permutation;
+    }
+
+    /**
+     * Keep the layers of a complete job.
+     *
+     * @param visible the visible bands of a random order job
+     */
+    void put(SeismicityRenderer.Job job, boolean[] visible) {
+        BufferedImage[] layers = job.getLayers();
+        int[] bands = job.getLayerBands();
+        if (job.getPermutation() != null) {
+            permutation = job.getPermutation();
+            randomLayers = layers;
+            randomVisible = visible;
+        } else {
+            for (int l = 0; l < layers.length; l++) {
+                bandLayers[bands[l]] = layers[l];
+                bandDrawn[bands[l]] = true;
+            }
+        }
+    }
+
+    /**
+     * @return bytes held by the rasters and the shuffled order
+     */
+    long getMemoryBytes() {
+        long bytes = 0;
+        for (BufferedImage layer : bandLayers) {
+            if (layer != null) {
+                bytes += 4L * layer.getWidth() * layer.getHeight();
+            }
+        }
+        if (randomLayers != null) {
+            for (BufferedImage layer : randomLayers) {
+                bytes += 4L * layer.getWidth() * layer.getHeight();
+            }
+        }
+        if (permutation != null) {
+            bytes += 4L * permutation.length;
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,418 @@
+package uk.ac.isc.hypooverview;
+
+import java.awt.Paint;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.openstreetmap.gui.jmapviewer.OsmMercator;
+import uk.ac.isc.seisdata.ColorUtils;
+import uk.ac.isc.seisdata.GlyphSprite;
+import uk.ac.isc.seisdata.HistoricSeismicity;
+import uk.ac.isc.seisdata.VBASLogger;
+
+/**
+ * Draws the historic seismicity of the overview map off the EDT, into
+ * transparent layers the panel composites over the tiles.
+ *
+ * The seismicity is ordered by depth, so drawing shallow first, deep first or
+ * close neighbour first is drawing the depth bands one after the other: each
+ * depth band is drawn into its own layer by a worker, the panel keeps them
+ * (SeismicityLayers) and composites the visible ones in the band order of the
+ * mode. The random order is drawn as chunks of the shuffled visible events,
+ * one layer per worker, composited in chunk order. The dots are copied from
+ * GlyphSprites into the layer pixels. A render is a Job, cancelled when the
+ * view changes before it ends.
+ */
+final class SeismicityRenderer {
+
+    // layer band of a chunk of the random order
+    static final int MIXED_BANDS = -1;
+
+    // events between two checks of the cancel flag
+    private static final int CHECK_INTERVAL = 1024;
+
+    private static final int THREADS = Math.max(1, Runtime.getRuntime().availableProcessors());
+
+    private static final ExecutorService renderExecutor = Executors.newFixedThreadPool(THREADS,
+            new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger(0);
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "SeismicityRenderer-" + count.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+
+    private SeismicityRenderer() {
+    }
+
+    /**
+     * Start drawing depth bands of the seismicity, one layer per band.
+     *
+     * @param seismicity events, must not change while drawing
+     * @param zoom zoom level
+     * @param centerX x of the map centre, in pixels of the world at zoom
+     * @param centerY y of the map centre
+     * @param width width of the map
+     * @param height height of the map
+     * @param pixelSize dot size
+     * @param bands depth bands to draw
+     * @param paints paint of each depth band
+     * @param onDone called on a worker thread when the layers are complete,
+     * not when the job is cancelled
+     * @return the running job
+     */
+    static Job renderBands(HistoricSeismicity seismicity, int zoom, int centerX, int centerY,
+            int width, int height, int pixelSize, final int[] bands, Paint[] paints, Runnable onDone) {
+
+        final Job job = new Job(seismicity, zoom, centerX, centerY, width, height, pixelSize, paints, onDone);
+        // the events are split into layers on a worker too
+        job.submit(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    job.startBands(bands);
+                } catch (RuntimeException ex) {
+                    job.fail(ex);
+                }
+            }
+        });
+        return job;
+    }
+
+    /**
+     * Start drawing the visible depth bands of the seismicity in random
+     * order, in chunks of the shuffled events.
+     *
+     * @param permutation shuffled event indices from a previous job of the
+     * seismicity, null to shuffle them (getPermutation())
+     * @param visible visible depth bands
+     * @see #renderBands
+     */
+    static Job renderRandom(HistoricSeismicity seismicity, final int[] permutation, int zoom, int centerX, int centerY,
+            int width, int height, int pixelSize, final boolean[] visible, Paint[] paints, Runnable onDone) {
+
+        final Job job = new Job(seismicity, zoom, centerX, centerY, width, height, pixelSize, paints, onDone);
+        job.submit(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    job.startRandom(permutation, visible);
+                } catch (RuntimeException ex) {
+                    job.fail(ex);
+                }
+            }
+        });
+        return job;
+    }
+
+    /**
+     * @return the visible depth bands in the composite order of the mode
+     */
+    static int[] getLayerBands(boolean[] visible, int order, int centBand) {
+        int[] bands = new int[visible.length];
+        int n = 0;
+        if (order == 2) {
+            for (int b = visible.length - 1; b >= 0; b--) {
+                if (visible[b]) {
+                    bands[n++] = b;
+                }
+            }
+        } else if (order == 4) {
+            int maxDist = Math.max(centBand, visible.length - 1 - centBand);
+            for (int j = maxDist; j >= 0; j--) {
+                if (centBand + j < visible.length && visible[centBand + j]) {
+                    bands[n++] = centBand + j;
+                }
+                if (j > 0 && centBand - j >= 0 && visible[centBand - j]) {
+                    bands[n++] = centBand - j;
+                }
+            }
+        } else {
+            for (int b = 0; b < visible.length; b++) {
+                if (visible[b]) {
+                    bands[n++] = b;
+                }
+            }
+        }
+        int[] result = new int[n];
+        System.arraycopy(bands, 0, result, 0, n);
+        return result;
+    }
+
+    /**
+     * One render of the seismicity. The layers are complete once isDone() and
+     * neither isCancelled() nor isFailed().
+     */
+    static final class Job {
+
+        private final HistoricSeismicity seismicity;
+        private final int zoom;
+        private final int centerX, centerY;
+        private final int width, height;
+        private final int pixelSize;
+        private final Paint[] paints;
+        private final GlyphSprite[] sprites;
+        private final Runnable onDone;
+
+        private BufferedImage[] layers;
+        private int[] layerBands;
+        private int[] permutation;
+
+        private volatile boolean cancelled = false;
+        // a worker threw, the other layers are dropped
+        private volatile boolean failed = false;
+        private final ArrayList<Future<?>> futures = new ArrayList<Future<?>>();
+        private final AtomicInteger pending = new AtomicInteger();
+        private final CountDownLatch done = new CountDownLatch(1);
+        private final long startTime = System.nanoTime();
+
+        private Job(HistoricSeismicity seismicity, int zoom, int centerX, int centerY,
+                int width, int height, int pixelSize, Paint[] paints, Runnable onDone) {
+            this.seismicity = seismicity;
+            this.zoom = zoom;
+            this.centerX = centerX;
+            this.centerY = centerY;
+            this.width = width;
+            this.height = height;
+            this.pixelSize = pixelSize;
+            this.paints = paints;
+            this.sprites = ColorUtils.createSprites(paints, pixelSize, GlyphSprite.CIRCLE);
+            this.onDone = onDone;
+        }
+
+        private void submit(Runnable task) {
+            synchronized (futures) {
+                if (!cancelled) {
+                    futures.add(renderExecutor.submit(task));
+                }
+            }
+        }
+
+        private void startBands(int[] bands) {
+            int[] counts = new int[paints.length];
+            for (int i = 0; i < seismicity.size(); i++) {
+                counts[seismicity.getDepthBand(i)]++;
+            }
+            int[][] bandEvents = new int[paints.length][];
+            for (int b : bands) {
+                bandEvents[b] = new int[counts[b]];
+            }
+            int[] fill = new int[paints.length];
+            for (int i = 0; i < seismicity.size(); i++) {
+                int b = seismicity.getDepthBand(i);
+                if (bandEvents[b] != null) {
+                    bandEvents[b][fill[b]++] = i;
+                }
+            }
+
+            int[][] events = new int[bands.length][];
+            for (int l = 0; l < bands.length; l++) {
+                events[l] = bandEvents[bands[l]];
+            }
+            layerBands = bands;
+            startLayers(events);
+        }
+
+        private void startRandom(int[] shuffled, boolean[] visible) {
+            if (shuffled == null) {
+                shuffled = new int[seismicity.size()];
+                for (int i = 0; i < shuffled.length; i++) {
+                    shuffled[i] = i;
+                }
+                // shuffle, no boxed indices for the dense areas
+                Random random = new Random();
+                for (int i = shuffled.length - 1; i > 0; i--) {
+                    int j = random.nextInt(i + 1);
+                    int tmp = shuffled[i];
+                    shuffled[i] = shuffled[j];
+                    shuffled[j] = tmp;
+                }
+            }
+            permutation = shuffled;
+
+            int n = 0;
+            for (int i : shuffled) {
+                if (visible[seismicity.getDepthBand(i)]) {
+                    n++;
+                }
+            }
+
+            int chunks = n == 0 ? 0 : Math.min(THREADS, (n + CHECK_INTERVAL - 1) / CHECK_INTERVAL);
+            int[][] events = new int[chunks][];
+            layerBands = new int[chunks];
+            int c = 0, k = 0;
+            for (int i : shuffled) {
+                if (visible[seismicity.getDepthBand(i)]) {
+                    if (events[c] == null) {
+                        events[c] = new int[(int) ((long) n * (c + 1) / chunks - (long) n * c / chunks)];
+                    }
+                    events[c][k++] = i;
+                    if (k == events[c].length) {
+                        layerBands[c++] = MIXED_BANDS;
+                        k = 0;
+                    }
+                }
+            }
+            startLayers(events);
+        }
+
+        // no layer (null) for a band without events
+        private void startLayers(int[][] events) {
+            layers = new BufferedImage[events.length];
+            int count = 0;
+            for (int[] layerEvents : events) {
+                if (layerEvents.length > 0) {
+                    count++;
+                }
+            }
+            if (count == 0) {
+                finish();
+                return;
+            }
+
+            pending.set(count);
+            for (int l = 0; l < events.length; l++) {
+                if (events[l].length == 0) {
+                    continue;
+                }
+                final int layer = l;
+                final int[] layerEvents = events[l];
+                submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            if (!cancelled && !failed) {
+                                layers[layer] = drawLayer(layerEvents);
+                            }
+                        } catch (RuntimeException ex) {
+                            fail(ex);
+                        } finally {
+                            if (pending.decrementAndGet() == 0) {
+                                finish();
+                            }
+                        }
+                    }
+                });
+            }
+        }
+
+        private BufferedImage drawLayer(int[] events) {
+            BufferedImage layer = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+            int[] pixels = GlyphSprite.getPixels(layer);
+
+            int w2 = width / 2;
+            int h2 = height / 2;
+            int mapSize = OsmMercator.getMaxPixels(zoom);
+            for (int n = 0; n < events.length; n++) {
+                if (n % CHECK_INTERVAL == 0 && (cancelled || failed)) {
+                    break;
+                }
+                int i = events[n];
+
+                int xpos = (int) OsmMercator.LonToX(seismicity.getLon(i), zoom) - centerX + w2;
+                if (xpos > mapSize) {
+                    xpos -= mapSize;
+                } else if (xpos < 0) {
+                    xpos += mapSize;
+                }
+                int ypos = (int) OsmMercator.LatToY(seismicity.getLat(i), zoom) - centerY + h2;
+
+                //draw dots
+                sprites[seismicity.getDepthBand(i)].draw(pixels, width, height,
+                        xpos - pixelSize / 2, ypos - pixelSize / 2);
+            }
+
+            return layer;
+        }
+
+        private void finish() {
+            if (!cancelled && !failed) {
+                VBASLogger.logDebug("#HistoricEvents=" + seismicity.size() + ", #layers=" + layers.length
+                        + ", t=" + (System.nanoTime() - startTime) / 1000000 + " ms");
+                if (onDone != null) {
+                    onDone.run();
+                }
+            }
+            done.countDown();
+        }
+
+        /*
+         * A worker threw: the job ends without its layers, the waiting thread
+         * returns.
+         */
+        private void fail(RuntimeException ex) {
+            failed = true;
+            VBASLogger.logSevere("Error drawing the historic seismicity: " + ex);
+            ex.printStackTrace();
+            done.countDown();
+        }
+
+        /**
+         * Stop drawing, the layers are dropped.
+         */
+        void cancel() {
+            synchronized (futures) {
+                cancelled = true;
+                for (Future<?> f : futures) {
+                    f.cancel(false);
+                }
+            }
+            done.countDown();
+        }
+
+        boolean isCancelled() {
+            return cancelled;
+        }
+
+        boolean isFailed() {
+            return failed;
+        }
+
+        boolean isDone() {
+            return done.getCount() == 0;
+        }
+
+        /**
+         * Wait for the layers.
+         *
+         * @return false if the job was cancelled, failed or did not end in
+         * time
+         */
+        boolean await(long timeoutMillis) throws InterruptedException {
+            return done.await(timeoutMillis, TimeUnit.MILLISECONDS) && !cancelled && !failed;
+        }
+
+        /**
+         * @return the layers, in the order of the bands or of the chunks, null
+         * for a band without events
+         */
+        BufferedImage[] getLayers() {
+            return layers;
+        }
+
+        /**
+         * @return depth band of each layer, MIXED_BANDS for a chunk of the
+         * random order
+         */
+        int[] getLayerBands() {
+            return layerBands;
+        }
+
+        /**
+         * @return the shuffled event indices of a random order job
+         */
+        int[] getPermutation() {
+            return permutation;
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package uk.ac.isc.phaseview;
+
+import java.util.Arrays;
+import java.util.Date;
+
+/**
+ * Series of (time in ms, value) points allowing duplicates and in any order,
+ * as the phase arrivals and the travel time curves, in parallel primitive
+ * arrays: no Millisecond/TimeSeriesDataItem per point and no change event
+ * per add. Replaces DuplicateUnorderTimeSeries.
+ *
+ * A series can share the arrays of another one shifted in time (the travel
+ * time curves of an origin time), such a series is read only.
+ */
+public class DuplicateUnorderXYSeries {
+
+    private final Comparable key;
+
+    private long[] x;
+    private double[] y;
+    private int count = 0;
+    private final long xOffset;
+    private final boolean isShared;
+
+    //the boundary, can be set to keep the range of a filtered series
+    private double minY = Double.NaN;
+    private double maxY = Double.NaN;
+    private double minX = Double.NaN;
+    private double maxX = Double.NaN;
+
+    public DuplicateUnorderXYSeries(Comparable key) {
+        this(key, 64);
+    }
+
+    public DuplicateUnorderXYSeries(Comparable key, int capacity) {
+        this.key = key;
+        this.x = new long[Math.max(capacity, 1)];
+        this.y = new double[Math.max(capacity, 1)];
+        this.xOffset = 0;
+        this.isShared = false;
+    }
+
+    /**
+     * Read only series on the first n points of the arrays, shifted by
+     * xOffset.
+     */
+    public DuplicateUnorderXYSeries(Comparable key, long[] x, double[] y, int n, long xOffset) {
+        this.key = key;
+        this.x = x;
+        this.y = y;
+        this.count = n;
+        this.xOffset = xOffset;
+        this.isShared = true;
+        for (int i = 0; i < n; i++) {
+            updateBounds(x[i] + xOffset, y[i]);
+        }
+    }
+
+    public Comparable getKey() {
+        return key;
+    }
+
+    public int getItemCount() {
+        return count;
+    }
+
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    public long getX(int item) {
+        return x[item] + xOffset;
+    }
+
+    public double getY(int item) {
+        return y[item];
+    }
+
+    // a missing value is not drawn
+    public void add(Date time, Double value) {
+        add(time.getTime(), value == null ? Double.NaN : value);
+    }
+
+    public void add(long time, double value) {
+        checkWritable();
+        if (count == x.length) {
+            x = Arrays.copyOf(x, count * 2);
+            y = Arrays.copyOf(y, count * 2);
+        }
+        x[count] = time;
+        y[count] = value;
+        count++;
+        updateBounds(time, value);
+    }
+
+    /**
+     * bulk add of the first n points of the arrays
+     */
+    public void add(long[] times, double[] values, int n) {
+        checkWritable();
+        if (count + n > x.length) {
+            x = Arrays.copyOf(x, Math.max(count + n, count * 2));
+            y = Arrays.copyOf(y, x.length);
+        }
+        System.arraycopy(times, 0, x, count, n);
+        System.arraycopy(values, 0, y, count, n);
+        count += n;
+        for (int i = 0; i < n; i++) {
+            updateBounds(times[i], values[i]);
+        }
+    }
+
+    public void clear() {
+        checkWritable();
+        count = 0;
+        minY = Double.NaN;
+        maxY = Double.NaN;
+        minX = Double.NaN;
+        maxX = Double.NaN;
+    }
+
+    public double getMinY() {
+        return this.minY;
+    }
+
+    public double getMaxY() {
+        return this.maxY;
+    }
+
+    public long getMinX() {
+        return (long) this.minX;
+    }
+
+    public long getMaxX() {
+        return (long) this.maxX;
+    }
+
+    public void setMinY(double minY) {
+        this.minY = minY;
+    }
+
+    public void setMaxY(double maxY) {
+        this.maxY = maxY;
+    }
+
+    public void setMinX(long minX) {
+        this.minX = minX;
+    }
+
+    public void setMaxX(long maxX) {
+        this.maxX = maxX;
+    }
+
+    private void checkWritable() {
+        if (isShared) {
+            throw new UnsupportedOperationException("read only series " + key);
+        }
+    }
+
+    private void updateBounds(double time, double value) {
+        if (!Double.isNaN(value)) {
+            this.minY = minIgnoreNaN(this.minY, value);
+            this.maxY = maxIgnoreNaN(this.maxY, value);
+            this.minX = minIgnoreNaN(this.minX, time);
+            this.maxX = maxIgnoreNaN(this.maxX, time);
+        }
+    }
+
+    private static double minIgnoreNaN(double a, double b) {
+        return Double.isNaN(a) ? b : Math.min(a, b);
+    }
+
+    private static double maxIgnoreNaN(double a, double b) {
+        return Double.isNaN(a) ? b : Math.max(a, b);
+    }
+
+    @Override
+    public String toString() {
+        return "DuplicateUnorderXYSeries{" + "key=" + key + ", count=" + count
+                + ", minX=" + getMinX() + ", maxX=" + getMaxX() + ", minY=" + minY + ", maxY=" + maxY + '}';
+    }
+}
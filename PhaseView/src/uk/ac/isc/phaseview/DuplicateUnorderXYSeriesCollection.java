@@ -0,0 +1,137 @@
+package uk.ac.isc.phaseview;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.jfree.chart.LegendItem;
+import org.jfree.chart.LegendItemCollection;
+import org.jfree.chart.LegendItemSource;
+import org.jfree.data.DomainInfo;
+import org.jfree.data.Range;
+import org.jfree.data.RangeInfo;
+import org.jfree.data.xy.AbstractXYDataset;
+import org.jfree.data.xy.XYDomainInfo;
+import org.jfree.data.xy.XYRangeInfo;
+
+/**
+ * XYDataset of DuplicateUnorderXYSeries: x is the time in ms, y the
+ * distance. Replaces DuplicateUnorderTimeSeriesCollection.
+ */
+public class DuplicateUnorderXYSeriesCollection extends AbstractXYDataset
+        implements DomainInfo, RangeInfo, XYDomainInfo, XYRangeInfo, LegendItemSource {
+
+    private final ArrayList<DuplicateUnorderXYSeries> data = new ArrayList<DuplicateUnorderXYSeries>();
+
+    public void addSeries(DuplicateUnorderXYSeries series) {
+        data.add(series);
+        fireDatasetChanged();
+    }
+
+    public void removeAllSeries() {
+        data.clear();
+        fireDatasetChanged();
+    }
+
+    public DuplicateUnorderXYSeries getSeries(int series) {
+        return data.get(series);
+    }
+
+    @Override
+    public int getSeriesCount() {
+        return data.size();
+    }
+
+    @Override
+    public Comparable getSeriesKey(int series) {
+        return data.get(series).getKey();
+    }
+
+    @Override
+    public int getItemCount(int series) {
+        return data.get(series).getItemCount();
+    }
+
+    @Override
+    public Number getX(int series, int item) {
+        return data.get(series).getX(item);
+    }
+
+    @Override
+    public double getXValue(int series, int item) {
+        return data.get(series).getX(item);
+    }
+
+    @Override
+    public Number getY(int series, int item) {
+        return data.get(series).getY(item);
+    }
+
+    @Override
+    public double getYValue(int series, int item) {
+        return data.get(series).getY(item);
+    }
+
+    @Override
+    public double getDomainLowerBound(boolean includeInterval) {
+        Range r = getDomainBounds(includeInterval);
+        return r == null ? Double.NaN : r.getLowerBound();
+    }
+
+    @Override
+    public double getDomainUpperBound(boolean includeInterval) {
+        Range r = getDomainBounds(includeInterval);
+        return r == null ? Double.NaN : r.getUpperBound();
+    }
+
+    @Override
+    public Range getDomainBounds(boolean includeInterval) {
+        Range result = null;
+        for (DuplicateUnorderXYSeries series : data) {
+            if (!series.isEmpty()) {
+                result = Range.combineIgnoringNaN(result, new Range(series.getMinX(), series.getMaxX()));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public Range getDomainBounds(List visibleSeriesKeys, boolean includeInterval) {
+        return getDomainBounds(includeInterval);
+    }
+
+    @Override
+    public double getRangeLowerBound(boolean includeInterval) {
+        Range r = getRangeBounds(includeInterval);
+        return r == null ? Double.NaN : r.getLowerBound();
+    }
+
+    @Override
+    public double getRangeUpperBound(boolean includeInterval) {
+        Range r = getRangeBounds(includeInterval);
+        return r == null ? Double.NaN : r.getUpperBound();
+    }
+
+    @Override
+    public Range getRangeBounds(boolean includeInterval) {
+        Range result = null;
+        for (DuplicateUnorderXYSeries series : data) {
+            if (!series.isEmpty()) {
+                result = Range.combineIgnoringNaN(result, new Range(series.getMinY(), series.getMaxY()));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public Range getRangeBounds(List visibleSeriesKeys, Range xRange, boolean includeInterval) {
+        return getRangeBounds(includeInterval);
+    }
+
+    @Override
+    public LegendItemCollection getLegendItems() {
+        LegendItemCollection result = new LegendItemCollection();
+        for (DuplicateUnorderXYSeries series : data) {
+            result.add(new LegendItem(String.valueOf(series.getKey())));
+        }
+        return result;
+    }
+}
@@ -1,104 +1,159 @@
 package uk.ac.isc.phaseview;
 
-import java.io.BufferedInputStream;
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Scanner;
-import javax.swing.JOptionPane;
-import org.jfree.data.time.Millisecond;
-import org.openide.util.Exceptions;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import uk.ac.isc.seisdata.Hypocentre;
+import uk.ac.isc.seisdata.Phase;
+import uk.ac.isc.seisdata.PhasesList;
 import uk.ac.isc.seisdata.VBASLogger;
 
 /**
- * helper function to call perl for calculating ttd curves based on evid
+ * helper function to calculate the ttd curves of the prime hypocentre, with
+ * the AK135 TravelTimeTables, as resources/ttimes.pl did. The curves are
+ * cached by depth and distance range (TTDCurves).
+ *
+ * Until the tables are checked against recorded ttimes.pl output on an ops
+ * host (TravelTimeTablesTest), ttimes.pl is run by default; the tables are
+ * only used with setenv VBAS_TT tables, and ttimes.pl is run if they cannot
+ * be read.
  */
 public class LoadTTDData {
 
+    private static File ttimesScript = null;
+
+    public static DuplicateUnorderXYSeriesCollection loadTTDData(Hypocentre prime, PhasesList pList) {
+
+        DuplicateUnorderXYSeriesCollection ttdData = new DuplicateUnorderXYSeriesCollection();
+        if (prime == null || prime.getOrigTime() == null) {
+            return ttdData;
+        }
+
+        TravelTimeTables tables = "tables".equals(System.getenv("VBAS_TT")) ? TravelTimeTables.getDefault() : null;
+        if (tables == null) {
+            return loadTTDData(prime.getEvid());
+        }
+
+        // the furthest ISC association
+        double maxDist = 0;
+        for (Phase p : pList.getPhases()) {
+            if (p.getDistance() != null) {
+                maxDist = Math.max(maxDist, p.getDistance());
+            }
+        }
+
+        long origin = prime.getOrigTime().getTime();
+        int msec = prime.getMsec() == null ? 0 : prime.getMsec();
+
+        return loadTTDData(tables, origin, msec, getDepth(prime), (int) maxDist + 1);
+    }
+
     /*
-     * This is for saving the theoretical travel time points
+     * The depth of ttimes.pl: COALESCE(h.depth, h.depdp, r.default_depth).
      */
-    private final static DuplicateUnorderTimeSeriesCollection ttdData = new DuplicateUnorderTimeSeriesCollection();
+    static double getDepth(Hypocentre prime) {
+        if (prime.getDefaultDepth() != null) {
+            return prime.getDefaultDepth();
+        }
+        return prime.getDepth() == null ? 0 : prime.getDepth();
+    }
 
-    public static DuplicateUnorderTimeSeriesCollection loadTTDData(Integer evid, File perlScript) {
-        VBASLogger.logDebug("Here...");
+    /**
+     * @param tables travel time tables
+     * @param origin origin time (ms), whole seconds
+     * @param msec milliseconds of the origin time
+     * @param depth depth (km)
+     * @param maxDelta the curves go to maxDelta + 10 degrees
+     * @return one series per phase: arrival time, distance
+     */
+    static DuplicateUnorderXYSeriesCollection loadTTDData(TravelTimeTables tables,
+            long origin, int msec, double depth, int maxDelta) {
+        return TTDCurves.getCurves(tables, depth, maxDelta).toDataset(origin + msec);
+    }
+
+    /*
+     * Run resources/ttimes.pl for the event, one series per phase.
+     */
+    static DuplicateUnorderXYSeriesCollection loadTTDData(Integer evid) {
 
-        ttdData.removeAllSeries();
-        ArrayList<TTDTriplet> ttdList = new ArrayList<TTDTriplet>();
+        DuplicateUnorderXYSeriesCollection ttdData = new DuplicateUnorderXYSeriesCollection();
+
+        File perlScript = getTtimesScript();
+        if (perlScript == null || evid == null) {
+            return ttdData;
+        }
 
-        //Execute the Perl script to get the theoretical time curves.
         String perlCommand = "perl" + " " + perlScript + " " + evid.toString();
         VBASLogger.logDebug("Execute: " + perlCommand);
 
-        //execute the perl script and read the data into ttdList
+        int count = 0;
         try {
             Process proc = Runtime.getRuntime().exec(perlCommand);
-            BufferedInputStream in = new BufferedInputStream(proc.getInputStream());
-            Scanner bscanner = new Scanner(in);
-
-            while (bscanner.hasNextLine()) {
-                String temp = bscanner.nextLine();
-                TTDTriplet tempTriplet = new TTDTriplet(temp);
-                ttdList.add(tempTriplet);
-                //if(!pnameList.contains(tempTriplet.getPhaseType()))
-                //{
-                //    pnameList.add(tempTriplet.getPhaseType());
-                //}
+            BufferedReader in = new BufferedReader(new InputStreamReader(proc.getInputStream()));
+            try {
+                // the script prints the points of a phase together
+                DuplicateUnorderXYSeries dts = null;
+                String line;
+                while ((line = in.readLine()) != null) {
+                    TTDTriplet triplet = new TTDTriplet(line);
+                    if (triplet.getArrivalTime() == null) {
+                        continue;
+                    }
+                    if (dts == null || !dts.getKey().equals(triplet.getPhaseType())) {
+                        dts = new DuplicateUnorderXYSeries(triplet.getPhaseType());
+                        ttdData.addSeries(dts);
+                    }
+                    dts.add(triplet.getArrivalTime(), triplet.getDelta());
+                    count++;
+                }
+            } finally {
+                in.close();
             }
             proc.waitFor();
-
         } catch (IOException ioe) {
-            System.out.println("Exception: " + ioe.toString());
+            VBASLogger.logSevere(perlCommand + ": " + ioe.toString());
         } catch (InterruptedException ex) {
-            Exceptions.printStackTrace(ex);
+            Thread.currentThread().interrupt();
         }
 
-        if (ttdList.isEmpty()) {
-            JOptionPane.showMessageDialog(null, perlCommand + " returned " + ttdList.size() + " items.",
-                    "Warning", JOptionPane.WARNING_MESSAGE);
+        if (count == 0) {
+            VBASLogger.logSevere(perlCommand + " returned no travel times.");
         }
+        return ttdData;
+    }
 
-        // debug: sort and print
-        //Collections.sort(ttdList); // Sort by date
-        /*Collections.sort(ttdList, new Comparator<TTDTriplet>() {
-            public int compare(TTDTriplet o1, TTDTriplet o2) {
-                if (o1.getDelta() == null || o2.getDelta() == null) {
-                    return 0;
-                }
-                return o1.getDelta().compareTo(o2.getDelta());
-            }
-        });
-        */
-        
-        /*
-        // Debug print
-        for (TTDTriplet t : ttdList) {
-            VBASLogger.logDebug(t);
-        }*/
-         
-
-
-        //iterate the ttdlist and put them into different seriers based on their phase types
-        //return time series collections
-        DuplicateUnorderTimeSeries dts = null;
-        for (int i = 0; i < ttdList.size(); i++) {
-            if (i == 0) {
-                dts = new DuplicateUnorderTimeSeries(ttdList.get(0).getPhaseType());
-                dts.add(new Millisecond(ttdList.get(0).getArrivalTime()), ttdList.get(0).getDelta());
-            } else if (i == ttdList.size() - 1) {
-                ttdData.addSeries(dts);
-            } else {
-                if (ttdList.get(i).getPhaseType().equals(ttdList.get(i - 1).getPhaseType())) {
-                    dts.add(new Millisecond(ttdList.get(i).getArrivalTime()), ttdList.get(i).getDelta());
-                } else {
-                    ttdData.addSeries(dts);
-                    dts = new DuplicateUnorderTimeSeries(ttdList.get(i).getPhaseType());
-                    dts.add(new Millisecond(ttdList.get(i).getArrivalTime()), ttdList.get(i).getDelta());
-                }
-            }
+    /*
+     * ttimes.pl copied out of the jar once.
+     */
+    private static synchronized File getTtimesScript() {
+        if (ttimesScript != null) {
+            return ttimesScript;
         }
 
-        return ttdData;
-
+        InputStream inSream = LoadTTDData.class.getClassLoader().getResourceAsStream("resources/ttimes.pl");
+        if (inSream == null) {
+            VBASLogger.logSevere("Resource does not exist: resources/ttimes.pl");
+            return null;
+        }
+        try {
+            File script = File.createTempFile("ttimes", ".pl");
+            script.deleteOnExit();
+            Files.copy(inSream, script.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            script.setExecutable(true, true);
+            ttimesScript = script;
+        } catch (IOException e) {
+            VBASLogger.logSevere("Error copying ttimes.pl: " + e);
+        } finally {
+            try {
+                inSream.close();
+            } catch (IOException e) {
+                VBASLogger.logSevere("Error releasing resources.");
+            }
+        }
+        return ttimesScript;
     }
 }
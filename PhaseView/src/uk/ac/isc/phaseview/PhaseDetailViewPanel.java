@@ -12,8 +12,6 @@ import org.jfree.chart.axis.DateAxis;
 import org.jfree.chart.axis.NumberAxis;
 import org.jfree.chart.plot.PlotOrientation;
 import org.jfree.chart.renderer.xy.XYDotRenderer;
-import org.jfree.data.time.Millisecond;
-import org.jfree.data.time.RegularTimePeriod;
 import uk.ac.isc.seisdata.Phase;
 import uk.ac.isc.seisdata.PhasesList;
 import uk.ac.isc.seisdata.SeisDataChangeEvent;
@@ -37,8 +35,8 @@ public class PhaseDetailViewPanel extends JPanel implements SeisDataChangeListen
 
     private double residualCutoffLevel = 0.0;
 
-    private DuplicateUnorderTimeSeries detailPhaseTimeSeries = new DuplicateUnorderTimeSeries("");
-    private DuplicateUnorderTimeSeriesCollection detailPhaseTimeSeriesCollection = new DuplicateUnorderTimeSeriesCollection();
+    private DuplicateUnorderXYSeries detailPhaseTimeSeries = new DuplicateUnorderXYSeries("");
+    private DuplicateUnorderXYSeriesCollection detailPhaseTimeSeriesCollection = new DuplicateUnorderXYSeriesCollection();
 
     private JFreeChart freechart = null;
 
@@ -50,7 +48,7 @@ public class PhaseDetailViewPanel extends JPanel implements SeisDataChangeListen
     private double zoomMaxDist;
 
     //curve data
-    private DuplicateUnorderTimeSeriesCollection ttdData = null;
+    private DuplicateUnorderXYSeriesCollection ttdData = null;
 
     public PhaseDetailViewPanel(PhaseTravelViewPanel phaseTVPanel) {
         this.phaseTVPanel = phaseTVPanel;
@@ -70,8 +68,8 @@ public class PhaseDetailViewPanel extends JPanel implements SeisDataChangeListen
 
     public void updateData() {
 
-        detailPhaseTimeSeries = new DuplicateUnorderTimeSeries("");
-        detailPhaseTimeSeriesCollection = new DuplicateUnorderTimeSeriesCollection();
+        detailPhaseTimeSeries = new DuplicateUnorderXYSeries("");
+        detailPhaseTimeSeriesCollection = new DuplicateUnorderXYSeriesCollection();
 
         VBASLogger.logDebug("range=" + Arrays.toString(phaseTVPanel.getZoomRange()) + ", #detailPList: " + detailPList.getPhases().size());
 
@@ -81,17 +79,14 @@ public class PhaseDetailViewPanel extends JPanel implements SeisDataChangeListen
 
                 if (p.getArrivalTime() != null) {
                     if (residualCutoffLevel == 0) {
-                        RegularTimePeriod rp = new Millisecond(p.getArrivalTime());
-                        detailPhaseTimeSeries.add(rp, p.getDistance());
+                        detailPhaseTimeSeries.add(p.getArrivalTime(), p.getDistance());
                     } else {
                         if (p.getTimeResidual() != null) {
                             if (Math.abs(p.getTimeResidual()) > residualCutoffLevel) {
-                                RegularTimePeriod rp = new Millisecond(p.getArrivalTime());
-                                detailPhaseTimeSeries.add(rp, p.getDistance());
+                                detailPhaseTimeSeries.add(p.getArrivalTime(), p.getDistance());
                             }
                         } else {
-                            RegularTimePeriod rp = new Millisecond(p.getArrivalTime());
-                            detailPhaseTimeSeries.add(rp, p.getDistance());
+                            detailPhaseTimeSeries.add(p.getArrivalTime(), p.getDistance());
                         }
                     }
                 }
@@ -150,27 +145,24 @@ public class PhaseDetailViewPanel extends JPanel implements SeisDataChangeListen
         double minDist = detailPhaseTimeSeries.getMinY();
         double maxDist = detailPhaseTimeSeries.getMaxY();
 
-        detailPhaseTimeSeries = new DuplicateUnorderTimeSeries("");
-        detailPhaseTimeSeriesCollection = new DuplicateUnorderTimeSeriesCollection();
+        detailPhaseTimeSeries = new DuplicateUnorderXYSeries("");
+        detailPhaseTimeSeriesCollection = new DuplicateUnorderXYSeriesCollection();
 
         //put phases into the dataseries
         for (Phase p : detailPList.getPhases()) {
 
             if (p.getArrivalTime() != null) {
                 if (residualCutoffLevel == 0) {
-                    RegularTimePeriod rp = new Millisecond(p.getArrivalTime());
-                    detailPhaseTimeSeries.add(rp, p.getDistance());
+                    detailPhaseTimeSeries.add(p.getArrivalTime(), p.getDistance());
                 } else {
                     if (p.getTimeResidual() != null) {
                         if (Math.abs(p.getTimeResidual()) > residualCutoffLevel) {
-                            RegularTimePeriod rp = new Millisecond(p.getArrivalTime());
-                            detailPhaseTimeSeries.add(rp, p.getDistance());
+                            detailPhaseTimeSeries.add(p.getArrivalTime(), p.getDistance());
 
                         }
                     } else //show phases with null residual
                     {
-                        RegularTimePeriod rp = new Millisecond(p.getArrivalTime());
-                        detailPhaseTimeSeries.add(rp, p.getDistance());
+                        detailPhaseTimeSeries.add(p.getArrivalTime(), p.getDistance());
                     }
                 }
 
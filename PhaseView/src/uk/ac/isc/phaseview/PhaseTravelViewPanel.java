@@ -5,6 +5,7 @@ import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
+import java.awt.GraphicsEnvironment;
 import java.awt.Insets;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
@@ -12,30 +13,21 @@ import java.awt.event.MouseMotionListener;
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
-import java.io.File;
-import java.io.IOException;
-import java.io.InputStream;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
 import java.text.SimpleDateFormat;
 import java.util.Date;
-import java.util.logging.Level;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
 import org.jfree.chart.ChartRenderingInfo;
 import org.jfree.chart.JFreeChart;
 import org.jfree.chart.axis.DateAxis;
 import org.jfree.chart.axis.NumberAxis;
 import org.jfree.chart.plot.PlotOrientation;
 import org.jfree.chart.renderer.xy.XYDotRenderer;
-import org.jfree.data.time.Millisecond;
-import org.jfree.data.time.RegularTimePeriod;
 import org.jfree.ui.RectangleInsets;
-import uk.ac.isc.seisdatainterface.Global;
 import uk.ac.isc.seisdata.Hypocentre;
 import uk.ac.isc.seisdata.HypocentresList;
+import uk.ac.isc.seisdata.OffscreenView;
 import uk.ac.isc.seisdata.Phase;
 import uk.ac.isc.seisdata.PhasesList;
 import uk.ac.isc.seisdata.SeisUtils;
@@ -45,7 +37,7 @@ import uk.ac.isc.seisdata.VBASLogger;
  *
  * The general view to show all the phases with travel time curves
  */
-public class PhaseTravelViewPanel extends JPanel implements MouseListener, MouseMotionListener {
+public class PhaseTravelViewPanel extends JPanel implements MouseListener, MouseMotionListener, OffscreenView {
 
     //for filtering the data
     private double residualCutoffLevel = 0.0;
@@ -103,63 +95,19 @@ public class PhaseTravelViewPanel extends JPanel implements MouseListener, Mouse
     private final PhasesList selectedPhaseList = new PhasesList();
 
     //these two for showing the phases data
-    private File ttimesScript;
-    private DuplicateUnorderTimeSeries phaseTimeSeries;
-    private DuplicateUnorderTimeSeriesCollection phaseTimeSeriesCollection;
+    private DuplicateUnorderXYSeries phaseTimeSeries;
+    private DuplicateUnorderXYSeriesCollection phaseTimeSeriesCollection;
     //curve data
-    private DuplicateUnorderTimeSeriesCollection ttdData = null;
+    private DuplicateUnorderXYSeriesCollection ttdData = null;
 
     public PhaseTravelViewPanel(PhasesList pList, HypocentresList hList) {
         this.pList = pList;
         this.hList = hList;
 
-        // Read the perl script, a resourse file inside jar.
-        if (getClass().getClassLoader().getResource("resources" + File.separator + "ttimes.pl") == null) {
-            VBASLogger.logDebug("Resource does not exist. resource: "
-                    + getClass().getClassLoader().getResource("resources" + File.separator + "ttimes.pl"));
-        }
-
-        InputStream inSream = getClass().getClassLoader().getResourceAsStream("resources" + File.separator + "ttimes.pl");
-        if (inSream != null) {
-            // Create a temp directory in the current directory and copy the content of the perl script from resource folder.
-            try {
-                Path scriptpath = Paths.get(System.getProperty("user.dir") + File.separator + "temp");
-                if (!new File(scriptpath.toString()).exists()) {
-                    boolean success = (new File(scriptpath.toString())).mkdirs();
-                    if (!success) {
-                        String message = "Error creating the directory " + scriptpath;
-                        VBASLogger.logSevere(message);
-                        JOptionPane.showMessageDialog(null, message, "Error", JOptionPane.ERROR_MESSAGE);
-                    }
-                }
-                //ttimesScript = File.createTempFile("ttimes", ".pl"); 
-                ttimesScript = new File(scriptpath + File.separator + "ttimes.pl");
-                ttimesScript.setReadable(true, true);
-                ttimesScript.setWritable(true, true);
-                ttimesScript.setExecutable(true, true);
-                
-                VBASLogger.logDebug("Perl script location for TTDData, ttimesScript= " + ttimesScript.toPath());
-                if (!ttimesScript.canRead() && !ttimesScript.canExecute()) {
-                    String message = ttimesScript.toPath() + " is not readable and writable. Please report to system admin.";
-                    VBASLogger.logDebug(message);
-                    JOptionPane.showMessageDialog(null, message, "Error", JOptionPane.ERROR_MESSAGE);
-                    //logger.log(Level.SEVERE, message);
-                }
-
-                Files.copy(inSream, ttimesScript.toPath(), StandardCopyOption.REPLACE_EXISTING);
-                inSream.close();
-            } catch (IOException e) {
-                // TODO
-            }
-        } else {
-            VBASLogger.logDebug("Null 'inStream', resource: "
-                    + getClass().getClassLoader().getResource("resources" + File.separator + "ttimes.pl").toString());
-        }
-
         updateData();
     }
 
-    public DuplicateUnorderTimeSeriesCollection getTtdData() {
+    public DuplicateUnorderXYSeriesCollection getTtdData() {
         return ttdData;
     }
 
@@ -188,8 +136,8 @@ public class PhaseTravelViewPanel extends JPanel implements MouseListener, Mouse
         if (detailedPList.getPhases() != null) {
             detailedPList.getPhases().clear();
         }
-        phaseTimeSeries = new DuplicateUnorderTimeSeries("");
-        phaseTimeSeriesCollection = new DuplicateUnorderTimeSeriesCollection();
+        phaseTimeSeries = new DuplicateUnorderXYSeries("");
+        phaseTimeSeriesCollection = new DuplicateUnorderXYSeriesCollection();
         resetZoomRange();
         zoomRectangle = null;
         prime = null;
@@ -202,7 +150,7 @@ public class PhaseTravelViewPanel extends JPanel implements MouseListener, Mouse
         }
 
         // get travel time curve data
-        ttdData = LoadTTDData.loadTTDData(Global.getSelectedSeisEvent().getEvid(), ttimesScript);
+        ttdData = LoadTTDData.loadTTDData(prime, pList);
 
         //put phases into the dataseries
         for (Phase p : pList.getPhases()) {
@@ -210,8 +158,7 @@ public class PhaseTravelViewPanel extends JPanel implements MouseListener, Mouse
                     && ((p.getTimeResidual() != null && Math.abs(p.getTimeResidual()) > residualCutoffLevel)
                     || (p.getTimeResidual() == null))) {
 
-                RegularTimePeriod rp = new Millisecond(p.getArrivalTime());
-                phaseTimeSeries.add(rp, p.getDistance());
+                phaseTimeSeries.add(p.getArrivalTime(), p.getDistance());
             }
         }
 
@@ -233,8 +180,12 @@ public class PhaseTravelViewPanel extends JPanel implements MouseListener, Mouse
             maxDist = phaseTimeSeries.getMaxY();
             if (maxDist <= 0) {
                 maxDist = 1.0; // TODO: fix the script
-                JOptionPane.showMessageDialog(null, "Possible corrupted traveltime data (script).",
-                        "WARNING", JOptionPane.ERROR_MESSAGE);
+                VBASLogger.logSevere("Possible corrupted traveltime data, maxDist=" + phaseTimeSeries.getMaxY());
+                // the panel is also drawn for the reports, on their threads
+                if (SwingUtilities.isEventDispatchThread() && !GraphicsEnvironment.isHeadless()) {
+                    JOptionPane.showMessageDialog(null, "Possible corrupted traveltime data (script).",
+                            "WARNING", JOptionPane.ERROR_MESSAGE);
+                }
             }
 
             VBASLogger.logDebug("minTime=" + minTime + ", maxTime=" + maxTime + ", maxDist=" + maxDist);
@@ -298,8 +249,8 @@ public class PhaseTravelViewPanel extends JPanel implements MouseListener, Mouse
 
         phaseTimeSeriesCollection.removeAllSeries();
         phaseTimeSeries.clear();
-        phaseTimeSeries = new DuplicateUnorderTimeSeries("");
-        phaseTimeSeriesCollection = new DuplicateUnorderTimeSeriesCollection();
+        phaseTimeSeries = new DuplicateUnorderXYSeries("");
+        phaseTimeSeriesCollection = new DuplicateUnorderXYSeriesCollection();
 
         //put phases into the dataseries
         for (Phase p : pList.getPhases()) {
@@ -325,13 +276,11 @@ public class PhaseTravelViewPanel extends JPanel implements MouseListener, Mouse
             if (p.getArrivalTime() != null && showPhase == true)// && p.getIscPhaseType()!=null)
             {
                 if (residualCutoffLevel == 0) {
-                    RegularTimePeriod rp = new Millisecond(p.getArrivalTime());
-                    phaseTimeSeries.add(rp, p.getDistance());
+                    phaseTimeSeries.add(p.getArrivalTime(), p.getDistance());
                 } else {
                     if (p.getTimeResidual() != null) {
                         if (Math.abs(p.getTimeResidual()) > residualCutoffLevel) {
-                            RegularTimePeriod rp = new Millisecond(p.getArrivalTime());
-                            phaseTimeSeries.add(rp, p.getDistance());
+                            phaseTimeSeries.add(p.getArrivalTime(), p.getDistance());
 
                         }
                     }
@@ -459,6 +408,15 @@ public class PhaseTravelViewPanel extends JPanel implements MouseListener, Mouse
         return phaseImageWithRect;
     }
 
+    @Override
+    public BufferedImage renderImage(int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2 = image.createGraphics();
+        g2.drawImage(phaseImageWithRect, 0, 0, width, height, null);
+        g2.dispose();
+        return image;
+    }
+
     public int getImageWidth() {
         return imageWidth;
     }
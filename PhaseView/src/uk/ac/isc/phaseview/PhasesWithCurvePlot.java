@@ -43,7 +43,7 @@ public class PhasesWithCurvePlot extends XYPlot {
     //private static final Paint DEFAULT_KPHASE_PAINT = new Color(110,220,0);
     private static final Stroke DEFAULT_STROKE = new BasicStroke(1);
 
-    DuplicateUnorderTimeSeriesCollection ttdData;
+    DuplicateUnorderXYSeriesCollection ttdData;
 
     public PhasesWithCurvePlot(XYDataset dataset,
             ValueAxis domainAxis,
@@ -57,7 +57,7 @@ public class PhasesWithCurvePlot extends XYPlot {
             ValueAxis domainAxis,
             ValueAxis rangeAxis,
             XYItemRenderer renderer,
-            DuplicateUnorderTimeSeriesCollection ttdData) {
+            DuplicateUnorderXYSeriesCollection ttdData) {
         
         super(dataset, domainAxis, rangeAxis, renderer);
         this.ttdData = ttdData;
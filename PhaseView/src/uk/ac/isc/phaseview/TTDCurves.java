@@ -0,0 +1,177 @@
+package uk.ac.isc.phaseview;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import uk.ac.isc.seisdata.VBASLogger;
+
+/**
+ * Travel time curves of a depth and a distance range, relative to the origin
+ * time: per phase, the distances and the travel times (s) in primitive
+ * arrays. The curves do not depend on the origin time, so the curve sets are
+ * cached by depth bucket and max distance and only shifted to the origin
+ * time of an event by the dataset; a block has few distinct depths (fixed 0/10/33 km, the
+ * default depth grid).
+ */
+public final class TTDCurves {
+
+    // km, hypocentre depths are whole km
+    static final double DEPTH_BUCKET = 1.0;
+
+    private static final int MAX_CURVE_SETS = 32;
+
+    private static final LinkedHashMap<CurveKey, TTDCurves> curveSets
+            = new LinkedHashMap<CurveKey, TTDCurves>(MAX_CURVE_SETS + 1, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<CurveKey, TTDCurves> eldest) {
+                    return size() > MAX_CURVE_SETS;
+                }
+            };
+
+    private final String[] phases;
+    private final double[][] deltas;
+    // ms, truncated
+    private final long[][] ttimes;
+
+    private TTDCurves(String[] phases, double[][] deltas, long[][] ttimes) {
+        this.phases = phases;
+        this.deltas = deltas;
+        this.ttimes = ttimes;
+    }
+
+    /**
+     * @param tables travel time tables
+     * @param depth depth (km), rounded to DEPTH_BUCKET
+     * @param maxDelta the curves go to maxDelta + 10 degrees
+     * @return the cached curves
+     */
+    public static TTDCurves getCurves(TravelTimeTables tables, double depth, int maxDelta) {
+        double bucket = Math.round(depth / DEPTH_BUCKET) * DEPTH_BUCKET;
+        CurveKey key = new CurveKey(tables, bucket, maxDelta);
+        synchronized (curveSets) {
+            TTDCurves curves = curveSets.get(key);
+            if (curves == null) {
+                curves = compute(tables, bucket, maxDelta);
+                curveSets.put(key, curves);
+            }
+            return curves;
+        }
+    }
+
+    /*
+     * The curves of a set of tables (the same instance), depth bucket and max
+     * distance.
+     */
+    private static final class CurveKey {
+
+        private final TravelTimeTables tables;
+        private final double depth;
+        private final int maxDelta;
+
+        private CurveKey(TravelTimeTables tables, double depth, int maxDelta) {
+            this.tables = tables;
+            this.depth = depth;
+            this.maxDelta = maxDelta;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof CurveKey)) {
+                return false;
+            }
+            CurveKey other = (CurveKey) obj;
+            return tables == other.tables && depth == other.depth && maxDelta == other.maxDelta;
+        }
+
+        @Override
+        public int hashCode() {
+            long bits = Double.doubleToLongBits(depth);
+            return (System.identityHashCode(tables) * 31 + (int) (bits ^ (bits >>> 32))) * 31 + maxDelta;
+        }
+    }
+
+    // the delta sampling of ttimes.pl
+    private static TTDCurves compute(TravelTimeTables tables, double depth, int maxDelta) {
+
+        long startTime = System.nanoTime();
+
+        int n = tables.getPhaseCount();
+        String[] phases = new String[n];
+        double[][] deltas = new double[n][];
+        long[][] ttimes = new long[n][];
+
+        double[] d = new double[64];
+        long[] t = new long[64];
+        int count = 0;
+        for (int p = 0; p < n; p++) {
+            int size = 0;
+            double step = 0.4;
+            for (double delta = 0.05; delta < maxDelta + 10; delta += step) {
+                double ttime = tables.getTravelTime(p, delta, depth);
+                if (!Double.isNaN(ttime)) {
+                    if (size == d.length) {
+                        d = Arrays.copyOf(d, size * 2);
+                        t = Arrays.copyOf(t, size * 2);
+                    }
+                    d[size] = Math.round(delta * 10000) / 10000.0;
+                    t[size] = (long) (ttime * 1000);
+                    size++;
+                }
+
+                if (delta < 5) {
+                    step = 0.4;
+                } else if (delta < 10) {
+                    step = 0.8;
+                } else if (delta < 20) {
+                    step = 1.0;
+                } else {
+                    step = 2.0;
+                }
+            }
+
+            if (size > 0) {
+                phases[count] = tables.getPhase(p);
+                deltas[count] = Arrays.copyOf(d, size);
+                ttimes[count] = Arrays.copyOf(t, size);
+                count++;
+            }
+        }
+
+        VBASLogger.logDebug("depth=" + depth + ", maxDelta=" + maxDelta + ", #curves=" + count
+                + ", t=" + (System.nanoTime() - startTime) / 1000 + " us");
+        return new TTDCurves(Arrays.copyOf(phases, count),
+                Arrays.copyOf(deltas, count), Arrays.copyOf(ttimes, count));
+    }
+
+    public int getCurveCount() {
+        return phases.length;
+    }
+
+    public String getPhase(int c) {
+        return phases[c];
+    }
+
+    public double[] getDeltas(int c) {
+        return deltas[c];
+    }
+
+    /**
+     * @return travel times (ms)
+     */
+    public long[] getTravelTimes(int c) {
+        return ttimes[c];
+    }
+
+    /**
+     * @param origin origin time (ms)
+     * @return one series per phase: arrival time, distance, sharing the
+     * arrays of the curves (read only)
+     */
+    public DuplicateUnorderXYSeriesCollection toDataset(long origin) {
+        DuplicateUnorderXYSeriesCollection ttdData = new DuplicateUnorderXYSeriesCollection();
+        for (int c = 0; c < phases.length; c++) {
+            ttdData.addSeries(new DuplicateUnorderXYSeries(phases[c], ttimes[c], deltas[c], deltas[c].length, origin));
+        }
+        return ttdData;
+    }
+}
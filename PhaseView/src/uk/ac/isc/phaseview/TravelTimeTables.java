@@ -0,0 +1,261 @@
+package uk.ac.isc.phaseview;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.StreamTokenizer;
+import java.util.ArrayList;
+import uk.ac.isc.seisdata.VBASLogger;
+
+/**
+ * AK135 travel time tables of the ISC locator, loaded once into primitive
+ * arrays, as read by ttimes.pl (TT.pm):
+ *
+ * - the phases: the allowable_phases section of iscloc/ak135_model.txt,
+ *
+ * - one table per phase: ak135/ak135.PHASE.tab, numbers separated by blanks,
+ * lines starting with # are comments: #distances, #depths, the distance
+ * samples (deg), the depth samples (km), then #distances x #depths travel
+ * times (s), dtdd (s/deg) and dtdh (s/km), row by row for each distance. A
+ * negative travel time marks a missing value.
+ *
+ * The tables are in VBAS_TT_DIR, by default /export/isc-linux/ops/etc as for
+ * ttimes.pl.
+ */
+public final class TravelTimeTables {
+
+    private static final String DEFAULT_TT_DIR = "/export/isc-linux/ops/etc";
+    private static final String MODEL = "ak135";
+
+    private static TravelTimeTables defaultTables = null;
+    private static boolean isChecked = false;
+
+    private final String[] phases;
+    // per phase
+    private final double[][] distances;
+    private final double[][] depths;
+    private final double[][] ttimes;   // [distance * #depths + depth]
+    private final double[][] dtdd;
+    private final double[][] dtdh;
+
+    private TravelTimeTables(ArrayList<String> phases, ArrayList<double[][]> tables) {
+        int n = phases.size();
+        this.phases = phases.toArray(new String[n]);
+        distances = new double[n][];
+        depths = new double[n][];
+        ttimes = new double[n][];
+        dtdd = new double[n][];
+        dtdh = new double[n][];
+        for (int p = 0; p < n; p++) {
+            double[][] table = tables.get(p);
+            distances[p] = table[0];
+            depths[p] = table[1];
+            ttimes[p] = table[2];
+            dtdd[p] = table[3];
+            dtdh[p] = table[4];
+        }
+    }
+
+    /**
+     * @return the tables of the installation, null if they cannot be read
+     */
+    public static synchronized TravelTimeTables getDefault() {
+        if (!isChecked) {
+            isChecked = true;
+            String dir = System.getenv("VBAS_TT_DIR");
+            try {
+                defaultTables = load(new File(dir == null ? DEFAULT_TT_DIR : dir));
+            } catch (IOException ex) {
+                VBASLogger.logSevere("Cannot read the " + MODEL + " travel time tables: " + ex.getMessage());
+            }
+        }
+        return defaultTables;
+    }
+
+    /**
+     * @param dir directory holding iscloc/ak135_model.txt and ak135/
+     * @return the tables of the allowable phases
+     * @throws IOException
+     */
+    public static TravelTimeTables load(File dir) throws IOException {
+
+        long startTime = System.nanoTime();
+
+        ArrayList<String> allowable = readAllowablePhases(
+                new File(dir, "iscloc" + File.separator + MODEL + "_model.txt"));
+
+        ArrayList<String> phases = new ArrayList<String>();
+        ArrayList<double[][]> tables = new ArrayList<double[][]>();
+        for (String phase : allowable) {
+            File table = new File(dir, MODEL + File.separator + MODEL + "." + phase + ".tab");
+            if (table.isFile()) {
+                phases.add(phase);
+                tables.add(readTable(table));
+            }
+        }
+        if (phases.isEmpty()) {
+            throw new IOException("no tables in " + new File(dir, MODEL));
+        }
+
+        VBASLogger.logDebug("#phases=" + phases.size()
+                + ", t=" + (System.nanoTime() - startTime) / 1000000 + " ms");
+        return new TravelTimeTables(phases, tables);
+    }
+
+    public int getPhaseCount() {
+        return phases.length;
+    }
+
+    public String getPhase(int p) {
+        return phases[p];
+    }
+
+    /**
+     * Travel time of a phase, interpolated with cubic Hermite polynomials in
+     * distance (with dtdd) then depth (with dtdh).
+     *
+     * @param p phase index
+     * @param delta distance (deg)
+     * @param depth depth (km)
+     * @return the travel time (s), NaN if out of the table or missing
+     */
+    public double getTravelTime(int p, double delta, double depth) {
+        double[] dist = distances[p];
+        double[] dep = depths[p];
+
+        int i = bracket(dist, delta);
+        int j = bracket(dep, depth);
+        if (i < 0 || j < 0) {
+            return Double.NaN;
+        }
+
+        // one distance or depth sample: no interpolation in that direction
+        int i1 = Math.min(i + 1, dist.length - 1);
+        int j1 = Math.min(j + 1, dep.length - 1);
+
+        double t0 = interpolateDistance(p, i, i1, j, delta);
+        double t1 = interpolateDistance(p, i, i1, j1, delta);
+        if (Double.isNaN(t0) || Double.isNaN(t1)) {
+            return Double.NaN;
+        }
+        if (j1 == j) {
+            return t0;
+        }
+
+        double u = (delta - dist[i]) / (i1 == i ? 1 : dist[i1] - dist[i]);
+        double s0 = lerp(dtdh[p][i * dep.length + j], dtdh[p][i1 * dep.length + j], u);
+        double s1 = lerp(dtdh[p][i * dep.length + j1], dtdh[p][i1 * dep.length + j1], u);
+        return hermite(t0, t1, s0, s1, dep[j1] - dep[j], (depth - dep[j]) / (dep[j1] - dep[j]));
+    }
+
+    private double interpolateDistance(int p, int i, int i1, int j, double delta) {
+        int ndep = depths[p].length;
+        double t0 = ttimes[p][i * ndep + j];
+        double t1 = ttimes[p][i1 * ndep + j];
+        if (t0 < 0 || t1 < 0) {
+            return Double.NaN;
+        }
+        if (i1 == i) {
+            return t0;
+        }
+        double h = distances[p][i1] - distances[p][i];
+        return hermite(t0, t1, dtdd[p][i * ndep + j], dtdd[p][i1 * ndep + j], h, (delta - distances[p][i]) / h);
+    }
+
+    // cubic Hermite interpolation on [0, 1] of an interval of length h
+    private static double hermite(double y0, double y1, double s0, double s1, double h, double t) {
+        double t2 = t * t;
+        double t3 = t2 * t;
+        return (2 * t3 - 3 * t2 + 1) * y0 + (t3 - 2 * t2 + t) * h * s0
+                + (-2 * t3 + 3 * t2) * y1 + (t3 - t2) * h * s1;
+    }
+
+    private static double lerp(double y0, double y1, double t) {
+        return y0 + (y1 - y0) * t;
+    }
+
+    // index of the last sample <= x, -1 if x is out of the samples
+    private static int bracket(double[] samples, double x) {
+        if (x < samples[0] || x > samples[samples.length - 1]) {
+            return -1;
+        }
+        int lo = 0;
+        int hi = samples.length - 1;
+        while (hi - lo > 1) {
+            int mid = (lo + hi) >>> 1;
+            if (samples[mid] <= x) {
+                lo = mid;
+            } else {
+                hi = mid;
+            }
+        }
+        return samples[hi] <= x ? hi : lo;
+    }
+
+    private static ArrayList<String> readAllowablePhases(File model) throws IOException {
+        ArrayList<String> phases = new ArrayList<String>();
+        BufferedReader in = new BufferedReader(new FileReader(model));
+        try {
+            String line;
+            boolean isPhases = false;
+            while ((line = in.readLine()) != null) {
+                if (isPhases) {
+                    line = line.replace(" ", "");
+                    if (line.isEmpty()) {
+                        break;
+                    }
+                    phases.add(line);
+                } else if (line.startsWith("allowable_phases")) {
+                    isPhases = true;
+                }
+            }
+        } finally {
+            in.close();
+        }
+        return phases;
+    }
+
+    // {distances, depths, ttimes, dtdd, dtdh}
+    static double[][] readTable(File file) throws IOException {
+        BufferedReader in = new BufferedReader(new FileReader(file));
+        try {
+            StreamTokenizer st = new StreamTokenizer(in);
+            st.resetSyntax();
+            st.wordChars('!', '~');
+            st.whitespaceChars(0, ' ');
+            st.commentChar('#');
+
+            int ndist = (int) nextNumber(st, file);
+            int ndep = (int) nextNumber(st, file);
+            double[][] table = new double[5][];
+            table[0] = nextNumbers(st, ndist, file);
+            table[1] = nextNumbers(st, ndep, file);
+            for (int k = 2; k < 5; k++) {
+                table[k] = nextNumbers(st, ndist * ndep, file);
+            }
+            return table;
+        } finally {
+            in.close();
+        }
+    }
+
+    private static double[] nextNumbers(StreamTokenizer st, int n, File file) throws IOException {
+        double[] values = new double[n];
+        for (int k = 0; k < n; k++) {
+            values[k] = nextNumber(st, file);
+        }
+        return values;
+    }
+
+    private static double nextNumber(StreamTokenizer st, File file) throws IOException {
+        if (st.nextToken() != StreamTokenizer.TT_WORD) {
+            throw new IOException(file + ": unexpected end of table at line " + st.lineno());
+        }
+        try {
+            return Double.parseDouble(st.sval);
+        } catch (NumberFormatException ex) {
+            throw new IOException(file + ": not a number '" + st.sval + "' at line " + st.lineno());
+        }
+    }
+}
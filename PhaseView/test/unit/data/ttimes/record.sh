@@ -0,0 +1,42 @@
+#!/bin/sh
+#
+# Record the output of resources/ttimes.pl for TravelTimeTablesTest, on an ops
+# host (OPSEXEC, PGHOSTADDR, PGDATABASE, PGUSER, PGPASSWORD set), one
+# <evid>.txt per event:
+#
+#   # origin=yyyy-MM-dd HH:mm:ss msec=... depth=... maxdelta=int(max delta)+1
+#   <ttimes.pl output>
+#
+# Pick events with shallow, intermediate, deep and null depths, and origin
+# times close to the end of a month.
+#
+# Usage: record.sh evid ...
+
+if [ $# -eq 0 ]; then
+    echo "Usage: record.sh evid ..." >&2
+    exit 1
+fi
+
+DIR=$(cd "$(dirname "$0")" && pwd)
+TTIMES="$DIR/../../../../src/resources/ttimes.pl"
+
+for evid in "$@"; do
+    header=$(psql -A -t -F ' ' -c "
+        SELECT 'origin=' || to_char(h.day, 'YYYY-MM-DD HH24:MI:SS'),
+               'msec=' || COALESCE(h.msec, 0),
+               'depth=' || COALESCE(COALESCE(h.depth, h.depdp), r.default_depth),
+               'maxdelta=' || (floor(( SELECT MAX(a.delta) FROM association a WHERE a.hypid = h.hypid AND a.author = 'ISC' ))::int + 1)
+          FROM hypocenter h, event e, region r
+         WHERE h.isc_evid = $evid
+           AND h.isc_evid = e.evid
+           AND h.hypid = e.prime_hyp
+           AND grn_ll(h.lat, h.lon) = r.gr_number") || exit 1
+
+    if [ -z "$header" ]; then
+        echo "No prime hypocentre: $evid" >&2
+        continue
+    fi
+
+    { echo "# $header"; perl "$TTIMES" "$evid"; } > "$DIR/$evid.txt" || exit 1
+    echo "$DIR/$evid.txt"
+done
@@ -0,0 +1,249 @@
+package uk.ac.isc.phaseview;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import uk.ac.isc.seisdata.Hypocentre;
+
+/**
+ * The travel time engine against a synthetic table, and against the output of
+ * resources/ttimes.pl recorded on an ops host: test/unit/data/ttimes/*.txt,
+ * a header line "# origin=yyyy-MM-dd HH:mm:ss msec=... depth=... maxdelta=..."
+ * followed by the script output, recorded with record.sh. The fixture test
+ * is skipped without fixtures or without the AK135 tables (VBAS_TT_DIR); the
+ * curves are compared phase by phase, whatever the order of the phases.
+ */
+public class TravelTimeTablesTest {
+
+    private static final String FIXTURE_DIR = "test/unit/data/ttimes";
+
+    // ms, ttimes.pl prints truncated milliseconds
+    private static final long TOLERANCE = 20;
+
+    private static File syntheticDir;
+    private static TravelTimeTables synthetic;
+
+    @BeforeClass
+    public static void setUpClass() throws IOException {
+        File dir = new File(System.getProperty("java.io.tmpdir"), "vbas-tt-" + System.nanoTime());
+        new File(dir, "iscloc").mkdirs();
+        new File(dir, "ak135").mkdirs();
+
+        PrintWriter model = new PrintWriter(new FileWriter(new File(dir, "iscloc/ak135_model.txt")));
+        model.println("allowable_phases");
+        model.println("P");
+        model.println("S");
+        model.println("");
+        model.println("other_section");
+        model.close();
+
+        // t = 10 * delta + depth / 10, S missing beyond 90 deg
+        writeTable(new File(dir, "ak135/ak135.P.tab"), 10, Double.MAX_VALUE);
+        writeTable(new File(dir, "ak135/ak135.S.tab"), 18, 90);
+
+        syntheticDir = dir;
+        synthetic = TravelTimeTables.load(dir);
+    }
+
+    private static void writeTable(File file, double slowness, double maxDelta) throws IOException {
+        double[] deltas = {0, 10, 20, 45, 90, 120, 180};
+        double[] depths = {0, 35, 100, 700};
+        PrintWriter out = new PrintWriter(new FileWriter(file));
+        out.println("# synthetic table");
+        out.println(deltas.length + " " + depths.length);
+        for (double delta : deltas) {
+            out.print(delta + " ");
+        }
+        out.println();
+        for (double depth : depths) {
+            out.print(depth + " ");
+        }
+        out.println();
+        out.println("# travel times");
+        for (double delta : deltas) {
+            for (double depth : depths) {
+                out.print((delta > maxDelta ? -999 : slowness * delta + depth / 10) + " ");
+            }
+            out.println();
+        }
+        out.println("# dtdd");
+        for (double delta : deltas) {
+            for (double depth : depths) {
+                out.print(slowness + " ");
+            }
+            out.println();
+        }
+        out.println("# dtdh");
+        for (double delta : deltas) {
+            for (double depth : depths) {
+                out.print(0.1 + " ");
+            }
+            out.println();
+        }
+        out.close();
+    }
+
+    @Test
+    public void testSyntheticTable() {
+        Assert.assertEquals(2, synthetic.getPhaseCount());
+        Assert.assertEquals("P", synthetic.getPhase(0));
+        Assert.assertEquals("S", synthetic.getPhase(1));
+
+        // Hermite interpolation is exact on linear tables
+        Assert.assertEquals(10 * 33.3 + 10.0, synthetic.getTravelTime(0, 33.3, 100), 1e-9);
+        Assert.assertEquals(10 * 0.05 + 1.2, synthetic.getTravelTime(0, 0.05, 12), 1e-9);
+        Assert.assertEquals(18 * 60.0 + 55.0, synthetic.getTravelTime(1, 60, 550), 1e-9);
+
+        Assert.assertTrue(Double.isNaN(synthetic.getTravelTime(1, 100, 10)));
+        Assert.assertTrue(Double.isNaN(synthetic.getTravelTime(0, 181, 10)));
+        Assert.assertTrue(Double.isNaN(synthetic.getTravelTime(0, 10, 800)));
+    }
+
+    @Test
+    public void testSyntheticCurves() {
+        long origin = 1000000000000L;
+        DuplicateUnorderXYSeriesCollection ttd = LoadTTDData.loadTTDData(synthetic, origin, 250, 0, 30);
+        Assert.assertEquals(2, ttd.getSeriesCount());
+
+        // 0.05 to 40 deg, as ttimes.pl
+        DuplicateUnorderXYSeries p = ttd.getSeries(0);
+        Assert.assertEquals(39, p.getItemCount());
+        Assert.assertEquals(0.05, p.getY(0), 1e-9);
+        Assert.assertEquals(origin + 750, p.getX(0));
+        Assert.assertEquals(38.05, p.getY(p.getItemCount() - 1), 1e-9);
+    }
+
+    @Test
+    public void testCurveCache() throws IOException {
+        TTDCurves curves = TTDCurves.getCurves(synthetic, 33, 30);
+        Assert.assertSame(curves, TTDCurves.getCurves(synthetic, 33.2, 30));
+        Assert.assertNotSame(curves, TTDCurves.getCurves(synthetic, 33, 31));
+
+        // other tables, the same depth and distance
+        TravelTimeTables other = TravelTimeTables.load(syntheticDir);
+        Assert.assertNotSame(curves, TTDCurves.getCurves(other, 33, 30));
+        Assert.assertSame(curves, TTDCurves.getCurves(synthetic, 33, 30));
+
+        // another origin time: the same curves shifted
+        long origin = 1000000000000L;
+        DuplicateUnorderXYSeriesCollection ttd1 = LoadTTDData.loadTTDData(synthetic, origin, 0, 33, 30);
+        DuplicateUnorderXYSeriesCollection ttd2 = LoadTTDData.loadTTDData(synthetic, origin + 3600000, 0, 33, 30);
+        for (int s = 0; s < ttd1.getSeriesCount(); s++) {
+            for (int i = 0; i < ttd1.getItemCount(s); i++) {
+                Assert.assertEquals(ttd1.getXValue(s, i) + 3600000, ttd2.getXValue(s, i), 0);
+                Assert.assertEquals(ttd1.getYValue(s, i), ttd2.getYValue(s, i), 0);
+            }
+        }
+    }
+
+    @Test
+    public void testDepth() {
+        Hypocentre h = new Hypocentre("ISC", new Date(), 0, 0, 35);
+        Assert.assertEquals(35, LoadTTDData.getDepth(h), 0);
+
+        // null depth, read as 0: depdp or the default depth of the region
+        h.setDepth(0);
+        h.setDefaultDepth(12.5);
+        Assert.assertEquals(12.5, LoadTTDData.getDepth(h), 0);
+    }
+
+    @Test
+    public void testFixturePhaseOrder() throws Exception {
+        // a fixture of the synthetic tables, S before P
+        long origin = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").parse("2013-04-30 23:59:58").getTime();
+        DuplicateUnorderXYSeriesCollection ttd = LoadTTDData.loadTTDData(synthetic, origin, 500, 33, 30);
+        SimpleDateFormat df = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+        File fixture = File.createTempFile("ttimes", ".txt");
+        fixture.deleteOnExit();
+        PrintWriter out = new PrintWriter(new FileWriter(fixture));
+        out.println("# origin=2013-04-30 23:59:58 msec=500 depth=33 maxdelta=30");
+        for (int s = ttd.getSeriesCount() - 1; s >= 0; s--) {
+            DuplicateUnorderXYSeries series = ttd.getSeries(s);
+            for (int i = 0; i < series.getItemCount(); i++) {
+                out.println(series.getKey() + "," + series.getY(i) + "," + df.format(new Date(series.getX(i))));
+            }
+        }
+        out.close();
+
+        assertSameAsFixture(synthetic, fixture);
+    }
+
+    @Test
+    public void testRecordedFixtures() throws Exception {
+        File[] fixtures = new File(FIXTURE_DIR).listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.endsWith(".txt");
+            }
+        });
+        // recorded on an ops host with record.sh
+        Assume.assumeTrue(fixtures != null && fixtures.length > 0);
+        TravelTimeTables tables = TravelTimeTables.getDefault();
+        Assume.assumeNotNull(tables);
+
+        for (File fixture : fixtures) {
+            assertSameAsFixture(tables, fixture);
+        }
+    }
+
+    private static void assertSameAsFixture(TravelTimeTables tables, File fixture) throws Exception {
+        BufferedReader in = new BufferedReader(new FileReader(fixture));
+        HashMap<String, String> header = new HashMap<String, String>();
+        // ttimes.pl prints the phases in the order of its tables
+        HashMap<String, ArrayList<TTDTriplet>> expected = new HashMap<String, ArrayList<TTDTriplet>>();
+        try {
+            String line = in.readLine();
+            for (String field : line.substring(1).trim().split(" (?=\\w+=)")) {
+                header.put(field.substring(0, field.indexOf('=')), field.substring(field.indexOf('=') + 1));
+            }
+            while ((line = in.readLine()) != null) {
+                TTDTriplet t = new TTDTriplet(line);
+                if (t.getArrivalTime() == null) {
+                    continue;
+                }
+                if (!expected.containsKey(t.getPhaseType())) {
+                    expected.put(t.getPhaseType(), new ArrayList<TTDTriplet>());
+                }
+                expected.get(t.getPhaseType()).add(t);
+            }
+        } finally {
+            in.close();
+        }
+
+        Date origin = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").parse(header.get("origin"));
+        DuplicateUnorderXYSeriesCollection ttd = LoadTTDData.loadTTDData(tables, origin.getTime(),
+                Integer.parseInt(header.get("msec")), Double.parseDouble(header.get("depth")),
+                Integer.parseInt(header.get("maxdelta")));
+
+        HashSet<String> phases = new HashSet<String>();
+        for (int s = 0; s < ttd.getSeriesCount(); s++) {
+            DuplicateUnorderXYSeries series = ttd.getSeries(s);
+            String phase = (String) series.getKey();
+            phases.add(phase);
+
+            ArrayList<TTDTriplet> points = expected.get(phase);
+            Assert.assertNotNull(fixture.getName() + ": " + phase + " not in ttimes.pl", points);
+            Assert.assertEquals(fixture.getName() + " " + phase, points.size(), series.getItemCount());
+            for (int i = 0; i < series.getItemCount(); i++) {
+                TTDTriplet t = points.get(i);
+                String where = fixture.getName() + " " + phase + " " + t.getDelta();
+                Assert.assertEquals(where, t.getDelta(), series.getY(i), 1e-4);
+                Assert.assertEquals(where, t.getArrivalTime().getTime(), series.getX(i), TOLERANCE);
+            }
+        }
+        Assert.assertEquals(fixture.getName(), expected.keySet(), phases);
+    }
+}
@@ -0,0 +1,286 @@
+package uk.ac.isc.processcommand;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import uk.ac.isc.seisdata.Duplicates;
+import uk.ac.isc.seisdata.Hypocentre;
+import uk.ac.isc.seisdata.SeisEvent;
+import uk.ac.isc.seisdata.VBASLogger;
+import uk.ac.isc.seisdatainterface.SeisDataDAO;
+
+/**
+ * Generates the reports of a whole block, or of a list of events, without the
+ * GUI: java.awt.headless=true, the data of the events is loaded on a bounded
+ * pool of workers (at most one connection each) and the views of all the
+ * reports are drawn on the ReportRenderer pool across all the cores. The
+ * reports of the main schema are written into the ASSESSDIR layout, Ex.
+ * $ASSESSDIR/2013/04/678905/report/678905.html. The throughput and the time
+ * of each step are printed at the end. A rerun only generates the files of
+ * the reports whose data changed (ReportArtifacts).
+ *
+ * Usage: BatchReport [-threads n] [-block blockId | evid ...]
+ *
+ * Without an evid or -block the block of $BLOCKID is used. Run it with the
+ * classpath of the module and headless, from ProcessCommand:
+ * ant batch-report -Dbatch.args="-threads 8 -block 1234"
+ */
+public final class BatchReport {
+
+    // sub directory of an event for its batch report
+    public static final String REPORT_DIR = "report";
+
+    private static final String USAGE = "Usage: BatchReport [-threads n] [-block blockId | evid ...]";
+
+    /*
+     * Result of the report of one event.
+     */
+    static final class Result {
+
+        private final int evid;
+        private boolean ok = false;
+        private String failure = null;
+        private long prepareTime = 0;
+        private long[] stageTimes = null;
+        private int hits = 0;
+        private int misses = 0;
+        private long time = 0;
+
+        private Result(int evid) {
+            this.evid = evid;
+        }
+    }
+
+    private BatchReport() {
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        // the views are drawn offscreen, no display is needed
+        System.setProperty("java.awt.headless", "true");
+
+        int threads = 0;
+        String blockId = null;
+        ArrayList<Integer> evids = new ArrayList<Integer>();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if (args[i].equals("-threads") && i + 1 < args.length) {
+                    threads = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("-block") && i + 1 < args.length) {
+                    blockId = String.valueOf(Integer.parseInt(args[++i]));
+                } else {
+                    evids.add(Integer.parseInt(args[i]));
+                }
+            }
+        } catch (NumberFormatException ex) {
+            System.err.println(USAGE);
+            System.exit(1);
+        }
+
+        if (evids.isEmpty()) {
+            if (blockId == null) {
+                blockId = SeisDataDAO.getBlockId();
+            }
+            if (blockId == null) {
+                System.err.println(USAGE);
+                System.err.println("Set -block or the environment variable BLOCKID.");
+                System.exit(1);
+            }
+            if (!SeisDataDAO.retrieveBlockEvids(blockId, evids)) {
+                System.err.println("Failed to load the events of the block " + blockId + ".");
+                System.exit(1);
+            }
+        }
+
+        if (SeisDataDAO.getAssessDir() == null) {
+            System.err.println("Set the environment variable ASSESSDIR.");
+            System.exit(1);
+        }
+
+        if (threads <= 0) {
+            threads = Math.min(Runtime.getRuntime().availableProcessors(),
+                    SeisDataDAO.getPool().getMaxSize());
+        }
+
+        System.out.println("#events=" + evids.size()
+                + (blockId != null ? ", block=" + blockId : "")
+                + ", threads=" + threads);
+
+        long startTime = System.nanoTime();
+        List<Result> results = run(evids, Math.max(1, threads));
+        if (printSummary(results, System.nanoTime() - startTime) > 0) {
+            System.exit(2);
+        }
+        System.exit(0);
+    }
+
+    /**
+     * Generate the reports of the events, at most threads at a time.
+     *
+     * @return results in the order of evids
+     */
+    static List<Result> run(List<Integer> evids, int threads) throws InterruptedException {
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads,
+                new ThreadFactory() {
+                    private final AtomicInteger count = new AtomicInteger(0);
+
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, "BatchReport-" + count.incrementAndGet());
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+
+        ArrayList<Future<Result>> futures = new ArrayList<Future<Result>>();
+        for (final Integer evid : evids) {
+            futures.add(executor.submit(new Callable<Result>() {
+                @Override
+                public Result call() {
+                    return report(evid);
+                }
+            }));
+        }
+        executor.shutdown();
+
+        ArrayList<Result> results = new ArrayList<Result>();
+        for (int i = 0; i < futures.size(); i++) {
+            Result result;
+            try {
+                result = futures.get(i).get();
+            } catch (ExecutionException ex) {
+                result = new Result(evids.get(i));
+                result.failure = String.valueOf(ex.getCause());
+            }
+            results.add(result);
+
+            System.out.println("[" + (i + 1) + "/" + futures.size() + "] " + result.evid + " "
+                    + (result.ok ? "ok, " + result.hits + "/" + (result.hits + result.misses) + " unchanged"
+                            : "FAILED: " + result.failure)
+                    + ", " + result.time / 1000000 + " ms");
+        }
+
+        return results;
+    }
+
+    /*
+     * Load the prime hypocentre for the directory of the report, then generate
+     * the report from the main schema.
+     */
+    private static Result report(int evid) {
+        Result result = new Result(evid);
+        long startTime = System.nanoTime();
+
+        try {
+            ArrayList<Hypocentre> hypocentres = new ArrayList<Hypocentre>();
+            Hypocentre prime = null;
+            if (SeisDataDAO.retrieveHypos(evid, hypocentres, false)) {
+                for (Hypocentre hypo : hypocentres) {
+                    if (hypo.getIsPrime()) {
+                        prime = hypo;
+                    }
+                }
+            }
+            if (prime == null) {
+                result.failure = "no prime hypocentre";
+                return result;
+            }
+
+            SeisEvent seisEvent = new SeisEvent(evid, prime.geteType(), null,
+                    SeisDataDAO.getLocatorMessage(evid), "", false, null,
+                    new ArrayList<Duplicates>());
+            seisEvent.setPrimeHypo(prime);
+            result.prepareTime = System.nanoTime() - startTime;
+
+            GenerateReport generateReport = new GenerateReport(seisEvent, getReportDir(seisEvent),
+                    evid, "", "", false);
+            result.stageTimes = generateReport.getStageTimes();
+            result.hits = generateReport.getArtifactHits();
+            result.misses = generateReport.getArtifactMisses();
+            result.ok = true;
+
+        } catch (RuntimeException ex) {
+            VBASLogger.logSevere("Error generating the report of " + evid + ": " + ex);
+            result.failure = ex.toString();
+        } finally {
+            result.time = System.nanoTime() - startTime;
+        }
+        return result;
+    }
+
+    /*
+     * Ex. $ASSESSDIR/2013/04/678905/report
+     */
+    static Path getReportDir(SeisEvent seisEvent) {
+        Calendar calendar = new GregorianCalendar();
+        calendar.setTime(seisEvent.getPrimeHypo().getOrigTime());
+        String year = String.valueOf(calendar.get(Calendar.YEAR));
+        String month = ((calendar.get(Calendar.MONTH) + 1) < 10
+                ? ("0" + String.valueOf(calendar.get(Calendar.MONTH) + 1))
+                : String.valueOf(calendar.get(Calendar.MONTH) + 1));
+
+        return Paths.get(SeisDataDAO.getAssessDir()
+                + File.separator + year
+                + File.separator + month
+                + File.separator + seisEvent.getEvid()
+                + File.separator + REPORT_DIR);
+    }
+
+    /*
+     * Print the throughput and the total and mean time of each step.
+     *
+     * @return number of failed reports
+     */
+    private static int printSummary(List<Result> results, long wallTime) {
+        int done = 0;
+        long prepareTime = 0;
+        long[] stageTimes = new long[GenerateReport.STAGE_NAMES.length];
+        long totalTime = 0;
+        int hits = 0;
+        int misses = 0;
+        for (Result result : results) {
+            totalTime += result.time;
+            if (!result.ok) {
+                continue;
+            }
+            done++;
+            prepareTime += result.prepareTime;
+            hits += result.hits;
+            misses += result.misses;
+            for (int s = 0; s < stageTimes.length; s++) {
+                stageTimes[s] += result.stageTimes[s];
+            }
+        }
+
+        double minutes = wallTime / 6e10;
+        System.out.println(String.format("#events=%d, #done=%d, #failed=%d, t=%.1f s, %.1f events/min",
+                results.size(), done, results.size() - done, minutes * 60,
+                minutes > 0 ? done / minutes : 0.0));
+        System.out.println("#artifacts=" + (hits + misses) + ", #unchanged=" + hits + ", #generated=" + misses);
+        System.out.println(String.format("  %-10s %10s %10s", "step", "total ms", "mean ms"));
+        printStage("prepare", prepareTime, done);
+        for (int s = 0; s < stageTimes.length; s++) {
+            printStage(GenerateReport.STAGE_NAMES[s], stageTimes[s], done);
+        }
+        printStage("event", totalTime, results.size());
+        VBASLogger.logDebug(SeisDataDAO.getPoolStatistics());
+
+        return results.size() - done;
+    }
+
+    private static void printStage(String name, long time, int count) {
+        System.out.println(String.format("  %-10s %10d %10d",
+                name, time / 1000000, count > 0 ? time / count / 1000000 : 0));
+    }
+}
@@ -0,0 +1,331 @@
+package uk.ac.isc.processcommand;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import javax.swing.SwingUtilities;
+import uk.ac.isc.seisdata.SeisEvent;
+import uk.ac.isc.seisdata.VBASLogger;
+import uk.ac.isc.seisdatainterface.FormulateCommand;
+import uk.ac.isc.seisdatainterface.Global;
+import uk.ac.isc.seisdatainterface.Locator;
+import uk.ac.isc.seisdatainterface.LocatorRun;
+import uk.ac.isc.seisdatainterface.SeisDataDAO;
+
+/*
+ *****************************************************************************************
+ * An assess or commit of one SeisEvent, run by CommandJobQueue off the EDT in
+ * stages: the assessed command table, the data alteration functions, the
+ * locator and the report. Each stage is timed; a cancelled job stops before
+ * its next stage, and a running locator is destroyed. A commit can only be
+ * cancelled while it is queued: once it has started, the data alteration
+ * functions change the main schema, and the event has to be relocated.
+ *****************************************************************************************
+ */
+final class CommandJob {
+
+    static final int STAGE_COMMAND_TABLE = 0;
+    static final int STAGE_DATA = 1;
+    static final int STAGE_LOCATOR = 2;
+    static final int STAGE_REPORT = 3;
+    static final String[] STAGE_NAMES = {"command table", "data", "locator", "report"};
+
+    static final int QUEUED = 0;
+    static final int RUNNING = 1;
+    static final int DONE = 2;
+    static final int FAILED = 3;
+    static final int CANCELLED = 4;
+
+    /*
+     * Told of the stages and the end of the job, on the job thread.
+     */
+    interface Listener {
+
+        void jobChanged(CommandJob job);
+    }
+
+    // a copy, the selected SeisEvent changes while the job waits
+    private final SeisEvent seisEvent;
+    private final Boolean isAssess;
+    private final String commandType;
+    private final FormulateCommand formulateCommand;
+    private final ArrayList<Integer> commandIds;
+
+    private final String offsetPath;
+    private final String offsetUrl;
+
+    private volatile int state = QUEUED;
+    private volatile int stage = STAGE_COMMAND_TABLE;
+    private final long[] stageTimes = new long[STAGE_NAMES.length];
+    private volatile String failure = null;
+
+    private volatile boolean cancelled = false;
+    private volatile LocatorRun locatorRun = null;
+
+    private int assessId = 0;
+    private Path dir = null;
+
+    /*
+     * Formulated on the EDT from the selected commands of the SeisEvent.
+     */
+    CommandJob(SeisEvent selectedSeisEvent, Boolean isAssess,
+            FormulateCommand formulateCommand, ArrayList<Integer> commandIds) {
+
+        this.seisEvent = new SeisEvent();
+        this.seisEvent.setValues(selectedSeisEvent);
+        this.isAssess = isAssess;
+        this.commandType = (isAssess ? "assess" : "commit");
+        this.formulateCommand = formulateCommand;
+        this.commandIds = commandIds;
+
+        /* Access/Commit directory and URL related */
+        Calendar calendar = new GregorianCalendar();
+        calendar.setTime(seisEvent.getPrimeHypo().getOrigTime());
+        String year = String.valueOf(calendar.get(Calendar.YEAR));
+        String month = ((calendar.get(Calendar.MONTH) + 1) < 10
+                ? ("0" + String.valueOf(calendar.get(Calendar.MONTH) + 1))
+                : String.valueOf(calendar.get(Calendar.MONTH) + 1));
+
+        /* Ex. 2013/04/678905 */
+        offsetPath = year + File.separator
+                + month + File.separator
+                + seisEvent.getEvid();
+
+        /* Ex. http://nemesis.isc.ac.uk/(assess)(commit)/2013/04/678905*/
+        offsetUrl = (isAssess ? SeisDataDAO.getAssessUrl() : SeisDataDAO.getCommitUrl())
+                + "/" + offsetPath;
+    }
+
+    void run(Listener listener) {
+        long startTime = System.nanoTime();
+        // a commit cannot be cancelled from now on
+        synchronized (this) {
+            state = cancelled ? CANCELLED : RUNNING;
+        }
+        if (state == CANCELLED) {
+            VBASLogger.logDebug(commandType + " " + seisEvent.getEvid() + ", cancelled while queued");
+            listener.jobChanged(this);
+            return;
+        }
+
+        for (int s = 0; s < STAGE_NAMES.length && state == RUNNING; s++) {
+            if (cancelled) {
+                state = CANCELLED;
+                break;
+            }
+            stage = s;
+            listener.jobChanged(this);
+
+            long stageStart = System.nanoTime();
+            boolean ok;
+            try {
+                ok = runStage(s);
+            } catch (RuntimeException ex) {
+                // the queue thread would drop it, and the job stay running
+                VBASLogger.logSevere(commandType + " " + seisEvent.getEvid() + ", "
+                        + STAGE_NAMES[s] + ": " + ex);
+                ex.printStackTrace();
+                failure = "Error in the " + STAGE_NAMES[s] + " stage: " + ex
+                        + "\nReport to system admin.";
+                ok = false;
+            }
+            stageTimes[s] = System.nanoTime() - stageStart;
+            VBASLogger.logDebug(commandType + " " + seisEvent.getEvid() + ", " + STAGE_NAMES[s]
+                    + ": " + (ok ? "" : "failed, ") + stageTimes[s] / 1000000 + " ms");
+
+            if (!ok) {
+                state = cancelled ? CANCELLED : FAILED;
+            }
+        }
+        if (state == RUNNING) {
+            state = DONE;
+        }
+
+        VBASLogger.logDebug(commandType + " " + seisEvent.getEvid() + ", state=" + state
+                + ", " + getStageTimes() + ", t=" + (System.nanoTime() - startTime) / 1000000 + " ms");
+        listener.jobChanged(this);
+    }
+
+    private boolean runStage(int s) {
+        switch (s) {
+            case STAGE_COMMAND_TABLE:
+                return updateCommandTable();
+            case STAGE_DATA:
+                return processData();
+            case STAGE_LOCATOR:
+                return runLocator();
+            case STAGE_REPORT:
+                return generateReport();
+        }
+        return false;
+    }
+
+    /* Stage-1 Write the commands in the database. */
+    private boolean updateCommandTable() {
+        VBASLogger.logDebug("isAssess=" + isAssess + ", offsetUrl=" + offsetUrl);
+        VBASLogger.logDebug("commandProvenance= " + formulateCommand.getCmdProvenance().toString());
+        VBASLogger.logDebug("systemCommand= " + formulateCommand.getSystemCommand().toString());
+
+        assessId = SeisDataDAO.updateAssessedCommandTable(seisEvent.getEvid(),
+                commandType, commandIds, offsetUrl, "");
+
+        if (assessId <= 0) {
+            failure = "Incorrect Command. \nReport to system admin.";
+            return false;
+        }
+
+        dir = Paths.get((isAssess ? SeisDataDAO.getAssessDir() : SeisDataDAO.getCommitDir())
+                + File.separator + offsetPath
+                + File.separator + assessId);
+
+        VBASLogger.logDebug("Fired: " + commandType);
+        SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                Global.getAssessedComamndEvent().fireSeisDataChanged();
+            }
+        });
+        return true;
+    }
+
+    /* Stage-2 Run the SQL functions */
+    private boolean processData() {
+        Boolean ret = SeisDataDAO.processAssessOrCommitData(seisEvent.getEvid(),
+                formulateCommand.getSQLFunctionArray(),
+                isAssess);
+
+        if (ret == null || !ret) {
+            failure = "Locator command failed. \nReport to system admin.";
+            return false;
+        }
+        return true;
+    }
+
+    /* Stage-3 Invoke locator */
+    private boolean runLocator() {
+        VBASLogger.logDebug("Run locator, dir: " + dir.toString());
+        try {
+            locatorRun = Locator.startLocator(seisEvent.getEvid(), dir,
+                    formulateCommand.getLocatorArgStr(), isAssess);
+            // cancelled while starting
+            if (cancelled) {
+                locatorRun.cancel();
+                return false;
+            }
+            return Locator.waitForLocator(locatorRun) && !cancelled;
+        } catch (IOException ex) {
+            String message = "The locator command failed:\n" + ex.getMessage();
+            VBASLogger.logSevere(message);
+            failure = cancelled ? null : message;
+            return false;
+        } finally {
+            locatorRun = null;
+        }
+    }
+
+    /* Stage-4 generate report */
+    private boolean generateReport() {
+        // the views of the report are drawn offscreen, off the EDT
+        try {
+            GenerateReport generateReport = new GenerateReport(seisEvent, dir,
+                    assessId,
+                    formulateCommand.getAnalystRedableMergedCommand(),
+                    formulateCommand.getSystemCommand().toString(),
+                    isAssess);
+        } catch (RuntimeException ex) {
+            VBASLogger.logSevere("Error generating the report: " + dir + ", " + ex);
+            failure = "Error generating the report. \nReport to system admin.";
+            return false;
+        }
+        return true;
+    }
+
+    /*
+     * Stop before the next stage, or the locator now.
+     *
+     * @return false if the job cannot be cancelled (a started commit)
+     */
+    boolean cancel() {
+        synchronized (this) {
+            if (!isCancellable()) {
+                return false;
+            }
+            cancelled = true;
+        }
+        LocatorRun run = locatorRun;
+        if (run != null) {
+            run.cancel();
+        }
+        return true;
+    }
+
+    /*
+     * An assess until it ends, a commit until it starts.
+     */
+    synchronized boolean isCancellable() {
+        if (cancelled || isFinished()) {
+            return false;
+        }
+        return isAssess || state == QUEUED;
+    }
+
+    boolean isCancelled() {
+        return cancelled;
+    }
+
+    int getEvid() {
+        return seisEvent.getEvid();
+    }
+
+    Boolean isAssess() {
+        return isAssess;
+    }
+
+    String getCommandType() {
+        return commandType;
+    }
+
+    int getState() {
+        return state;
+    }
+
+    boolean isFinished() {
+        return state == DONE || state == FAILED || state == CANCELLED;
+    }
+
+    int getStage() {
+        return stage;
+    }
+
+    /*
+     * Error message of a failed job, null if none to show.
+     */
+    String getFailure() {
+        return failure;
+    }
+
+    /*
+     * Ex. http://nemesis.isc.ac.uk/assess/2013/04/678905/12/12.html
+     */
+    String getReportUrl() {
+        return offsetUrl + "/" + assessId + "/" + assessId + ".html";
+    }
+
+    /*
+     * Ex. "command table 12 ms, data 340 ms, locator 20115 ms, report 7602 ms"
+     */
+    String getStageTimes() {
+        StringBuilder sb = new StringBuilder();
+        for (int s = 0; s < STAGE_NAMES.length; s++) {
+            if (s > 0) {
+                sb.append(", ");
+            }
+            sb.append(STAGE_NAMES[s]).append(" ").append(stageTimes[s] / 1000000).append(" ms");
+        }
+        return sb.toString();
+    }
+}
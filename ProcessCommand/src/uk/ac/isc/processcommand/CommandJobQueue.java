@@ -0,0 +1,79 @@
+package uk.ac.isc.processcommand;
+
+import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import javax.swing.SwingUtilities;
+
+/*
+ *****************************************************************************************
+ * The assess and commit jobs, run one after the other on a background thread:
+ * they share the assess schema (CLEAR_ASSESS, FILL_ASSESS), so an assess of
+ * another SeisEvent waits in the queue. The listener is told of the jobs on
+ * the EDT.
+ *****************************************************************************************
+ */
+final class CommandJobQueue {
+
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor(
+            new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "CommandJobQueue");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+
+    // queued and running jobs, on the EDT
+    private final ArrayList<CommandJob> jobs = new ArrayList<CommandJob>();
+    private final CommandJob.Listener listener;
+
+    private final CommandJob.Listener edtListener = new CommandJob.Listener() {
+        @Override
+        public void jobChanged(final CommandJob job) {
+            SwingUtilities.invokeLater(new Runnable() {
+                @Override
+                public void run() {
+                    if (job.isFinished()) {
+                        jobs.remove(job);
+                    }
+                    listener.jobChanged(job);
+                }
+            });
+        }
+    };
+
+    /*
+     * @param listener called on the EDT
+     */
+    CommandJobQueue(CommandJob.Listener listener) {
+        this.listener = listener;
+    }
+
+    void submit(final CommandJob job) {
+        jobs.add(job);
+        executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                job.run(edtListener);
+            }
+        });
+        listener.jobChanged(job);
+    }
+
+    /*
+     * @return the running job, or the next one, null if none
+     */
+    CommandJob getCurrent() {
+        return jobs.isEmpty() ? null : jobs.get(0);
+    }
+
+    /*
+     * @return jobs waiting behind the current one
+     */
+    int getQueuedCount() {
+        return Math.max(0, jobs.size() - 1);
+    }
+}
@@ -6,24 +6,20 @@
 package uk.ac.isc.processcommand;
 
 import java.awt.Desktop;
+import java.awt.Dimension;
 import java.awt.FlowLayout;
 import java.awt.Font;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
-import java.io.File;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.Calendar;
-import java.util.Date;
-import java.util.GregorianCalendar;
 import javax.swing.JButton;
 import javax.swing.JLabel;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
+import javax.swing.JProgressBar;
 import javax.swing.JTable;
 import org.openide.util.Exceptions;
 import uk.ac.isc.seisdata.AssessedCommand;
@@ -33,8 +29,6 @@ import uk.ac.isc.seisdata.SeisEventsList;
 import uk.ac.isc.seisdata.VBASLogger;
 import uk.ac.isc.seisdatainterface.FormulateCommand;
 import uk.ac.isc.seisdatainterface.Global;
-import uk.ac.isc.seisdatainterface.Locator;
-import uk.ac.isc.seisdatainterface.SeisDataDAO;
 
 /*
  *****************************************************************************************
@@ -51,6 +45,16 @@ public class CommandTablePanel extends JPanel {
 
     private final JButton button_commit;
 
+    // the assess and commit jobs in the background
+    private final JProgressBar progressBar;
+    private final JButton button_cancel;
+    private final CommandJobQueue jobQueue = new CommandJobQueue(new CommandJob.Listener() {
+        @Override
+        public void jobChanged(CommandJob job) {
+            onJobChanged(job);
+        }
+    });
+
     private final JTable tableCommand;             // reference of the tableCommand
 
     private final SeisEventsList seisEventList = Global.getSeisEventsList();
@@ -58,8 +62,6 @@ public class CommandTablePanel extends JPanel {
     private final CommandList commandList = Global.getCommandList();
     private final AssessedCommand assessedCommandEvent = Global.getAssessedComamndEvent(); // send event to AssessedCommand tableCommand
 
-    Calendar calendar = new GregorianCalendar();
-
     public CommandTablePanel(final JTable commandTable) {
         this.tableCommand = commandTable;
 
@@ -102,59 +104,68 @@ public class CommandTablePanel extends JPanel {
             }
         });
 
+        progressBar = new JProgressBar(0, CommandJob.STAGE_NAMES.length);
+        progressBar.setStringPainted(true);
+        progressBar.setString("");
+        progressBar.setFont(font);
+        progressBar.setPreferredSize(new Dimension(360, button_commit.getPreferredSize().height));
+
+        button_cancel = new JButton("Cancel");
+        button_cancel.setFont(font);
+        button_cancel.setEnabled(false);
+
+        button_cancel.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                onButtonCancelActionPerformed(e);
+            }
+        });
+
         this.setLayout(new FlowLayout());
         this.add(button_manualCommand);
         this.add(button_assess);
         this.add(new JLabel("                       "));
         this.add(button_commit);
+        this.add(new JLabel("     "));
+        this.add(progressBar);
+        this.add(button_cancel);
         //this.add(label_total);
         //this.add(label_totalValue);
     }
 
     public void onButtonCommitActionPerformed(ActionEvent e) {
         VBASLogger.logDebug("Commit...");
-        button_commit.setEnabled(false);
-        if (this.assessOrCommit(false)) {
-            button_commit.setEnabled(true);
-            VBASLogger.logDebug("SeiesEventList fire...");
-            seisEventList.fireSeisDataChanged();
-        }
+        this.assessOrCommit(false);
     }
 
     public void onButtonAssessActionPerformed(ActionEvent e) {
         VBASLogger.logDebug("Assess...");
-        button_assess.setEnabled(false);
-        if (this.assessOrCommit(true)) {
-            button_assess.setEnabled(true);
+        this.assessOrCommit(true);
+    }
+
+    private void onButtonCancelActionPerformed(ActionEvent e) {
+        CommandJob job = jobQueue.getCurrent();
+        if (job != null) {
+            VBASLogger.logDebug("Cancel " + job.getCommandType() + " " + job.getEvid());
+            if (!job.cancel()) {
+                JOptionPane.showMessageDialog(null, "The " + job.getCommandType() + " of " + job.getEvid()
+                        + " has started and cannot be cancelled.", "Warning", JOptionPane.WARNING_MESSAGE);
+            }
+            showProgress();
         }
     }
 
+    /*
+     * Formulate the command from the selected rows and queue the job, the
+     * rest runs in the background.
+     */
     private Boolean assessOrCommit(Boolean isAssess) {
 
-        /* Access/Commit directory and URL related */
-        calendar.setTime(Global.getSelectedSeisEvent().getPrimeHypo().getOrigTime());
-        String year = String.valueOf(calendar.get(Calendar.YEAR));
-        String month = ((calendar.get(Calendar.MONTH) + 1) < 10
-                ? ("0" + String.valueOf(calendar.get(Calendar.MONTH) + 1))
-                : String.valueOf(calendar.get(Calendar.MONTH) + 1));
-
-        /* Ex. 2013/04/678905 */
-        String offsetPath = year + File.separator
-                + month + File.separator
-                + Global.getSelectedSeisEvent().getEvid();
-
-        /* Ex. http://nemesis.isc.ac.uk/(assess)(commit)/2013/04/678905*/
-        String offsetUrl = (isAssess ? SeisDataDAO.getAssessUrl() : SeisDataDAO.getCommitUrl())
-                + "/" + offsetPath;
-
         String commandType = (isAssess ? "assess" : "commit");
 
-        /* Stage-1 Write the commands in the database. */
         int[] selectedRows = tableCommand.getSelectedRows();
         if (selectedRows.length <= 0) {
             JOptionPane.showMessageDialog(null, "Select a command.", "Warning", JOptionPane.WARNING_MESSAGE);
-            button_assess.setEnabled(true);
-            button_commit.setEnabled(true);
             return false;
         }
 
@@ -164,56 +175,36 @@ public class CommandTablePanel extends JPanel {
                 = new FormulateCommand(commandType, "seisevent", Global.getSelectedSeisEvent().getEvid(), "");
 
         commandIds = formulateCommand.mergeSystemCommand(selectedRows, tableCommand);
-                 
-      
-        /* Update the assessed-command table */
-        int newAssessId = 0;
-        
-        if (formulateCommand.isValidSystemCommand()) {
-            VBASLogger.logDebug("isAssess=" + isAssess + ", offsetUrl=" + offsetUrl);
-            VBASLogger.logDebug("commandProvenance= " + formulateCommand.getCmdProvenance().toString());
-            VBASLogger.logDebug("systemCommand= " + formulateCommand.getSystemCommand().toString());
-            
-            newAssessId = SeisDataDAO.updateAssessedCommandTable(Global.getSelectedSeisEvent().getEvid(),
-                    commandType, commandIds, offsetUrl, "");
-
-            if (newAssessId > 0) {
-                VBASLogger.logDebug("Fired: " + commandType);
-                assessedCommandEvent.fireSeisDataChanged();
-            } else {
-                JOptionPane.showMessageDialog(null, "Incorrect Command. \nReport to system admin.", 
-                        "ERROR", JOptionPane.ERROR_MESSAGE);
-                return false;
-            }
-        } else {
+
+        if (!formulateCommand.isValidSystemCommand()) {
             JOptionPane.showMessageDialog(null, "Incorrect Command. \nReport to system admin.", 
                     "ERROR", JOptionPane.ERROR_MESSAGE);
             return false;
         }
 
+        jobQueue.submit(new CommandJob(Global.getSelectedSeisEvent(), isAssess, formulateCommand, commandIds));
+        return true;
+    }
 
-        /* Invoke locator */
-        Path dir = Paths.get((isAssess ? SeisDataDAO.getAssessDir() : SeisDataDAO.getCommitDir())
-                + File.separator + offsetPath 
-                + File.separator + newAssessId);
-
-        VBASLogger.logDebug("Run locator, dir: " + dir.toString());
+    /*
+     * A job moved to another stage or ended, on the EDT.
+     */
+    private void onJobChanged(CommandJob job) {
+        showProgress();
 
-        Boolean ret = Locator.runLocator(dir,
-                formulateCommand.getSQLFunctionArray(),
-                formulateCommand.getLocatorArgStr(),
-                isAssess);
+        if (!job.isFinished()) {
+            return;
+        }
 
-        /* if assesss, then generate HTML report */
-        if (ret) {
-            /* generate report */
-            GenerateReport generateReport = new GenerateReport(dir,
-                    newAssessId,
-                    formulateCommand.getAnalystRedableMergedCommand(),
-                    formulateCommand.getSystemCommand().toString(),
-                    isAssess);
+        // a commit changes the SeisEvents
+        if (!job.isAssess()) {
+            VBASLogger.logDebug("SeiesEventList fire...");
+            seisEventList.fireSeisDataChanged();
+        }
 
-            String url = offsetUrl + "/" + newAssessId + "/" + newAssessId + ".html";
+        if (job.getState() == CommandJob.DONE) {
+            progressBar.setString(job.getCommandType() + " " + job.getEvid() + " complete");
+            String url = job.getReportUrl();
 
             /* open the html file */
             try {
@@ -227,18 +218,50 @@ public class CommandTablePanel extends JPanel {
                 JOptionPane.showMessageDialog(null, "Unable to open: " + url,
                         "Warning", JOptionPane.WARNING_MESSAGE);
             }
-            JOptionPane.showMessageDialog(null, commandType + " is complete. Please see the report in your browser. \n" + url,
+            JOptionPane.showMessageDialog(null, job.getCommandType() + " of " + job.getEvid()
+                    + " is complete. Please see the report in your browser. \n" + url,
                     "Complete", JOptionPane.NO_OPTION);
 
-        } else if (isAssess) {
-            JOptionPane.showMessageDialog(null, "Locator command failed. \nReport to system admin.", "ERROR", JOptionPane.ERROR_MESSAGE);
-            return false;
+        } else if (job.getState() == CommandJob.FAILED) {
+            progressBar.setString(job.getCommandType() + " " + job.getEvid() + " failed");
+            if (job.getFailure() != null) {
+                JOptionPane.showMessageDialog(null, job.getCommandType() + " of " + job.getEvid()
+                        + ": " + job.getFailure(), "ERROR", JOptionPane.ERROR_MESSAGE);
+            }
+        } else {
+            progressBar.setString(job.getCommandType() + " " + job.getEvid() + " cancelled");
         }
+    }
 
-        return true;
+    /*
+     * The stage of the current job and the number of jobs waiting.
+     */
+    private void showProgress() {
+        CommandJob job = jobQueue.getCurrent();
+        button_cancel.setEnabled(job != null && job.isCancellable());
+        if (job == null) {
+            progressBar.setValue(0);
+            return;
+        }
+
+        String text = job.getCommandType() + " " + job.getEvid() + ": ";
+        if (job.getState() == CommandJob.QUEUED) {
+            text += "queued";
+            progressBar.setValue(0);
+        } else {
+            text += CommandJob.STAGE_NAMES[job.getStage()]
+                    + " (" + (job.getStage() + 1) + "/" + CommandJob.STAGE_NAMES.length + ")";
+            progressBar.setValue(job.getStage());
+        }
+        if (job.isCancelled()) {
+            text += ", cancelling";
+        }
+        if (jobQueue.getQueuedCount() > 0) {
+            text += ", " + jobQueue.getQueuedCount() + " queued";
+        }
+        progressBar.setString(text);
     }
 
-    
     private void onButtonManualComamndActionPerformed(ActionEvent ae) {
         manualCommand.setLocationRelativeTo(button_manualCommand);
         manualCommand.showManualCommandDialog(selectedSeisEvent.getEvid());
@@ -1,9 +1,5 @@
 package uk.ac.isc.processcommand;
 
-import java.awt.BorderLayout;
-import java.awt.Dimension;
-import java.awt.event.ActionEvent;
-import java.awt.event.ActionListener;
 import java.awt.image.BufferedImage;
 import java.io.BufferedWriter;
 import java.io.File;
@@ -13,13 +9,8 @@ import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
-import java.util.TreeMap;
+import java.util.ArrayList;
 import javax.imageio.ImageIO;
-import javax.swing.JDialog;
-import javax.swing.JFrame;
-import javax.swing.JOptionPane;
-import javax.swing.JPanel;
-import javax.swing.Timer;
 import javax.swing.table.AbstractTableModel;
 import uk.ac.isc.hypodepthview.HypoDepthViewPanel;
 import uk.ac.isc.hypooverview.HypoOverviewPanel2;
@@ -28,6 +19,7 @@ import uk.ac.isc.seisdata.Hypocentre;
 import uk.ac.isc.seisdata.HypocentresList;
 import uk.ac.isc.seisdata.PhasesList;
 import uk.ac.isc.seisdata.SeisEvent;
+import uk.ac.isc.seisdata.Station;
 // NOTE: Required to avoid compilation error.
 import org.openstreetmap.gui.jmapviewer.interfaces.TileLoaderListener;
 import uk.ac.isc.agencypiechartview.AgencyPieChartView;
@@ -35,6 +27,7 @@ import uk.ac.isc.hypomagnitudeview.HypoMagnitudeViewPanel;
 import uk.ac.isc.hypooverview.OverviewControlPanel3;
 import uk.ac.isc.phaseview.PhaseTravelViewPanel;
 import uk.ac.isc.seisdatainterface.Global;
+import uk.ac.isc.seisdatainterface.HistoricSeismicityIndex;
 import uk.ac.isc.seisdatainterface.SeisDataDAO;
 import uk.ac.isc.stationazimuthview.StationAzimuthView;
 import uk.ac.isc.stationmagnitudeview.StationMagnitudeView;
@@ -43,11 +36,11 @@ import uk.ac.isc.textview.PhaseTextViewTableModel;
 
 public class GenerateReport {
 
-    private static final SeisEvent selectedSeisEvent = Global.getSelectedSeisEvent();
+    // the SeisEvent assessed, not the selected one when run in the background
+    private final SeisEvent selectedSeisEvent;
     // New (relocator generated) Hypocentre & Phase data for the selected SeisEvent.
     private final HypocentresList hypocentresList = new HypocentresList();
     private final PhasesList phasesList = new PhasesList();
-    private final TreeMap<String, String> stations = new TreeMap<String, String>();
 
     private static final String[] tables = {"hypocentre_table", "phase_table"};
     private static final String[] views = {"hypocentre_siesmicity",
@@ -57,34 +50,89 @@ public class GenerateReport {
         "station_geometry",
         "station_magnitudes",
         "agency_summary"};
+    // width and height of each of the views
+    private static final int[][] viewSizes = {{800, 800},
+        {500, 1000},
+        {600, 300},
+        {600, 600},
+        {650, 650},
+        {820, 620},
+        {600, 600}};
 
     private final Path assessDir;
     private final int assessID;
     private final String cmd1, cmd2;
     private final Boolean isAssess;
 
-    private final JDialog popupDialog;
     private File htmlFile;
 
+    // the csv and png files already generated from the same data are copied
+    private ReportArtifacts artifacts;
+    private String hypocentresDigest;
+    private String phasesDigest;
+    // null if they could not be read, the views are then drawn again
+    private String stationsDigest;
+    private String stationMagsDigest;
+    private String catalogueDigest;
+
+    // time of each step of the report, in ns
+    static final String[] STAGE_NAMES = {"data", "html", "tables", "views", "commands"};
+    private final long[] stageTimes = new long[STAGE_NAMES.length];
+
     public GenerateReport(Path assessDir, int assessID, String cmd1, String cmd2, Boolean isAssess) {
+        this(Global.getSelectedSeisEvent(), assessDir, assessID, cmd1, cmd2, isAssess);
+    }
+
+    public GenerateReport(SeisEvent seisEvent, Path assessDir, int assessID, String cmd1, String cmd2, Boolean isAssess) {
 
         VBASLogger.logDebug("assessDir: " + assessDir + ", assessID:" + assessID);
+        this.selectedSeisEvent = seisEvent;
         this.assessDir = assessDir;
         this.assessID = assessID;
         this.cmd1 = cmd1;
         this.cmd2 = cmd2;
         this.isAssess = isAssess;
-                
-        popupDialog = new JDialog();
-        popupDialog.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
-        popupDialog.setModal(true);
-        popupDialog.setLayout(new BorderLayout());
 
+        long t = System.nanoTime();
         this.readData();
+        t = endStage(0, t);
         this.createHTML();
+        t = endStage(1, t);
         this.createTables();
+        t = endStage(2, t);
         this.createViews();
+        t = endStage(3, t);
         this.logCommands();
+        endStage(4, t);
+
+        artifacts.writeManifest();
+    }
+
+    private long endStage(int stage, long startTime) {
+        long now = System.nanoTime();
+        stageTimes[stage] = now - startTime;
+        return now;
+    }
+
+    /*
+     * @return time of each of STAGE_NAMES, in ns
+     */
+    long[] getStageTimes() {
+        return stageTimes.clone();
+    }
+
+    /*
+     * @return number of files copied from the artifacts of the event
+     */
+    int getArtifactHits() {
+        return artifacts.getHits();
+    }
+
+    /*
+     * @return number of files generated
+     */
+    int getArtifactMisses() {
+        return artifacts.getMisses();
     }
 
     
@@ -111,22 +159,30 @@ public class GenerateReport {
         /* Phase */
         SeisDataDAO.retrieveAllPhases(selectedSeisEvent.getEvid(), phasesList.getPhases(), isAssess);
         SeisDataDAO.retrieveAllPhasesAmpMag(selectedSeisEvent.getEvid(), phasesList.getPhases(), isAssess);
-        SeisDataDAO.retrieveAllStationsWithRegions(stations, isAssess);
-        // load the correspondent map into the stataions
         // put the region name into the pahseList
-        for (int i = 0; i < phasesList.getPhases().size(); i++) {
-            phasesList.getPhases()
-                    .get(i)
-                    .setRegionName(stations
-                            .get(phasesList
-                                    .getPhases()
-                                    .get(i)
-                                    .getReportStation()));
-        }
+        Global.setRegionNames(phasesList.getPhases());
 
         VBASLogger.logDebug("SeisEvent=" + selectedSeisEvent.getEvid()
                 + ", #Hypocentres:" + hypocentresList.getHypocentres().size()
                 + ", #Phases:" + phasesList.getPhases().size());
+
+        artifacts = new ReportArtifacts(assessDir);
+        hypocentresDigest = ReportArtifacts.digestHypocentres(hypocentresList.getHypocentres());
+        phasesDigest = ReportArtifacts.digestPhases(phasesList.getPhases());
+
+        // the station views read the stations of the prime themselves
+        Hypocentre prime = selectedSeisEvent.getPrimeHypo();
+        ArrayList<Station> stations = new ArrayList<Station>();
+        stationsDigest = (prime != null && SeisDataDAO.retrieveAllStations(prime.getEvid(), stations, isAssess))
+                ? ReportArtifacts.digestStations(stations) : null;
+        ArrayList<Station> stationMags = new ArrayList<Station>();
+        stationMagsDigest = (prime != null && SeisDataDAO.retrieveStationMags(prime.getHypid(), stationMags, isAssess))
+                ? ReportArtifacts.digestStations(stationMags) : null;
+
+        // the historic seismicity around the event
+        long[] signature = HistoricSeismicityIndex.getCatalogueSignature();
+        catalogueDigest = (signature == null) ? null
+                : signature[0] + "," + signature[1] + "," + signature[2];
     }
 
     private File createHTML() {
@@ -149,7 +205,6 @@ public class GenerateReport {
                     if (!success) {
                         String message = "Error creating " + assessDir + " directory.";
                         VBASLogger.logSevere(message);
-                        JOptionPane.showMessageDialog(null, message, "Error", JOptionPane.ERROR_MESSAGE);
                     }
                 }
 
@@ -181,48 +236,40 @@ public class GenerateReport {
 
         VBASLogger.logDebug("hypocentresCSV: " + hypocentresCSV.toString() + ", phasesCSV: " + phasesCSV);
 
-        FileWriter fileWritter = null;
-        BufferedWriter bufferedWriter = null;
+        for (String table : tables) {
+            VBASLogger.logDebug(table);
+
+            File csv = null;
+            String key = null;
+            AbstractTableModel model = null;
+            switch (table) {
+                case "hypocentre_table":
+                    csv = hypocentresCSV;
+                    key = ReportArtifacts.key(table, hypocentresDigest);
+                    model = new HypocentreTableModel(hypocentresList.getHypocentres());
+                    break;
 
-        try {
-            // if the file doesnt exists, then create it
-            if (!hypocentresCSV.exists()) {
-                hypocentresCSV.createNewFile();
-                hypocentresCSV.setReadable(true, false);
-                hypocentresCSV.setWritable(true, false);
-            }
-            if (!phasesCSV.exists()) {
-                phasesCSV.createNewFile();
-                phasesCSV.setReadable(true, false);
-                phasesCSV.setWritable(true, false);
+                case "phase_table":
+                    csv = phasesCSV;
+                    key = ReportArtifacts.key(table, phasesDigest);
+                    model = new PhaseTextViewTableModel(phasesList.getPhases());
+                    break;
             }
 
-            for (String table : tables) {
-                VBASLogger.logDebug(table);
+            if (artifacts.restore(csv.getName(), key)) {
+                continue;
+            }
 
-                try {
-                    if (bufferedWriter != null) {
-                        bufferedWriter.close();
-                    }
-                } catch (IOException e) {
-                    VBASLogger.logSevere("Error releasing resources.");
-                    e.printStackTrace();
+            BufferedWriter bufferedWriter = null;
+            try {
+                // if the file doesnt exists, then create it
+                if (!csv.exists()) {
+                    csv.createNewFile();
+                    csv.setReadable(true, false);
+                    csv.setWritable(true, false);
                 }
 
-                AbstractTableModel model = null;
-                switch (table) {
-                    case "hypocentre_table":
-                        fileWritter = new FileWriter(hypocentresCSV, false);
-                        bufferedWriter = new BufferedWriter(fileWritter);
-                        model = new HypocentreTableModel(hypocentresList.getHypocentres());
-                        break;
-
-                    case "phase_table":
-                        fileWritter = new FileWriter(phasesCSV, false);
-                        bufferedWriter = new BufferedWriter(fileWritter);
-                        model = new PhaseTextViewTableModel(phasesList.getPhases());
-                        break;
-                }
+                bufferedWriter = new BufferedWriter(new FileWriter(csv, false));
 
                 // write column names
                 for (int c = 0; c < model.getColumnCount(); ++c) {
@@ -243,23 +290,27 @@ public class GenerateReport {
                         }
                     }
                 }
-            }
+                bufferedWriter.close();
+                bufferedWriter = null;
 
-            VBASLogger.logDebug("Complete...");
+                artifacts.store(csv.getName(), key);
 
-        } catch (IOException e) {
-            VBASLogger.logSevere("Error writing to csv file.");
-            e.printStackTrace();
-        } finally {
-            try {
-                if (bufferedWriter != null) {
-                    bufferedWriter.close();
-                }
             } catch (IOException e) {
-                VBASLogger.logSevere("Error releasing resources.");
+                VBASLogger.logSevere("Error writing to csv file.");
                 e.printStackTrace();
+            } finally {
+                try {
+                    if (bufferedWriter != null) {
+                        bufferedWriter.close();
+                    }
+                } catch (IOException e) {
+                    VBASLogger.logSevere("Error releasing resources.");
+                    e.printStackTrace();
+                }
             }
         }
+
+        VBASLogger.logDebug("Complete...");
     }
 
     private void createViews() {
@@ -269,126 +320,112 @@ public class GenerateReport {
                 + "#Phases=" + phasesList.getPhases().size());
 
         /*
-         * Generate the PNG files
+         * Generate the PNG files, the views drawn offscreen in parallel
          */
-        for (final String view : views) {
-            VBASLogger.logDebug("Generating: " + view + ".png");
-
-            switch (view) {
-                case "hypocentre_siesmicity":
-                    HypoOverviewPanel2 hop = new HypoOverviewPanel2(hypocentresList);
-                    OverviewControlPanel3 controlPanel = new OverviewControlPanel3(hop);
-                    genetarePNG(view, hop, hop.getMapWidth(), hop.getMapHeight());
-                    break;
-
-                case "phase_travel_time":
-                    PhaseTravelViewPanel phaseTVPanel = new PhaseTravelViewPanel(phasesList, hypocentresList);
-                    genetarePNG("phase_travel_time", phaseTVPanel, phaseTVPanel.getImageWidth(), phaseTVPanel.getImageHeight());
-                    //PhaseDetailViewPanel phaseDVPanel = new PhaseDetailViewPanel(phaseTVPanel);
-                    //genetarePNG("PhaseDetailView", phaseDVPanel, phaseDVPanel.getWidth(), phaseDVPanel.getHeight());
-                    break;
+        ArrayList<ReportRenderer.View> reportViews = new ArrayList<ReportRenderer.View>();
+        final ArrayList<String> keys = new ArrayList<String>();
+        for (int i = 0; i < views.length; i++) {
+            final String view = views[i];
+            final int width = viewSizes[i][0];
+            final int height = viewSizes[i][1];
+
+            // a view drawn from the same data is not drawn again
+            String key = viewKey(view, width, height);
+            if (artifacts.restore(view + ".png", key)) {
+                continue;
+            }
+            keys.add(key);
 
-                case "hypocentre_depths":
-                    HypoDepthViewPanel hdv = new HypoDepthViewPanel(hypocentresList.getHypocentres());
-                    genetarePNG(view, hdv, hdv.getViewWidth(), hdv.getViewHeight());
-                    break;
+            reportViews.add(new ReportRenderer.View() {
+                @Override
+                public String getName() {
+                    return view;
+                }
 
-                case "hypocentre_magnitudes":
-                    HypoMagnitudeViewPanel hmag = new HypoMagnitudeViewPanel(hypocentresList.getHypocentres());
-                    genetarePNG(view, hmag, hmag.getViewWidth() * 2, hmag.getViewHeight());
-                    break;
+                @Override
+                public BufferedImage render() {
+                    return renderView(view, width, height);
+                }
+            });
+        }
 
-                case "station_geometry":
-                    StationAzimuthView saView = new StationAzimuthView(hypocentresList, phasesList, isAssess);
-                    genetarePNG(view, saView, saView.getViewWidth(), saView.getViewHeight());
-                    break;
+        ReportRenderer.render(assessDir, reportViews);
 
-                case "station_magnitudes":
-                    StationMagnitudeView smView = new StationMagnitudeView(hypocentresList, isAssess);
-                    genetarePNG(view, smView, smView.getViewWidth(), smView.getViewHeight());
-                    break;
+        for (int i = 0; i < reportViews.size(); i++) {
+            artifacts.store(reportViews.get(i).getName() + ".png", keys.get(i));
+        }
+    }
 
-                case "agency_summary":
-                    AgencyPieChartView apcView = new AgencyPieChartView();
-                    apcView.setData(phasesList);
-                    genetarePNG(view, apcView, apcView.getViewWidth(), apcView.getViewHeight());
-                    break;
-            }
+    /*
+     * Key of a view from the data it is drawn from, null if some of it is
+     * unknown.
+     */
+    private String viewKey(String view, int width, int height) {
+        String size = width + "x" + height;
+        switch (view) {
+            case "hypocentre_siesmicity":
+                return (catalogueDigest == null) ? null
+                        : ReportArtifacts.key(view, size, hypocentresDigest, catalogueDigest);
 
-        }
+            case "hypocentre_depths":
+            case "hypocentre_magnitudes":
+                return ReportArtifacts.key(view, size, hypocentresDigest);
 
-        popupDialog.dispose();
-    }
+            case "phase_travel_time":
+                return ReportArtifacts.key(view, size, hypocentresDigest, phasesDigest);
 
-    private void genetarePNG(final String view, final JPanel panel, final int width, final int height) {
+            case "station_geometry":
+                return (stationsDigest == null) ? null
+                        : ReportArtifacts.key(view, size, hypocentresDigest, phasesDigest, stationsDigest);
 
-        popupDialog.setPreferredSize(new Dimension(width + 40, height + 40));
-        popupDialog.add(panel, BorderLayout.CENTER);
-        popupDialog.pack();
+            case "station_magnitudes":
+                return (stationMagsDigest == null) ? null
+                        : ReportArtifacts.key(view, size, hypocentresDigest, stationMagsDigest);
 
-        // Note: see tutorial
-        // http://stackoverflow.com/questions/1306868/can-i-set-a-timer-on-a-java-swing-jdialog-box-to-close-after-a-number-of-millise
-        Timer timer = new Timer(1000, new ActionListener() {
-            public void actionPerformed(ActionEvent e) {
-                popupDialog.remove(panel);
-                popupDialog.setVisible(false);
-            }
-        });
-        timer.setRepeats(false);
-        timer.start();
-        popupDialog.setVisible(true);
+            case "agency_summary":
+                return ReportArtifacts.key(view, size, phasesDigest);
+        }
+        return ReportArtifacts.key(view, size, hypocentresDigest, phasesDigest);
+    }
 
-        File outputFile = new File(assessDir + File.separator + view + ".png");
-        BufferedImage bi = null;
+    /*
+     * Create the view and draw it at the size of the report.
+     */
+    private BufferedImage renderView(String view, int width, int height) {
+        VBASLogger.logDebug("Generating: " + view + ".png");
 
         switch (view) {
             case "hypocentre_siesmicity":
-                HypoOverviewPanel2 hop = (HypoOverviewPanel2) panel;
-                bi = hop.getBufferedImage();
-                break;
+                HypoOverviewPanel2 hop = new HypoOverviewPanel2(hypocentresList);
+                OverviewControlPanel3 controlPanel = new OverviewControlPanel3(hop);
+                return hop.renderImage(width, height);
 
             case "phase_travel_time":
-                PhaseTravelViewPanel phaseTVPanel = (PhaseTravelViewPanel) panel;
-                bi = phaseTVPanel.getBufferedImage();
-                break;
+                PhaseTravelViewPanel phaseTVPanel = new PhaseTravelViewPanel(phasesList, hypocentresList);
+                return phaseTVPanel.renderImage(width, height);
 
             case "hypocentre_depths":
-                HypoDepthViewPanel hdp = (HypoDepthViewPanel) panel;
-                bi = hdp.getDepthHistImg();
-                break;
+                HypoDepthViewPanel hdv = new HypoDepthViewPanel(hypocentresList.getHypocentres());
+                return hdv.renderImage(width, height);
 
             case "hypocentre_magnitudes":
-                HypoMagnitudeViewPanel hmag = (HypoMagnitudeViewPanel) panel;
-                bi = hmag.getBufferedImage();
-                break;
+                HypoMagnitudeViewPanel hmag = new HypoMagnitudeViewPanel(hypocentresList.getHypocentres());
+                return hmag.renderImage(width, height);
 
             case "station_geometry":
-                StationAzimuthView saView = (StationAzimuthView) panel;
-                bi = saView.getBufferedImage();
-                break;
+                StationAzimuthView saView = new StationAzimuthView(hypocentresList, phasesList, isAssess);
+                return saView.renderImage(width, height);
 
             case "station_magnitudes":
-                StationMagnitudeView smView = (StationMagnitudeView) panel;
-                bi = smView.getBufferedImage();
-                break;
+                StationMagnitudeView smView = new StationMagnitudeView(hypocentresList, isAssess);
+                return smView.renderImage(width, height);
 
             case "agency_summary":
-                AgencyPieChartView apcView = (AgencyPieChartView) panel;
-                bi = apcView.getBufferedImage();
-                break;
-        }
-
-        try {
-            ImageIO.write(bi, "png", outputFile);
-            if (outputFile.exists()) {
-                outputFile.setReadable(true, false);
-                outputFile.setWritable(true, false);
-            }
-        } catch (Exception e) {
-            VBASLogger.logSevere("Error creating a png file: " + outputFile.toString());
-            e.printStackTrace();
+                AgencyPieChartView apcView = new AgencyPieChartView();
+                apcView.setData(phasesList);
+                return apcView.renderImage(width, height);
         }
-
+        return null;
     }
 
     private void logCommands() {
@@ -0,0 +1,340 @@
+package uk.ac.isc.processcommand;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import uk.ac.isc.seisdata.Hypocentre;
+import uk.ac.isc.seisdata.Phase;
+import uk.ac.isc.seisdata.Station;
+import uk.ac.isc.seisdata.VBASLogger;
+
+/*
+ *****************************************************************************************
+ * Content addressed files (csv, png) of the reports of an event. A file is
+ * keyed by the digest of its inputs (hypocentres, phases, stations, historic
+ * catalogue, size of the view)
+ * and kept in the store of the event, Ex. $ASSESSDIR/2013/04/678905/artifacts,
+ * shared by all its assess reports and the batch report. A file whose key is
+ * in the store is copied instead of generated again. The hits and misses of
+ * a report are written into its manifest.csv.
+ *****************************************************************************************
+ */
+final class ReportArtifacts {
+
+    // change when the tables or the views are drawn differently
+    static final String VERSION = "1";
+    static final String MANIFEST = "manifest.csv";
+    private static final String STORE_DIR = "artifacts";
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final Path reportDir;
+    private final Path storeDir;
+
+    // file name -> key of the previous report in this directory
+    private final HashMap<String, String> previous = new HashMap<String, String>();
+    // file name -> key, status
+    private final ArrayList<String[]> entries = new ArrayList<String[]>();
+    private int hits = 0;
+    private int misses = 0;
+
+    ReportArtifacts(Path reportDir) {
+        this.reportDir = reportDir;
+        Path eventDir = reportDir.getParent();
+        this.storeDir = (eventDir != null ? eventDir : reportDir).resolve(STORE_DIR);
+        readManifest();
+    }
+
+    /*
+     * @return key of an artifact from the digests of its inputs
+     */
+    static String key(String name, String... inputs) {
+        Digest digest = new Digest();
+        digest.update(VERSION);
+        digest.update(name);
+        for (String input : inputs) {
+            digest.update(input);
+        }
+        return digest.toString();
+    }
+
+    static String digestHypocentres(List<Hypocentre> hypocentres) {
+        Digest digest = new Digest();
+        for (Hypocentre h : hypocentres) {
+            digest.update(h.getEvid());
+            digest.update(h.getHypid());
+            digest.update(h.getAgency());
+            digest.update(h.getOrigTime() == null ? null : h.getOrigTime().getTime());
+            digest.update(h.getMsec());
+            digest.update(h.getLat());
+            digest.update(h.getLon());
+            digest.update(h.getDepth());
+            digest.update(h.getErrDepth());
+            digest.update(h.getIsFixed());
+            digest.update(h.getIsPrime());
+            digest.update(h.getNumStations());
+            digest.update(h.getNumDefStations());
+            digest.update(h.getNumPhases());
+            digest.update(h.getNumDefPhases());
+            digest.update(h.getStime());
+            digest.update(h.getSdobs());
+            digest.update(h.getStrike());
+            digest.update(h.getSmajax());
+            digest.update(h.getSminax());
+            digest.update(h.geteType());
+            digest.update(h.getDepthFix());
+            digest.update(h.getDefaultDepth());
+            if (h.getMagnitude() != null) {
+                for (Map.Entry<String, Double> m : h.getMagnitude().entrySet()) {
+                    digest.update(m.getKey());
+                    digest.update(m.getValue());
+                }
+            }
+        }
+        return digest.toString();
+    }
+
+    static String digestPhases(List<Phase> phases) {
+        Digest digest = new Digest();
+        for (Phase p : phases) {
+            digest.update(p.getPhid());
+            digest.update(p.getRdid());
+            digest.update(p.getReportAgency());
+            digest.update(p.getReportStation());
+            digest.update(p.getStationFullName());
+            digest.update(p.getRegionName());
+            digest.update(p.getOrigPhaseType());
+            digest.update(p.getIscPhaseType());
+            digest.update(p.getDistance());
+            digest.update(p.getAzimuth());
+            digest.update(p.getSeAzimuth());
+            digest.update(p.getSlowness());
+            digest.update(p.getSNRRate());
+            digest.update(p.getArrivalTime() == null ? null : p.getArrivalTime().getTime());
+            digest.update(p.getMsec());
+            digest.update(p.getTimeResidual());
+            digest.update(p.getAmplitude());
+            digest.update(p.getPeriod());
+            digest.update(p.getAmpMag());
+            digest.update(p.getAmpmagDefining());
+            digest.update(p.getDefining());
+            digest.update(p.getfixing());
+            digest.update(p.getDuplicated());
+            digest.update(p.getDeprecated());
+        }
+        return digest.toString();
+    }
+
+    static String digestStations(List<Station> stations) {
+        Digest digest = new Digest();
+        for (Station sta : stations) {
+            digest.update(sta.getStaCode());
+            digest.update(sta.getLat());
+            digest.update(sta.getLon());
+            digest.update(sta.getReportAgencyList());
+            digest.update(sta.getAzimuth());
+            digest.update(sta.getDelta());
+            digest.update(sta.getStaMb());
+            digest.update(sta.getStaMs());
+            digest.update(sta.getMbRes());
+            digest.update(sta.getMsRes());
+        }
+        return digest.toString();
+    }
+
+    /*
+     * Put the artifact of the key into the report, unless it is there already.
+     * On a miss the file of another key is removed, to be generated again.
+     *
+     * @param key null if an input is unknown, the file is always generated
+     * @return true if the file need not be generated
+     */
+    boolean restore(String fileName, String key) {
+        if (key == null) {
+            return false;
+        }
+        File file = reportDir.resolve(fileName).toFile();
+        File stored = storeDir.resolve(getStoreName(fileName, key)).toFile();
+
+        if (key.equals(previous.get(fileName)) && file.exists()) {
+            record(fileName, key, "hit");
+            return true;
+        }
+
+        if (stored.exists()) {
+            try {
+                Files.copy(stored.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                file.setReadable(true, false);
+                record(fileName, key, "hit");
+                return true;
+            } catch (IOException e) {
+                VBASLogger.logSevere("Error copying " + stored + ": " + e);
+            }
+        }
+
+        if (file.exists() && !file.delete()) {
+            VBASLogger.logSevere("Error deleting " + file);
+        }
+        return false;
+    }
+
+    /*
+     * Keep the file generated for the key, if any (an empty view has none).
+     */
+    void store(String fileName, String key) {
+        File file = reportDir.resolve(fileName).toFile();
+        if (!file.exists()) {
+            record(fileName, key, "none");
+            return;
+        }
+        if (key == null) {
+            record(fileName, "", "miss");
+            return;
+        }
+
+        Path stored = storeDir.resolve(getStoreName(fileName, key));
+        Path tmp = storeDir.resolve(getStoreName(fileName, key) + ".tmp." + Thread.currentThread().getId());
+        try {
+            Files.createDirectories(storeDir);
+            Files.copy(file.toPath(), tmp, StandardCopyOption.REPLACE_EXISTING);
+            Files.move(tmp, stored, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            stored.toFile().setReadable(true, false);
+        } catch (IOException e) {
+            VBASLogger.logSevere("Error storing " + file + ": " + e);
+            tmp.toFile().delete();
+        }
+        record(fileName, key, "miss");
+    }
+
+    int getHits() {
+        return hits;
+    }
+
+    int getMisses() {
+        return misses;
+    }
+
+    /*
+     * Write manifest.csv: artifact, key, status (hit, miss, or none if the
+     * view had nothing to draw).
+     */
+    synchronized void writeManifest() {
+        File file = reportDir.resolve(MANIFEST).toFile();
+        BufferedWriter bufferedWriter = null;
+        try {
+            bufferedWriter = new BufferedWriter(new FileWriter(file, false));
+            bufferedWriter.write("artifact,key,status");
+            for (String[] entry : entries) {
+                bufferedWriter.newLine();
+                bufferedWriter.write(entry[0] + "," + entry[1] + "," + entry[2]);
+            }
+            file.setReadable(true, false);
+        } catch (IOException e) {
+            VBASLogger.logSevere("Error writing " + file + ": " + e);
+        } finally {
+            try {
+                if (bufferedWriter != null) {
+                    bufferedWriter.close();
+                }
+            } catch (IOException e) {
+                VBASLogger.logSevere("Error releasing resources.");
+            }
+        }
+        VBASLogger.logDebug(reportDir + ", #hits=" + hits + ", #misses=" + misses);
+    }
+
+    private synchronized void record(String fileName, String key, String status) {
+        entries.add(new String[]{fileName, key, status});
+        if (status.equals("hit")) {
+            hits++;
+        } else {
+            misses++;
+        }
+    }
+
+    private void readManifest() {
+        File file = reportDir.resolve(MANIFEST).toFile();
+        if (!file.exists()) {
+            return;
+        }
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new FileReader(file));
+            String line = reader.readLine(); // header
+            while ((line = reader.readLine()) != null) {
+                String[] entry = line.split(",");
+                if (entry.length == 3 && !entry[2].equals("none")) {
+                    previous.put(entry[0], entry[1]);
+                }
+            }
+        } catch (IOException e) {
+            VBASLogger.logDebug("Ignoring " + file + ": " + e);
+            previous.clear();
+        } finally {
+            try {
+                if (reader != null) {
+                    reader.close();
+                }
+            } catch (IOException e) {
+                VBASLogger.logSevere("Error releasing resources.");
+            }
+        }
+    }
+
+    /*
+     * Ex. phase_travel_time.png -> 3f2a...c9.png
+     */
+    private static String getStoreName(String fileName, String key) {
+        int dot = fileName.lastIndexOf('.');
+        return key + (dot >= 0 ? fileName.substring(dot) : "");
+    }
+
+    /*
+     * SHA-1 of a sequence of values, null distinct from "null".
+     */
+    private static final class Digest {
+
+        private final MessageDigest md;
+
+        private Digest() {
+            try {
+                md = MessageDigest.getInstance("SHA-1");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        private void update(Object value) {
+            if (value == null) {
+                md.update((byte) 0);
+            } else {
+                md.update((byte) 1);
+                md.update(value.toString().getBytes(UTF8));
+                md.update((byte) 0);
+            }
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            for (byte b : md.digest()) {
+                sb.append(Character.forDigit((b >> 4) & 0xf, 16));
+                sb.append(Character.forDigit(b & 0xf, 16));
+            }
+            return sb.toString();
+        }
+    }
+}
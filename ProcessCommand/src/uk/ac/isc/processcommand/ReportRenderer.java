@@ -0,0 +1,124 @@
+package uk.ac.isc.processcommand;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.imageio.ImageIO;
+import uk.ac.isc.seisdata.VBASLogger;
+
+/*
+ *****************************************************************************************
+ * Draws the views of a report into PNG files on a pool of workers, one view
+ * per task. The views are created and drawn offscreen (OffscreenView), never
+ * shown, so a report needs neither the EDT nor a display and runs with
+ * java.awt.headless=true.
+ *****************************************************************************************
+ */
+final class ReportRenderer {
+
+    private static final int THREADS = Math.max(1, Runtime.getRuntime().availableProcessors());
+
+    private static final ExecutorService renderExecutor = Executors.newFixedThreadPool(THREADS,
+            new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger(0);
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "ReportRenderer-" + count.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+
+    /*
+     * A view of the report, created and drawn on a worker.
+     */
+    interface View {
+
+        // name of the png file
+        String getName();
+
+        // null if there is nothing to draw
+        BufferedImage render();
+    }
+
+    private ReportRenderer() {
+    }
+
+    /*
+     * Draw the views into dir/<name>.png, concurrently, and wait for them.
+     *
+     * @return number of png files written
+     */
+    static int render(final Path dir, List<View> views) {
+        long startTime = System.nanoTime();
+
+        ArrayList<Future<Boolean>> futures = new ArrayList<Future<Boolean>>();
+        for (final View view : views) {
+            futures.add(renderExecutor.submit(new Callable<Boolean>() {
+                @Override
+                public Boolean call() {
+                    return renderView(dir, view);
+                }
+            }));
+        }
+
+        int written = 0;
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                if (futures.get(i).get()) {
+                    written++;
+                }
+            } catch (InterruptedException ex) {
+                // the views left are dropped
+                for (Future<Boolean> f : futures) {
+                    f.cancel(true);
+                }
+                Thread.currentThread().interrupt();
+                break;
+            } catch (ExecutionException ex) {
+                VBASLogger.logSevere("Error drawing " + views.get(i).getName() + ": " + ex.getCause());
+                ex.getCause().printStackTrace();
+            }
+        }
+
+        VBASLogger.logDebug("#views=" + views.size() + ", #png=" + written
+                + ", t=" + (System.nanoTime() - startTime) / 1000000 + " ms");
+        return written;
+    }
+
+    private static boolean renderView(Path dir, View view) {
+        long startTime = System.nanoTime();
+
+        BufferedImage bi = view.render();
+        if (bi == null) {
+            VBASLogger.logDebug("Nothing to draw: " + view.getName());
+            return false;
+        }
+
+        File outputFile = new File(dir + File.separator + view.getName() + ".png");
+        try {
+            ImageIO.write(bi, "png", outputFile);
+            if (outputFile.exists()) {
+                outputFile.setReadable(true, false);
+                outputFile.setWritable(true, false);
+            }
+        } catch (Exception e) {
+            VBASLogger.logSevere("Error creating a png file: " + outputFile.toString());
+            e.printStackTrace();
+            return false;
+        }
+
+        VBASLogger.logDebug(view.getName() + ".png, t=" + (System.nanoTime() - startTime) / 1000000 + " ms");
+        return true;
+    }
+}
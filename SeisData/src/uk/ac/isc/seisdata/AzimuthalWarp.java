@@ -0,0 +1,225 @@
+package uk.ac.isc.seisdata;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Warps a Mercator world map into the azimuthal equidistant map (circle)
+ * around a hypocentre, as drawn by the station azimuth and station magnitude
+ * views.
+ *
+ * The azimuth and distance of each output pixel depend only on the map size
+ * and the map degree, so their sines and cosines are computed once per size
+ * and degree; a new hypocentre then only pays for the spherical triangle
+ * (SeisUtils.LatFromAziDelta() and LonFromAziDelta()) and the Mercator
+ * projection. The rows are warped in parallel bands, reading and writing the
+ * image rasters directly.
+ */
+public final class AzimuthalWarp {
+
+    private static final int MAX_INSTANCES = 4;
+
+    // OsmMercator.MAX_LAT
+    private static final double MAX_SIN_LAT = Math.sin(Math.toRadians(85.05112877980659));
+
+    private static final int THREADS = Math.max(1, Runtime.getRuntime().availableProcessors());
+
+    private static final ExecutorService warpExecutor = Executors.newFixedThreadPool(THREADS,
+            new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger(0);
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "AzimuthalWarp-" + count.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+
+    // most recently used lookup tables by size and map degree
+    private static final LinkedHashMap<String, AzimuthalWarp> instances
+            = new LinkedHashMap<String, AzimuthalWarp>(MAX_INSTANCES + 1, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, AzimuthalWarp> eldest) {
+                    return size() > MAX_INSTANCES;
+                }
+            };
+
+    private final int size;
+    private final double mapDegree;
+
+    // per pixel, row by row: cos(delta), NaN outside the circle,
+    // sin(delta) * cos(azimuth) and sin(delta) * sin(azimuth)
+    private final float[] cosDelta;
+    private final float[] sinDeltaCosAzi;
+    private final float[] sinDeltaSinAzi;
+
+    private AzimuthalWarp(int size, double mapDegree) {
+        this.size = size;
+        this.mapDegree = mapDegree;
+
+        long startTime = System.nanoTime();
+
+        cosDelta = new float[size * size];
+        sinDeltaCosAzi = new float[size * size];
+        sinDeltaSinAzi = new float[size * size];
+
+        int centre = size / 2;
+        for (int j = 0; j < size; j++) {
+            for (int i = 0; i < size; i++) {
+                int k = j * size + i;
+                double dist = Math.sqrt((double) ((i - centre) * (i - centre) + (j - centre) * (j - centre)));
+                if (dist > centre) {
+                    cosDelta[k] = Float.NaN;
+                } else {
+                    double azi = SeisUtils.rad2deg * Math.atan2(i - centre, centre - j);
+                    double delta = dist * mapDegree / centre;
+                    double sinDelta = Math.sin(SeisUtils.deg2rad * delta);
+                    cosDelta[k] = (float) Math.cos(SeisUtils.deg2rad * delta);
+                    sinDeltaCosAzi[k] = (float) (sinDelta * Math.cos(SeisUtils.deg2rad * azi));
+                    sinDeltaSinAzi[k] = (float) (sinDelta * Math.sin(SeisUtils.deg2rad * azi));
+                }
+            }
+        }
+
+        VBASLogger.logDebug("size=" + size + ", mapDegree=" + mapDegree
+                + ", t=" + (System.nanoTime() - startTime) / 1000000 + " ms");
+    }
+
+    /**
+     * @param size width and height of the output map
+     * @param mapDegree distance (degrees) at the edge of the map
+     * @return the lookup table of the size and map degree
+     */
+    public static AzimuthalWarp getInstance(int size, double mapDegree) {
+        String key = size + ":" + mapDegree;
+        synchronized (instances) {
+            AzimuthalWarp warp = instances.get(key);
+            if (warp == null) {
+                warp = new AzimuthalWarp(size, mapDegree);
+                instances.put(key, warp);
+            }
+            return warp;
+        }
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public double getMapDegree() {
+        return mapDegree;
+    }
+
+    /**
+     * Draw the map around the hypocentre.
+     *
+     * @param lat latitude of the centre
+     * @param lon longitude of the centre
+     * @param src Mercator world map, its width is the number of pixels of the
+     * world as in OsmMercator
+     * @param dst the map, size x size
+     * @param outsideRGB colour of the pixels outside the circle
+     */
+    public void warp(double lat, double lon, BufferedImage src, final BufferedImage dst, final int outsideRGB) {
+
+        long startTime = System.nanoTime();
+
+        final int[] srcPixels = getPixels(src);
+        final int srcWidth = src.getWidth();
+        final int srcHeight = src.getHeight();
+        final int[] dstPixels = dst.getRaster().getDataBuffer() instanceof DataBufferInt
+                && dst.getType() == BufferedImage.TYPE_INT_ARGB
+                ? ((DataBufferInt) dst.getRaster().getDataBuffer()).getData()
+                : new int[size * size];
+
+        // geocentric latitude of the centre
+        double geocLat = Math.atan(SeisUtils.f * Math.tan(SeisUtils.deg2rad * lat));
+        final double sinLat = Math.sin(geocLat);
+        final double cosLat = Math.cos(geocLat);
+        final double lon0 = lon;
+
+        int bandHeight = (size + THREADS - 1) / THREADS;
+        ArrayList<Callable<Void>> bands = new ArrayList<Callable<Void>>();
+        for (int row = 0; row < size; row += bandHeight) {
+            final int firstRow = row;
+            final int lastRow = Math.min(row + bandHeight, size);
+            bands.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    warpRows(firstRow, lastRow, sinLat, cosLat, lon0,
+                            srcPixels, srcWidth, srcHeight, dstPixels, outsideRGB);
+                    return null;
+                }
+            });
+        }
+
+        try {
+            for (Future<Void> band : warpExecutor.invokeAll(bands)) {
+                band.get();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            VBASLogger.logSevere("Interrupted while warping the map.");
+        } catch (ExecutionException ex) {
+            VBASLogger.logSevere("Error warping the map: " + ex.getCause());
+        }
+
+        if (dst.getType() != BufferedImage.TYPE_INT_ARGB) {
+            dst.setRGB(0, 0, size, size, dstPixels, 0, size);
+        }
+
+        VBASLogger.logDebug("size=" + size + ", t=" + (System.nanoTime() - startTime) / 1000 + " us");
+    }
+
+    private void warpRows(int firstRow, int lastRow, double sinLat, double cosLat, double lon0,
+            int[] srcPixels, int srcWidth, int srcHeight, int[] dstPixels, int outsideRGB) {
+
+        for (int k = firstRow * size; k < lastRow * size; k++) {
+            double cd = cosDelta[k];
+            if (Double.isNaN(cd)) {
+                dstPixels[k] = outsideRGB;
+                continue;
+            }
+
+            // sine of the geocentric latitude of the pixel
+            double sinLat2 = sinLat * cd + cosLat * sinDeltaCosAzi[k];
+            sinLat2 = Math.max(-1.0, Math.min(1.0, sinLat2));
+
+            double lon = lon0 + SeisUtils.rad2deg * Math.atan2(sinDeltaSinAzi[k] * cosLat, cd - sinLat * sinLat2);
+            if (lon > 180.0) {
+                lon = lon - 360;
+            } else if (lon < -180.0) {
+                lon = lon + 360;
+            }
+
+            // sine of the geographic latitude, tan(lat) = tan(geocLat) / f
+            double cosLat2 = Math.sqrt(1.0 - sinLat2 * sinLat2);
+            double sin = sinLat2 / Math.sqrt(sinLat2 * sinLat2 + SeisUtils.f * SeisUtils.f * cosLat2 * cosLat2);
+            sin = Math.max(-MAX_SIN_LAT, Math.min(MAX_SIN_LAT, sin));
+
+            // OsmMercator.LonToX() and LatToY() with the source as the world
+            double px = Math.min(srcWidth * (lon + 180.0) / 360.0, srcWidth - 1);
+            double py = Math.min(srcWidth * (0.5 - Math.log((1.0 + sin) / (1.0 - sin)) / (4.0 * Math.PI)), srcHeight - 1);
+
+            dstPixels[k] = srcPixels[(int) py * srcWidth + (int) px];
+        }
+    }
+
+    private static int[] getPixels(BufferedImage img) {
+        if (img.getType() == BufferedImage.TYPE_INT_ARGB || img.getType() == BufferedImage.TYPE_INT_RGB) {
+            return ((DataBufferInt) img.getRaster().getDataBuffer()).getData();
+        }
+        return img.getRGB(0, 0, img.getWidth(), img.getHeight(), null, 0, img.getWidth());
+    }
+}
@@ -0,0 +1,79 @@
+package uk.ac.isc.seisdata;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.net.URL;
+import java.util.HashMap;
+import javax.imageio.ImageIO;
+import org.openide.util.Exceptions;
+
+/**
+ * Process wide cache of the decoded Mercator base maps of the projection
+ * based views (station azimuth, station magnitude), one per resolution. The
+ * map of a resolution is assembled once from the 256x256 tiles of the
+ * TileArchive, or of resources/zoom/x/y.png without one, instead of decoding
+ * the PNGs in every view constructor, i.e., on every event selection and
+ * report.
+ *
+ * The returned images are shared: read them, do not draw on them.
+ */
+public final class BaseMapCache {
+
+    private static final int TILE_SIZE = 256;
+
+    private static final HashMap<Integer, BufferedImage> baseMaps = new HashMap<Integer, BufferedImage>();
+
+    private BaseMapCache() {
+    }
+
+    /**
+     * @param size width (and height) of the world map, a power of 2 multiple
+     * of the tile size
+     * @param loader class loader of the module holding the tiles
+     * @return the decoded base map
+     */
+    public static synchronized BufferedImage getBaseMap(int size, ClassLoader loader) {
+        BufferedImage baseMap = baseMaps.get(size);
+        if (baseMap == null) {
+            baseMap = loadBaseMap(size, loader);
+            baseMaps.put(size, baseMap);
+        }
+        return baseMap;
+    }
+
+    private static BufferedImage loadBaseMap(int size, ClassLoader loader) {
+
+        long startTime = System.nanoTime();
+
+        BufferedImage baseMap = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2 = baseMap.createGraphics();
+
+        int tiles = size / TILE_SIZE;
+        int zoom = Integer.numberOfTrailingZeros(tiles);
+        TileArchive archive = TileArchive.getDefault();
+        for (int i = 0; i < tiles; i++) {
+            for (int j = 0; j < tiles; j++) {
+                try {
+                    BufferedImage tile = archive != null ? archive.getTile(zoom, i, j) : null;
+                    if (tile == null) {
+                        String fileName = "resources/" + zoom + "/" + i + "/" + j + ".png";
+                        URL url = loader.getResource(fileName);
+                        if (url == null) {
+                            VBASLogger.logSevere("Missing base map tile: " + fileName);
+                            continue;
+                        }
+                        tile = ImageIO.read(url);
+                    }
+                    g2.drawImage(tile, i * TILE_SIZE, j * TILE_SIZE, null);
+                } catch (IOException ex) {
+                    Exceptions.printStackTrace(ex);
+                }
+            }
+        }
+        g2.dispose();
+
+        VBASLogger.logDebug("size=" + size + ", t=" + (System.nanoTime() - startTime) / 1000000 + " ms");
+        return baseMap;
+    }
+}
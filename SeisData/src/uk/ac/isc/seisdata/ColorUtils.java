@@ -153,4 +153,19 @@ public final class ColorUtils {
 
     }
 
+    /**
+     * @param paints colours, as the arrays above
+     * @param size glyph size
+     * @param shape GlyphSprite.CIRCLE, SQUARE or DIAMOND
+     * @return the glyph of each colour
+     */
+    public static GlyphSprite[] createSprites(Paint[] paints, int size, int shape) {
+
+        GlyphSprite[] sprites = new GlyphSprite[paints.length];
+        for (int i = 0; i < paints.length; i++) {
+            sprites[i] = GlyphSprite.getSprite((Color) paints[i], size, shape);
+        }
+        return sprites;
+    }
+
 }
@@ -0,0 +1,238 @@
+package uk.ac.isc.seisdata;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A glyph of the maps (seismicity dot, station, hypocentre) of one colour,
+ * size and shape, drawn once with Java2D into a small image. The seismicity
+ * and station maps copy it for each item instead of filling a shape: with
+ * drawImage, or straight into the pixels of an INT_ARGB image.
+ *
+ * The glyphs are drawn as the views drew them, without antialiasing, so a
+ * copy at (x, y) gives the pixels of the shape drawn at (x, y). The sprites
+ * are cached (ColorUtils.createSprites()).
+ */
+public final class GlyphSprite {
+
+    // filled circle, g2.fillOval(x, y, size, size)
+    public static final int CIRCLE = 0;
+    // square outline, g2.drawRect(x, y, size, size), stroke 2
+    public static final int SQUARE = 1;
+    // diamond outline through the middles of the sides, stroke 2
+    public static final int DIAMOND = 2;
+
+    private static final int MAX_SPRITES = 256;
+
+    // room for the stroke around the size x size box
+    private static final int PAD = 3;
+
+    private static final LinkedHashMap<String, GlyphSprite> sprites
+            = new LinkedHashMap<String, GlyphSprite>(MAX_SPRITES + 1, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, GlyphSprite> eldest) {
+                    return size() > MAX_SPRITES;
+                }
+            };
+
+    private final int size;
+    private final BufferedImage image;
+
+    // the pixels of the glyph in runs of one colour along the rows,
+    // relative to the corner of the box
+    private final int[] runX;
+    private final int[] runY;
+    private final int[] runLength;
+    private final int[] runARGB;
+    private final boolean isOpaque;
+    private final int minX, minY, maxX, maxY;
+
+    private GlyphSprite(Color colour, int size, int shape) {
+        this.size = size;
+
+        image = new BufferedImage(size + 2 * PAD, size + 2 * PAD, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2 = image.createGraphics();
+        g2.setColor(colour);
+        g2.translate(PAD, PAD);
+        switch (shape) {
+            case SQUARE:
+                g2.setStroke(new BasicStroke(2));
+                g2.drawRect(0, 0, size, size);
+                break;
+            case DIAMOND:
+                int half = size / 2;
+                g2.setStroke(new BasicStroke(2));
+                g2.drawLine(half, 0, 0, half);
+                g2.drawLine(0, half, half, size);
+                g2.drawLine(half, size, size, half);
+                g2.drawLine(size, half, half, 0);
+                break;
+            default:
+                g2.fillOval(0, 0, size, size);
+        }
+        g2.dispose();
+
+        int width = image.getWidth();
+        int[] argb = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        int[] x = new int[argb.length];
+        int[] y = new int[argb.length];
+        int[] length = new int[argb.length];
+        int[] colours = new int[argb.length];
+        boolean opaque = true;
+        int x0 = Integer.MAX_VALUE, y0 = Integer.MAX_VALUE, x1 = Integer.MIN_VALUE, y1 = Integer.MIN_VALUE;
+        int n = 0;
+        for (int j = 0; j < image.getHeight(); j++) {
+            for (int i = 0; i < width; i++) {
+                int p = argb[j * width + i];
+                if ((p >>> 24) == 0) {
+                    continue;
+                }
+                if (n > 0 && y[n - 1] == j - PAD && colours[n - 1] == p
+                        && x[n - 1] + length[n - 1] == i - PAD) {
+                    length[n - 1]++;
+                } else {
+                    x[n] = i - PAD;
+                    y[n] = j - PAD;
+                    length[n] = 1;
+                    colours[n] = p;
+                    n++;
+                }
+                opaque &= (p >>> 24) == 0xFF;
+                x0 = Math.min(x0, i - PAD);
+                y0 = Math.min(y0, j - PAD);
+                x1 = Math.max(x1, i - PAD);
+                y1 = Math.max(y1, j - PAD);
+            }
+        }
+        runX = Arrays.copyOf(x, n);
+        runY = Arrays.copyOf(y, n);
+        runLength = Arrays.copyOf(length, n);
+        runARGB = Arrays.copyOf(colours, n);
+        isOpaque = opaque;
+        minX = x0;
+        minY = y0;
+        maxX = x1;
+        maxY = y1;
+    }
+
+    /**
+     * @param colour colour of the glyph, can be translucent
+     * @param size width and height of the glyph box
+     * @param shape CIRCLE, SQUARE or DIAMOND
+     * @return the cached sprite
+     */
+    public static GlyphSprite getSprite(Color colour, int size, int shape) {
+        String key = colour.getRGB() + ":" + size + ":" + shape;
+        synchronized (sprites) {
+            GlyphSprite sprite = sprites.get(key);
+            if (sprite == null) {
+                sprite = new GlyphSprite(colour, size, shape);
+                sprites.put(key, sprite);
+            }
+            return sprite;
+        }
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Draw the glyph with its box at (x, y), as g2.fillOval(x, y, size, size).
+     */
+    public void draw(Graphics2D g2, int x, int y) {
+        g2.drawImage(image, x - PAD, y - PAD, null);
+    }
+
+    /**
+     * Draw the glyph with its box at (x, y) into the pixels of an INT_ARGB
+     * image, other types through drawImage. For many glyphs, get the pixels
+     * once (getPixels()).
+     */
+    public void draw(BufferedImage dst, int x, int y) {
+        int[] pixels = getPixels(dst);
+        if (pixels == null) {
+            Graphics2D g2 = dst.createGraphics();
+            draw(g2, x, y);
+            g2.dispose();
+        } else {
+            draw(pixels, dst.getWidth(), dst.getHeight(), x, y);
+        }
+    }
+
+    /**
+     * Draw the glyph with its box at (x, y) into the pixels, row by row, of
+     * an INT_ARGB image, clipped to the image.
+     */
+    public void draw(int[] pixels, int width, int height, int x, int y) {
+        drawRuns(pixels, width, height, x, y, false, 0);
+    }
+
+    /**
+     * Draw the shape of the glyph in another colour, for items coloured one
+     * by one (e.g., by residual) that would not share sprites.
+     *
+     * @param argb colour of the item
+     */
+    public void draw(int[] pixels, int width, int height, int x, int y, int argb) {
+        drawRuns(pixels, width, height, x, y, true, argb);
+    }
+
+    private void drawRuns(int[] pixels, int width, int height, int x, int y, boolean recolour, int argb) {
+        boolean opaque = recolour ? (argb >>> 24) == 0xFF : isOpaque;
+        boolean inside = x + minX >= 0 && y + minY >= 0 && x + maxX < width && y + maxY < height;
+        for (int k = 0; k < runARGB.length; k++) {
+            int py = y + runY[k];
+            int from = x + runX[k];
+            int to = from + runLength[k];
+            if (!inside) {
+                if (py < 0 || py >= height) {
+                    continue;
+                }
+                from = Math.max(from, 0);
+                to = Math.min(to, width);
+            }
+            int colour = recolour ? argb : runARGB[k];
+            int row = py * width;
+            if (opaque) {
+                for (int i = row + from; i < row + to; i++) {
+                    pixels[i] = colour;
+                }
+            } else {
+                for (int i = row + from; i < row + to; i++) {
+                    pixels[i] = blend(colour, pixels[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the pixels of an INT_ARGB image, null for another type
+     */
+    public static int[] getPixels(BufferedImage img) {
+        if (img.getType() == BufferedImage.TYPE_INT_ARGB) {
+            return ((DataBufferInt) img.getRaster().getDataBuffer()).getData();
+        }
+        return null;
+    }
+
+    // source over, not premultiplied
+    private static int blend(int src, int dst) {
+        int sa = src >>> 24;
+        int da = dst >>> 24;
+        int oa = sa + da * (255 - sa) / 255;
+        if (oa == 0) {
+            return 0;
+        }
+        int r = (((src >> 16) & 0xFF) * sa + ((dst >> 16) & 0xFF) * da * (255 - sa) / 255) / oa;
+        int g = (((src >> 8) & 0xFF) * sa + ((dst >> 8) & 0xFF) * da * (255 - sa) / 255) / oa;
+        int b = ((src & 0xFF) * sa + (dst & 0xFF) * da * (255 - sa) / 255) / oa;
+        return (oa << 24) | (r << 16) | (g << 8) | b;
+    }
+}
@@ -0,0 +1,95 @@
+package uk.ac.isc.seisdata;
+
+import java.util.Arrays;
+
+/**
+ * Historic seismicity of a map area, kept column by column in primitive
+ * arrays instead of one HistoricEvent object per event: a dense area holds
+ * hundreds of thousands of events. The depth band of each event is computed
+ * once when it is added. Events are kept in the order added (by depth, as
+ * loaded from the database).
+ */
+public class HistoricSeismicity {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private int size = 0;
+    private int[] evid = new int[INITIAL_CAPACITY];
+    private int[] depth = new int[INITIAL_CAPACITY];
+    private float[] lat = new float[INITIAL_CAPACITY];
+    private float[] lon = new float[INITIAL_CAPACITY];
+    private byte[] depthBand = new byte[INITIAL_CAPACITY];
+
+    public HistoricSeismicity() {
+    }
+
+    public void add(int evid, int depth, double lat, double lon) {
+        if (size == this.evid.length) {
+            grow(size * 2);
+        }
+        this.evid[size] = evid;
+        this.depth[size] = depth;
+        this.lat[size] = (float) lat;
+        this.lon[size] = (float) lon;
+        this.depthBand[size] = (byte) SeisUtils.getNewDepthBand(depth);
+        size++;
+    }
+
+    /**
+     * Remove all the events, the arrays are kept for the next load.
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Release the unused capacity, e.g., after a load.
+     */
+    public void trimToSize() {
+        if (size < evid.length) {
+            grow(Math.max(size, 1));
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getEvid(int i) {
+        return evid[i];
+    }
+
+    public int getDepth(int i) {
+        return depth[i];
+    }
+
+    public double getLat(int i) {
+        return lat[i];
+    }
+
+    public double getLon(int i) {
+        return lon[i];
+    }
+
+    /**
+     * @return SeisUtils.getNewDepthBand() of the event
+     */
+    public int getDepthBand(int i) {
+        return depthBand[i];
+    }
+
+    /**
+     * @return bytes held by the arrays
+     */
+    public long getMemoryBytes() {
+        return (long) evid.length * (4 + 4 + 4 + 4 + 1);
+    }
+
+    private void grow(int capacity) {
+        evid = Arrays.copyOf(evid, capacity);
+        depth = Arrays.copyOf(depth, capacity);
+        lat = Arrays.copyOf(lat, capacity);
+        lon = Arrays.copyOf(lon, capacity);
+        depthBand = Arrays.copyOf(depthBand, capacity);
+    }
+}
@@ -39,6 +39,7 @@ public class Hypocentre extends AbstractSeisData implements Cloneable {
     
     private String eType;
     private String depthFix;
+    private Double defaultDepth;    // only if the depth is null (then 0): depdp or the default depth of the region
 
     /*private String latStr;         // N/S
      private String lonStr;         // E/W
@@ -283,6 +284,18 @@ public class Hypocentre extends AbstractSeisData implements Cloneable {
     public void setDepthFix(String depthFix) {
         this.depthFix = depthFix;
     }
+
+    /**
+     * @return the depth phase depth or the default depth of the region if
+     * the depth is null, otherwise null
+     */
+    public Double getDefaultDepth() {
+        return defaultDepth;
+    }
+
+    public void setDefaultDepth(Double defaultDepth) {
+        this.defaultDepth = defaultDepth;
+    }
     
     @Override
     public boolean equals(Object obj) {
@@ -376,6 +389,9 @@ public class Hypocentre extends AbstractSeisData implements Cloneable {
         if(this.depthFix != null) {
             clone.setDepthFix(this.depthFix);
         }
+        if(this.defaultDepth != null) {
+            clone.setDefaultDepth(this.defaultDepth);
+        }
         
         clone.magMap = new LinkedHashMap<String, Double>();
         for (Map.Entry<String, Double> entry : this.magMap.entrySet()) {
@@ -413,6 +429,7 @@ public class Hypocentre extends AbstractSeisData implements Cloneable {
         this.sminax = h.sminax;
         this.eType = h.eType;
         this.depthFix = h.depthFix;
+        this.defaultDepth = h.defaultDepth;
     }
 
 }
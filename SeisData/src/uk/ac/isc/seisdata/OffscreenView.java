@@ -0,0 +1,20 @@
+package uk.ac.isc.seisdata;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * A view that draws itself into an image without being shown or laid out,
+ * e.g., for the assess reports, so it can be drawn off the EDT and with
+ * java.awt.headless=true.
+ */
+public interface OffscreenView {
+
+    /**
+     * Draw the view, scaled from its own size if needed.
+     *
+     * @param width width of the image
+     * @param height height of the image
+     * @return the image, null if there is nothing to draw
+     */
+    BufferedImage renderImage(int width, int height);
+}
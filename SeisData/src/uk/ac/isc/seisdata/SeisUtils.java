@@ -15,9 +15,9 @@ import java.util.Set;
 public final class SeisUtils {
 
     private final static double flattening = 0.00335281;
-    private final static double f = (1.0 - flattening) * (1.0 - flattening);
-    private final static double deg2rad = 3.14159 / 180.0;
-    private final static double rad2deg = 180.0 / 3.14159;
+    final static double f = (1.0 - flattening) * (1.0 - flattening);
+    final static double deg2rad = 3.14159 / 180.0;
+    final static double rad2deg = 180.0 / 3.14159;
 
     /**
      * given two coordinate, calculate their distance
@@ -0,0 +1,191 @@
+package uk.ac.isc.seisdata;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import javax.imageio.ImageIO;
+
+/**
+ * Read only, memory mapped archive of the base map tiles: one file instead of
+ * the tree of PNGs resources/zoom/x/y.png, built by TileArchiveBuilder. A tile
+ * is found through a fixed offset table (full quadtree of the zoom levels),
+ * not a class loader resource search. Tiles are stored as PNG, or as decoded
+ * ARGB for the zoom levels read most (the station views' base map).
+ *
+ * The archive is VBAS_TILE_ARCHIVE, by default basemap.tiles in
+ * VBAS_CACHE_DIR (~/.vbas); without it the views read the PNG resources.
+ *
+ * File layout (big endian): header, entries (long offset, int length, int
+ * format) by zoom, x, y, tile data.
+ */
+public final class TileArchive {
+
+    static final String FILE_NAME = "basemap.tiles";
+    static final int MAGIC = 0x56425441;   // "VBTA"
+    static final int FORMAT_VERSION = 1;
+
+    // magic, format version, min zoom, max zoom, tile size, #entries
+    static final int HEADER_SIZE = 6 * 4;
+    static final int ENTRY_SIZE = 16;
+
+    static final int FORMAT_NONE = 0;
+    static final int FORMAT_PNG = 1;
+    static final int FORMAT_ARGB = 2;
+
+    private static TileArchive defaultArchive = null;
+    private static boolean isChecked = false;
+
+    private final File file;
+    private final MappedByteBuffer buffer;
+    private final int minZoom;
+    private final int maxZoom;
+    private final int tileSize;
+
+    private TileArchive(File file, MappedByteBuffer buffer, int minZoom, int maxZoom, int tileSize) {
+        this.file = file;
+        this.buffer = buffer;
+        this.minZoom = minZoom;
+        this.maxZoom = maxZoom;
+        this.tileSize = tileSize;
+    }
+
+    /**
+     * @return the archive of the installation, or null if there is none
+     */
+    public static synchronized TileArchive getDefault() {
+        if (!isChecked) {
+            isChecked = true;
+            File file = getDefaultFile();
+            if (file.isFile()) {
+                try {
+                    defaultArchive = open(file);
+                    VBASLogger.logDebug("Base map tiles: " + file);
+                } catch (IOException ex) {
+                    VBASLogger.logSevere("Cannot read the tile archive " + file + ": " + ex.getMessage());
+                }
+            }
+        }
+        return defaultArchive;
+    }
+
+    public static File getDefaultFile() {
+        String archive = System.getenv("VBAS_TILE_ARCHIVE");
+        if (archive != null) {
+            return new File(archive);
+        }
+        String cacheDir = System.getenv("VBAS_CACHE_DIR");
+        if (cacheDir == null) {
+            cacheDir = System.getProperty("user.home") + File.separator + ".vbas";
+        }
+        return new File(cacheDir, FILE_NAME);
+    }
+
+    public static TileArchive open(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            if (channel.size() < HEADER_SIZE) {
+                throw new IOException("not a tile archive");
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            if (buffer.getInt(0) != MAGIC) {
+                throw new IOException("not a tile archive");
+            }
+            if (buffer.getInt(4) != FORMAT_VERSION) {
+                throw new IOException("unsupported format version " + buffer.getInt(4));
+            }
+            int minZoom = buffer.getInt(8);
+            int maxZoom = buffer.getInt(12);
+            int tileSize = buffer.getInt(16);
+            if (minZoom < 0 || maxZoom < minZoom || maxZoom > 14
+                    || buffer.getInt(20) != getEntryCount(minZoom, maxZoom + 1)
+                    || channel.size() < HEADER_SIZE + (long) getEntryCount(minZoom, maxZoom + 1) * ENTRY_SIZE) {
+                throw new IOException("corrupted header");
+            }
+
+            return new TileArchive(file, buffer, minZoom, maxZoom, tileSize);
+        } finally {
+            // the mapping stays valid
+            raf.close();
+        }
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public int getMinZoom() {
+        return minZoom;
+    }
+
+    public int getMaxZoom() {
+        return maxZoom;
+    }
+
+    public int getTileSize() {
+        return tileSize;
+    }
+
+    public boolean hasTile(int zoom, int x, int y) {
+        int entry = getEntry(zoom, x, y);
+        return entry >= 0 && buffer.getInt(entry + 12) != FORMAT_NONE;
+    }
+
+    /**
+     * @return the tile, or null if it is not in the archive
+     * @throws IOException if the tile cannot be decoded
+     */
+    public BufferedImage getTile(int zoom, int x, int y) throws IOException {
+        int entry = getEntry(zoom, x, y);
+        if (entry < 0) {
+            return null;
+        }
+
+        ByteBuffer buf = buffer.duplicate();
+        long offset = buf.getLong(entry);
+        int length = buf.getInt(entry + 8);
+        int format = buf.getInt(entry + 12);
+
+        switch (format) {
+            case FORMAT_PNG:
+                byte[] png = new byte[length];
+                buf.position((int) offset);
+                buf.get(png);
+                return ImageIO.read(new ByteArrayInputStream(png));
+
+            case FORMAT_ARGB:
+                BufferedImage tile = new BufferedImage(tileSize, tileSize, BufferedImage.TYPE_INT_ARGB);
+                buf.position((int) offset);
+                buf.asIntBuffer().get(((DataBufferInt) tile.getRaster().getDataBuffer()).getData());
+                return tile;
+
+            default:
+                return null;
+        }
+    }
+
+    // position of the entry of the tile, -1 if out of the archive
+    private int getEntry(int zoom, int x, int y) {
+        int tiles = 1 << zoom;
+        if (zoom < minZoom || zoom > maxZoom || x < 0 || x >= tiles || y < 0 || y >= tiles) {
+            return -1;
+        }
+        return HEADER_SIZE + (getEntryCount(minZoom, zoom) + x * tiles + y) * ENTRY_SIZE;
+    }
+
+    // number of tiles of the zoom levels [minZoom, maxZoom)
+    static int getEntryCount(int minZoom, int maxZoom) {
+        int count = 0;
+        for (int zoom = minZoom; zoom < maxZoom; zoom++) {
+            count += 1 << (2 * zoom);
+        }
+        return count;
+    }
+}
@@ -0,0 +1,168 @@
+package uk.ac.isc.seisdata;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import javax.imageio.ImageIO;
+
+/**
+ * Packs a tile tree dir/zoom/x/y.png (e.g., StationMagnitudeView/src/resources)
+ * into a TileArchive. The tiles of the zoom levels up to maxRawZoom are stored
+ * decoded.
+ *
+ * Usage: TileArchiveBuilder tileDir archiveFile [maxRawZoom]
+ */
+public final class TileArchiveBuilder {
+
+    public static final int DEFAULT_MAX_RAW_ZOOM = 1;
+
+    private TileArchiveBuilder() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: TileArchiveBuilder tileDir archiveFile [maxRawZoom]");
+            System.exit(1);
+        }
+        int maxRawZoom = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_MAX_RAW_ZOOM;
+        build(new File(args[0]), new File(args[1]), maxRawZoom);
+    }
+
+    /**
+     * @param tileDir root of the tile tree
+     * @param archive the archive to write, replaced atomically
+     * @param maxRawZoom the tiles up to this zoom level are stored decoded
+     * @return number of tiles packed
+     * @throws IOException
+     */
+    public static int build(File tileDir, File archive, int maxRawZoom) throws IOException {
+
+        long startTime = System.nanoTime();
+
+        // zoom levels present
+        int minZoom = Integer.MAX_VALUE;
+        int maxZoom = -1;
+        File[] zoomDirs = tileDir.listFiles();
+        if (zoomDirs != null) {
+            for (File zoomDir : zoomDirs) {
+                if (zoomDir.isDirectory() && zoomDir.getName().matches("\\d+")) {
+                    int zoom = Integer.parseInt(zoomDir.getName());
+                    minZoom = Math.min(minZoom, zoom);
+                    maxZoom = Math.max(maxZoom, zoom);
+                }
+            }
+        }
+        if (maxZoom < 0) {
+            throw new IOException("No zoom level directories in " + tileDir);
+        }
+
+        int tileSize = -1;
+        int entries = TileArchive.getEntryCount(minZoom, maxZoom + 1);
+        long dataOffset = TileArchive.HEADER_SIZE + (long) entries * TileArchive.ENTRY_SIZE;
+        int count = 0;
+
+        File tmp = new File(archive.getPath() + ".tmp");
+        if (archive.getParentFile() != null) {
+            archive.getParentFile().mkdirs();
+        }
+
+        RandomAccessFile raf = new RandomAccessFile(tmp, "rw");
+        try {
+            raf.setLength(0);
+            raf.seek(dataOffset);
+
+            int entry = 0;
+            for (int zoom = minZoom; zoom <= maxZoom; zoom++) {
+                int tiles = 1 << zoom;
+                for (int x = 0; x < tiles; x++) {
+                    for (int y = 0; y < tiles; y++, entry++) {
+                        File png = new File(tileDir, zoom + File.separator + x + File.separator + y + ".png");
+                        if (!png.isFile()) {
+                            continue;
+                        }
+
+                        long offset = raf.getFilePointer();
+                        int format;
+                        int length;
+                        if (zoom <= maxRawZoom) {
+                            BufferedImage tile = toArgb(ImageIO.read(png));
+                            tileSize = checkTileSize(tileSize, tile.getWidth(), png);
+                            int[] pixels = tile.getRGB(0, 0, tileSize, tileSize, null, 0, tileSize);
+                            byte[] bytes = new byte[pixels.length * 4];
+                            for (int i = 0; i < pixels.length; i++) {
+                                bytes[i * 4] = (byte) (pixels[i] >>> 24);
+                                bytes[i * 4 + 1] = (byte) (pixels[i] >>> 16);
+                                bytes[i * 4 + 2] = (byte) (pixels[i] >>> 8);
+                                bytes[i * 4 + 3] = (byte) pixels[i];
+                            }
+                            raf.write(bytes);
+                            format = TileArchive.FORMAT_ARGB;
+                            length = bytes.length;
+                        } else {
+                            byte[] bytes = Files.readAllBytes(png.toPath());
+                            if (tileSize < 0) {
+                                tileSize = checkTileSize(tileSize, ImageIO.read(png).getWidth(), png);
+                            }
+                            raf.write(bytes);
+                            format = TileArchive.FORMAT_PNG;
+                            length = bytes.length;
+                        }
+
+                        if (raf.getFilePointer() > Integer.MAX_VALUE) {
+                            throw new IOException("Tile archive larger than 2 GB");
+                        }
+
+                        long end = raf.getFilePointer();
+                        raf.seek(TileArchive.HEADER_SIZE + (long) entry * TileArchive.ENTRY_SIZE);
+                        raf.writeLong(offset);
+                        raf.writeInt(length);
+                        raf.writeInt(format);
+                        raf.seek(end);
+                        count++;
+                    }
+                }
+            }
+
+            raf.seek(0);
+            raf.writeInt(TileArchive.MAGIC);
+            raf.writeInt(TileArchive.FORMAT_VERSION);
+            raf.writeInt(minZoom);
+            raf.writeInt(maxZoom);
+            raf.writeInt(tileSize);
+            raf.writeInt(entries);
+        } finally {
+            raf.close();
+        }
+
+        // the readers see the old archive or the new one, never none
+        Files.move(tmp.toPath(), archive.toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        VBASLogger.logDebug("#tiles=" + count + ", zoom=" + minZoom + "-" + maxZoom
+                + ", size=" + archive.length() / 1024 + " KB"
+                + ", t=" + (System.nanoTime() - startTime) / 1000000 + " ms");
+        return count;
+    }
+
+    private static int checkTileSize(int tileSize, int width, File png) throws IOException {
+        if (tileSize >= 0 && tileSize != width) {
+            throw new IOException("Tile size " + width + " of " + png + " differs from " + tileSize);
+        }
+        return width;
+    }
+
+    private static BufferedImage toArgb(BufferedImage img) {
+        if (img.getType() == BufferedImage.TYPE_INT_ARGB) {
+            return img;
+        }
+        BufferedImage argb = new BufferedImage(img.getWidth(), img.getHeight(), BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2 = argb.createGraphics();
+        g2.drawImage(img, 0, 0, null);
+        g2.dispose();
+        return argb;
+    }
+}
@@ -0,0 +1,186 @@
+package uk.ac.isc.seisdata;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Paint;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+/**
+ * The glyph sprites against the Java2D shapes they replace: the same pixels,
+ * and the throughput of drawing 10k, 100k and 1M seismicity dots with
+ * fillOval, with drawImage of the sprite and with the raster copy. The
+ * throughput is only measured with -Dvbas.benchmark=true (ant test
+ * -Dtest-unit-sys-prop.vbas.benchmark=true).
+ */
+public class GlyphSpriteBenchmarkTest {
+
+    private static final int[] POINT_COUNTS = {10000, 100000, 1000000};
+    private static final int MAP_SIZE = 800;
+    private static final int DOT_SIZE = 10;
+
+    @Test
+    public void TestSameAsShapes() {
+        Paint[] paints = ColorUtils.createSeismicityPaintArray3();
+        Random random = new Random(1);
+
+        for (int shape = GlyphSprite.CIRCLE; shape <= GlyphSprite.DIAMOND; shape++) {
+            for (int size : new int[]{1, 4, 5, 10, 24}) {
+                BufferedImage expected = new BufferedImage(200, 200, BufferedImage.TYPE_INT_ARGB);
+                BufferedImage copied = new BufferedImage(200, 200, BufferedImage.TYPE_INT_ARGB);
+                BufferedImage blitted = new BufferedImage(200, 200, BufferedImage.TYPE_INT_ARGB);
+                Graphics2D g2 = expected.createGraphics();
+                Graphics2D blitG2 = blitted.createGraphics();
+                int[] pixels = GlyphSprite.getPixels(copied);
+
+                // some across the borders
+                for (int n = 0; n < 500; n++) {
+                    int x = random.nextInt(240) - 20;
+                    int y = random.nextInt(240) - 20;
+                    Color colour = (Color) paints[n % paints.length];
+                    drawShape(g2, colour, shape, x, y, size);
+                    GlyphSprite sprite = GlyphSprite.getSprite(colour, size, shape);
+                    sprite.draw(pixels, copied.getWidth(), copied.getHeight(), x, y);
+                    sprite.draw(blitG2, x, y);
+                }
+
+                String what = "shape " + shape + ", size " + size;
+                assertSamePixels(what, expected, copied);
+                assertSamePixels(what, expected, blitted);
+            }
+        }
+    }
+
+    @Test
+    public void TestTranslucent() {
+        Color colour = ColorUtils.createSeismicityPaintArray3Translucent()[2];
+        BufferedImage expected = new BufferedImage(100, 100, BufferedImage.TYPE_INT_ARGB);
+        BufferedImage copied = new BufferedImage(100, 100, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2 = expected.createGraphics();
+        GlyphSprite sprite = GlyphSprite.getSprite(colour, DOT_SIZE, GlyphSprite.CIRCLE);
+        for (int n = 0; n < 3; n++) {
+            g2.setPaint(colour);
+            g2.fillOval(40 + n * 3, 40, DOT_SIZE, DOT_SIZE);
+            sprite.draw(copied, 40 + n * 3, 40);
+        }
+
+        // the blending can round differently from Java2D
+        for (int j = 0; j < 100; j++) {
+            for (int i = 0; i < 100; i++) {
+                int e = expected.getRGB(i, j);
+                int c = copied.getRGB(i, j);
+                for (int shift = 0; shift < 32; shift += 8) {
+                    Assert.assertEquals(i + "," + j, (e >>> shift) & 0xFF, (c >>> shift) & 0xFF, 2);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void TestManyPoints() {
+        Paint[] paints = ColorUtils.createSeismicityPaintArray3();
+        GlyphSprite[] sprites = ColorUtils.createSprites(paints, DOT_SIZE, GlyphSprite.CIRCLE);
+        run(createPoints(POINT_COUNTS[0]), paints, sprites);
+    }
+
+    @Test
+    public void TestThroughput() {
+        Assume.assumeTrue(Boolean.getBoolean("vbas.benchmark"));
+
+        Paint[] paints = ColorUtils.createSeismicityPaintArray3();
+        GlyphSprite[] sprites = ColorUtils.createSprites(paints, DOT_SIZE, GlyphSprite.CIRCLE);
+
+        // warm up
+        run(createPoints(100000), paints, sprites);
+
+        System.out.println("#Points, fillOval (ms), drawImage (ms), raster copy (ms), raster copy (points/s)");
+        for (int count : POINT_COUNTS) {
+            int[][] points = createPoints(count);
+            long[] times = run(points, paints, sprites);
+            System.out.println(count
+                    + ", " + times[0] / 1000000
+                    + ", " + times[1] / 1000000
+                    + ", " + times[2] / 1000000
+                    + ", " + String.format("%.0f", count / (times[2] / 1e9)));
+        }
+    }
+
+    // fillOval, drawImage, raster copy (ns)
+    private static long[] run(int[][] points, Paint[] paints, GlyphSprite[] sprites) {
+        long[] times = new long[3];
+        BufferedImage expected = new BufferedImage(MAP_SIZE, MAP_SIZE, BufferedImage.TYPE_INT_ARGB);
+        BufferedImage blitted = new BufferedImage(MAP_SIZE, MAP_SIZE, BufferedImage.TYPE_INT_ARGB);
+        BufferedImage copied = new BufferedImage(MAP_SIZE, MAP_SIZE, BufferedImage.TYPE_INT_ARGB);
+
+        long startTime = System.nanoTime();
+        Graphics2D g2 = expected.createGraphics();
+        for (int[] p : points) {
+            g2.setPaint(paints[p[2]]);
+            g2.fillOval(p[0], p[1], DOT_SIZE, DOT_SIZE);
+        }
+        g2.dispose();
+        times[0] = System.nanoTime() - startTime;
+
+        startTime = System.nanoTime();
+        g2 = blitted.createGraphics();
+        for (int[] p : points) {
+            sprites[p[2]].draw(g2, p[0], p[1]);
+        }
+        g2.dispose();
+        times[1] = System.nanoTime() - startTime;
+
+        startTime = System.nanoTime();
+        int[] pixels = GlyphSprite.getPixels(copied);
+        for (int[] p : points) {
+            sprites[p[2]].draw(pixels, MAP_SIZE, MAP_SIZE, p[0], p[1]);
+        }
+        times[2] = System.nanoTime() - startTime;
+
+        assertSamePixels("#points " + points.length, expected, copied);
+        assertSamePixels("#points " + points.length, expected, blitted);
+        return times;
+    }
+
+    private static int[][] createPoints(int count) {
+        Random random = new Random(count);
+        int[][] points = new int[count][];
+        for (int i = 0; i < count; i++) {
+            points[i] = new int[]{random.nextInt(MAP_SIZE + 20) - 10, random.nextInt(MAP_SIZE + 20) - 10, random.nextInt(8)};
+        }
+        return points;
+    }
+
+    // as the views draw them
+    private static void drawShape(Graphics2D g2, Color colour, int shape, int x, int y, int size) {
+        g2.setPaint(colour);
+        if (shape == GlyphSprite.SQUARE) {
+            g2.setStroke(new BasicStroke(2));
+            g2.drawRect(x, y, size, size);
+        } else if (shape == GlyphSprite.DIAMOND) {
+            int half = size / 2;
+            g2.setStroke(new BasicStroke(2));
+            g2.drawLine(x + half, y, x, y + half);
+            g2.drawLine(x, y + half, x + half, y + size);
+            g2.drawLine(x + half, y + size, x + size, y + half);
+            g2.drawLine(x + size, y + half, x + half, y);
+        } else {
+            g2.fillOval(x, y, size, size);
+        }
+    }
+
+    private static void assertSamePixels(String what, BufferedImage expected, BufferedImage actual) {
+        for (int j = 0; j < expected.getHeight(); j++) {
+            for (int i = 0; i < expected.getWidth(); i++) {
+                if (expected.getRGB(i, j) != actual.getRGB(i, j)) {
+                    Assert.fail(what + ": pixel " + i + "," + j + " "
+                            + Integer.toHexString(expected.getRGB(i, j)) + " != "
+                            + Integer.toHexString(actual.getRGB(i, j)));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,347 @@
+package uk.ac.isc.seisdatainterface;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.postgresql.PGStatement;
+import uk.ac.isc.seisdata.VBASLogger;
+
+/**
+ * A small JDBC connection pool for one database user (schema). At most
+ * maxSize connections are borrowed at the same time, a borrowed connection
+ * which was idle for too long is validated, and a broken one is replaced with
+ * a new connection so that a dropped connection does not kill the session.
+ * The statements of the named queries are prepared once per connection and
+ * kept open with it.
+ */
+public class ConnectionPool {
+
+    private final String name;
+    private final String url;
+    private final String user;
+    private final String password;
+    private final int maxSize;
+
+    // wait for a free connection before giving up
+    private final long borrowTimeoutMs;
+    // validate a connection before handing it out, if idle for longer than this
+    private final long validationIntervalMs;
+    private static final int VALIDATION_TIMEOUT_S = 5;
+
+    private final Semaphore permits;
+    private final LinkedBlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<PooledConnection>();
+
+    // prepared statements of each connection, by query name
+    private final ConcurrentHashMap<Connection, HashMap<String, PreparedStatement>> statements
+            = new ConcurrentHashMap<Connection, HashMap<String, PreparedStatement>>();
+    // use a server side prepared statement from the first execution
+    private static final int PREPARE_THRESHOLD = 1;
+
+    // statistics
+    private final AtomicInteger active = new AtomicInteger(0);
+    private final AtomicLong borrowCount = new AtomicLong(0);
+    private final AtomicLong totalBorrowWait = new AtomicLong(0);
+    private final AtomicLong maxBorrowWait = new AtomicLong(0);
+    private final AtomicLong createdCount = new AtomicLong(0);
+    private final AtomicLong discardedCount = new AtomicLong(0);
+
+    private volatile boolean isClosed = false;
+
+    /*
+     * Keep the time a connection is returned to the pool.
+     */
+    private static class PooledConnection {
+
+        private final Connection con;
+        private long lastUsed;
+
+        PooledConnection(Connection con) {
+            this.con = con;
+            this.lastUsed = System.currentTimeMillis();
+        }
+    }
+
+    public ConnectionPool(String name,
+            String url,
+            String user,
+            String password,
+            int maxSize,
+            long borrowTimeoutMs,
+            long validationIntervalMs) {
+
+        this.name = name;
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.maxSize = Math.max(1, maxSize);
+        this.borrowTimeoutMs = borrowTimeoutMs;
+        this.validationIntervalMs = validationIntervalMs;
+        this.permits = new Semaphore(this.maxSize, true);
+    }
+
+    /**
+     * Open a connection in advance, fails if the database can not be reached.
+     *
+     * @throws SQLException
+     */
+    public void prefill() throws SQLException {
+        if (idle.isEmpty() && active.get() == 0) {
+            idle.offerFirst(new PooledConnection(createConnection()));
+        }
+    }
+
+    /**
+     * Borrow a connection, must be given back with release().
+     *
+     * @return a validated connection
+     * @throws SQLException when no connection is free in time or the database
+     * can not be reached
+     */
+    public Connection getConnection() throws SQLException {
+
+        if (isClosed) {
+            throw new SQLException("Connection pool " + name + " is closed.");
+        }
+
+        long startTime = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(borrowTimeoutMs, TimeUnit.MILLISECONDS)) {
+                throw new SQLException("Timeout (" + borrowTimeoutMs + " ms) waiting for a connection from pool "
+                        + name + ", " + getStatistics());
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted waiting for a connection from pool " + name);
+        }
+
+        long wait = System.nanoTime() - startTime;
+        borrowCount.incrementAndGet();
+        totalBorrowWait.addAndGet(wait);
+        long max = maxBorrowWait.get();
+        while (wait > max && !maxBorrowWait.compareAndSet(max, wait)) {
+            max = maxBorrowWait.get();
+        }
+
+        try {
+            Connection con = null;
+            PooledConnection pc;
+            while (con == null && (pc = idle.pollFirst()) != null) {
+                if (isUsable(pc)) {
+                    con = pc.con;
+                } else {
+                    discard(pc.con);
+                }
+            }
+
+            // no valid idle connection: (re)connect
+            if (con == null) {
+                con = createConnection();
+            }
+
+            active.incrementAndGet();
+            return con;
+
+        } catch (SQLException ex) {
+            permits.release();
+            throw ex;
+        } catch (RuntimeException ex) {
+            permits.release();
+            throw ex;
+        }
+    }
+
+    /**
+     * Give back a borrowed connection. A closed connection is dropped and will
+     * be replaced when needed.
+     *
+     * @param con a connection from getConnection(), can be null
+     */
+    public void release(Connection con) {
+        if (con == null) {
+            return;
+        }
+
+        active.decrementAndGet();
+        try {
+            boolean isBroken;
+            try {
+                isBroken = con.isClosed();
+                if (!isBroken && !con.getAutoCommit()) {
+                    con.rollback();
+                    con.setAutoCommit(true);
+                }
+            } catch (SQLException ex) {
+                isBroken = true;
+            }
+
+            if (isBroken || isClosed) {
+                discard(con);
+            } else {
+                idle.offerFirst(new PooledConnection(con));
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Get the statement of a named query on a borrowed connection. It is
+     * prepared on first use and reused afterwards; do not close it, it is
+     * closed with the connection.
+     *
+     * @param con a connection from getConnection()
+     * @param query
+     * @return the prepared statement, parameters to be set
+     * @throws SQLException
+     */
+    public PreparedStatement prepare(Connection con, NamedQuery query) throws SQLException {
+
+        long startTime = System.nanoTime();
+
+        // a connection is used by one thread at a time, no need to lock its map
+        HashMap<String, PreparedStatement> prepared = statements.get(con);
+        if (prepared == null) {
+            prepared = new HashMap<String, PreparedStatement>();
+            statements.put(con, prepared);
+        }
+
+        PreparedStatement ps = prepared.get(query.getName());
+        if (ps != null && !ps.isClosed()) {
+            ps.clearParameters();
+            query.recordPrepare(System.nanoTime() - startTime, true);
+            return ps;
+        }
+
+        ps = con.prepareStatement(query.getSql());
+        if (ps.isWrapperFor(PGStatement.class)) {
+            ps.unwrap(PGStatement.class).setPrepareThreshold(PREPARE_THRESHOLD);
+        }
+        if (query.getFetchSize() > 0) {
+            ps.setFetchSize(query.getFetchSize());
+        }
+        prepared.put(query.getName(), ps);
+
+        query.recordPrepare(System.nanoTime() - startTime, false);
+        return ps;
+    }
+
+    /**
+     * Close all the idle connections, the borrowed ones are closed when
+     * released.
+     */
+    public void close() {
+        isClosed = true;
+        PooledConnection pc;
+        while ((pc = idle.pollFirst()) != null) {
+            discard(pc.con);
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public int getActive() {
+        return active.get();
+    }
+
+    public int getIdle() {
+        return idle.size();
+    }
+
+    public long getBorrowCount() {
+        return borrowCount.get();
+    }
+
+    /**
+     * @return average time (ms) waited for a free connection
+     */
+    public double getAverageBorrowWait() {
+        long count = borrowCount.get();
+        return (count == 0) ? 0 : totalBorrowWait.get() / 1000000.0 / count;
+    }
+
+    /**
+     * @return longest time (ms) waited for a free connection
+     */
+    public double getMaxBorrowWait() {
+        return maxBorrowWait.get() / 1000000.0;
+    }
+
+    public long getCreatedCount() {
+        return createdCount.get();
+    }
+
+    public long getDiscardedCount() {
+        return discardedCount.get();
+    }
+
+    /**
+     * @return number of statements kept open on the pooled connections
+     */
+    public int getPreparedCount() {
+        int count = 0;
+        for (HashMap<String, PreparedStatement> prepared : statements.values()) {
+            count += prepared.size();
+        }
+        return count;
+    }
+
+    public String getStatistics() {
+        return name
+                + ": size=" + maxSize
+                + ", active=" + getActive()
+                + ", idle=" + getIdle()
+                + ", borrowed=" + getBorrowCount()
+                + ", avgWait=" + String.format("%.1f", getAverageBorrowWait()) + " ms"
+                + ", maxWait=" + String.format("%.1f", getMaxBorrowWait()) + " ms"
+                + ", prepared=" + getPreparedCount()
+                + ", created=" + getCreatedCount()
+                + ", discarded=" + getDiscardedCount();
+    }
+
+    private boolean isUsable(PooledConnection pc) {
+        try {
+            if (pc.con.isClosed()) {
+                return false;
+            }
+            if (System.currentTimeMillis() - pc.lastUsed > validationIntervalMs) {
+                return pc.con.isValid(VALIDATION_TIMEOUT_S);
+            }
+            return true;
+        } catch (SQLException ex) {
+            return false;
+        }
+    }
+
+    private Connection createConnection() throws SQLException {
+        Connection con = DriverManager.getConnection(url, user, password);
+        createdCount.incrementAndGet();
+        VBASLogger.logDebug("New database connection, " + getStatistics());
+        return con;
+    }
+
+    private void discard(Connection con) {
+        discardedCount.incrementAndGet();
+        // closed with the connection
+        statements.remove(con);
+        try {
+            con.close();
+        } catch (SQLException ex) {
+            // already broken
+        }
+        VBASLogger.logDebug("Dropped database connection, " + getStatistics());
+    }
+}
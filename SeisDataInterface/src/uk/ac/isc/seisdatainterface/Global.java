@@ -1,6 +1,12 @@
 package uk.ac.isc.seisdatainterface;
 
-import java.util.TreeMap;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.swing.SwingUtilities;
 import uk.ac.isc.seisdata.AssessedCommand;
 import uk.ac.isc.seisdata.AssessedCommandList;
 import uk.ac.isc.seisdata.BlockTableModel;
@@ -8,6 +14,7 @@ import uk.ac.isc.seisdata.Command;
 import uk.ac.isc.seisdata.CommandList;
 import uk.ac.isc.seisdata.Hypocentre;
 import uk.ac.isc.seisdata.HypocentresList;
+import uk.ac.isc.seisdata.Phase;
 import uk.ac.isc.seisdata.PhasesList;
 import uk.ac.isc.seisdata.SeisEvent;
 import uk.ac.isc.seisdata.SeisEventsList;
@@ -48,11 +55,39 @@ public class Global {
     private static final Command commandEvent = new Command();
     private static final AssessedCommand assessedComamndEvent = new AssessedCommand();
 
+    /*
+     * Load the locator messages, nearby events and duplicates of the whole block
+     * with a few set-based queries, instead of three queries per SeisEvent.
+     */
+    private static boolean isBulkLoading = true;
+
+    /*
+     * Asynchronous loading of the selected SeisEvent data: the generation is
+     * incremented on each new selection so that stale results are dropped.
+     */
+    private static final int LOAD_THREADS = 4;
+    private static final ExecutorService loadExecutor = Executors.newFixedThreadPool(LOAD_THREADS,
+            new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger(0);
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "SeisEventDataLoader-" + count.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+    private static final AtomicInteger loadGeneration = new AtomicInteger(0);
+    private static final ArrayList<Future<?>> pendingLoads = new ArrayList<Future<?>>();
+
     
     public static void loadSeisEventsList() {
   
         
-        VBASLogger.logDebug("Loading all SeisEvents.");
+        VBASLogger.logDebug("Loading all SeisEvents, isBulkLoading=" + isBulkLoading);
+        // the prefetched SeisEvent data may be stale now
+        SeisEventDataCache.invalidateAll();
+
         BlockTableModel blockTableModel = new BlockTableModel();
 
         //load the block table from the database
@@ -63,7 +98,7 @@ public class Global {
         SeisDataDAO.retrieveBlockReviewedEventNumber(blockTableModel.getTaskBlocks());
         
         // add data into evets list : retrieve the events from the database
-        SeisDataDAO.retrieveAllEvents(seisEventsList.getEvents());
+        SeisDataDAO.retrieveAllEvents(seisEventsList.getEvents(), isBulkLoading);
         SeisDataDAO.retrieveEventsMagnitude(seisEventsList.getEvents());
         SeisDataDAO.retrieveAllPhaseNumber(seisEventsList.getEvents());                         
         SeisDataDAO.retrieveAllRegionName(seisEventsList.getEvents());
@@ -83,39 +118,19 @@ public class Global {
         VBASLogger.logDebug("Load list of Hypocentre, Phase, Commmands, and AssessedCommands for SeisEvent: "
                 + selectedSeisEvent.getEvid());
 
+        // any asynchronous load still running is stale now
+        cancelPendingLoads();
+
         /*
          * Hypocentre
          */
-        SeisDataDAO.retrieveHypos(selectedSeisEvent.getEvid(), hypocentresList.getHypocentres(), false);
-        SeisDataDAO.retrieveHyposMagnitude(hypocentresList.getHypocentres(), false);
-        // as I remove all the hypos when clicking an event to retrieve the hypos, 
-        // so need reset prime hypo every time
-        // TODO: Saiful, What is this?
-        for (Hypocentre hypo : hypocentresList.getHypocentres()) {
-            if (hypo.getIsPrime() == true) {
-                selectedSeisEvent.setPrimeHypo(hypo);
-            }
-        }
+        loadHypocentres(selectedSeisEvent.getEvid(), hypocentresList.getHypocentres());
+        setPrimeHypocentre();
 
         /*
          * Phase
          */
-        TreeMap<String, String> stations = new TreeMap<String, String>();
-        SeisDataDAO.retrieveAllPhases(selectedSeisEvent.getEvid(), phasesList.getPhases(), false);
-        SeisDataDAO.retrieveAllPhasesAmpMag(selectedSeisEvent.getEvid(),
-                phasesList.getPhases(), false);
-        SeisDataDAO.retrieveAllStationsWithRegions(stations, false);
-        // load the correspondent map into the stataions
-        // put the region name into the pahseList
-        for (int i = 0; i < phasesList.getPhases().size(); i++) {
-            phasesList.getPhases()
-                    .get(i)
-                    .setRegionName(stations
-                            .get(phasesList
-                                    .getPhases()
-                                    .get(i)
-                                    .getReportStation()));
-        }
+        loadPhases(selectedSeisEvent.getEvid(), phasesList.getPhases());
 
         /*
          * Commands
@@ -136,6 +151,217 @@ public class Global {
         
     }
 
+    /**
+     * Load the Hypocentres, Phases, Commands and AssessedCommands of the
+     * selected SeisEvent concurrently, off the EDT. Must be called on the EDT.
+     * Once all of them are loaded, the lists are replaced together on the EDT
+     * and the selected SeisEvent is fired, as loadSelectedSeisEventData() and
+     * a fire of the selected SeisEvent did. A load still running for a
+     * previously selected SeisEvent is cancelled and its results are dropped.
+     */
+    public static void loadSelectedSeisEventDataAsync() {
+
+        final Integer evid = selectedSeisEvent.getEvid();
+        final long startTime = System.nanoTime();
+
+        cancelPendingLoads();
+        final int generation = loadGeneration.get();
+        final LoadedData data = new LoadedData();
+
+        VBASLogger.logDebug("Load (async) list of Hypocentre, Phase, Commmands, and AssessedCommands for SeisEvent: "
+                + evid);
+
+        /*
+         * Hypocentre
+         */
+        submitLoad(new Runnable() {
+            @Override
+            public void run() {
+                ArrayList<Hypocentre> hypos = SeisEventDataCache.takeHypocentres(evid);
+                if (hypos == null) {
+                    hypos = new ArrayList<Hypocentre>();
+                    loadHypocentres(evid, hypos);
+                }
+                data.hypos = hypos;
+            }
+        }, generation, data, startTime);
+
+        /*
+         * Phase
+         */
+        submitLoad(new Runnable() {
+            @Override
+            public void run() {
+                ArrayList<Phase> phases = SeisEventDataCache.takePhases(evid);
+                if (phases == null) {
+                    phases = new ArrayList<Phase>();
+                    loadPhases(evid, phases);
+                }
+                data.phases = phases;
+            }
+        }, generation, data, startTime);
+
+        /*
+         * Commands
+         */
+        submitLoad(new Runnable() {
+            @Override
+            public void run() {
+                ArrayList<Command> commands = new ArrayList<Command>();
+                SeisDataDAO.readCommandTable(evid, commands);
+                data.commands = commands;
+            }
+        }, generation, data, startTime);
+
+        /*
+         * AssessedCommand 
+         */
+        submitLoad(new Runnable() {
+            @Override
+            public void run() {
+                ArrayList<AssessedCommand> assessedCommands = new ArrayList<AssessedCommand>();
+                SeisDataDAO.readAssessedCommandTable(evid, assessedCommands);
+                data.assessedCommands = assessedCommands;
+            }
+        }, generation, data, startTime);
+    }
+
+    static void loadHypocentres(Integer evid, ArrayList<Hypocentre> hypos) {
+        SeisDataDAO.retrieveHypos(evid, hypos, false);
+        SeisDataDAO.retrieveHyposMagnitude(hypos, false);
+    }
+
+    static void loadPhases(Integer evid, ArrayList<Phase> phases) {
+        SeisDataDAO.retrieveAllPhases(evid, phases, false);
+        SeisDataDAO.retrieveAllPhasesAmpMag(evid, phases, false);
+        // put the region name into the pahseList
+        setRegionNames(phases);
+    }
+
+    /**
+     * Set the region name of each phase's station from the station reference
+     * cache.
+     *
+     * @param phases
+     */
+    public static void setRegionNames(ArrayList<Phase> phases) {
+        StationReferenceCache stations = StationReferenceCache.getInstance();
+        for (Phase phase : phases) {
+            phase.setRegionName(stations.getRegionName(phase.getReportStation()));
+        }
+    }
+
+    // as I remove all the hypos when clicking an event to retrieve the hypos, 
+    // so need reset prime hypo every time
+    private static void setPrimeHypocentre() {
+        for (Hypocentre hypo : hypocentresList.getHypocentres()) {
+            if (hypo.getIsPrime() == true) {
+                selectedSeisEvent.setPrimeHypo(hypo);
+            }
+        }
+    }
+
+    /*
+     * Run one of the loads of the selected SeisEvent. A load that fails leaves
+     * its list empty, and the SeisEvent is published with the others.
+     */
+    private static void submitLoad(final Runnable load,
+            final int generation,
+            final LoadedData data,
+            final long startTime) {
+
+        Future<?> future = loadExecutor.submit(new Runnable() {
+            @Override
+            public void run() {
+                // skip, if another SeisEvent was selected while waiting
+                if (generation != loadGeneration.get()) {
+                    return;
+                }
+                try {
+                    load.run();
+                } catch (RuntimeException ex) {
+                    VBASLogger.logSevere("Error loading the data of the selected SeisEvent: " + ex);
+                    ex.printStackTrace();
+                } finally {
+                    loaded(generation, data, startTime);
+                }
+            }
+        });
+
+        synchronized (pendingLoads) {
+            pendingLoads.add(future);
+        }
+    }
+
+    /*
+     * The lists of the selected SeisEvent, loaded on the loader threads.
+     */
+    private static final class LoadedData {
+
+        private final AtomicInteger remaining = new AtomicInteger(4);
+        // empty if the load failed
+        private volatile ArrayList<Hypocentre> hypos = new ArrayList<Hypocentre>();
+        private volatile ArrayList<Phase> phases = new ArrayList<Phase>();
+        private volatile ArrayList<Command> commands = new ArrayList<Command>();
+        private volatile ArrayList<AssessedCommand> assessedCommands = new ArrayList<AssessedCommand>();
+    }
+
+    /*
+     * One of the lists is loaded. Once all are, replace them on the EDT in a
+     * single step and fire the selected SeisEvent, unless another SeisEvent
+     * was selected meanwhile.
+     */
+    private static void loaded(final int generation, final LoadedData data, final long startTime) {
+        if (data.remaining.decrementAndGet() != 0) {
+            return;
+        }
+
+        SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                if (generation != loadGeneration.get()) {
+                    return;
+                }
+                synchronized (pendingLoads) {
+                    pendingLoads.clear();
+                }
+
+                hypocentresList.getHypocentres().clear();
+                hypocentresList.getHypocentres().addAll(data.hypos);
+                setPrimeHypocentre();
+                phasesList.getPhases().clear();
+                phasesList.getPhases().addAll(data.phases);
+                commandList.getCommandList().clear();
+                commandList.getCommandList().addAll(data.commands);
+                assessedCommandList.getAssessedCommandList().clear();
+                assessedCommandList.getAssessedCommandList().addAll(data.assessedCommands);
+
+                VBASLogger.logDebug("Selected SeisEvent=" + selectedSeisEvent.getEvid()
+                        + ", #Hypocentres:" + hypocentresList.getHypocentres().size()
+                        + ", #Phases:" + phasesList.getPhases().size()
+                        + ", #Commands:" + commandList.getCommandList().size()
+                        + ", #AssessedCommands:" + assessedCommandList.getAssessedCommandList().size()
+                        + ", loaded in " + (System.nanoTime() - startTime) / 1000000 + " ms"
+                        + ", " + SeisEventDataCache.getStatistics());
+
+                selectedSeisEvent.fireSeisDataChanged();
+
+                // warm up the SeisEvents next to the selected one
+                SeisEventDataCache.prefetchNeighbours(seisEventsList.getEvents(), selectedSeisEvent.getEvid());
+            }
+        });
+    }
+
+    private static void cancelPendingLoads() {
+        loadGeneration.incrementAndGet();
+        synchronized (pendingLoads) {
+            for (Future<?> future : pendingLoads) {
+                future.cancel(true);
+            }
+            pendingLoads.clear();
+        }
+    }
+
     public static SeisEvent getSelectedSeisEvent() {
         // if the SeisEvents are not loaded yet.
         if (selectedSeisEvent.getEvid() == null) {
@@ -184,6 +410,14 @@ public class Global {
         return commandList;
     }
 
+    public static boolean isBulkLoading() {
+        return isBulkLoading;
+    }
+
+    public static void setBulkLoading(boolean isBulkLoading) {
+        Global.isBulkLoading = isBulkLoading;
+    }
+
     /*
      * Events related
      */
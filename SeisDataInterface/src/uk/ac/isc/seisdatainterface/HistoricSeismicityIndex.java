@@ -0,0 +1,435 @@
+package uk.ac.isc.seisdatainterface;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import uk.ac.isc.seisdata.HistoricEvent;
+import uk.ac.isc.seisdata.HistoricSeismicity;
+import uk.ac.isc.seisdata.VBASLogger;
+
+/**
+ * Local, memory mapped spatial index of the historical_seismicity table. The
+ * catalogue does not change, so instead of querying the database on each
+ * overview redraw, the events are written once to a file, bucketed into 1x1
+ * degree cells with the events of each cell sorted by depth. A bounding box
+ * query merges the depth sorted runs of the cells it covers, so the result is
+ * in the same depth order as the database query.
+ *
+ * The file records the row count, max evid and depth sum of the table it was
+ * built from; it is checked once per session. A missing or stale index is
+ * (re)built in the background, and SeisDataDAO queries the database meanwhile.
+ *
+ * File layout (big endian): header, cell offsets (int[CELLS + 1], in events),
+ * events (int evid, int depth, float lat, float lon) ordered by cell, depth.
+ */
+public final class HistoricSeismicityIndex {
+
+    private static final String FILE_NAME = "historical_seismicity.idx";
+    private static final int MAGIC = 0x56424853;   // "VBHS"
+    private static final int FORMAT_VERSION = 1;
+
+    private static final int LAT_CELLS = 180;
+    private static final int LON_CELLS = 360;
+    private static final int CELLS = LAT_CELLS * LON_CELLS;
+
+    // magic, format version, #events, max evid, depth sum, lat cells, lon cells
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 8 + 4 + 4;
+    private static final int OFFSETS_SIZE = (CELLS + 1) * 4;
+    private static final int RECORD_SIZE = 16;
+
+    private static HistoricSeismicityIndex instance = null;
+    private static boolean isChecked = false;
+    private static volatile boolean isBuilding = false;
+
+    private final File file;
+    private final MappedByteBuffer buffer;
+    private final int size;
+
+    private HistoricSeismicityIndex(File file, MappedByteBuffer buffer, int size) {
+        this.file = file;
+        this.buffer = buffer;
+        this.size = size;
+    }
+
+    /**
+     * @return the index, or null if it is missing, stale or being built; then
+     * a build is started in the background
+     */
+    public static synchronized HistoricSeismicityIndex getInstance() {
+        if (isBuilding) {
+            return null;
+        }
+        if (!isChecked) {
+            isChecked = true;
+            instance = open(getFile());
+            if (instance == null) {
+                buildInBackground();
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Drop the loaded index and rebuild it from the database in the
+     * background.
+     */
+    public static synchronized void rebuild() {
+        instance = null;
+        isChecked = true;
+        buildInBackground();
+    }
+
+    public static File getFile() {
+        return new File(SeisDataDAO.getCacheDir(), FILE_NAME);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return row count, max evid and depth sum of the table the index was
+     * built from
+     */
+    public long[] getSignature() {
+        return new long[]{buffer.getLong(8), buffer.getLong(16), buffer.getLong(24)};
+    }
+
+    /**
+     * Signature of the historic catalogue, as checked against the index:
+     * row count, max evid and depth sum. It is read from the index when it
+     * is loaded, else from the database.
+     *
+     * @return the signature, null if the database cannot be read
+     */
+    public static long[] getCatalogueSignature() {
+        HistoricSeismicityIndex index = getInstance();
+        if (index != null) {
+            return index.getSignature();
+        }
+        return SeisDataDAO.retrieveHistSeismicitySignature();
+    }
+
+    /**
+     * Fill the store with the events of the area, ordered by depth; the
+     * longitude can be out of [-180, 180] as in SeisDataDAO.retrieveHistEvents.
+     */
+    public void query(HistoricSeismicity seismicity, double latN, double latS, double lonW, double lonE) {
+
+        seismicity.clear();
+        long startTime = System.nanoTime();
+
+        ByteBuffer buf = buffer.duplicate();
+        double[] lonRanges = SeisDataDAO.getHistLonRanges(lonW, lonE);
+
+        // runs of the cells in the area, [start, end) in events
+        int[] runStart = new int[64];
+        int[] runEnd = new int[64];
+        int runs = 0;
+
+        // columns of the two ranges, each cell once even if the ranges overlap
+        boolean[] cols = new boolean[LON_CELLS];
+        for (int r = 0; r < lonRanges.length; r += 2) {
+            for (int col = lonCol(lonRanges[r]); col <= lonCol(lonRanges[r + 1]); col++) {
+                cols[col] = true;
+            }
+        }
+
+        for (int row = latRow(latS); row <= latRow(latN); row++) {
+            for (int col = 0; col < LON_CELLS; col++) {
+                if (!cols[col]) {
+                    continue;
+                }
+                int cell = row * LON_CELLS + col;
+                int start = buf.getInt(HEADER_SIZE + cell * 4);
+                int end = buf.getInt(HEADER_SIZE + (cell + 1) * 4);
+                if (start < end) {
+                    if (runs == runStart.length) {
+                        runStart = Arrays.copyOf(runStart, runs * 2);
+                        runEnd = Arrays.copyOf(runEnd, runs * 2);
+                    }
+                    runStart[runs] = start;
+                    runEnd[runs] = end;
+                    runs++;
+                }
+            }
+        }
+
+        // k-way merge of the depth sorted runs, heap of run numbers by depth
+        int[] heap = new int[runs];
+        int heapSize = 0;
+        for (int k = 0; k < runs; k++) {
+            heap[heapSize++] = k;
+            siftUp(buf, heap, heapSize - 1, runStart);
+        }
+
+        while (heapSize > 0) {
+            int k = heap[0];
+            int pos = recordPosition(runStart[k]);
+
+            float lat = buf.getFloat(pos + 8);
+            float lon = buf.getFloat(pos + 12);
+            if (lat >= latS && lat <= latN
+                    && ((lon >= lonRanges[0] && lon <= lonRanges[1]) || (lon >= lonRanges[2] && lon <= lonRanges[3]))) {
+                seismicity.add(buf.getInt(pos), buf.getInt(pos + 4), lat, lon);
+            }
+
+            runStart[k]++;
+            if (runStart[k] == runEnd[k]) {
+                heap[0] = heap[--heapSize];
+            }
+            siftDown(buf, heap, heapSize, runStart);
+        }
+
+        VBASLogger.logDebug("#HistoricEvents=" + seismicity.size() + ", #cells=" + runs
+                + ", t=" + (System.nanoTime() - startTime) / 1000 + " us");
+    }
+
+    /**
+     * Same as query(), into HistoricEvent objects.
+     */
+    public void query(ArrayList<HistoricEvent> histEvents, double latN, double latS, double lonW, double lonE) {
+        HistoricSeismicity seismicity = new HistoricSeismicity();
+        query(seismicity, latN, latS, lonW, lonE);
+
+        histEvents.clear();
+        histEvents.ensureCapacity(seismicity.size());
+        for (int i = 0; i < seismicity.size(); i++) {
+            histEvents.add(new HistoricEvent(seismicity.getEvid(i), seismicity.getDepth(i),
+                    seismicity.getLat(i), seismicity.getLon(i)));
+        }
+    }
+
+    private static int recordPosition(int event) {
+        return HEADER_SIZE + OFFSETS_SIZE + event * RECORD_SIZE;
+    }
+
+    private static int depthAt(ByteBuffer buf, int event) {
+        return buf.getInt(recordPosition(event) + 4);
+    }
+
+    private static void siftUp(ByteBuffer buf, int[] heap, int i, int[] cursor) {
+        while (i > 0) {
+            int parent = (i - 1) / 2;
+            if (depthAt(buf, cursor[heap[i]]) >= depthAt(buf, cursor[heap[parent]])) {
+                break;
+            }
+            swap(heap, i, parent);
+            i = parent;
+        }
+    }
+
+    private static void siftDown(ByteBuffer buf, int[] heap, int heapSize, int[] cursor) {
+        int i = 0;
+        while (true) {
+            int smallest = i;
+            int left = 2 * i + 1;
+            int right = left + 1;
+            if (left < heapSize && depthAt(buf, cursor[heap[left]]) < depthAt(buf, cursor[heap[smallest]])) {
+                smallest = left;
+            }
+            if (right < heapSize && depthAt(buf, cursor[heap[right]]) < depthAt(buf, cursor[heap[smallest]])) {
+                smallest = right;
+            }
+            if (smallest == i) {
+                return;
+            }
+            swap(heap, i, smallest);
+            i = smallest;
+        }
+    }
+
+    private static void swap(int[] heap, int i, int j) {
+        int tmp = heap[i];
+        heap[i] = heap[j];
+        heap[j] = tmp;
+    }
+
+    private static int latRow(double lat) {
+        return Math.max(0, Math.min(LAT_CELLS - 1, (int) Math.floor(lat + 90)));
+    }
+
+    private static int lonCol(double lon) {
+        return Math.max(0, Math.min(LON_CELLS - 1, (int) Math.floor(lon + 180)));
+    }
+
+    /*
+     * Map the index file, null if missing, broken or built from another
+     * version of the table.
+     */
+    private static HistoricSeismicityIndex open(File file) {
+        if (!file.exists()) {
+            VBASLogger.logDebug("No historic seismicity index: " + file);
+            return null;
+        }
+
+        try {
+            RandomAccessFile raf = new RandomAccessFile(file, "r");
+            try {
+                FileChannel channel = raf.getChannel();
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+                if (channel.size() < HEADER_SIZE + OFFSETS_SIZE
+                        || buffer.getInt(0) != MAGIC
+                        || buffer.getInt(4) != FORMAT_VERSION
+                        || buffer.getInt(32) != LAT_CELLS
+                        || buffer.getInt(36) != LON_CELLS) {
+                    VBASLogger.logDebug("Invalid historic seismicity index: " + file);
+                    return null;
+                }
+
+                long count = buffer.getLong(8);
+                if (channel.size() != HEADER_SIZE + OFFSETS_SIZE + count * RECORD_SIZE) {
+                    VBASLogger.logDebug("Truncated historic seismicity index: " + file);
+                    return null;
+                }
+
+                long[] signature = SeisDataDAO.retrieveHistSeismicitySignature();
+                if (signature == null) {
+                    // no database: the index is all there is
+                    VBASLogger.logDebug("Historic seismicity index not verified against the database.");
+                } else if (signature[0] != count
+                        || signature[1] != buffer.getLong(16)
+                        || signature[2] != buffer.getLong(24)) {
+                    VBASLogger.logDebug("Stale historic seismicity index: " + file);
+                    return null;
+                }
+
+                VBASLogger.logDebug("Historic seismicity index: " + file + ", #events=" + count);
+                return new HistoricSeismicityIndex(file, buffer, (int) count);
+
+            } finally {
+                // the mapping stays valid after the channel is closed
+                raf.close();
+            }
+        } catch (IOException ex) {
+            VBASLogger.logSevere("Failed to open the historic seismicity index " + file + ": " + ex.toString());
+            return null;
+        }
+    }
+
+    private static void buildInBackground() {
+        if (isBuilding) {
+            return;
+        }
+        isBuilding = true;
+
+        Thread t = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                HistoricSeismicityIndex index = null;
+                try {
+                    File file = getFile();
+                    if (build(file)) {
+                        index = open(file);
+                    }
+                } finally {
+                    synchronized (HistoricSeismicityIndex.class) {
+                        instance = index;
+                        isBuilding = false;
+                    }
+                }
+            }
+        }, "HistoricSeismicityIndexBuilder");
+        t.setDaemon(true);
+        t.setPriority(Thread.MIN_PRIORITY);
+        t.start();
+    }
+
+    /**
+     * Build the index file from the historical_seismicity table.
+     *
+     * @param file written through a temporary file, replaced when complete
+     * @return true if built
+     */
+    public static boolean build(File file) {
+
+        long startTime = System.nanoTime();
+
+        long[] signature = SeisDataDAO.retrieveHistSeismicitySignature();
+        HistoricSeismicity all = new HistoricSeismicity();
+        if (signature == null || !SeisDataDAO.retrieveAllHistSeismicity(all)) {
+            return false;
+        }
+        int n = all.size();
+
+        // bucket the events by cell, the rows are ordered by depth and the
+        // bucketing is stable, so each cell is a depth sorted run
+        int[] cell = new int[n];
+        int[] offsets = new int[CELLS + 1];
+        for (int i = 0; i < n; i++) {
+            cell[i] = latRow(all.getLat(i)) * LON_CELLS + lonCol(all.getLon(i));
+            offsets[cell[i] + 1]++;
+        }
+        for (int c = 0; c < CELLS; c++) {
+            offsets[c + 1] += offsets[c];
+        }
+        int[] next = Arrays.copyOf(offsets, CELLS);
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) {
+            order[next[cell[i]]++] = i;
+        }
+
+        File dir = file.getParentFile();
+        if (dir != null && !dir.exists() && !dir.mkdirs()) {
+            VBASLogger.logSevere("Failed to create " + dir);
+            return false;
+        }
+
+        File tmp = new File(file.getPath() + ".tmp");
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 1 << 16));
+            try {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeLong(n);
+                out.writeLong(signature[1]);
+                out.writeLong(signature[2]);
+                out.writeInt(LAT_CELLS);
+                out.writeInt(LON_CELLS);
+                for (int offset : offsets) {
+                    out.writeInt(offset);
+                }
+                for (int i : order) {
+                    out.writeInt(all.getEvid(i));
+                    out.writeInt(all.getDepth(i));
+                    out.writeFloat((float) all.getLat(i));
+                    out.writeFloat((float) all.getLon(i));
+                }
+            } finally {
+                out.close();
+            }
+
+            if (file.exists() && !file.delete()) {
+                VBASLogger.logSevere("Failed to replace " + file);
+                return false;
+            }
+            if (!tmp.renameTo(file)) {
+                VBASLogger.logSevere("Failed to rename " + tmp + " to " + file);
+                return false;
+            }
+
+        } catch (IOException ex) {
+            VBASLogger.logSevere("Failed to write the historic seismicity index " + file + ": " + ex.toString());
+            tmp.delete();
+            return false;
+        }
+
+        VBASLogger.logDebug("Built historic seismicity index: " + file + ", #events=" + n
+                + ", t=" + (System.nanoTime() - startTime) / 1000000 + " ms");
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return file + ", #events=" + size;
+    }
+}
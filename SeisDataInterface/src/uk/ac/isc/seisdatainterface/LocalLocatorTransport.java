@@ -0,0 +1,69 @@
+package uk.ac.isc.seisdatainterface;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+
+/**
+ * Runs the locator on this machine, with the credentials in its environment.
+ * With a fake locator (any program reading the request from the standard
+ * input) the assess can be run on a single machine.
+ */
+public class LocalLocatorTransport implements LocatorTransport {
+
+    private final String locatorBin;
+
+    /**
+     * @param locatorBin path of iscloc, or of a fake locator
+     */
+    public LocalLocatorTransport(String locatorBin) {
+        this.locatorBin = locatorBin;
+    }
+
+    @Override
+    public String getName() {
+        return "local " + locatorBin;
+    }
+
+    @Override
+    public Process start(String pgUser, String pgPassword, String request) throws IOException {
+        ProcessBuilder pb = new ProcessBuilder(locatorBin, "-");
+        if (pgUser != null) {
+            pb.environment().put("PGUSER", pgUser);
+        }
+        if (pgPassword != null) {
+            pb.environment().put("PGPASSWORD", pgPassword);
+        }
+        Process p = pb.start();
+        writeInput(p, request);
+        return p;
+    }
+
+    /*
+     * Write the lines to the standard input of the process and close it.
+     */
+    static void writeInput(Process p, String... lines) throws IOException {
+        try {
+            writeLines(p, lines);
+        } finally {
+            p.getOutputStream().close();
+        }
+    }
+
+    /*
+     * Write the lines to the standard input of the process, left open.
+     */
+    static void writeLines(Process p, String... lines) throws IOException {
+        OutputStream out = p.getOutputStream();
+        try {
+            for (String line : lines) {
+                out.write(((line == null ? "" : line) + "\n").getBytes(Charset.forName("UTF-8")));
+            }
+            out.flush();
+        } catch (IOException e) {
+            // it ended before reading the request
+            p.destroy();
+            throw e;
+        }
+    }
+}
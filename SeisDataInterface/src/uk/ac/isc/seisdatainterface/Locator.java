@@ -1,92 +1,105 @@
 package uk.ac.isc.seisdatainterface;
 
-import java.io.BufferedReader;
-import java.io.File;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.nio.file.Path;
-import java.util.ArrayList;
-import javax.swing.JOptionPane;
+import java.util.Map;
 import uk.ac.isc.seisdata.VBASLogger;
 
+/*
+ * Runs the locator (iscloc) of a SeisEvent through a LocatorTransport, set as
+ * setenv VBAS_LOCATOR ssh (default, on VBAS_LOCATOR_HOST or beast), local or
+ * stub. A run is stopped after VBAS_LOCATOR_TIMEOUT seconds.
+ */
 public class Locator {
 
-    public static Boolean runLocator(Path dir,
-            ArrayList<String> functionArray,
-            String locatorArgStr,
-            Boolean isAssess) {
+    private static final String DEFAULT_HOST = "beast";
+    private static final long DEFAULT_TIMEOUT = 900;
 
-        String iscLocOut = dir + File.separator + "iscloc.out";
+    private static volatile LocatorTransport transport = createTransport(System.getenv());
+    private static volatile long timeoutMillis = getTimeout(System.getenv());
 
-        VBASLogger.logDebug("assessDir= " + dir);
-        VBASLogger.logDebug("functionArray= " + functionArray.toString());
-        VBASLogger.logDebug("locatorCommandStr= " + locatorArgStr);
-        VBASLogger.logDebug("iscLocOut= " + iscLocOut);
+    /*
+     * Start the locator of the SeisEvent, writing iscloc.out in dir. The
+     * caller waits for it (waitForLocator()) or cancels it.
+     */
+    public static LocatorRun startLocator(int evid,
+            Path dir,
+            String locatorArgStr,
+            Boolean isAssess) throws IOException {
 
-        /* Run SQL functions */
-        Boolean ret = SeisDataDAO.processAssessOrCommitData(
-                Global.getSelectedSeisEvent().getEvid(),
-                functionArray,
-                isAssess);
+        LocatorRun run = new LocatorRun(transport,
+                evid,
+                dir,
+                isAssess ? SeisDataDAO.getAssessUser() : SeisDataDAO.getPgUser(),
+                isAssess ? SeisDataDAO.getAssessPassword() : SeisDataDAO.getPgPassword(),
+                locatorArgStr);
+        run.start();
+        return run;
+    }
 
-        if (ret == false) {
+    /*
+     * Wait for the locator, stopped after the timeout.
+     *
+     * @return false if cancelled
+     * @throws IOException with the exit code, error lines and standard error
+     * of a failed locator
+     */
+    public static Boolean waitForLocator(LocatorRun run) throws IOException {
+        try {
+            run.waitFor(timeoutMillis);
+        } catch (InterruptedException e) {
+            run.cancel();
+            Thread.currentThread().interrupt();
             return false;
         }
 
-        if (!new File(dir.toString()).exists()) {
-            boolean success = (new File(dir.toString())).mkdirs();
-            if (!success) {
-                String message = "Error creating the directory: "
-                        + dir
-                        + "\nReport to the system admin.";
-                VBASLogger.logSevere(message);
-                JOptionPane.showMessageDialog(null, message, "Error", JOptionPane.ERROR_MESSAGE);
+        switch (run.getState()) {
+            case LocatorRun.DONE:
+                return true;
+            case LocatorRun.CANCELLED:
                 return false;
-            }
+            default:
+                throw new IOException(run.getFailure());
         }
+    }
 
-        String runLocatorStr = null;
-        if (isAssess) {
-            runLocatorStr = "ssh beast "
-                    + "export PGUSER=" + SeisDataDAO.getAssessUser() + "; "
-                    + "export PGPASSWORD=" + SeisDataDAO.getAssessPassword() + "; "
-                    + "echo " + "\""
-                    + Global.getSelectedSeisEvent().getEvid() + " "
-                    + locatorArgStr + "\"" + " | " + SeisDataDAO.getLocatorBin() + " - > "
-                    + iscLocOut;
-        } else {
-            runLocatorStr = "ssh beast "
-                    + "export PGUSER=" + SeisDataDAO.getPgUser() + "; "
-                    + "export PGPASSWORD=" + SeisDataDAO.getPgPassword() + "; "
-                    + "echo " + "\""
-                    + Global.getSelectedSeisEvent().getEvid() + " "
-                    + locatorArgStr + "\"" + " | " + SeisDataDAO.getLocatorBin() + " - > "
-                    + iscLocOut;
-        }
+    public static LocatorTransport getTransport() {
+        return transport;
+    }
 
-        VBASLogger.logDebug("Running locator: " + runLocatorStr);
+    /*
+     * E.g., a fake locator to run the assess on a single machine.
+     */
+    public static void setTransport(LocatorTransport transport) {
+        Locator.transport = transport;
+    }
 
-        String output = null;
-        try {
-            Process p = Runtime.getRuntime().exec(runLocatorStr);
-            BufferedReader stdInput = new BufferedReader(new InputStreamReader(p.getInputStream()));
-            BufferedReader stdError = new BufferedReader(new InputStreamReader(p.getErrorStream()));
+    public static long getTimeoutMillis() {
+        return timeoutMillis;
+    }
 
-            VBASLogger.logDebug("The standard output of the locator command:\n");
-            while ((output = stdInput.readLine()) != null) {
-                VBASLogger.logDebug(output);
-            }
-            // TODO: find out if locator failed, James has to do it.
-            // Notofy the user.
+    public static void setTimeoutMillis(long timeoutMillis) {
+        Locator.timeoutMillis = timeoutMillis;
+    }
 
-        } catch (IOException e2) {
-            String message = "The standard error of the locator command:\n";
-            e2.printStackTrace();
-            VBASLogger.logSevere(message);
-            JOptionPane.showMessageDialog(null, message, "Error", JOptionPane.ERROR_MESSAGE);
-            return false;
+    private static LocatorTransport createTransport(Map<String, String> env) {
+        String name = env.get("VBAS_LOCATOR");
+        if ("local".equals(name)) {
+            return new LocalLocatorTransport(SeisDataDAO.getLocatorBin());
+        } else if ("stub".equals(name)) {
+            return new StubLocatorTransport("Stub locator.\n", "", 0, 0);
         }
+        String host = env.get("VBAS_LOCATOR_HOST");
+        return new SshLocatorTransport(host != null ? host : DEFAULT_HOST, SeisDataDAO.getLocatorBin());
+    }
 
-        return true;
+    private static long getTimeout(Map<String, String> env) {
+        try {
+            String value = env.get("VBAS_LOCATOR_TIMEOUT");
+            return ((value == null) ? DEFAULT_TIMEOUT : Long.parseLong(value.trim())) * 1000;
+        } catch (NumberFormatException ex) {
+            VBASLogger.logSevere("Incorrect VBAS_LOCATOR_TIMEOUT, using " + DEFAULT_TIMEOUT + " s");
+            return DEFAULT_TIMEOUT * 1000;
+        }
     }
 }
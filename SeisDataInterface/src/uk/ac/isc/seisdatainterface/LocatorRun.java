@@ -0,0 +1,381 @@
+package uk.ac.isc.seisdatainterface;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+import uk.ac.isc.seisdata.VBASLogger;
+
+/**
+ * One run of the locator for a SeisEvent. The standard output and error are
+ * read as they come on background threads: the output is written to
+ * dir/iscloc.out and scanned line by line for errors, the standard error is
+ * kept for the failure message. The run ends with the exit code of the
+ * locator, or is stopped after a timeout or when cancelled. Several runs can
+ * proceed at the same time.
+ */
+public final class LocatorRun {
+
+    public static final int NEW = 0;
+    public static final int RUNNING = 1;
+    public static final int DONE = 2;
+    public static final int FAILED = 3;
+    public static final int TIMED_OUT = 4;
+    public static final int CANCELLED = 5;
+
+    public static final String OUTPUT_FILE = "iscloc.out";
+
+    // the streams left after the locator ended or was stopped
+    private static final long DRAIN_MILLIS = 5000;
+
+    // Ex. "ERROR: no phases", "abort: ...", "fatal"
+    private static final Pattern ERROR_LINE = Pattern.compile(
+            "(?i)^\\s*(error|abort|fatal)\\b.*|.*\\b(error|fatal):.*");
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final ExecutorService ioExecutor = Executors.newCachedThreadPool(
+            new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger(0);
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "LocatorIO-" + count.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+
+    /**
+     * Told of each line of iscloc.out as it is written, on an io thread.
+     */
+    public interface Listener {
+
+        void outputLine(LocatorRun run, String line);
+    }
+
+    private final LocatorTransport transport;
+    private final int evid;
+    private final Path dir;
+    private final String pgUser;
+    private final String pgPassword;
+    private final String locatorArgStr;
+
+    private volatile Listener listener = null;
+    private volatile int state = NEW;
+    private volatile Process process = null;
+    private Future<?> stdoutPump;
+    private Future<?> stderrPump;
+    private Future<Integer> waiter;
+
+    private volatile Integer exitCode = null;
+    private final AtomicInteger lineCount = new AtomicInteger(0);
+    private final List<String> errorLines = new ArrayList<String>();
+    private final StringBuffer stderr = new StringBuffer();
+    private long startTime;
+    private long duration = 0;
+
+    public LocatorRun(LocatorTransport transport,
+            int evid,
+            Path dir,
+            String pgUser,
+            String pgPassword,
+            String locatorArgStr) {
+        this.transport = transport;
+        this.evid = evid;
+        this.dir = dir;
+        this.pgUser = pgUser;
+        this.pgPassword = pgPassword;
+        this.locatorArgStr = locatorArgStr;
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Start the locator, writing iscloc.out in dir.
+     *
+     * @throws IOException if the directory or the locator fails
+     */
+    public synchronized void start() throws IOException {
+        if (state != NEW) {
+            throw new IllegalStateException("Locator already started: " + evid);
+        }
+
+        if (!new File(dir.toString()).exists()) {
+            boolean success = (new File(dir.toString())).mkdirs();
+            if (!success) {
+                throw new IOException("Error creating the directory: "
+                        + dir
+                        + "\nReport to the system admin.");
+            }
+        }
+
+        final File outputFile = getOutputFile();
+        startTime = System.nanoTime();
+        VBASLogger.logDebug("Running locator (" + transport.getName() + "): "
+                + evid + " " + locatorArgStr + " > " + outputFile);
+
+        try {
+            process = transport.start(pgUser, pgPassword, evid + " " + locatorArgStr);
+        } catch (IOException e) {
+            state = FAILED;
+            throw e;
+        }
+        state = RUNNING;
+
+        final Process p = process;
+        stdoutPump = ioExecutor.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws IOException {
+                readOutput(p.getInputStream(), outputFile);
+                return null;
+            }
+        });
+        stderrPump = ioExecutor.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws IOException {
+                readError(p.getErrorStream());
+                return null;
+            }
+        });
+        waiter = ioExecutor.submit(new Callable<Integer>() {
+            @Override
+            public Integer call() throws InterruptedException {
+                return p.waitFor();
+            }
+        });
+    }
+
+    /**
+     * Wait for the locator to end, and for its output. It is stopped after
+     * the timeout.
+     *
+     * @param timeoutMillis 0 to wait without a timeout
+     * @return true if the locator ended with exit code 0
+     * @throws InterruptedException the locator is left running
+     */
+    public boolean waitFor(long timeoutMillis) throws InterruptedException {
+        if (state == NEW || waiter == null) {
+            return false;
+        }
+
+        try {
+            exitCode = (timeoutMillis > 0)
+                    ? waiter.get(timeoutMillis, TimeUnit.MILLISECONDS)
+                    : waiter.get();
+        } catch (TimeoutException e) {
+            synchronized (this) {
+                if (state == RUNNING) {
+                    state = TIMED_OUT;
+                }
+            }
+            process.destroy();
+            exitCode = getQuietly(waiter);
+        } catch (ExecutionException e) {
+            VBASLogger.logSevere("Error waiting for the locator: " + e.getCause());
+        }
+
+        // the rest of the output
+        getQuietly(stdoutPump);
+        getQuietly(stderrPump);
+
+        synchronized (this) {
+            if (state == RUNNING) {
+                state = (exitCode != null && exitCode == 0) ? DONE : FAILED;
+            }
+            duration = System.nanoTime() - startTime;
+        }
+
+        VBASLogger.logDebug("Locator " + evid + " (" + transport.getName() + "): "
+                + getStateName() + ", exit code=" + exitCode
+                + ", #lines=" + lineCount.get() + ", #errors=" + getErrorLines().size()
+                + ", t=" + duration / 1000000 + " ms");
+
+        return state == DONE;
+    }
+
+    /**
+     * Stop the locator, the waiting thread returns.
+     */
+    public void cancel() {
+        synchronized (this) {
+            if (state == NEW || state == RUNNING) {
+                state = CANCELLED;
+            }
+        }
+        Process p = process;
+        if (p != null) {
+            p.destroy();
+        }
+    }
+
+    public int getEvid() {
+        return evid;
+    }
+
+    public int getState() {
+        return state;
+    }
+
+    public String getStateName() {
+        switch (state) {
+            case NEW:
+                return "new";
+            case RUNNING:
+                return "running";
+            case DONE:
+                return "done";
+            case FAILED:
+                return "failed";
+            case TIMED_OUT:
+                return "timed out";
+            case CANCELLED:
+                return "cancelled";
+        }
+        return String.valueOf(state);
+    }
+
+    /**
+     * @return exit code of the locator, null if it has not ended
+     */
+    public Integer getExitCode() {
+        return exitCode;
+    }
+
+    public File getOutputFile() {
+        return new File(dir + File.separator + OUTPUT_FILE);
+    }
+
+    /**
+     * @return lines of iscloc.out so far
+     */
+    public int getLineCount() {
+        return lineCount.get();
+    }
+
+    /**
+     * @return the error lines of iscloc.out so far
+     */
+    public List<String> getErrorLines() {
+        synchronized (errorLines) {
+            return new ArrayList<String>(errorLines);
+        }
+    }
+
+    public String getStandardError() {
+        return stderr.toString();
+    }
+
+    /**
+     * @return duration in ns, 0 until it has ended
+     */
+    public long getDuration() {
+        return duration;
+    }
+
+    /**
+     * @return why the run failed, for the analyst, null if it did not
+     */
+    public String getFailure() {
+        if (state == DONE || state == RUNNING || state == NEW) {
+            return null;
+        }
+        StringBuilder sb = new StringBuilder();
+        if (state == TIMED_OUT) {
+            sb.append("The locator did not end in time and was stopped.");
+        } else if (state == CANCELLED) {
+            sb.append("The locator was cancelled.");
+        } else {
+            sb.append("The locator failed, exit code: ").append(exitCode).append(".");
+        }
+        for (String line : getErrorLines()) {
+            sb.append("\n").append(line);
+        }
+        if (stderr.length() > 0) {
+            sb.append("\n").append(stderr.toString().trim());
+        }
+        return sb.toString();
+    }
+
+    private void readOutput(InputStream in, File outputFile) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, UTF8));
+        BufferedWriter writer = null;
+        try {
+            writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(outputFile, false), UTF8));
+            outputFile.setReadable(true, false);
+
+            String line;
+            while ((line = reader.readLine()) != null) {
+                writer.write(line);
+                writer.newLine();
+                // iscloc.out can be followed while the locator runs
+                writer.flush();
+
+                lineCount.incrementAndGet();
+                if (ERROR_LINE.matcher(line).matches()) {
+                    synchronized (errorLines) {
+                        errorLines.add(line);
+                    }
+                }
+                VBASLogger.logDebug(line);
+
+                Listener l = listener;
+                if (l != null) {
+                    l.outputLine(this, line);
+                }
+            }
+        } finally {
+            reader.close();
+            if (writer != null) {
+                writer.close();
+            }
+        }
+    }
+
+    private void readError(InputStream in) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, UTF8));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                stderr.append(line).append("\n");
+                VBASLogger.logDebug("stderr: " + line);
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static <T> T getQuietly(Future<T> future) {
+        try {
+            return future.get(DRAIN_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            VBASLogger.logSevere("The locator output did not end.");
+        } catch (ExecutionException e) {
+            VBASLogger.logSevere("Error reading the locator output: " + e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return null;
+    }
+}
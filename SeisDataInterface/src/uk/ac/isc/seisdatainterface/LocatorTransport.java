@@ -0,0 +1,29 @@
+package uk.ac.isc.seisdatainterface;
+
+import java.io.IOException;
+
+/**
+ * Starts the ISC locator (iscloc) of a LocatorRun: on this machine, on
+ * another one over ssh, or a stub. The locator reads the request, "evid
+ * arguments", from its standard input and writes iscloc.out to its standard
+ * output. The database credentials are never put on a command line.
+ */
+public interface LocatorTransport {
+
+    /**
+     * @return name shown in the log, Ex. "ssh beast"
+     */
+    String getName();
+
+    /**
+     * Start the locator and write the request to its standard input. The
+     * locator must end when the returned process is destroyed.
+     *
+     * @param pgUser database user of the locator
+     * @param pgPassword database password of the locator
+     * @param request evid and locator arguments
+     * @return the running locator
+     * @throws IOException if it can not be started
+     */
+    Process start(String pgUser, String pgPassword, String request) throws IOException;
+}
@@ -0,0 +1,235 @@
+package uk.ac.isc.seisdatainterface;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import uk.ac.isc.seisdata.VBASLogger;
+
+/**
+ * A named, parameterized query of SeisDataDAO. The connection pool prepares it
+ * once per connection and reuses the statement for every SeisEvent, so that
+ * the JDBC driver switches to a server side prepared statement and PostgreSQL
+ * reuses the plan. A fetch size is set for the queries with large results,
+ * which then are read through a cursor instead of all at once.
+ */
+public final class NamedQuery {
+
+    private static final ArrayList<NamedQuery> queries = new ArrayList<NamedQuery>();
+
+    /*
+     * SeisEvent data, parameter: evid
+     */
+    public static final NamedQuery HYPOCENTRES = new NamedQuery("hypocentres",
+            "SELECT h.author, h.day, h.lat, h.lon, h.depth, h.prime, h.hypid, x.sdepth, h.epifix, x.stime, "
+            + "x.strike, x.smajax, x.sminax, h.nass, h.ndef, h.nsta, h.ndefsta, h.msec, x.sdobs, h.etype, h.depfix, "
+            // a null depth: the depth phase depth or the default depth of the region, as ttimes.pl
+            + "CASE WHEN h.depth IS NULL THEN COALESCE(h.depdp, "
+            + "(SELECT r.default_depth FROM region r WHERE r.gr_number = grn_ll(h.lat, h.lon))) END"
+            + " FROM hypocenter h LEFT OUTER JOIN hypoc_err x ON x.hypid = h.hypid"
+            + " WHERE h.deprecated is NULL AND h.hypid = h.pref_hypid AND h.isc_evid = ?"
+            + " ORDER BY h.prime DESC, h.author",
+            0);
+
+    public static final NamedQuery PHASES = new NamedQuery("phases",
+            "SELECT r.reporter, p.sta, p.day, a.delta, a.esaz, a.phase, a.timeres, p.phid, p.phase, a.timedef, p.rdid, s.staname, p.msec, p.slow, p.azim, i.snr, a.phase_fixed "
+            + "FROM event e, association a, report r, site s, phase p LEFT OUTER JOIN phase_info i "
+            + "ON p.phid = i.phid "
+            + "WHERE e.prime_hyp = a.hypid AND p.reporter = r.repid "
+            + "AND a.phid = p.phid  AND a.author = 'ISC' AND p.sta = s.sta AND p.net IS NULL AND s.net IS NULL AND e.evid = ?"
+            + " ORDER BY a.delta ASC",
+            1000);
+
+    public static final NamedQuery PHASE_AMPMAGS = new NamedQuery("phase_ampmags",
+            "SELECT p.amp, p.per, s.magnitude, s.ampdef, p.phid "
+            + "FROM ampmag s, amplitude p, event e, association a "
+            + "WHERE a.author = 'ISC' AND p.ampid = s.ampid AND a.phid = p.phid AND e.prime_hyp = a.hypid "
+            + "AND e.evid = ?",
+            1000);
+
+    public static final NamedQuery STATIONS = new NamedQuery("stations",
+            "SELECT DISTINCT p.sta, r.reporter, a.esaz, a.delta FROM event e, association a, phase p, report r "
+            + " WHERE e.evid = ?"
+            + " AND e.prime_hyp = a.hypid "
+            + "AND a.author = 'ISC' AND a.phid = p.phid AND p.reporter = r.repid",
+            0);
+
+    public static final NamedQuery COMMANDS = new NamedQuery("commands",
+            "SELECT ec.id, ec.command, ec.functions, a.name, ba.pass, ec.adddate, ec.type, ec.status"
+            + " FROM analyst a, edit_commands ec, block_allocation ba"
+            + " WHERE ec.evid = ?"
+            + " AND ec.type != 'assess' AND ec.type != 'commit'"
+            + " AND ba.id = ec.block_allocation_id"
+            + " AND ba.analyst_id = a.id"
+            + " ORDER BY ec.adddate",
+            0);
+
+    public static final NamedQuery ASSESSED_COMMANDS = new NamedQuery("assessed_commands",
+            "SELECT ba.pass, a.name, ec.type, ec.id AS assessid, ec.command AS command, eca.id AS cmdids"
+            + " FROM edit_commands ec, command_group cg, edit_commands eca, block_allocation ba, analyst a"
+            + "   WHERE ec.evid = ?"
+            + "      AND cg.evid = ec.evid"
+            + "      AND eca.evid = ec.evid"
+            + "      AND (ec.type = 'assess'"
+            + "            OR ec.type = 'commit')"
+            + "      AND cg.id = ec.id"
+            + "      AND eca.id = cg.edit_commands_id"
+            + "      AND ba.id = ec.block_allocation_id"
+            + "      AND ba.analyst_id = a.id"
+            + " ORDER BY ec.adddate",
+            0);
+
+    /*
+     * Hypocentre data, parameter: hypid (array of hypids for the netmags)
+     */
+    public static final NamedQuery NETMAGS = new NamedQuery("netmags",
+            "SELECT n.hypid, n.magtype, n.magnitude"
+            + " FROM netmag n"
+            + " WHERE n.deprecated is NULL AND n.magtype is NOT NULL AND n.hypid = ANY (?)"
+            + " ORDER BY n.hypid, ( CASE WHEN n.magtype = 'mb' THEN 1 WHEN magtype = 'MS' THEN 2 WHEN magtype = 'MW' THEN 3 ELSE 4 END) ASC",
+            0);
+
+    public static final NamedQuery STATION_MAGS = new NamedQuery("station_mags",
+            "SELECT DISTINCT m.sta, m.magnitude, m.magtype FROM stamag m"
+            + " WHERE m.hypid = ?"
+            + " ORDER BY m.magtype",
+            0);
+
+    /*
+     * Map area, parameters: latS, latN and two longitude ranges (the second
+     * one is used when the area crosses the date line)
+     */
+    public static final NamedQuery HISTORICAL_SEISMICITY = new NamedQuery("historical_seismicity",
+            "SELECT evid, depth, lat, lon FROM historical_seismicity"
+            + " WHERE lat >= ? AND lat <= ?"
+            + " AND (lon BETWEEN ? AND ? OR lon BETWEEN ? AND ?)"
+            + " ORDER BY depth ASC",
+            5000);
+
+    private final String name;
+    private final String sql;
+    private final int fetchSize;
+
+    // statistics
+    private final AtomicLong prepareCount = new AtomicLong(0);
+    private final AtomicLong reuseCount = new AtomicLong(0);
+    private final AtomicLong prepareTime = new AtomicLong(0);
+    private final AtomicLong executeCount = new AtomicLong(0);
+    private final AtomicLong executeTime = new AtomicLong(0);
+
+    // preparation time of the statement last handed out to this thread
+    private final ThreadLocal<Long> lastPrepareTime = new ThreadLocal<Long>();
+
+    private NamedQuery(String name, String sql, int fetchSize) {
+        this.name = name;
+        this.sql = sql;
+        this.fetchSize = fetchSize;
+        queries.add(this);
+    }
+
+    public static List<NamedQuery> getQueries() {
+        return Collections.unmodifiableList(queries);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getSql() {
+        return sql;
+    }
+
+    /**
+     * @return rows read per round trip, 0 to read all the rows at once
+     */
+    public int getFetchSize() {
+        return fetchSize;
+    }
+
+    /*
+     * Called by the connection pool when the statement is handed out.
+     */
+    void recordPrepare(long nanos, boolean isReused) {
+        if (isReused) {
+            reuseCount.incrementAndGet();
+        } else {
+            prepareCount.incrementAndGet();
+            prepareTime.addAndGet(nanos);
+        }
+        lastPrepareTime.set(nanos);
+    }
+
+    /**
+     * Execute the statement prepared for this query by the connection pool,
+     * and log the preparation and execution time.
+     *
+     * @param ps the statement with its parameters set
+     * @param description what is queried, for the log
+     * @return the result
+     * @throws SQLException
+     */
+    public ResultSet executeQuery(PreparedStatement ps, String description) throws SQLException {
+
+        // PostgreSQL reads through a cursor only inside a transaction,
+        // the pool rolls back and resets the connection when released
+        if (fetchSize > 0) {
+            Connection con = ps.getConnection();
+            if (con.getAutoCommit()) {
+                con.setAutoCommit(false);
+            }
+        }
+
+        long startTime = System.nanoTime();
+        ResultSet rs = ps.executeQuery();
+        long time = System.nanoTime() - startTime;
+
+        executeCount.incrementAndGet();
+        executeTime.addAndGet(time);
+
+        Long prepare = lastPrepareTime.get();
+        VBASLogger.logDebug(name + " (" + description + ")"
+                + ": prepare=" + String.format("%.2f", (prepare == null ? 0 : prepare) / 1000000.0) + " ms"
+                + ", execute=" + String.format("%.2f", time / 1000000.0) + " ms");
+
+        return rs;
+    }
+
+    public long getPrepareCount() {
+        return prepareCount.get();
+    }
+
+    public long getReuseCount() {
+        return reuseCount.get();
+    }
+
+    /**
+     * @return total time (ms) spent preparing the statement
+     */
+    public double getPrepareTime() {
+        return prepareTime.get() / 1000000.0;
+    }
+
+    public long getExecuteCount() {
+        return executeCount.get();
+    }
+
+    /**
+     * @return total time (ms) spent executing the statement
+     */
+    public double getExecuteTime() {
+        return executeTime.get() / 1000000.0;
+    }
+
+    public String getStatistics() {
+        return name
+                + ": prepared=" + getPrepareCount()
+                + ", reused=" + getReuseCount()
+                + ", prepareTime=" + String.format("%.1f", getPrepareTime()) + " ms"
+                + ", executed=" + getExecuteCount()
+                + ", executeTime=" + String.format("%.1f", getExecuteTime()) + " ms";
+    }
+}
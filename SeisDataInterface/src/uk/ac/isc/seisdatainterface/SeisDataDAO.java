@@ -2,7 +2,7 @@ package uk.ac.isc.seisdatainterface;
 
 import java.io.File;
 import java.sql.Connection;
-import java.sql.DriverManager;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
@@ -26,12 +26,14 @@ import uk.ac.isc.seisdata.AssessedCommand;
 import uk.ac.isc.seisdata.Command;
 import uk.ac.isc.seisdata.Duplicates;
 import uk.ac.isc.seisdata.HistoricEvent;
+import uk.ac.isc.seisdata.HistoricSeismicity;
 import uk.ac.isc.seisdata.Hypocentre;
 import uk.ac.isc.seisdata.Phase;
 import uk.ac.isc.seisdata.SeisEvent;
 import uk.ac.isc.seisdata.Station;
 import uk.ac.isc.seisdata.TaskBlock;
 import uk.ac.isc.seisdata.VBASLogger;
+import uk.ac.isc.seisdatainterface.StationReferenceCache.StationReference;
 
 /**
  * This is the database access object which provides functions to read and write
@@ -53,9 +55,13 @@ public class SeisDataDAO {
     // Assess schema
     protected static String assessUser;
     protected static String assessPassword;
-    // connections
-    private static Connection pgCon = null;
-    private static Connection assessCon = null;
+    // connection pools of the main and the assess schema
+    private static ConnectionPool pgPool = null;
+    private static ConnectionPool assessPool = null;
+    private static final int DEFAULT_POOL_SIZE = 4;
+    private static final int DEFAULT_ASSESS_POOL_SIZE = 2;
+    private static final long POOL_BORROW_TIMEOUT = 60000;
+    private static final long POOL_VALIDATION_INTERVAL = 5000;
     // other
     private static String assessDir;
     private static String commitDir;
@@ -63,10 +69,13 @@ public class SeisDataDAO {
     private static String commitUrl;
     // locator binary
     private static String locatorBin;
+    // local caches, e.g., the historic seismicity index
+    private static String cacheDir;
 
     public static DecimalFormat df = new DecimalFormat(".0");
 
     static long totalLocatormessageLoadingTime = 0;
+    static long totalNearbyEventsLoadingTime = 0;
     static long totalDuplicatesLoadingTime = 0;
 
     static {
@@ -89,6 +98,8 @@ public class SeisDataDAO {
         assessUrl = env.get("ASSESS_URL");
         commitUrl = env.get("COMMIT_URL");
         locatorBin = env.get("OPSBIN") + File.separator + "iscloc";
+        cacheDir = (env.get("VBAS_CACHE_DIR") != null) ? env.get("VBAS_CACHE_DIR")
+                : System.getProperty("user.home") + File.separator + ".vbas";
 
         VBASLogger.logDebug("url=" + url
                 + ", user=" + pgUser
@@ -97,9 +108,18 @@ public class SeisDataDAO {
                 + ", assessUser=" + assessUser
                 + ", assessPassword=" + assessPassword);
 
+        // pool sizes can be set as setenv VBAS_POOL_SIZE, VBAS_ASSESS_POOL_SIZE
+        // retrieveAllEvents borrows a second main connection for each event
+        pgPool = new ConnectionPool("main", url, pgUser, pgPassword,
+                Math.max(2, getEnvInt(env, "VBAS_POOL_SIZE", DEFAULT_POOL_SIZE)),
+                POOL_BORROW_TIMEOUT, POOL_VALIDATION_INTERVAL);
+        assessPool = new ConnectionPool("assess", url, assessUser, assessPassword,
+                getEnvInt(env, "VBAS_ASSESS_POOL_SIZE", DEFAULT_ASSESS_POOL_SIZE),
+                POOL_BORROW_TIMEOUT, POOL_VALIDATION_INTERVAL);
+
         try {
-            pgCon = DriverManager.getConnection(url, pgUser, pgPassword);
-            assessCon = DriverManager.getConnection(url, assessUser, assessPassword);
+            pgPool.prefill();
+            assessPool.prefill();
 
         } catch (SQLException ex) {
             String message = ex.toString() + "\n\n"
@@ -114,6 +134,76 @@ public class SeisDataDAO {
     public SeisDataDAO() {
     }
 
+    private static int getEnvInt(Map<String, String> env, String name, int defaultValue) {
+        try {
+            return (env.get(name) == null) ? defaultValue : Integer.parseInt(env.get(name).trim());
+        } catch (NumberFormatException ex) {
+            logger.log(Level.WARNING, "Invalid {0}, using {1}", new Object[]{name, defaultValue});
+            return defaultValue;
+        }
+    }
+
+    /*
+     * Borrow a connection of the main or the assess schema, give it back with
+     * releaseConnection().
+     */
+    private static Connection getConnection(Boolean isAssess) throws SQLException {
+        if (isAssess) {
+            return assessPool.getConnection();
+        } else {
+            return pgPool.getConnection();
+        }
+    }
+
+    private static void releaseConnection(Connection con, Boolean isAssess) {
+        if (isAssess) {
+            assessPool.release(con);
+        } else {
+            pgPool.release(con);
+        }
+    }
+
+    /*
+     * Get the statement of a named query on a borrowed connection, see
+     * ConnectionPool.prepare(). It is closed with the connection.
+     */
+    private static PreparedStatement prepare(Connection con, NamedQuery query, Boolean isAssess) throws SQLException {
+        if (isAssess) {
+            return assessPool.prepare(con, query);
+        } else {
+            return pgPool.prepare(con, query);
+        }
+    }
+
+    public static ConnectionPool getPool() {
+        return pgPool;
+    }
+
+    public static ConnectionPool getAssessPool() {
+        return assessPool;
+    }
+
+    /**
+     * @return borrow wait, active and idle connections of both pools
+     */
+    public static String getPoolStatistics() {
+        return pgPool.getStatistics() + "\n" + assessPool.getStatistics();
+    }
+
+    /**
+     * @return preparation and execution count and time of each named query
+     */
+    public static String getQueryStatistics() {
+        StringBuilder sb = new StringBuilder();
+        for (NamedQuery query : NamedQuery.getQueries()) {
+            if (sb.length() > 0) {
+                sb.append("\n");
+            }
+            sb.append(query.getStatistics());
+        }
+        return sb.toString();
+    }
+
     public static String getPgUser() {
         return pgUser;
     }
@@ -146,22 +236,48 @@ public class SeisDataDAO {
         return commitUrl;
     }
 
+    public static String getCacheDir() {
+        return cacheDir;
+    }
+
     public static String getLocatorBin() {
         return locatorBin;
     }
 
+    public static String getBlockId() {
+        return blockId;
+    }
+
     /**
-     * retrieve all the events in a pgUser's schema
+     * retrieve all the events in a pgUser's schema, one locator message,
+     * nearby events and duplicates query per event
      *
      * @param seisEvents for saving the events list
      * @return success flag
      */
     public static boolean retrieveAllEvents(ArrayList<SeisEvent> seisEvents) {
+        return retrieveAllEvents(seisEvents, false);
+    }
+
+    /**
+     * retrieve all the events in a pgUser's schema
+     *
+     * @param seisEvents for saving the events list
+     * @param isBulkLoading if true, the locator messages, nearby events and
+     * duplicates of the whole block are loaded with one set-based query each
+     * and joined in memory, otherwise they are queried for each event
+     * @return success flag
+     */
+    public static boolean retrieveAllEvents(ArrayList<SeisEvent> seisEvents, Boolean isBulkLoading) {
 
         long startTime = System.nanoTime();
 
         seisEvents.clear();
+        totalLocatormessageLoadingTime = 0;
+        totalNearbyEventsLoadingTime = 0;
+        totalDuplicatesLoadingTime = 0;
 
+        Connection con = null;
         Statement st = null;
         ResultSet rs = null;
         String query = null;
@@ -180,7 +296,16 @@ public class SeisDataDAO {
             System.exit(-1);
         }
 
-                
+        // block level maps, only filled in the bulk loading mode
+        HashMap<Integer, String> locatorMessages = null;
+        HashMap<Integer, String> nearbyEvents = null;
+        HashMap<Integer, ArrayList<Duplicates>> duplicates = null;
+        if (isBulkLoading) {
+            locatorMessages = getBlockLocatorMessages();
+            nearbyEvents = getBlockNearbyEvents();
+            duplicates = getBlockDuplicates();
+        }
+
         query = "SELECT e.evid, h.author, h.day, h.lat, h.lon, h.depth, e.etype, get_default_depth_grid (h.lat, h.lon), e.banished, ( SELECT MAX(ea.finish) FROM event_allocation ea WHERE ea.evid = e.evid ) "
                 + "    FROM event e, hypocenter h, block_allocation ba, event_allocation ea "
                 + "   WHERE ba.id = " + blockId
@@ -195,7 +320,8 @@ public class SeisDataDAO {
         VBASLogger.logDebug("Executing Query: " + query);
 
         try {
-            st = pgCon.createStatement();
+            con = getConnection(false);
+            st = con.createStatement();
             rs = st.executeQuery(query);
 
             while (rs.next()) {
@@ -205,14 +331,30 @@ public class SeisDataDAO {
                 Date finishDate = (rs.getObject(10) == null) ? null : rs.getDate(10);
                 Boolean isBanish = (rs.getObject(9) == null) ? false : true;
 
-                SeisEvent tmp = new SeisEvent(evid,
-                        rs.getString(7),
-                        defaultDepthGrid,
-                        SeisDataDAO.getLocatorMessage(evid),
-                        SeisDataDAO.getNearbyEvents(evid),
-                        isBanish,
-                        finishDate,
-                        SeisDataDAO.getDuplicates(evid));
+                SeisEvent tmp;
+                if (isBulkLoading) {
+                    String locatorMessage = locatorMessages.get(evid);
+                    String nearby = nearbyEvents.get(evid);
+                    ArrayList<Duplicates> duplicatesList = duplicates.get(evid);
+
+                    tmp = new SeisEvent(evid,
+                            rs.getString(7),
+                            defaultDepthGrid,
+                            (locatorMessage == null) ? "" : locatorMessage,
+                            (nearby == null) ? "" : nearby,
+                            isBanish,
+                            finishDate,
+                            (duplicatesList == null) ? new ArrayList<Duplicates>() : duplicatesList);
+                } else {
+                    tmp = new SeisEvent(evid,
+                            rs.getString(7),
+                            defaultDepthGrid,
+                            SeisDataDAO.getLocatorMessage(evid),
+                            SeisDataDAO.getNearbyEvents(evid),
+                            isBanish,
+                            finishDate,
+                            SeisDataDAO.getDuplicates(evid));
+                }
 
                 Date dd = null;
                 try {
@@ -258,87 +400,169 @@ public class SeisDataDAO {
                         JOptionPane.ERROR_MESSAGE);
                 logger.log(Level.SEVERE, message);
                 return false;
+            } finally {
+                releaseConnection(con, false);
             }
         }
 
         long endTime = System.nanoTime();
         long duration = (endTime - startTime) / 1000000;
-        VBASLogger.logDebug("Duration to load all the events = " + duration);
+        VBASLogger.logDebug("Duration to load all the events = " + duration
+                + ", isBulkLoading = " + isBulkLoading
+                + ", #SeisEvents = " + seisEvents.size());
         VBASLogger.logDebug("Total duration to load all the messages = " + totalLocatormessageLoadingTime);
+        VBASLogger.logDebug("Total duration to load all the nearby events = " + totalNearbyEventsLoadingTime);
         VBASLogger.logDebug("Total duration to load all the duplicates = " + totalDuplicatesLoadingTime);
+        VBASLogger.logDebug(getPoolStatistics());
 
         return true;
     }
 
-    private static String getLocatorMessage(int evid) {
+    /**
+     * retrieve the evids of the ready events of a block, e.g., for the batch
+     * reports, without their data
+     *
+     * @param blockId block allocation id
+     * @param evids for saving the evids, ordered by the origin time of the
+     * prime hypocentre
+     * @return success flag
+     */
+    public static boolean retrieveBlockEvids(String blockId, ArrayList<Integer> evids) {
 
-        long startTime1 = 0, endTime1 = 0, startTime2 = 0, endTime2 = 0, startTime3 = 0, endTime3 = 0;
-        startTime1 = System.nanoTime();
-        startTime2 = System.nanoTime();
+        evids.clear();
 
-        String msg = "";
-        String tempMsg = "";
+        Connection con = null;
+        Statement st = null;
+        ResultSet rs = null;
+        String query = "SELECT e.evid "
+                + "    FROM event e, hypocenter h, event_allocation ea "
+                + "   WHERE ea.block_allocation_id = " + Integer.parseInt(blockId.trim())
+                + "     AND ea.evid = e.evid "
+                + "     AND e.prime_hyp = h.hypid "
+                + "     AND h.isc_evid = e.evid "
+                + "     AND e.ready IS NOT NULL "
+                + "     AND h.hypid = h.pref_hypid "
+                + "ORDER BY h.day ASC; ";
+
+        VBASLogger.logDebug("Executing Query: " + query);
+
+        try {
+            con = getConnection(false);
+            st = con.createStatement();
+            rs = st.executeQuery(query);
+
+            while (rs.next()) {
+                evids.add(rs.getInt(1));
+            }
+
+        } catch (SQLException ex) {
+            String message = VBASLogger.debugAt() + ex.toString() + ", Query= " + query;
+            logger.log(Level.SEVERE, message);
+            return false;
+        } finally {
+            try {
+                if (rs != null) {
+                    rs.close();
+                }
+                if (st != null) {
+                    st.close();
+                }
+            } catch (SQLException ex) {
+                String message = VBASLogger.debugAt() + ex.toString();
+                logger.log(Level.SEVERE, message);
+            } finally {
+                releaseConnection(con, false);
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * @return the filtered iscloc comments of an event
+     */
+    public static String getLocatorMessage(int evid) {
+
+        long startTime = System.nanoTime();
+
+        ArrayList<String> comments = new ArrayList<String>();
+        Connection con = null;
         Statement st = null;
         ResultSet rs = null;
         String query = "SELECT comment FROM iscloc_comments WHERE evid = "
                 + evid
                 + " ORDER BY commno; ";
 
-        //VBASLogger.logDebug("\nEvid = " + evid);
         try {
-            st = pgCon.createStatement();
+            con = getConnection(false);
+            st = con.createStatement();
             rs = st.executeQuery(query);
 
-            endTime1 = System.nanoTime();
-            startTime3 = System.nanoTime();
             while (rs.next()) {
-                String locMsg = rs.getString(1);
-                tempMsg += locMsg + "\n";
-
-                if (locMsg.contains("ABORT")
-                        || locMsg.contains("WARN")
-                        || locMsg.contains("CAUTION")
-                        || locMsg.contains("FAILURE")
-                        || locMsg.contains("depth fixed")
-                        || locMsg.contains("free-depth")) {
-                    msg += locMsg + "\n";
-
-                } else if (locMsg.contains("Depth-phase depth resolution:")) {
-                    if (Integer.valueOf(locMsg.substring(locMsg.lastIndexOf(" ") + 1)) > 0) {
-                        msg += locMsg + "\n";
-                        try {
-                            int count = 0;
-                            while (rs.next() && ++count <= 2) {
-                                msg += rs.getString(1) + "\n";
-                                tempMsg += rs.getString(1) + "\n";
-                            }
-                        } catch (SQLException ex0) {
-                            String message = VBASLogger.debugAt() + ex0.toString();
-                            logger.log(Level.SEVERE, message);
-                        }
-                    }
+                comments.add(rs.getString(1));
+            }
 
-                } else if (locMsg.contains("Depth resolution:")) {
-                    if (Integer.valueOf(locMsg.substring(locMsg.lastIndexOf(" ") + 1)) > 0) {
-                        msg += locMsg + "\n";
-                        try {
-                            int count = 0;
-                            while (rs.next() && ++count <= 3) {
-                                msg += rs.getString(1) + "\n";
-                                tempMsg += rs.getString(1) + "\n";
-                            }
-                        } catch (SQLException ex0) {
-                            String message = VBASLogger.debugAt() + ex0.toString();
-                            logger.log(Level.SEVERE, message);
-                        }
-                    }
+        } catch (SQLException ex) {
+            String message = VBASLogger.debugAt() + ex.toString();
+            logger.log(Level.SEVERE, message);
+        } finally {
+            try {
+                if (rs != null) {
+                    rs.close();
                 }
+                if (st != null) {
+                    st.close();
+                }
+            } catch (SQLException ex) {
+                String message = VBASLogger.debugAt() + ex.toString();
+                logger.log(Level.SEVERE, message);
+            } finally {
+                releaseConnection(con, false);
+            }
+        }
 
+        String msg = filterLocatorMessage(comments);
+        totalLocatormessageLoadingTime += (System.nanoTime() - startTime) / 1000000;
+
+        return msg;
+    }
+
+    /**
+     * Load the iscloc comments of all the events in the block with one query.
+     *
+     * @return filtered locator message keyed by evid
+     */
+    private static HashMap<Integer, String> getBlockLocatorMessages() {
+
+        long startTime = System.nanoTime();
+
+        HashMap<Integer, ArrayList<String>> comments = new HashMap<Integer, ArrayList<String>>();
+        Connection con = null;
+        Statement st = null;
+        ResultSet rs = null;
+        String query = "SELECT c.evid, c.comment"
+                + "  FROM iscloc_comments c, event_allocation ea"
+                + " WHERE ea.block_allocation_id = " + blockId
+                + "   AND c.evid = ea.evid"
+                + " ORDER BY c.evid, c.commno;";
+
+        try {
+            con = getConnection(false);
+            st = con.createStatement();
+            rs = st.executeQuery(query);
+
+            while (rs.next()) {
+                int evid = rs.getInt(1);
+                ArrayList<String> evComments = comments.get(evid);
+                if (evComments == null) {
+                    evComments = new ArrayList<String>();
+                    comments.put(evid, evComments);
+                }
+                evComments.add(rs.getString(2));
             }
 
-            /*endTime3 = System.nanoTime();*/
         } catch (SQLException ex) {
-            String message = VBASLogger.debugAt() + ex.toString();
+            String message = VBASLogger.debugAt() + ex.toString() + "\nQuery= " + query;
             logger.log(Level.SEVERE, message);
         } finally {
             try {
@@ -351,22 +575,79 @@ public class SeisDataDAO {
             } catch (SQLException ex) {
                 String message = VBASLogger.debugAt() + ex.toString();
                 logger.log(Level.SEVERE, message);
+            } finally {
+                releaseConnection(con, false);
             }
         }
 
-        // VBASLogger.logDebug("Entire locator message:\n" + tempMsg + "\nFiltered locator message:\n" + msg);
-        endTime2 = System.nanoTime();
-        /*VBASLogger.logDebug("Evid = " + evid
-         + ", T_SQL =" + (endTime1 - startTime1) / 1000000
-         + ", T_Parsing = " + (endTime3 - startTime3) / 1000000
-         + ", T_Total = " + (endTime2 - startTime2) / 1000000);*/
-        totalLocatormessageLoadingTime += (endTime2 - startTime2) / 1000000;
+        HashMap<Integer, String> messages = new HashMap<Integer, String>();
+        for (Map.Entry<Integer, ArrayList<String>> entry : comments.entrySet()) {
+            messages.put(entry.getKey(), filterLocatorMessage(entry.getValue()));
+        }
+
+        totalLocatormessageLoadingTime += (System.nanoTime() - startTime) / 1000000;
+
+        return messages;
+    }
+
+    /**
+     * Keep only the warnings, depth fixing and the depth resolution lines (if
+     * resolved) of the iscloc comments of an event, ordered by commno.
+     */
+    private static String filterLocatorMessage(ArrayList<String> comments) {
+
+        String msg = "";
+        int i = 0;
+
+        while (i < comments.size()) {
+            String locMsg = comments.get(i++);
+
+            if (locMsg.contains("ABORT")
+                    || locMsg.contains("WARN")
+                    || locMsg.contains("CAUTION")
+                    || locMsg.contains("FAILURE")
+                    || locMsg.contains("depth fixed")
+                    || locMsg.contains("free-depth")) {
+                msg += locMsg + "\n";
+
+            } else if (locMsg.contains("Depth-phase depth resolution:")) {
+                if (Integer.valueOf(locMsg.substring(locMsg.lastIndexOf(" ") + 1)) > 0) {
+                    msg += locMsg + "\n";
+                    // the next two lines, the line after them is skipped
+                    int count = 0;
+                    while (i < comments.size()) {
+                        String line = comments.get(i++);
+                        if (++count > 2) {
+                            break;
+                        }
+                        msg += line + "\n";
+                    }
+                }
+
+            } else if (locMsg.contains("Depth resolution:")) {
+                if (Integer.valueOf(locMsg.substring(locMsg.lastIndexOf(" ") + 1)) > 0) {
+                    msg += locMsg + "\n";
+                    // the next three lines, the line after them is skipped
+                    int count = 0;
+                    while (i < comments.size()) {
+                        String line = comments.get(i++);
+                        if (++count > 3) {
+                            break;
+                        }
+                        msg += line + "\n";
+                    }
+                }
+            }
+        }
 
         return msg;
     }
 
     private static String getNearbyEvents(int evid) {
+        long startTime = System.nanoTime();
+
         String nearbyEvents = "";
+        Connection con = null;
         Statement st = null;
         ResultSet rs = null;
         String query = //"SELECT near FROM near(" + evid + "); ";
@@ -377,7 +658,8 @@ public class SeisDataDAO {
                 + " ORDER BY h.day;";
 
         try {
-            st = pgCon.createStatement();
+            con = getConnection(false);
+            st = con.createStatement();
             rs = st.executeQuery(query);
 
             while (rs.next()) {
@@ -402,15 +684,80 @@ public class SeisDataDAO {
             } catch (SQLException ex) {
                 String message = VBASLogger.debugAt() + ex.toString();
                 logger.log(Level.SEVERE, message);
+            } finally {
+                releaseConnection(con, false);
+            }
+        }
+
+        totalNearbyEventsLoadingTime += (System.nanoTime() - startTime) / 1000000;
+
+        return nearbyEvents;
+    }
+
+    /**
+     * Load the NEAR() events of all the events in the block with one query.
+     *
+     * @return "evid:author" list of the nearby events keyed by evid
+     */
+    private static HashMap<Integer, String> getBlockNearbyEvents() {
+        long startTime = System.nanoTime();
+
+        HashMap<Integer, String> nearbyEvents = new HashMap<Integer, String>();
+        Connection con = null;
+        Statement st = null;
+        ResultSet rs = null;
+        String query = "SELECT DISTINCT n.own_evid, e.evid, h.author, h.day"
+                + "  FROM ( SELECT ea.evid AS own_evid, NEAR(ea.evid) AS near_evid"
+                + "           FROM event_allocation ea"
+                + "          WHERE ea.block_allocation_id = " + blockId + " ) n,"
+                + "       hypocenter h, event e"
+                + " WHERE e.evid = n.near_evid"
+                + "   AND h.hypid = e.prime_hyp"
+                + " ORDER BY n.own_evid, h.day;";
+
+        try {
+            con = getConnection(false);
+            st = con.createStatement();
+            rs = st.executeQuery(query);
+
+            while (rs.next()) {
+                int ownEvid = rs.getInt("own_evid");
+                int nEvid = rs.getInt("evid");
+                String nAuthor = rs.getString("author");
+
+                String nearby = nearbyEvents.get(ownEvid);
+                nearbyEvents.put(ownEvid, (nearby == null)
+                        ? (nEvid + ":" + nAuthor)
+                        : (nearby + " " + nEvid + ":" + nAuthor));
+            }
+        } catch (SQLException ex) {
+            String message = VBASLogger.debugAt() + ex.toString() + "\nQuery= " + query;
+            logger.log(Level.SEVERE, message);
+        } finally {
+            try {
+                if (rs != null) {
+                    rs.close();
+                }
+                if (st != null) {
+                    st.close();
+                }
+            } catch (SQLException ex) {
+                String message = VBASLogger.debugAt() + ex.toString();
+                logger.log(Level.SEVERE, message);
+            } finally {
+                releaseConnection(con, false);
             }
         }
 
+        totalNearbyEventsLoadingTime += (System.nanoTime() - startTime) / 1000000;
+
         return nearbyEvents;
     }
 
     private static ArrayList<Duplicates> getDuplicates(int evid) {
         long startTime = System.nanoTime();
 
+        Connection con = null;
         Statement st = null;
         ResultSet rs = null;
         String query = "SELECT * FROM DUPLICATES(" + evid + ");";
@@ -418,40 +765,12 @@ public class SeisDataDAO {
 
         //VBASLogger.logDebug("Evid = " + evid);
         try {
-            st = pgCon.createStatement();
+            con = getConnection(false);
+            st = con.createStatement();
             rs = st.executeQuery(query);
 
             while (rs.next()) {
-
-                String ownsta = rs.getString("ownsta");
-                String ownphase = rs.getString("ownphase");
-                String ownresidual = rs.getDouble("ownresidual") > 0
-                        ? "+" + df.format(rs.getDouble("ownresidual"))
-                        : df.format(rs.getDouble("ownresidual"));
-
-                int owndelta = rs.getInt("owndelta");
-                String dupphase = rs.getString("dupphase");
-                String dupresidual = rs.getDouble("dupresidual") > 0
-                        ? "+" + df.format(rs.getDouble("dupresidual"))
-                        : df.format(rs.getDouble("dupresidual"));
-
-                int dupdelta = rs.getInt("dupdelta");
-                int dupevid = rs.getInt("dupevid");
-                String dupready = rs.getString("dupready");
-
-                Duplicates duplicates = new Duplicates(
-                        ownsta,
-                        ownphase,
-                        ownresidual,
-                        owndelta,
-                        dupphase,
-                        dupresidual,
-                        dupdelta,
-                        dupevid,
-                        dupready
-                );
-
-                duplicatesList.add(duplicates);
+                duplicatesList.add(readDuplicates(rs));
                 //VBASLogger.logDebug(duplicates.toString());
             }
 
@@ -469,6 +788,8 @@ public class SeisDataDAO {
             } catch (SQLException ex) {
                 String message = VBASLogger.debugAt() + ex.toString();
                 logger.log(Level.SEVERE, message);
+            } finally {
+                releaseConnection(con, false);
             }
         }
 
@@ -478,6 +799,95 @@ public class SeisDataDAO {
         return duplicatesList;
     }
 
+    /**
+     * Load the DUPLICATES() of all the events in the block with one query.
+     *
+     * @return duplicates list keyed by evid
+     */
+    private static HashMap<Integer, ArrayList<Duplicates>> getBlockDuplicates() {
+        long startTime = System.nanoTime();
+
+        HashMap<Integer, ArrayList<Duplicates>> duplicates = new HashMap<Integer, ArrayList<Duplicates>>();
+        Connection con = null;
+        Statement st = null;
+        ResultSet rs = null;
+        // OFFSET 0 stops the planner from calling DUPLICATES() once per column
+        String query = "SELECT d.own_evid, (d.dup).*"
+                + "  FROM ( SELECT ea.evid AS own_evid, DUPLICATES(ea.evid) AS dup"
+                + "           FROM event_allocation ea"
+                + "          WHERE ea.block_allocation_id = " + blockId
+                + "         OFFSET 0 ) d;";
+
+        try {
+            con = getConnection(false);
+            st = con.createStatement();
+            rs = st.executeQuery(query);
+
+            while (rs.next()) {
+                int ownEvid = rs.getInt("own_evid");
+                ArrayList<Duplicates> duplicatesList = duplicates.get(ownEvid);
+                if (duplicatesList == null) {
+                    duplicatesList = new ArrayList<Duplicates>();
+                    duplicates.put(ownEvid, duplicatesList);
+                }
+                duplicatesList.add(readDuplicates(rs));
+            }
+
+        } catch (SQLException ex) {
+            String message = VBASLogger.debugAt() + ex.toString() + "\nQuery= " + query;
+            logger.log(Level.SEVERE, message);
+        } finally {
+            try {
+                if (rs != null) {
+                    rs.close();
+                }
+                if (st != null) {
+                    st.close();
+                }
+            } catch (SQLException ex) {
+                String message = VBASLogger.debugAt() + ex.toString();
+                logger.log(Level.SEVERE, message);
+            } finally {
+                releaseConnection(con, false);
+            }
+        }
+
+        totalDuplicatesLoadingTime += (System.nanoTime() - startTime) / 1000000;
+
+        return duplicates;
+    }
+
+    private static Duplicates readDuplicates(ResultSet rs) throws SQLException {
+
+        String ownsta = rs.getString("ownsta");
+        String ownphase = rs.getString("ownphase");
+        String ownresidual = rs.getDouble("ownresidual") > 0
+                ? "+" + df.format(rs.getDouble("ownresidual"))
+                : df.format(rs.getDouble("ownresidual"));
+
+        int owndelta = rs.getInt("owndelta");
+        String dupphase = rs.getString("dupphase");
+        String dupresidual = rs.getDouble("dupresidual") > 0
+                ? "+" + df.format(rs.getDouble("dupresidual"))
+                : df.format(rs.getDouble("dupresidual"));
+
+        int dupdelta = rs.getInt("dupdelta");
+        int dupevid = rs.getInt("dupevid");
+        String dupready = rs.getString("dupready");
+
+        return new Duplicates(
+                ownsta,
+                ownphase,
+                ownresidual,
+                owndelta,
+                dupphase,
+                dupresidual,
+                dupdelta,
+                dupevid,
+                dupready
+        );
+    }
+
     /**
      * retrieve events' magnitude, actually it retrieves the magnitudes of
      * primehypo
@@ -486,13 +896,14 @@ public class SeisDataDAO {
      * @return all the events filling with magnitude
      */
     public static boolean retrieveEventsMagnitude(ArrayList<SeisEvent> evList) {
-        //Connection pgCon = null;
+        Connection con = null;
         Statement st = null;
         ResultSet rs = null;
 
         try {
             //con = DriverManager.getConnection(url, pgUser, pgPassword);
-            st = pgCon.createStatement();
+            con = getConnection(false);
+            st = con.createStatement();
 
             String query = "SELECT e.evid, n.magtype, n.magnitude"
                     + " FROM  event e, netmag n"
@@ -543,6 +954,8 @@ public class SeisDataDAO {
 
             } catch (SQLException ex) {
                 return false;
+            } finally {
+                releaseConnection(con, false);
             }
         }
 
@@ -556,13 +969,14 @@ public class SeisDataDAO {
      * @return all the events filling with their region names
      */
     public static boolean retrieveAllRegionName(ArrayList<SeisEvent> evList) {
-        //Connection pgCon = null;
+        Connection con = null;
         Statement st = null;
         ResultSet rs = null;
 
         try {
             //con = DriverManager.getConnection(url, pgUser, pgPassword);
-            st = pgCon.createStatement();
+            con = getConnection(false);
+            st = con.createStatement();
 
             String query = "SELECT r.gr_short, r.gr_number, r.sr_number, e.evid "
                     + " FROM  region r, event e, hypocenter h"
@@ -604,6 +1018,8 @@ public class SeisDataDAO {
 
             } catch (SQLException ex) {
                 return false;
+            } finally {
+                releaseConnection(con, false);
             }
         }
 
@@ -616,18 +1032,15 @@ public class SeisDataDAO {
      * @return
      */
     static public Integer getNextNewEvid(Boolean isAssess) {
-        //Connection pgCon = null;
+        Connection con = null;
         Statement st = null;
         ResultSet rs = null;
 
         Integer retEvid = null;
         try {
 
-            if (isAssess) {
-                st = assessCon.createStatement();
-            } else {
-                st = pgCon.createStatement();
-            }
+            con = getConnection(isAssess);
+            st = con.createStatement();
 
             //con = DriverManager.getConnection(url, pgUser, pgPassword);
             String query = "SELECT NEXTVAL('isc.evid');";
@@ -651,6 +1064,8 @@ public class SeisDataDAO {
 
             } catch (SQLException ex) {
                 //return false;
+            } finally {
+                releaseConnection(con, isAssess);
             }
         }
 
@@ -660,19 +1075,25 @@ public class SeisDataDAO {
 
     /**
      * Here is for retrieving the phase number for each event, difference with
-     * the previous one is that this one can retrieve the phase nmber
+     * the previous one is that this one can retrieve the phase nmber. Only the
+     * events of the loaded block are queried, the rows are matched to the
+     * events through an evid map.
      *
      * @param evList
      * @return
      */
     public static boolean retrieveAllPhaseNumber(ArrayList<SeisEvent> evList) {
-        //Connection pgCon = null;
+        Connection con = null;
         Statement st = null;
         ResultSet rs = null;
 
+        HashMap<Integer, SeisEvent> evMap = SeisDataIndex.mapByEvid(evList);
+        long startTime = System.nanoTime();
+
         try {
             //con = DriverManager.getConnection(url, pgUser, pgPassword);
-            st = pgCon.createStatement();
+            con = getConnection(false);
+            st = con.createStatement();
 
             String query = "SELECT h.nass, e.evid\n"
                     + "     FROM hypocenter h, event e\n"
@@ -682,6 +1103,7 @@ public class SeisDataDAO {
                     + "      AND h.deprecated IS NULL\n"
                     + "      AND e.banished IS NULL\n"
                     + "      AND e.ready IS NOT NULL\n"
+                    + "      AND e.evid IN (SELECT ea.evid FROM event_allocation ea WHERE ea.block_allocation_id = " + blockId + ")\n"
                     + "    UNION\n"
                     + "   SELECT COUNT(*), e.evid\n"
                     + "     FROM hypocenter h, event e, association a\n"
@@ -693,15 +1115,15 @@ public class SeisDataDAO {
                     + "      AND e.ready IS NOT NULL\n"
                     + "      AND h.hypid = a.hypid\n"
                     + "      AND a.author = 'ISC'\n"
+                    + "      AND e.evid IN (SELECT ea.evid FROM event_allocation ea WHERE ea.block_allocation_id = " + blockId + ")\n"
                     + "GROUP BY e.evid;";
 
             rs = st.executeQuery(query);
 
             while (rs.next()) {
-                for (SeisEvent ev : evList) {
-                    if (rs.getInt(2) == ev.getEvid()) {
-                        ev.setPhaseNumber(rs.getInt(1));
-                    }
+                SeisEvent ev = evMap.get(rs.getInt(2));
+                if (ev != null) {
+                    ev.setPhaseNumber(rs.getInt(1));
                 }
             }
             rs.close();
@@ -719,8 +1141,13 @@ public class SeisDataDAO {
 
             } catch (SQLException ex) {
                 return false;
+            } finally {
+                releaseConnection(con, false);
             }
         }
+
+        VBASLogger.logDebug("#SeisEvents=" + evList.size()
+                + ", t=" + (System.nanoTime() - startTime) / 1000000 + " ms");
         return true;
     }
 
@@ -731,27 +1158,18 @@ public class SeisDataDAO {
             ArrayList<Hypocentre> HypoList,
             Boolean isAssess) {
 
-        Statement st = null;
+        Connection con = null;
+        PreparedStatement ps = null;
         ResultSet rs = null;
 
         HypoList.clear();
 
         try {
-            if (isAssess) {
-                st = assessCon.createStatement();
-            } else {
-                st = pgCon.createStatement();
-            }
-
-            String query
-                    = "SELECT h.author, h.day, h.lat, h.lon, h.depth, h.prime, h.hypid, x.sdepth, h.epifix, x.stime, "
-                    + "x.strike, x.smajax, x.sminax, h.nass, h.ndef, h.nsta, h.ndefsta, h.msec, x.sdobs, h.etype, h.depfix"
-                    + " FROM hypocenter h LEFT OUTER JOIN hypoc_err x ON x.hypid = h.hypid"
-                    + " WHERE h.deprecated is NULL AND h.hypid = h.pref_hypid AND h.isc_evid = "
-                    + evid
-                    + " ORDER BY h.prime DESC, h.author";
+            con = getConnection(isAssess);
+            ps = prepare(con, NamedQuery.HYPOCENTRES, isAssess);
+            ps.setInt(1, evid);
 
-            rs = st.executeQuery(query);
+            rs = NamedQuery.HYPOCENTRES.executeQuery(ps, "evid=" + evid);
 
             while (rs.next()) {
 
@@ -815,6 +1233,10 @@ public class SeisDataDAO {
                     tmp.setDepthFix(rs.getString(21));
                 }
 
+                if (rs.getObject(22) != null) {
+                    tmp.setDefaultDepth(rs.getDouble(22));
+                }
+
                 HypoList.add(tmp);
 
             }
@@ -828,12 +1250,11 @@ public class SeisDataDAO {
                 if (rs != null) {
                     rs.close();
                 }
-                if (st != null) {
-                    st.close();
-                }
 
             } catch (SQLException ex) {
                 return false;
+            } finally {
+                releaseConnection(con, isAssess);
             }
         }
         return true;
@@ -841,59 +1262,65 @@ public class SeisDataDAO {
     }
 
     /**
-     * Retrieve hypocentre magnitudes list
+     * Retrieve hypocentre magnitudes list: the netmags of all the hypocentres
+     * are read with one query and distributed to the hypocentres by hypid.
      */
     public static boolean retrieveHyposMagnitude(ArrayList<Hypocentre> HypoList, Boolean isAssess) {
 
-        //Connection pgCon = null;
-        Statement st = null;
-        ResultSet rs = null;
+        if (HypoList.isEmpty()) {
+            return true;
+        }
 
-        Iterator<Hypocentre> iter = HypoList.iterator();
-        try {
-            if (isAssess) {
-                st = assessCon.createStatement();
-            } else {
-                st = pgCon.createStatement();
-            }
+        Connection con = null;
+        PreparedStatement ps = null;
+        ResultSet rs = null;
 
-            while (iter.hasNext()) {
-                Hypocentre currentHypo = iter.next();
-                Integer hypid = currentHypo.getHypid();
+        HashMap<Integer, Hypocentre> hypoMap = new HashMap<Integer, Hypocentre>();
+        for (Hypocentre hypo : HypoList) {
+            hypoMap.put(hypo.getHypid(), hypo);
+        }
+        Integer[] hypids = hypoMap.keySet().toArray(new Integer[hypoMap.size()]);
 
-                String query = "SELECT n.magtype, n.magnitude"
-                        + " FROM netmag n"
-                        + " WHERE n.deprecated is NULL AND n.magtype is NOT NULL AND n.hypid = "
-                        + hypid + " ORDER BY ( CASE WHEN n.magtype = 'mb' THEN 1 WHEN magtype = 'MS' THEN 2 WHEN magtype = 'MW' THEN 3 ELSE 4 END) ASC";
+        long startTime = System.nanoTime();
+        int count = 0;
 
-                rs = st.executeQuery(query);
+        try {
+            con = getConnection(isAssess);
+            ps = prepare(con, NamedQuery.NETMAGS, isAssess);
+            ps.setArray(1, con.createArrayOf("int4", hypids));
 
-                while (rs.next()) {
+            rs = NamedQuery.NETMAGS.executeQuery(ps, "#hypids=" + hypids.length);
 
-                    currentHypo.addMagnitude(rs.getString(1), rs.getDouble(2));
+            while (rs.next()) {
+                Hypocentre currentHypo = hypoMap.get(rs.getInt(1));
+                if (currentHypo != null) {
+                    currentHypo.addMagnitude(rs.getString(2), rs.getDouble(3));
+                    count++;
                 }
-                rs.close();
             }
 
         } catch (SQLException ex) {
+            VBASLogger.logSevere("Error retrieving hypocentre magnitudes, " + ex.toString());
             return false;
         } finally {
             try {
                 if (rs != null) {
                     rs.close();
                 }
-                if (st != null) {
-                    st.close();
-                }
                 /*if (pgCon != null) {
                  pgCon.close();
                  }*/
 
             } catch (SQLException ex) {
                 return false;
+            } finally {
+                releaseConnection(con, isAssess);
             }
         }
 
+        VBASLogger.logDebug("#Hypocentres=" + hypoMap.size() + ", #Magnitudes=" + count
+                + ", isAssess=" + isAssess + ", t=" + (System.nanoTime() - startTime) / 1000000 + " ms");
+
         return true;
     }
 
@@ -908,35 +1335,22 @@ public class SeisDataDAO {
      * @return
      */
     public static boolean retrieveHistEvents(ArrayList<HistoricEvent> histEvents, double latN, double latS, double lonW, double lonE) {
-        //Connection pgCon = null;
-        Statement st = null;
+        Connection con = null;
         ResultSet rs = null;
 
-        histEvents.clear();
-
-        String query;
-        if (lonW > -180 && lonE < 180) {
-            query = "SELECT evid, depth, lat, lon FROM historical_seismicity WHERE lat >= " + String.valueOf(latS)
-                    + " AND lat <= " + String.valueOf(latN) + " AND lon >= " + String.valueOf(lonW) + " AND lon <= "
-                    + String.valueOf(lonE) + " ORDER BY depth ASC;";
-        } else if (lonW < -180) {
-            lonW += 360;
-            query = "SELECT evid, depth, lat, lon FROM historical_seismicity WHERE lat >= " + String.valueOf(latS)
-                    + " AND lat <= " + String.valueOf(latN)
-                    + " AND (lon BETWEEN " + String.valueOf(-180) + " AND " + String.valueOf(lonE) + ") "
-                    + "OR (lon BETWEEN " + String.valueOf(lonW) + " AND 180)" + " ORDER BY depth ASC;";
-        } else {
-            lonE -= 360;
-            query = "SELECT evid, depth, lat, lon FROM historical_seismicity WHERE lat >= " + String.valueOf(latS)
-                    + " AND lat <= " + String.valueOf(latN)
-                    + " AND (lon BETWEEN " + String.valueOf(lonW) + " AND 180)"
-                    + " OR (lon BETWEEN -180 AND " + String.valueOf(lonE) + ")" + " ORDER BY depth ASC;";
+        // the local index, unless missing or stale
+        HistoricSeismicityIndex index = HistoricSeismicityIndex.getInstance();
+        if (index != null) {
+            index.query(histEvents, latN, latS, lonW, lonE);
+            return true;
         }
 
+        histEvents.clear();
+
         try {
             //con = DriverManager.getConnection(url, pgUser, pgPassword);
-            st = pgCon.createStatement();
-            rs = st.executeQuery(query);
+            con = getConnection(false);
+            rs = queryHistoricalSeismicity(con, latN, latS, lonW, lonE);
 
             while (rs.next()) {
                 HistoricEvent tmp = new HistoricEvent(rs.getInt(1), rs.getInt(2), rs.getDouble(3),
@@ -952,19 +1366,192 @@ public class SeisDataDAO {
                 if (rs != null) {
                     rs.close();
                 }
-                if (st != null) {
-                    st.close();
-                }
                 /*if (pgCon != null) {
                  pgCon.close();
                  }*/
 
             } catch (SQLException ex) {
+            } finally {
+                releaseConnection(con, false);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Stream the historic seismicity of an area into the columnar store: the
+     * rows are read through a cursor, a fetch size at a time, straight into
+     * primitive arrays without creating an object per event. Served from the
+     * local HistoricSeismicityIndex when available.
+     *
+     * @param seismicity cleared and filled
+     * @param latN
+     * @param latS
+     * @param lonW
+     * @param lonE
+     * @return
+     */
+    public static boolean retrieveHistSeismicity(HistoricSeismicity seismicity, double latN, double latS, double lonW, double lonE) {
+        Connection con = null;
+        ResultSet rs = null;
+
+        // the local index, unless missing or stale
+        HistoricSeismicityIndex index = HistoricSeismicityIndex.getInstance();
+        if (index != null) {
+            index.query(seismicity, latN, latS, lonW, lonE);
+            return true;
+        }
+
+        seismicity.clear();
+        long startTime = System.nanoTime();
+
+        try {
+            con = getConnection(false);
+            rs = queryHistoricalSeismicity(con, latN, latS, lonW, lonE);
+
+            while (rs.next()) {
+                seismicity.add(rs.getInt(1), rs.getInt(2), rs.getDouble(3), rs.getDouble(4));
+            }
+            seismicity.trimToSize();
+
+        } catch (SQLException ex) {
+            VBASLogger.logSevere("Error retrieving historical seismicity, " + ex.toString());
+            return false;
+        } finally {
+            try {
+                if (rs != null) {
+                    rs.close();
+                }
+            } catch (SQLException ex) {
+            } finally {
+                releaseConnection(con, false);
             }
         }
+
+        VBASLogger.logDebug("#HistoricEvents=" + seismicity.size()
+                + ", memory=" + seismicity.getMemoryBytes() / 1024 + " KB"
+                + ", t=" + (System.nanoTime() - startTime) / 1000000 + " ms");
         return true;
     }
 
+    /*
+     * Two longitude ranges {from, to, from, to} of an area, the second one is
+     * different when the area crosses the date line.
+     */
+    static double[] getHistLonRanges(double lonW, double lonE) {
+        if (lonW > -180 && lonE < 180) {
+            return new double[]{lonW, lonE, lonW, lonE};
+        } else if (lonW < -180) {
+            return new double[]{-180, lonE, lonW + 360, 180};
+        } else {
+            return new double[]{lonW, 180, -180, lonE - 360};
+        }
+    }
+
+    /**
+     * Read the whole historical_seismicity table ordered by depth, to build
+     * the local index.
+     *
+     * @param seismicity cleared and filled
+     * @return
+     */
+    static boolean retrieveAllHistSeismicity(HistoricSeismicity seismicity) {
+        Connection con = null;
+        Statement st = null;
+        ResultSet rs = null;
+
+        seismicity.clear();
+
+        try {
+            con = getConnection(false);
+            // read through a cursor
+            con.setAutoCommit(false);
+            st = con.createStatement();
+            st.setFetchSize(NamedQuery.HISTORICAL_SEISMICITY.getFetchSize());
+            rs = st.executeQuery("SELECT evid, depth, lat, lon FROM historical_seismicity ORDER BY depth ASC");
+
+            while (rs.next()) {
+                seismicity.add(rs.getInt(1), rs.getInt(2), rs.getDouble(3), rs.getDouble(4));
+            }
+            seismicity.trimToSize();
+
+        } catch (SQLException ex) {
+            VBASLogger.logSevere("Error retrieving historical seismicity, " + ex.toString());
+            return false;
+        } finally {
+            try {
+                if (rs != null) {
+                    rs.close();
+                }
+                if (st != null) {
+                    st.close();
+                }
+            } catch (SQLException ex) {
+            } finally {
+                releaseConnection(con, false);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the version of the historical_seismicity table: {row count, max
+     * evid, depth sum}, null if the database can not be read
+     */
+    static long[] retrieveHistSeismicitySignature() {
+        Connection con = null;
+        Statement st = null;
+        ResultSet rs = null;
+        long[] signature = null;
+
+        try {
+            con = getConnection(false);
+            st = con.createStatement();
+            rs = st.executeQuery("SELECT COUNT(*), COALESCE(MAX(evid), 0), COALESCE(SUM(depth), 0) FROM historical_seismicity");
+
+            if (rs.next()) {
+                signature = new long[]{rs.getLong(1), rs.getLong(2), rs.getLong(3)};
+            }
+
+        } catch (SQLException ex) {
+            VBASLogger.logSevere("Error retrieving historical seismicity version, " + ex.toString());
+            return null;
+        } finally {
+            try {
+                if (rs != null) {
+                    rs.close();
+                }
+                if (st != null) {
+                    st.close();
+                }
+            } catch (SQLException ex) {
+            } finally {
+                releaseConnection(con, false);
+            }
+        }
+        return signature;
+    }
+
+    /*
+     * Execute the historical seismicity query of an area, the result is read
+     * through a cursor (fetch size of the named query).
+     */
+    private static ResultSet queryHistoricalSeismicity(Connection con, double latN, double latS, double lonW, double lonE)
+            throws SQLException {
+
+        double[] lonRanges = getHistLonRanges(lonW, lonE);
+
+        PreparedStatement ps = prepare(con, NamedQuery.HISTORICAL_SEISMICITY, false);
+        ps.setDouble(1, latS);
+        ps.setDouble(2, latN);
+        for (int i = 0; i < lonRanges.length; i++) {
+            ps.setDouble(3 + i, lonRanges[i]);
+        }
+
+        return NamedQuery.HISTORICAL_SEISMICITY.executeQuery(ps, "lat " + latS + " to " + latN
+                + ", lon " + lonRanges[0] + " to " + lonRanges[1] + ", " + lonRanges[2] + " to " + lonRanges[3]);
+    }
+
     /**
      *
      * @param evid all phases associated to the event id
@@ -972,29 +1559,18 @@ public class SeisDataDAO {
      * @return filled phases list
      */
     public static boolean retrieveAllPhases(Integer evid, ArrayList<Phase> PhasesList, Boolean isAssess) {
-        //Connection pgCon = null;
-        Statement st = null;
+        Connection con = null;
+        PreparedStatement ps = null;
         ResultSet rs = null;
-        String query = null;
+        String query = NamedQuery.PHASES.getSql();
         PhasesList.clear();
 
         try {
-            if (isAssess) {
-                st = assessCon.createStatement();
-            } else {
-                st = pgCon.createStatement();
-            }
-
-            query = "SELECT r.reporter, p.sta, p.day, a.delta, a.esaz, a.phase, a.timeres, p.phid, p.phase, a.timedef, p.rdid, s.staname, p.msec, p.slow, p.azim, i.snr, a.phase_fixed "
-                    + "FROM event e, association a, report r, site s, phase p LEFT OUTER JOIN phase_info i "
-                    + "ON p.phid = i.phid "
-                    + "WHERE e.prime_hyp = a.hypid AND p.reporter = r.repid "
-                    + "AND a.phid = p.phid  AND a.author = 'ISC' AND p.sta = s.sta AND p.net IS NULL AND s.net IS NULL AND e.evid = " + evid
-                    + " ORDER BY a.delta ASC;";
-
-            rs = st.executeQuery(query);
+            con = getConnection(isAssess);
+            ps = prepare(con, NamedQuery.PHASES, isAssess);
+            ps.setInt(1, evid);
 
-            VBASLogger.logDebug(query);
+            rs = NamedQuery.PHASES.executeQuery(ps, "evid=" + evid);
 
             while (rs.next()) {
                 Phase tmp = new Phase();
@@ -1075,7 +1651,7 @@ public class SeisDataDAO {
 
         } catch (SQLException ex) {
             String message = ex.toString() + "\n\n"
-                    + "Failed query= " + query
+                    + "Failed query= " + query + ", evid=" + evid
                     + "\nSee the error log file for more information. ";
             JOptionPane.showMessageDialog(null, message, "Error", JOptionPane.ERROR_MESSAGE);
             VBASLogger.logSevere(message);
@@ -1085,11 +1661,10 @@ public class SeisDataDAO {
                 if (rs != null) {
                     rs.close();
                 }
-                if (st != null) {
-                    st.close();
-                }
             } catch (SQLException ex) {
                 return false;
+            } finally {
+                releaseConnection(con, isAssess);
             }
         }
 
@@ -1105,8 +1680,8 @@ public class SeisDataDAO {
      * @return
      */
     public static boolean retrieveAllPhasesAmpMag(Integer evid, ArrayList<Phase> PhaseList, Boolean isAssess) {
-        //Connection pgCon = null;
-        Statement st = null;
+        Connection con = null;
+        PreparedStatement ps = null;
         ResultSet rs = null;
 
         //build a hashmap for quick search
@@ -1116,19 +1691,11 @@ public class SeisDataDAO {
         }
 
         try {
-            if (isAssess) {
-                st = assessCon.createStatement();
-            } else {
-                st = pgCon.createStatement();
-            }
+            con = getConnection(isAssess);
+            ps = prepare(con, NamedQuery.PHASE_AMPMAGS, isAssess);
+            ps.setInt(1, evid);
 
-            String query = "SELECT p.amp, p.per, s.magnitude, s.ampdef, p.phid "
-                    + "FROM ampmag s, amplitude p, event e, association a "
-                    + "WHERE a.author = 'ISC' AND p.ampid = s.ampid AND a.phid = p.phid AND e.prime_hyp = a.hypid "
-                    + "AND e.evid = " + evid;
-            //+ "ORDER BY a.delta ASC;";
-
-            rs = st.executeQuery(query);
+            rs = NamedQuery.PHASE_AMPMAGS.executeQuery(ps, "evid=" + evid);
 
             while (rs.next()) {
 
@@ -1154,14 +1721,13 @@ public class SeisDataDAO {
                 if (rs != null) {
                     rs.close();
                 }
-                if (st != null) {
-                    st.close();
-                }
                 /*if (pgCon != null) {
                  pgCon.close();
                  }*/
 
             } catch (SQLException ex) {
+            } finally {
+                releaseConnection(con, isAssess);
             }
         }
         return true;
@@ -1174,7 +1740,7 @@ public class SeisDataDAO {
      * @return
      */
     public static boolean retrieveAllStationsWithRegions(TreeMap<String, String> allStations, Boolean isAssess) {
-        //Connection pgCon = null;
+        Connection con = null;
         Statement st = null;
         ResultSet rs = null;
 
@@ -1184,11 +1750,8 @@ public class SeisDataDAO {
                 + "AND s.sta = g.sta AND g.net IS NULL AND g.grn_ll = r.gr_number;";
 
         try {
-            if (isAssess) {
-                st = assessCon.createStatement();
-            } else {
-                st = pgCon.createStatement();
-            }
+            con = getConnection(isAssess);
+            st = con.createStatement();
 
             rs = st.executeQuery(query);
 
@@ -1211,6 +1774,57 @@ public class SeisDataDAO {
                  }*/
 
             } catch (SQLException ex) {
+            } finally {
+                releaseConnection(con, isAssess);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Retrieve the code, location and region name of all the registered
+     * stations, for the station reference cache
+     *
+     * @param stations keyed by station code
+     * @return
+     */
+    public static boolean retrieveAllStationReferences(HashMap<String, StationReference> stations) {
+        Connection con = null;
+        Statement st = null;
+        ResultSet rs = null;
+
+        String query = "SELECT s.sta, s.lat, s.lon, r.gr_short "
+                + "FROM site s "
+                + "LEFT OUTER JOIN site_grn g ON g.sta = s.sta AND g.net IS NULL "
+                + "LEFT OUTER JOIN region r ON r.gr_number = g.grn_ll "
+                + "WHERE s.net IS NULL;";
+
+        try {
+            con = getConnection(false);
+            st = con.createStatement();
+            rs = st.executeQuery(query);
+
+            while (rs.next()) {
+                String sta = rs.getString(1);
+                stations.put(sta, new StationReference(sta, rs.getDouble(2), rs.getDouble(3), rs.getString(4)));
+            }
+
+        } catch (SQLException ex) {
+            String message = VBASLogger.debugAt() + ex.toString() + "\nQuery= " + query;
+            logger.log(Level.SEVERE, message);
+            return false;
+        } finally {
+            try {
+                if (rs != null) {
+                    rs.close();
+                }
+                if (st != null) {
+                    st.close();
+                }
+            } catch (SQLException ex) {
+                return false;
+            } finally {
+                releaseConnection(con, false);
             }
         }
         return true;
@@ -1225,32 +1839,29 @@ public class SeisDataDAO {
      * @return
      */
     public static boolean retrieveAllStations(Integer evid, ArrayList<Station> allStations, Boolean isAssess) {
-        //Connection pgCon = null;
-        Statement st = null;
+        Connection con = null;
+        PreparedStatement ps = null;
         ResultSet rs = null;
 
         allStations.clear();
 
-        String query = "SELECT DISTINCT p.sta, s.lat, s.lon, r.reporter, a.esaz, a.delta FROM event e, association a, phase p, report r, site s "
-                + " WHERE e.evid = " + evid
-                + " AND e.prime_hyp = a.hypid "
-                + "AND a.author = 'ISC' AND a.phid = p.phid AND p.reporter = r.repid AND p.sta = s.sta AND s.net IS NULL";
+        // the station locations come from the station reference cache
+        StationReferenceCache stationCache = StationReferenceCache.getInstance();
 
         try {
 
-            if (isAssess) {
-                //con = DriverManager.getConnection(url, assessUser, assessPassword);
-                st = assessCon.createStatement();
-            } else {
-                //con = DriverManager.getConnection(url, pgUser, pgPassword);
-                st = pgCon.createStatement();
-            }
+            con = getConnection(isAssess);
+            ps = prepare(con, NamedQuery.STATIONS, isAssess);
+            ps.setInt(1, evid);
 
-            //st = pgCon.createStatement();
-            rs = st.executeQuery(query);
+            rs = NamedQuery.STATIONS.executeQuery(ps, "evid=" + evid);
 
             while (rs.next()) {
-                Station tmp = new Station(rs.getString(1), rs.getDouble(2), rs.getDouble(3), rs.getString(4), rs.getDouble(5), rs.getDouble(6));
+                StationReference sta = stationCache.get(rs.getString(1));
+                if (sta == null) {
+                    continue;
+                }
+                Station tmp = new Station(sta.getStaCode(), sta.getLat(), sta.getLon(), rs.getString(2), rs.getDouble(3), rs.getDouble(4));
 
                 allStations.add(tmp);
             }
@@ -1262,14 +1873,13 @@ public class SeisDataDAO {
                 if (rs != null) {
                     rs.close();
                 }
-                if (st != null) {
-                    st.close();
-                }
                 /*if (pgCon != null) {
                  pgCon.close();
                  }*/
 
             } catch (SQLException ex) {
+            } finally {
+                releaseConnection(con, isAssess);
             }
         }
         return true;
@@ -1284,38 +1894,36 @@ public class SeisDataDAO {
      * @return
      */
     public static boolean retrieveStationMags(Integer hypid, ArrayList<Station> allStations, Boolean isAssess) {
-        //Connection pgCon = null;
-        Statement st = null;
+        Connection con = null;
+        PreparedStatement ps = null;
         ResultSet rs = null;
 
         allStations.clear();
 
-        String query = "SELECT DISTINCT m.sta, s.lat, s.lon, m.magnitude, m.magtype FROM site s, stamag m"
-                + " WHERE m.hypid = " + hypid
-                + " AND m.sta = s.sta"
-                + " AND s.net IS NULL ORDER BY m.magtype";
+        // the station locations come from the station reference cache
+        StationReferenceCache stationCache = StationReferenceCache.getInstance();
 
         try {
-            if (isAssess) {
-                //con = DriverManager.getConnection(url, assessUser, assessPassword);
-                st = assessCon.createStatement();
-            } else {
-                //con = DriverManager.getConnection(url, pgUser, pgPassword);
-                st = pgCon.createStatement();
-            }
-            //st = pgCon.createStatement();
-            rs = st.executeQuery(query);
+            con = getConnection(isAssess);
+            ps = prepare(con, NamedQuery.STATION_MAGS, isAssess);
+            ps.setInt(1, hypid);
+
+            rs = NamedQuery.STATION_MAGS.executeQuery(ps, "hypid=" + hypid);
 
             while (rs.next()) {
-                Station tmp = new Station(rs.getString(1), rs.getDouble(2), rs.getDouble(3));
+                StationReference sta = stationCache.get(rs.getString(1));
+                if (sta == null) {
+                    continue;
+                }
+                Station tmp = new Station(sta.getStaCode(), sta.getLat(), sta.getLon());
                 //tmp.setAzimuth(rs.getDouble(6));
                 //tmp.setDelta(rs.getDouble(7));
 
-                if (rs.getString(5).equals("mb")) {
-                    tmp.setStaMb(rs.getDouble(4));
+                if (rs.getString(3).equals("mb")) {
+                    tmp.setStaMb(rs.getDouble(2));
                     allStations.add(tmp);
-                } else if (rs.getString(5).equals("MS")) {
-                    tmp.setStaMs(rs.getDouble(4));
+                } else if (rs.getString(3).equals("MS")) {
+                    tmp.setStaMs(rs.getDouble(2));
                     allStations.add(tmp);
                 }
             }
@@ -1327,15 +1935,14 @@ public class SeisDataDAO {
                 if (rs != null) {
                     rs.close();
                 }
-                if (st != null) {
-                    st.close();
-                }
                 /*if (pgCon != null) {
                  pgCon.close();
                  }*/
 
             } catch (SQLException ex) {
                 return false;
+            } finally {
+                releaseConnection(con, isAssess);
             }
         }
         return true;
@@ -1343,14 +1950,14 @@ public class SeisDataDAO {
 
     //related with the scheduling
     /**
-     * as the list is not big, so use iteration to fill the events number
+     * Fill the events number of each block, rows are matched by block id
      *
      * @param bList the blocklist to fill the events number
      * @return
      */
     public static boolean retrieveBlockEventNumber(ArrayList<TaskBlock> bList) {
 
-        //Connection pgCon = null;
+        Connection con = null;
         Statement st = null;
         ResultSet rs = null;
 
@@ -1359,22 +1966,19 @@ public class SeisDataDAO {
                 + " WHERE ba.id = ev.block_allocation_id AND ba.pass= 'p'"
                 + " GROUP BY ba.block_id;";
 
+        HashMap<Integer, TaskBlock> blockMap = SeisDataIndex.mapByBlockID(bList);
+
         try {
             //con = DriverManager.getConnection(url, pgUser, pgPassword);
-            st = pgCon.createStatement();
+            con = getConnection(false);
+            st = con.createStatement();
             rs = st.executeQuery(query);
 
             while (rs.next()) {
-
-                for (TaskBlock tb : bList) {
-                    //System.out.println(tb.getBlockID());
-                    //System.out.println(rs.getInt(1));
-
-                    if (tb.getBlockID().equals(rs.getInt(1))) {
-                        tb.setEventNumber(rs.getInt(2));
-                    }
+                TaskBlock tb = blockMap.get(rs.getInt(1));
+                if (tb != null) {
+                    tb.setEventNumber(rs.getInt(2));
                 }
-
             }
 
         } catch (SQLException ex) {
@@ -1411,6 +2015,8 @@ public class SeisDataDAO {
             } catch (SQLException ex) {
 
                 return false;
+            } finally {
+                releaseConnection(con, false);
             }
         }
 
@@ -1425,7 +2031,7 @@ public class SeisDataDAO {
      */
     public static boolean retrieveBlockReviewedEventNumber(ArrayList<TaskBlock> bList) {
 
-        //Connection pgCon = null;
+        Connection con = null;
         Statement st = null;
         ResultSet rs = null;
 
@@ -1434,22 +2040,19 @@ public class SeisDataDAO {
                 + " WHERE ba.id = ev.block_allocation_id AND ba.review = 0 AND ba.start IS NOT NULL AND ba.finish IS NULL and ev.start IS NOT NULL"
                 + " GROUP BY ba.block_id;";
 
+        HashMap<Integer, TaskBlock> blockMap = SeisDataIndex.mapByBlockID(bList);
+
         try {
             //con = DriverManager.getConnection(url, pgUser, pgPassword);
-            st = pgCon.createStatement();
+            con = getConnection(false);
+            st = con.createStatement();
             rs = st.executeQuery(query);
 
             while (rs.next()) {
-
-                for (TaskBlock tb : bList) {
-                    //System.out.println(tb.getBlockID());
-                    //System.out.println(rs.getInt(1));
-
-                    if (tb.getBlockID().equals(rs.getInt(1))) {
-                        tb.setReviewedEventNumber(rs.getInt(2));
-                    }
+                TaskBlock tb = blockMap.get(rs.getInt(1));
+                if (tb != null) {
+                    tb.setReviewedEventNumber(rs.getInt(2));
                 }
-
             }
 
         } catch (SQLException ex) {
@@ -1484,6 +2087,8 @@ public class SeisDataDAO {
             } catch (SQLException ex) {
 
                 return false;
+            } finally {
+                releaseConnection(con, false);
             }
         }
 
@@ -1494,7 +2099,7 @@ public class SeisDataDAO {
 
         //clear the memory of blockArray in order to reload events
         //blockArray.clear();
-        //Connection pgCon = null;
+        Connection con = null;
         Statement st = null;
         ResultSet rs = null;
 
@@ -1505,7 +2110,8 @@ public class SeisDataDAO {
 
         try {
             //con = DriverManager.getConnection(url, pgUser, pgPassword);
-            st = pgCon.createStatement();
+            con = getConnection(false);
+            st = con.createStatement();
             rs = st.executeQuery(query);
 
             while (rs.next()) {
@@ -1611,6 +2217,8 @@ public class SeisDataDAO {
             } catch (SQLException ex) {
 
                 return false;
+            } finally {
+                releaseConnection(con, false);
             }
         }
 
@@ -1626,13 +2234,14 @@ public class SeisDataDAO {
             String commandStr,
             String functionStr) {
 
-        //Connection pgCon = null;
+        Connection con = null;
         Statement st = null;
         ResultSet rs = null;
 
         try {
             //con = DriverManager.getConnection(url, pgUser, pgPassword);
-            st = pgCon.createStatement();
+            con = getConnection(false);
+            st = con.createStatement();
 
             int block_allocation_id = 0;
 
@@ -1697,6 +2306,9 @@ public class SeisDataDAO {
 
             return false;
         } finally {
+            // the prefetched data of the SeisEvent is stale now
+            SeisEventDataCache.invalidate(evid);
+
             try {
                 if (rs != null) {
                     rs.close();
@@ -1710,6 +2322,8 @@ public class SeisDataDAO {
 
             } catch (SQLException ex) {
                 return false;
+            } finally {
+                releaseConnection(con, false);
             }
         }
         return true;
@@ -1721,26 +2335,19 @@ public class SeisDataDAO {
      */
     public static boolean readCommandTable(Integer evid, ArrayList<Command> commandList) {
 
-        //Connection pgCon = null;
-        Statement st = null;
+        Connection con = null;
+        PreparedStatement ps = null;
         ResultSet rs = null;
 
         commandList.clear();
 
         try {
             //con = DriverManager.getConnection(url, pgUser, pgPassword);
-            st = pgCon.createStatement();
+            con = getConnection(false);
+            ps = prepare(con, NamedQuery.COMMANDS, false);
+            ps.setInt(1, evid);
 
-            String query = "SELECT ec.id, ec.command, ec.functions, a.name, ba.pass, ec.adddate, ec.type, ec.status"
-                    + " FROM analyst a, edit_commands ec, block_allocation ba"
-                    + " WHERE ec.evid = " + evid
-                    + " AND ec.type != 'assess' AND ec.type != 'commit'"
-                    + " AND ba.id = ec.block_allocation_id"
-                    + " AND ba.analyst_id = a.id"
-                    + " ORDER BY ec.adddate;";
-
-            rs = st.executeQuery(query);
-            VBASLogger.logDebug("query= " + query + "\nrs= " + rs);
+            rs = NamedQuery.COMMANDS.executeQuery(ps, "evid=" + evid);
 
             while (rs.next()) {
                 String commandStr = rs.getString("command") + "";
@@ -1774,15 +2381,14 @@ public class SeisDataDAO {
                 if (rs != null) {
                     rs.close();
                 }
-                if (st != null) {
-                    st.close();
-                }
                 /*if (pgCon != null) {
                  pgCon.close();
                  }*/
 
             } catch (SQLException ex) {
                 return false;
+            } finally {
+                releaseConnection(con, false);
             }
         }
         return true;
@@ -1802,13 +2408,14 @@ public class SeisDataDAO {
 
         int newAssessId = 0;
 
-        //Connection pgCon = null;
+        Connection con = null;
         Statement st = null;
         ResultSet rs = null;
 
         try {
             //con = DriverManager.getConnection(url, pgUser, pgPassword);
-            st = pgCon.createStatement();
+            con = getConnection(false);
+            st = con.createStatement();
 
             int block_allocation_id = 0;
 
@@ -1893,6 +2500,8 @@ public class SeisDataDAO {
 
             return 0;
         } finally {
+            SeisEventDataCache.invalidate(evid);
+
             try {
                 if (rs != null) {
                     rs.close();
@@ -1906,6 +2515,8 @@ public class SeisDataDAO {
 
             } catch (SQLException ex) {
                 return 0;
+            } finally {
+                releaseConnection(con, false);
             }
         }
 
@@ -1917,33 +2528,20 @@ public class SeisDataDAO {
      */
     public static boolean readAssessedCommandTable(Integer evid, ArrayList<AssessedCommand> assessedCommandList) {
 
-        //Connection pgCon = null;
-        Statement st = null;
+        Connection con = null;
+        PreparedStatement ps = null;
         ResultSet rs = null;
-        String query = "";
+        String query = NamedQuery.ASSESSED_COMMANDS.getSql();
 
         assessedCommandList.clear();
 
         try {
             //con = DriverManager.getConnection(url, pgUser, pgPassword);
-            st = pgCon.createStatement();
-
-            query = "SELECT ba.pass, a.name, ec.type, ec.id AS assessid, ec.command AS command, eca.id AS cmdids"
-                    + " FROM edit_commands ec, command_group cg, edit_commands eca, block_allocation ba, analyst a"
-                    + "   WHERE ec.evid = " + evid
-                    + "      AND cg.evid = ec.evid"
-                    + "      AND eca.evid = ec.evid"
-                    + "      AND (ec.type = 'assess'"
-                    + "            OR ec.type = 'commit')"
-                    + "      AND cg.id = ec.id"
-                    + "      AND eca.id = cg.edit_commands_id"
-                    + "      AND ba.id = ec.block_allocation_id"
-                    + "      AND ba.analyst_id = a.id"
-                    + " ORDER BY ec.adddate;";
+            con = getConnection(false);
+            ps = prepare(con, NamedQuery.ASSESSED_COMMANDS, false);
+            ps.setInt(1, evid);
 
-            rs = st.executeQuery(query);
-
-            VBASLogger.logDebug("in readAssessedCommandTable :: query = " + query);
+            rs = NamedQuery.ASSESSED_COMMANDS.executeQuery(ps, "evid=" + evid);
 
             Hashtable<Integer, AssessedCommand> hashtable
                     = new Hashtable<Integer, AssessedCommand>();;
@@ -1982,7 +2580,7 @@ public class SeisDataDAO {
                     + VBASLogger.debugAt()
                     + "\nFailed to load Command history list from database."
                     + "\nSee the error log file for more information. "
-                    + "\nQuery: " + query;
+                    + "\nQuery: " + query + ", evid=" + evid;
 
             JOptionPane.showMessageDialog(null, message, "Error", JOptionPane.ERROR_MESSAGE);
             logger.log(Level.SEVERE, message);
@@ -1993,15 +2591,14 @@ public class SeisDataDAO {
                 if (rs != null) {
                     rs.close();
                 }
-                if (st != null) {
-                    st.close();
-                }
                 /*if (pgCon != null) {
                  pgCon.close();
                  }*/
 
             } catch (SQLException ex) {
                 return false;
+            } finally {
+                releaseConnection(con, false);
             }
         }
         return true;
@@ -2012,14 +2609,15 @@ public class SeisDataDAO {
      */
     public static Boolean processDoneAction(Integer evid) {
 
-        //Connection pgCon = null;
+        Connection con = null;
         Statement st = null;
         //ResultSet rs = null;
         String query = null;
 
         try {
             //con = DriverManager.getConnection(url, pgUser, pgPassword);
-            st = pgCon.createStatement();
+            con = getConnection(false);
+            st = con.createStatement();
 
             query = "UPDATE event_allocation"
                     + "  SET finish = NOW()"
@@ -2058,6 +2656,8 @@ public class SeisDataDAO {
             logger.log(Level.SEVERE, message);
             return false;
         } finally {
+            SeisEventDataCache.invalidate(evid);
+
             try {
                 /*if (rs != null) {
                  rs.close();
@@ -2071,6 +2671,8 @@ public class SeisDataDAO {
 
             } catch (SQLException ex) {
                 return false;
+            } finally {
+                releaseConnection(con, false);
             }
         }
 
@@ -2082,14 +2684,15 @@ public class SeisDataDAO {
      */
     public static Boolean processBanishUnbanishAction(String sqlFunction) {
 
-        //Connection pgCon = null;
+        Connection con = null;
         Statement st = null;
         ResultSet rs = null;
         String query = null;
 
         try {
             //con = DriverManager.getConnection(url, pgUser, pgPassword);
-            st = pgCon.createStatement();
+            con = getConnection(false);
+            st = con.createStatement();
             query = "SELECT " + sqlFunction;
 
             VBASLogger.logDebug("query= " + query);
@@ -2107,6 +2710,9 @@ public class SeisDataDAO {
             logger.log(Level.SEVERE, message);
             return false;
         } finally {
+            // the function may touch any SeisEvent
+            SeisEventDataCache.invalidateAll();
+
             try {
                 if (rs != null) {
                     rs.close();
@@ -2120,6 +2726,8 @@ public class SeisDataDAO {
 
             } catch (SQLException ex) {
                 return false;
+            } finally {
+                releaseConnection(con, false);
             }
         }
 
@@ -2131,14 +2739,15 @@ public class SeisDataDAO {
      */
     public static Boolean processAllocateCommand(int evid) {
 
-        //Connection pgCon = null;
+        Connection con = null;
         Statement st = null;
         ResultSet rs = null;
         String query = null;
         Boolean ret = false;
 
         try {
-            st = pgCon.createStatement();
+            con = getConnection(false);
+            st = con.createStatement();
             query = "SELECT " + "ALLOCATE ( " + evid + " , '" + sysUser + "' );";
             VBASLogger.logDebug("query= " + query);
             rs = st.executeQuery(query);
@@ -2175,6 +2784,8 @@ public class SeisDataDAO {
             logger.log(Level.SEVERE, message);
             return false;
         } finally {
+            SeisEventDataCache.invalidate(evid);
+
             try {
                 if (rs != null) {
                     rs.close();
@@ -2184,6 +2795,8 @@ public class SeisDataDAO {
                 }
             } catch (SQLException ex) {
                 return false;
+            } finally {
+                releaseConnection(con, false);
             }
         }
 
@@ -2199,6 +2812,7 @@ public class SeisDataDAO {
             Boolean isAssess) {
 
         //Connection con = null;
+        Connection con = null;
         Statement st = null;
         ResultSet rs = null;
         String query = null;
@@ -2207,11 +2821,8 @@ public class SeisDataDAO {
 
         try {
 
-            if (isAssess) {
-                st = assessCon.createStatement();
-            } else {
-                st = pgCon.createStatement();
-            }
+            con = getConnection(isAssess);
+            st = con.createStatement();
 
             /* Assess: these two statement will runonly when we shall assess */
             if (isAssess) {
@@ -2301,6 +2912,13 @@ public class SeisDataDAO {
 
             return false;
         } finally {
+            // a commit may merge several SeisEvents
+            if (isAssess) {
+                SeisEventDataCache.invalidate(evid);
+            } else {
+                SeisEventDataCache.invalidateAll();
+            }
+
             try {
                 if (rs != null) {
                     rs.close();
@@ -2310,6 +2928,8 @@ public class SeisDataDAO {
                 }
             } catch (SQLException ex) {
                 return null;
+            } finally {
+                releaseConnection(con, isAssess);
             }
         }
 
@@ -0,0 +1,38 @@
+package uk.ac.isc.seisdatainterface;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import uk.ac.isc.seisdata.SeisEvent;
+import uk.ac.isc.seisdata.TaskBlock;
+
+/**
+ * Lookup maps used to match query rows to the loaded SeisData objects in
+ * constant time, instead of searching the whole list for every row.
+ */
+final class SeisDataIndex {
+
+    private SeisDataIndex() {
+    }
+
+    /**
+     * @return the events indexed by evid
+     */
+    static HashMap<Integer, SeisEvent> mapByEvid(ArrayList<SeisEvent> evList) {
+        HashMap<Integer, SeisEvent> evMap = new HashMap<Integer, SeisEvent>(evList.size() * 2);
+        for (SeisEvent ev : evList) {
+            evMap.put(ev.getEvid(), ev);
+        }
+        return evMap;
+    }
+
+    /**
+     * @return the task blocks indexed by block id
+     */
+    static HashMap<Integer, TaskBlock> mapByBlockID(ArrayList<TaskBlock> bList) {
+        HashMap<Integer, TaskBlock> blockMap = new HashMap<Integer, TaskBlock>(bList.size() * 2);
+        for (TaskBlock tb : bList) {
+            blockMap.put(tb.getBlockID(), tb);
+        }
+        return blockMap;
+    }
+}
@@ -0,0 +1,296 @@
+package uk.ac.isc.seisdatainterface;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import uk.ac.isc.seisdata.Hypocentre;
+import uk.ac.isc.seisdata.Phase;
+import uk.ac.isc.seisdata.SeisEvent;
+import uk.ac.isc.seisdata.Station;
+import uk.ac.isc.seisdata.VBASLogger;
+
+/**
+ * Small LRU cache of the data of the SeisEvents next to the selected one in
+ * the SeisEvents table: Hypocentres, Phases, Stations and the station
+ * magnitudes of the prime Hypocentre. Once the selected SeisEvent is loaded,
+ * the previous and next few SeisEvents are loaded in the background so that
+ * stepping through the table does not wait for the database.
+ *
+ * Each cached list is handed out once (take semantics), so the cache never
+ * shares the mutable SeisData objects with the views. Anything written to the
+ * database for an evid (command, assess, commit, done, ...) invalidates it.
+ */
+public final class SeisEventDataCache {
+
+    // SeisEvents prefetched on each side of the selected one
+    private static final int PREFETCH_NEIGHBOURS = 2;
+    private static final int MAX_EVENTS = 2 * PREFETCH_NEIGHBOURS + 4;
+
+    /*
+     * The data of one SeisEvent, a null list is not loaded or already taken.
+     */
+    private static class CachedEvent {
+
+        private ArrayList<Hypocentre> hypos = null;
+        private ArrayList<Phase> phases = null;
+        private ArrayList<Station> stations = null;
+        private Integer primeHypid = null;
+        private ArrayList<Station> stationMags = null;
+
+        private boolean isComplete() {
+            return hypos != null && phases != null && stations != null && stationMags != null;
+        }
+    }
+
+    private static final LinkedHashMap<Integer, CachedEvent> cache
+            = new LinkedHashMap<Integer, CachedEvent>(MAX_EVENTS + 1, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Integer, CachedEvent> eldest) {
+                    return size() > MAX_EVENTS;
+                }
+            };
+
+    // one low priority thread, not to compete with the selected SeisEvent load
+    private static final ExecutorService prefetchExecutor = Executors.newSingleThreadExecutor(
+            new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "SeisEventDataPrefetcher");
+                    t.setDaemon(true);
+                    t.setPriority(Thread.MIN_PRIORITY);
+                    return t;
+                }
+            });
+
+    // a new selection makes the queued prefetches stale
+    private static final AtomicInteger prefetchGeneration = new AtomicInteger(0);
+    // incremented on each invalidation, data loaded across it is dropped
+    private static final AtomicLong epoch = new AtomicLong(0);
+
+    private static final AtomicLong hits = new AtomicLong(0);
+    private static final AtomicLong misses = new AtomicLong(0);
+
+    private SeisEventDataCache() {
+    }
+
+    /**
+     * Load the data of the SeisEvents around the selected one in the
+     * background.
+     *
+     * @param events the SeisEvents in table order
+     * @param evid the selected SeisEvent
+     */
+    public static void prefetchNeighbours(ArrayList<SeisEvent> events, Integer evid) {
+
+        final int generation = prefetchGeneration.incrementAndGet();
+
+        int index = -1;
+        for (int i = 0; i < events.size(); i++) {
+            if (events.get(i).getEvid().equals(evid)) {
+                index = i;
+                break;
+            }
+        }
+        if (index < 0) {
+            return;
+        }
+
+        // nearest first: next, previous, next + 1, previous - 1, ...
+        ArrayList<Integer> neighbours = new ArrayList<Integer>();
+        for (int d = 1; d <= PREFETCH_NEIGHBOURS; d++) {
+            if (index + d < events.size()) {
+                neighbours.add(events.get(index + d).getEvid());
+            }
+            if (index - d >= 0) {
+                neighbours.add(events.get(index - d).getEvid());
+            }
+        }
+
+        for (final Integer neighbour : neighbours) {
+            prefetchExecutor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    if (generation == prefetchGeneration.get()) {
+                        prefetch(neighbour);
+                    }
+                }
+            });
+        }
+    }
+
+    private static void prefetch(Integer evid) {
+
+        synchronized (SeisEventDataCache.class) {
+            CachedEvent entry = cache.get(evid);
+            if (entry != null && entry.isComplete()) {
+                return;
+            }
+        }
+
+        long startEpoch = epoch.get();
+        long startTime = System.nanoTime();
+
+        ArrayList<Hypocentre> hypos = new ArrayList<Hypocentre>();
+        Global.loadHypocentres(evid, hypos);
+
+        ArrayList<Phase> phases = new ArrayList<Phase>();
+        Global.loadPhases(evid, phases);
+
+        ArrayList<Station> stations = new ArrayList<Station>();
+        SeisDataDAO.retrieveAllStations(evid, stations, false);
+
+        Integer primeHypid = null;
+        for (Hypocentre hypo : hypos) {
+            if (hypo.getIsPrime() == true) {
+                primeHypid = hypo.getHypid();
+            }
+        }
+        ArrayList<Station> stationMags = new ArrayList<Station>();
+        if (primeHypid != null) {
+            SeisDataDAO.retrieveStationMags(primeHypid, stationMags, false);
+        }
+
+        synchronized (SeisEventDataCache.class) {
+            // written to the database meanwhile
+            if (startEpoch != epoch.get()) {
+                return;
+            }
+
+            CachedEvent entry = new CachedEvent();
+            entry.hypos = hypos;
+            entry.phases = phases;
+            entry.stations = stations;
+            entry.primeHypid = primeHypid;
+            entry.stationMags = stationMags;
+            cache.put(evid, entry);
+        }
+
+        VBASLogger.logDebug("Prefetched SeisEvent=" + evid
+                + ", #Hypocentres:" + hypos.size()
+                + ", #Phases:" + phases.size()
+                + ", #Stations:" + stations.size()
+                + ", t=" + (System.nanoTime() - startTime) / 1000000 + " ms");
+    }
+
+    /**
+     * @return the prefetched Hypocentres (with magnitudes) of the SeisEvent,
+     * null if not cached
+     */
+    public static synchronized ArrayList<Hypocentre> takeHypocentres(Integer evid) {
+        CachedEvent entry = cache.get(evid);
+        ArrayList<Hypocentre> hypos = (entry == null) ? null : entry.hypos;
+        if (entry != null) {
+            entry.hypos = null;
+        }
+        count(hypos != null);
+        return hypos;
+    }
+
+    /**
+     * @return the prefetched Phases (with amplitudes, magnitudes and region
+     * names) of the SeisEvent, null if not cached
+     */
+    public static synchronized ArrayList<Phase> takePhases(Integer evid) {
+        CachedEvent entry = cache.get(evid);
+        ArrayList<Phase> phases = (entry == null) ? null : entry.phases;
+        if (entry != null) {
+            entry.phases = null;
+        }
+        count(phases != null);
+        return phases;
+    }
+
+    private static synchronized ArrayList<Station> takeStations(Integer evid) {
+        CachedEvent entry = cache.get(evid);
+        ArrayList<Station> stations = (entry == null) ? null : entry.stations;
+        if (entry != null) {
+            entry.stations = null;
+        }
+        count(stations != null);
+        return stations;
+    }
+
+    private static synchronized ArrayList<Station> takeStationMags(Integer hypid) {
+        ArrayList<Station> stationMags = null;
+        for (CachedEvent entry : cache.values()) {
+            if (hypid.equals(entry.primeHypid) && entry.stationMags != null) {
+                stationMags = entry.stationMags;
+                entry.stationMags = null;
+                break;
+            }
+        }
+        count(stationMags != null);
+        return stationMags;
+    }
+
+    /**
+     * Same as SeisDataDAO.retrieveAllStations(), served from the cache when
+     * the SeisEvent was prefetched.
+     */
+    public static boolean retrieveAllStations(Integer evid, ArrayList<Station> staList, Boolean isAssess) {
+        if (!isAssess) {
+            ArrayList<Station> stations = takeStations(evid);
+            if (stations != null) {
+                staList.addAll(stations);
+                return true;
+            }
+        }
+        return SeisDataDAO.retrieveAllStations(evid, staList, isAssess);
+    }
+
+    /**
+     * Same as SeisDataDAO.retrieveStationMags(), served from the cache when the
+     * prime Hypocentre of a prefetched SeisEvent is asked for.
+     */
+    public static boolean retrieveStationMags(Integer hypid, ArrayList<Station> staList, Boolean isAssess) {
+        if (!isAssess) {
+            ArrayList<Station> stationMags = takeStationMags(hypid);
+            if (stationMags != null) {
+                staList.addAll(stationMags);
+                return true;
+            }
+        }
+        return SeisDataDAO.retrieveStationMags(hypid, staList, isAssess);
+    }
+
+    /**
+     * Drop the cached data of a SeisEvent, e.g., a command was written for it.
+     */
+    public static synchronized void invalidate(Integer evid) {
+        epoch.incrementAndGet();
+        cache.remove(evid);
+    }
+
+    /**
+     * Drop all the cached data, e.g., after a commit or when the SeisEvents
+     * are reloaded.
+     */
+    public static synchronized void invalidateAll() {
+        epoch.incrementAndGet();
+        prefetchGeneration.incrementAndGet();
+        cache.clear();
+    }
+
+    public static synchronized int size() {
+        return cache.size();
+    }
+
+    public static String getStatistics() {
+        return "SeisEventDataCache: size=" + size()
+                + ", hits=" + hits.get()
+                + ", misses=" + misses.get();
+    }
+
+    private static void count(boolean isHit) {
+        if (isHit) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+        }
+    }
+}
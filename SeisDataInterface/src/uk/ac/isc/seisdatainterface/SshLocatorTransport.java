@@ -0,0 +1,60 @@
+package uk.ac.isc.seisdatainterface;
+
+import java.io.IOException;
+
+/**
+ * Runs the locator on another machine (beast) over ssh. The credentials are
+ * sent on the standard input ahead of the request and exported by the
+ * remote shell, so they show neither in the local nor in the remote process
+ * list. ssh runs in batch mode and fails instead of asking for a password.
+ *
+ * Destroying the local ssh does not stop the remote locator by itself. The
+ * standard input is kept open for the whole run, and the remote shell kills
+ * the locator when it is closed, i.e., when ssh ends or the connection is
+ * lost. No terminal is allocated (ssh -tt), it would echo the credentials
+ * into iscloc.out.
+ */
+public class SshLocatorTransport implements LocatorTransport {
+
+    private final String host;
+    private final String locatorBin;
+
+    /**
+     * @param host Ex. beast
+     * @param locatorBin path of iscloc on the host
+     */
+    public SshLocatorTransport(String host, String locatorBin) {
+        this.host = host;
+        this.locatorBin = locatorBin;
+    }
+
+    @Override
+    public String getName() {
+        return "ssh " + host;
+    }
+
+    @Override
+    public Process start(String pgUser, String pgPassword, String request) throws IOException {
+        ProcessBuilder pb = new ProcessBuilder("ssh", "-o", "BatchMode=yes", host, getRemoteCommand());
+        Process p = pb.start();
+        LocalLocatorTransport.writeLines(p, pgUser, pgPassword, request);
+        return p;
+    }
+
+    /*
+     * The locator reads the request in the background, a watcher kills it at
+     * the end of the standard input (fd 3, an asynchronous list otherwise
+     * reads /dev/null). The exit code is the one of the locator.
+     */
+    String getRemoteCommand() {
+        return "exec 3<&0; "
+                + "IFS= read -r PGUSER; IFS= read -r PGPASSWORD; IFS= read -r REQUEST; "
+                + "export PGUSER PGPASSWORD; "
+                + "printf '%s\\n' \"$REQUEST\" | " + locatorBin + " - & pid=$!; "
+                + "(cat >/dev/null; kill $pid) <&3 >/dev/null 2>&1 & watcher=$!; "
+                + "exec 3<&-; "
+                + "wait $pid; rc=$?; "
+                + "kill $watcher 2>/dev/null; "
+                + "exit $rc";
+    }
+}
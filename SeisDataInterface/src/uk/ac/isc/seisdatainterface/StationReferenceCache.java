@@ -0,0 +1,149 @@
+package uk.ac.isc.seisdatainterface;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import uk.ac.isc.seisdata.VBASLogger;
+
+/**
+ * Session level cache of the station reference data: station code, location
+ * and Flinn-Engdahl region name of every registered station (site table). It is
+ * loaded once, on first use, and shared by all the views instead of reloading
+ * the whole site table for each SeisEvent. The loaded data is immutable; call
+ * refresh() or invalidate() when the site table changes.
+ */
+public final class StationReferenceCache {
+
+    /**
+     * Reference data of one station.
+     */
+    public static final class StationReference {
+
+        private final String staCode;
+        private final double lat;
+        private final double lon;
+        private final String regionName;
+
+        public StationReference(String staCode, double lat, double lon, String regionName) {
+            this.staCode = staCode;
+            this.lat = lat;
+            this.lon = lon;
+            this.regionName = regionName;
+        }
+
+        public String getStaCode() {
+            return staCode;
+        }
+
+        public double getLat() {
+            return lat;
+        }
+
+        public double getLon() {
+            return lon;
+        }
+
+        public String getRegionName() {
+            return regionName;
+        }
+    }
+
+    private static volatile StationReferenceCache instance = null;
+
+    // keyed by station code, i.e., Phase.getReportStation()
+    private final Map<String, StationReference> stations;
+
+    private StationReferenceCache(Map<String, StationReference> stations) {
+        this.stations = Collections.unmodifiableMap(stations);
+    }
+
+    /**
+     * @return the cache, loaded from the database on first use. If the load
+     * fails an empty cache is returned and the load is tried again on the
+     * next call.
+     */
+    public static StationReferenceCache getInstance() {
+        StationReferenceCache cache = instance;
+        if (cache == null) {
+            synchronized (StationReferenceCache.class) {
+                cache = instance;
+                if (cache == null) {
+                    cache = load();
+                    if (cache == null) {
+                        return empty();
+                    }
+                    instance = cache;
+                }
+            }
+        }
+        return cache;
+    }
+
+    /**
+     * Reload the station reference data from the database now.
+     *
+     * @return the new cache, or an empty one if the load failed (it is tried
+     * again on the next use)
+     */
+    public static StationReferenceCache refresh() {
+        synchronized (StationReferenceCache.class) {
+            instance = load();
+            return (instance == null) ? empty() : instance;
+        }
+    }
+
+    /**
+     * Drop the loaded data, it is reloaded on the next use.
+     */
+    public static void invalidate() {
+        synchronized (StationReferenceCache.class) {
+            instance = null;
+        }
+    }
+
+    /*
+     * @return null if the site table could not be read
+     */
+    private static StationReferenceCache load() {
+        long startTime = System.nanoTime();
+
+        HashMap<String, StationReference> stations = new HashMap<String, StationReference>();
+        if (!SeisDataDAO.retrieveAllStationReferences(stations)) {
+            VBASLogger.logSevere("Error loading the station reference cache, it is loaded again on the next use.");
+            return null;
+        }
+
+        VBASLogger.logDebug("Loaded station reference cache, #Stations=" + stations.size()
+                + ", t=" + (System.nanoTime() - startTime) / 1000000 + " ms");
+
+        return new StationReferenceCache(stations);
+    }
+
+    private static StationReferenceCache empty() {
+        return new StationReferenceCache(new HashMap<String, StationReference>());
+    }
+
+    public StationReference get(String staCode) {
+        return stations.get(staCode);
+    }
+
+    public boolean contains(String staCode) {
+        return stations.containsKey(staCode);
+    }
+
+    /**
+     * @return the region name of the station, null if unknown
+     */
+    public String getRegionName(String staCode) {
+        StationReference sta = stations.get(staCode);
+        return (sta == null) ? null : sta.getRegionName();
+    }
+
+    public Map<String, StationReference> getStations() {
+        return stations;
+    }
+
+    public int size() {
+        return stations.size();
+    }
+}
@@ -0,0 +1,98 @@
+package uk.ac.isc.seisdatainterface;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A locator that runs nothing, for the tests: it ends after a delay with the
+ * given output, standard error and exit code, and keeps the last request.
+ */
+public class StubLocatorTransport implements LocatorTransport {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final String output;
+    private final String error;
+    private final int exitCode;
+    private final long delayMillis;
+
+    private volatile String lastRequest = null;
+
+    public StubLocatorTransport(String output, String error, int exitCode, long delayMillis) {
+        this.output = output;
+        this.error = error;
+        this.exitCode = exitCode;
+        this.delayMillis = delayMillis;
+    }
+
+    @Override
+    public String getName() {
+        return "stub";
+    }
+
+    @Override
+    public Process start(String pgUser, String pgPassword, String request) {
+        lastRequest = request;
+        return new StubProcess();
+    }
+
+    /**
+     * @return request of the last locator started, null if none
+     */
+    public String getLastRequest() {
+        return lastRequest;
+    }
+
+    private final class StubProcess extends Process {
+
+        private final long endTime = System.currentTimeMillis() + delayMillis;
+        private final CountDownLatch destroyed = new CountDownLatch(1);
+        private final InputStream stdout = new ByteArrayInputStream(output.getBytes(UTF8));
+        private final InputStream stderr = new ByteArrayInputStream(error.getBytes(UTF8));
+
+        @Override
+        public OutputStream getOutputStream() {
+            return new ByteArrayOutputStream();
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return stdout;
+        }
+
+        @Override
+        public InputStream getErrorStream() {
+            return stderr;
+        }
+
+        @Override
+        public int waitFor() throws InterruptedException {
+            long wait = endTime - System.currentTimeMillis();
+            if (wait > 0) {
+                destroyed.await(wait, TimeUnit.MILLISECONDS);
+            }
+            return exitValue();
+        }
+
+        @Override
+        public int exitValue() {
+            if (destroyed.getCount() == 0) {
+                return 143;
+            }
+            if (System.currentTimeMillis() < endTime) {
+                throw new IllegalThreadStateException("running");
+            }
+            return exitCode;
+        }
+
+        @Override
+        public void destroy() {
+            destroyed.countDown();
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package uk.ac.isc.seisdatainterface;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+/**
+ * LocatorRun with the stub transport and a fake local locator (a shell
+ * script), no iscloc or database needed.
+ */
+public class LocatorRunTest {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    @Test
+    public void TestOutputAndExitCode() throws Exception {
+        Path dir = Files.createTempDirectory("locator");
+        StubLocatorTransport stub = new StubLocatorTransport(
+                "Event 600123\nERROR: no phases\nlocation\n", "", 0, 0);
+
+        final List<String> lines = new ArrayList<String>();
+        LocatorRun run = new LocatorRun(stub, 600123, dir, "user", "pw", "fix_depth=10");
+        run.setListener(new LocatorRun.Listener() {
+            @Override
+            public void outputLine(LocatorRun r, String line) {
+                synchronized (lines) {
+                    lines.add(line);
+                }
+            }
+        });
+        run.start();
+
+        Assert.assertTrue(run.waitFor(5000));
+        Assert.assertEquals(LocatorRun.DONE, run.getState());
+        Assert.assertEquals(Integer.valueOf(0), run.getExitCode());
+        Assert.assertEquals("600123 fix_depth=10", stub.getLastRequest());
+        Assert.assertEquals(3, run.getLineCount());
+        Assert.assertEquals(3, lines.size());
+        Assert.assertEquals(1, run.getErrorLines().size());
+        Assert.assertEquals("Event 600123\nERROR: no phases\nlocation\n",
+                new String(Files.readAllBytes(run.getOutputFile().toPath()), UTF8));
+        Assert.assertNull(run.getFailure());
+    }
+
+    @Test
+    public void TestFailure() throws Exception {
+        Path dir = Files.createTempDirectory("locator");
+        LocatorRun run = new LocatorRun(new StubLocatorTransport("", "no such event\n", 2, 0),
+                1, dir, "user", "pw", "");
+        run.start();
+
+        Assert.assertFalse(run.waitFor(5000));
+        Assert.assertEquals(LocatorRun.FAILED, run.getState());
+        Assert.assertEquals(Integer.valueOf(2), run.getExitCode());
+        Assert.assertTrue(run.getFailure().contains("exit code: 2"));
+        Assert.assertTrue(run.getFailure().contains("no such event"));
+    }
+
+    @Test
+    public void TestTimeout() throws Exception {
+        Path dir = Files.createTempDirectory("locator");
+        LocatorRun run = new LocatorRun(new StubLocatorTransport("", "", 0, 60000),
+                1, dir, "user", "pw", "");
+        run.start();
+
+        long startTime = System.nanoTime();
+        Assert.assertFalse(run.waitFor(200));
+        Assert.assertTrue((System.nanoTime() - startTime) / 1000000 < 5000);
+        Assert.assertEquals(LocatorRun.TIMED_OUT, run.getState());
+    }
+
+    @Test
+    public void TestConcurrentRuns() throws Exception {
+        int runs = 8;
+        long delay = 300;
+        StubLocatorTransport stub = new StubLocatorTransport("done\n", "", 0, delay);
+
+        long startTime = System.nanoTime();
+        ArrayList<LocatorRun> started = new ArrayList<LocatorRun>();
+        for (int i = 0; i < runs; i++) {
+            LocatorRun run = new LocatorRun(stub, i, Files.createTempDirectory("locator"), "user", "pw", "");
+            run.start();
+            started.add(run);
+        }
+        for (LocatorRun run : started) {
+            Assert.assertTrue(run.waitFor(5000));
+        }
+        long duration = (System.nanoTime() - startTime) / 1000000;
+
+        // run one after the other, they would take runs * delay
+        Assert.assertTrue(duration < runs * delay);
+    }
+
+    @Test
+    public void TestFakeLocalLocator() throws Exception {
+        Assume.assumeTrue(new File("/bin/sh").exists());
+
+        Path dir = Files.createTempDirectory("locator");
+        File fake = dir.resolve("iscloc").toFile();
+        Files.write(fake.toPath(), ("#!/bin/sh\n"
+                + "read evid args\n"
+                + "echo \"Event $evid $args $PGUSER\"\n"
+                + "echo \"warning only\" >&2\n"
+                + "exit 3\n").getBytes(UTF8));
+        Assume.assumeTrue(fake.setExecutable(true));
+
+        LocatorRun run = new LocatorRun(new LocalLocatorTransport(fake.getPath()),
+                600123, dir, "assess", "pw", "fix_depth=10");
+        run.start();
+
+        Assert.assertFalse(run.waitFor(10000));
+        Assert.assertEquals(Integer.valueOf(3), run.getExitCode());
+        Assert.assertEquals("Event 600123 fix_depth=10 assess\n",
+                new String(Files.readAllBytes(run.getOutputFile().toPath()), UTF8));
+        Assert.assertEquals("warning only\n", run.getStandardError());
+    }
+
+    @Test
+    public void TestSshRemoteLocatorEndsWithChannel() throws Exception {
+        Assume.assumeTrue(new File("/bin/sh").exists() && new File("/proc/self").exists());
+
+        Path dir = Files.createTempDirectory("locator");
+        final File pidFile = dir.resolve("pid").toFile();
+        File fake = dir.resolve("iscloc").toFile();
+        Files.write(fake.toPath(), ("#!/bin/sh\n"
+                + "read evid args\n"
+                + "echo $$ > " + pidFile + "\n"
+                + "echo \"Event $evid $PGUSER\"\n"
+                + "exec sleep 60\n").getBytes(UTF8));
+        Assume.assumeTrue(fake.setExecutable(true));
+
+        // the remote command of ssh, run by a local shell
+        final SshLocatorTransport ssh = new SshLocatorTransport("beast", fake.getPath());
+        LocatorTransport transport = new LocatorTransport() {
+            @Override
+            public String getName() {
+                return "sh";
+            }
+
+            @Override
+            public Process start(String pgUser, String pgPassword, String request) throws IOException {
+                Process p = new ProcessBuilder("/bin/sh", "-c", ssh.getRemoteCommand()).start();
+                LocalLocatorTransport.writeLines(p, pgUser, pgPassword, request);
+                return p;
+            }
+        };
+
+        LocatorRun run = new LocatorRun(transport, 600123, dir, "assess", "pw", "");
+        run.start();
+        for (int i = 0; i < 100 && pidFile.length() == 0; i++) {
+            Thread.sleep(50);
+        }
+        String pid = new String(Files.readAllBytes(pidFile.toPath()), UTF8).trim();
+        Assert.assertTrue(new File("/proc/" + pid).exists());
+
+        run.cancel();
+        Assert.assertFalse(run.waitFor(10000));
+        Assert.assertEquals(LocatorRun.CANCELLED, run.getState());
+        for (int i = 0; i < 100 && new File("/proc/" + pid).exists(); i++) {
+            Thread.sleep(50);
+        }
+        Assert.assertFalse(new File("/proc/" + pid).exists());
+        Assert.assertEquals("Event 600123 assess\n",
+                new String(Files.readAllBytes(run.getOutputFile().toPath()), UTF8));
+    }
+
+    @Test(expected = IOException.class)
+    public void TestMissingLocator() throws Exception {
+        new LocatorRun(new LocalLocatorTransport("/nonexistent/iscloc"),
+                1, Files.createTempDirectory("locator"), "user", "pw", "").start();
+    }
+}
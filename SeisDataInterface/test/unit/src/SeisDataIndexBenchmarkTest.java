@@ -0,0 +1,137 @@
+package uk.ac.isc.seisdatainterface;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+import uk.ac.isc.seisdata.SeisEvent;
+import uk.ac.isc.seisdata.TaskBlock;
+
+/**
+ * Matching query rows (evid, phase number) to the loaded SeisEvents with the
+ * evid map used by SeisDataDAO.retrieveAllPhaseNumber(), against the former
+ * nested loop. No database needed. The micro-benchmark (the time per event of
+ * the map join should stay flat as the block grows) is only run with
+ * -Dvbas.benchmark=true (ant test -Dtest-unit-sys-prop.vbas.benchmark=true).
+ */
+public class SeisDataIndexBenchmarkTest {
+
+    private static final int[] BLOCK_SIZES = {1000, 2000, 4000, 8000, 16000, 32000, 64000};
+    // the nested loop is quadratic, do not run it on the big blocks
+    private static final int MAX_NESTED_LOOP_SIZE = 8000;
+
+    @Test
+    public void TestPhaseNumberJoin() {
+        ArrayList<SeisEvent> events = createEvents(1000);
+        ArrayList<int[]> rows = createRows(1000);
+        // rows of events not in the block
+        rows.add(new int[]{1, 5});
+        rows.add(new int[]{600000000 + 1000, 5});
+
+        HashMap<Integer, SeisEvent> evMap = SeisDataIndex.mapByEvid(events);
+        Assert.assertEquals(1000, evMap.size());
+        Assert.assertSame(events.get(10), evMap.get(600000010));
+        Assert.assertNull(evMap.get(600000000 + 1000));
+
+        join(events, rows);
+        ArrayList<SeisEvent> expected = createEvents(1000);
+        nestedLoopJoin(expected, rows);
+        for (int i = 0; i < events.size(); i++) {
+            SeisEvent ev = events.get(i);
+            Assert.assertEquals(ev.getEvid() % 100, ev.getPhaseNumber().intValue());
+            Assert.assertEquals(expected.get(i).getPhaseNumber(), ev.getPhaseNumber());
+        }
+    }
+
+    @Test
+    public void TestPhaseNumberJoinScaling() {
+        Assume.assumeTrue(Boolean.getBoolean("vbas.benchmark"));
+
+        // warm up
+        join(createEvents(10000), createRows(10000));
+
+        System.out.println("#Events, map join (ms), per event (us), nested loop (ms)");
+        for (int size : BLOCK_SIZES) {
+            ArrayList<SeisEvent> events = createEvents(size);
+            ArrayList<int[]> rows = createRows(size);
+
+            long startTime = System.nanoTime();
+            join(events, rows);
+            long mapTime = System.nanoTime() - startTime;
+
+            for (SeisEvent ev : events) {
+                Assert.assertEquals(ev.getEvid() % 100, ev.getPhaseNumber().intValue());
+            }
+
+            String nested = "-";
+            if (size <= MAX_NESTED_LOOP_SIZE) {
+                events = createEvents(size);
+                startTime = System.nanoTime();
+                nestedLoopJoin(events, rows);
+                nested = String.valueOf((System.nanoTime() - startTime) / 1000000);
+            }
+
+            System.out.println(size
+                    + ", " + mapTime / 1000000
+                    + ", " + String.format("%.3f", mapTime / 1000.0 / size)
+                    + ", " + nested);
+        }
+    }
+
+    @Test
+    public void TestBlockIndex() {
+        ArrayList<TaskBlock> blocks = new ArrayList<TaskBlock>();
+        for (int i = 0; i < 1000; i++) {
+            blocks.add(new TaskBlock(i * 3));
+        }
+
+        HashMap<Integer, TaskBlock> blockMap = SeisDataIndex.mapByBlockID(blocks);
+        Assert.assertEquals(1000, blockMap.size());
+        Assert.assertSame(blocks.get(10), blockMap.get(30));
+        Assert.assertNull(blockMap.get(31));
+    }
+
+    private static void join(ArrayList<SeisEvent> events, ArrayList<int[]> rows) {
+        HashMap<Integer, SeisEvent> evMap = SeisDataIndex.mapByEvid(events);
+        for (int[] row : rows) {
+            SeisEvent ev = evMap.get(row[0]);
+            if (ev != null) {
+                ev.setPhaseNumber(row[1]);
+            }
+        }
+    }
+
+    private static void nestedLoopJoin(ArrayList<SeisEvent> events, ArrayList<int[]> rows) {
+        for (int[] row : rows) {
+            for (SeisEvent ev : events) {
+                if (row[0] == ev.getEvid()) {
+                    ev.setPhaseNumber(row[1]);
+                }
+            }
+        }
+    }
+
+    private static ArrayList<SeisEvent> createEvents(int size) {
+        ArrayList<SeisEvent> events = new ArrayList<SeisEvent>(size);
+        for (int i = 0; i < size; i++) {
+            SeisEvent ev = new SeisEvent();
+            ev.setEvid(600000000 + i);
+            events.add(ev);
+        }
+        return events;
+    }
+
+    // one row per event, in random order as returned by the UNION query
+    private static ArrayList<int[]> createRows(int size) {
+        ArrayList<int[]> rows = new ArrayList<int[]>(size);
+        for (int i = 0; i < size; i++) {
+            int evid = 600000000 + i;
+            rows.add(new int[]{evid, evid % 100});
+        }
+        Collections.shuffle(rows, new Random(size));
+        return rows;
+    }
+}
@@ -94,10 +94,10 @@ public class SeisEventsTable extends JPanel implements SeisDataChangeListener {
             int selectedEvid = (Integer) seisEventTable.getValueAt(selectedRow, 0);
             // another SeisEvent is selected
             selectedSeisEvent.setValues(seisEventsList.getEvents().get(selectedRow));
-            Global.loadSelectedSeisEventData();
 
-            VBASLogger.logDebug("SiesEvent= " + selectedEvid + ". Fire SiesEvent selected event.");
-            selectedSeisEvent.fireSeisDataChanged();
+            // the SiesEvent selected event is fired once its data is loaded
+            VBASLogger.logDebug("SiesEvent= " + selectedEvid + ". Load SiesEvent data.");
+            Global.loadSelectedSeisEventDataAsync();
         }
     }
 
@@ -131,8 +131,7 @@ public class SeisEventsTable extends JPanel implements SeisDataChangeListener {
             selectedSeisEvent.setValues(seisEventsList.getEvents().get(0));
         }
 
-        Global.loadSelectedSeisEventData();
-        selectedSeisEvent.fireSeisDataChanged();
+        Global.loadSelectedSeisEventDataAsync();
     }
 
     /* (a) Search a SeisEvent in the table 
@@ -11,19 +11,21 @@ import java.awt.image.AffineTransformOp;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
-import java.net.URL;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import javax.imageio.ImageIO;
 import javax.swing.JPanel;
 import org.jfree.text.TextUtilities;
 import org.openide.util.Exceptions;
-import org.openstreetmap.gui.jmapviewer.OsmMercator;
+import uk.ac.isc.seisdata.AzimuthalWarp;
+import uk.ac.isc.seisdata.BaseMapCache;
+import uk.ac.isc.seisdata.GlyphSprite;
 import uk.ac.isc.seisdata.Hypocentre;
 import uk.ac.isc.seisdata.HypocentresList;
+import uk.ac.isc.seisdata.OffscreenView;
 import uk.ac.isc.seisdata.Phase;
 import uk.ac.isc.seisdata.PhasesList;
-import uk.ac.isc.seisdatainterface.SeisDataDAO;
+import uk.ac.isc.seisdatainterface.SeisEventDataCache;
 import uk.ac.isc.seisdata.SeisUtils;
 import uk.ac.isc.seisdata.Station;
 import uk.ac.isc.seisdata.VBASLogger;
@@ -35,7 +37,7 @@ import uk.ac.isc.seisdata.VBASLogger;
  * stations indicates large uncertainty of the estimation.
  */
 
-public class StationAzimuthView extends JPanel {
+public class StationAzimuthView extends JPanel implements OffscreenView {
 
     // saiful: combine imSize with height and width
     private int viewWidth = 650, viewHeight = 650;
@@ -75,7 +77,7 @@ public class StationAzimuthView extends JPanel {
     private final int warpedImgSize = 256;
 
     //the size of the source map, need bit higher resolution in case user zooms in detail
-    private final BufferedImage srcImg = new BufferedImage(srcImgSize, srcImgSize, BufferedImage.TYPE_INT_ARGB);
+    private final BufferedImage srcImg = BaseMapCache.getBaseMap(srcImgSize, getClass().getClassLoader());
 
     private BufferedImage azImg = null;
 
@@ -109,8 +111,6 @@ public class StationAzimuthView extends JPanel {
         this.hyposList = hyposList;
         this.isAssess = isAssess;
 
-        //loading high resolution image for drawing the warping map we use 1 to load 512X512 as the src image
-        loadSrcImage();
         //try {
         //    srcImg = ImageIO.read(new File("/export/home/hui/perl/0/0/0.png"));
         //} catch (IOException ex) {
@@ -147,7 +147,7 @@ public class StationAzimuthView extends JPanel {
         //load station list based on evid from prime hypocentre
         staList = new ArrayList<Station>();
         
-        SeisDataDAO.retrieveAllStations(ph.getEvid(), staList, isAssess);
+        SeisEventDataCache.retrieveAllStations(ph.getEvid(), staList, isAssess);
 
         drawDirectionalPie();
         drawBufferedImage();
@@ -189,7 +189,7 @@ public class StationAzimuthView extends JPanel {
                 isISC = true;
             }
         }
-        SeisDataDAO.retrieveAllStations(ph.getEvid(), staList, isAssess);
+        SeisEventDataCache.retrieveAllStations(ph.getEvid(), staList, isAssess);
 
         aziSummary = SeisUtils.calculateAzSumm(phasesList.getPhases(), isISC);
 
@@ -256,37 +256,6 @@ public class StationAzimuthView extends JPanel {
 
     
 
-    /**
-     * @param non Load the base map
-     */
-    private void loadSrcImage() {
-
-        Graphics2D g2 = srcImg.createGraphics();
-
-        //Tile tile;
-        int zoom = (int) (Math.log(srcImgSize / warpedImgSize) / Math.log(2));
-        BufferedImage tmpImg;
-
-        for (int i = 0; i < zoom * 2; i++) {
-            for (int j = 0; j < zoom * 2; j++) {
-                //String fileName = "/export/home/hui/perl/" + zoom + "/" + i + "/" + j + ".png";
-                String fileName = "resources" + File.separator
-                        + zoom + File.separator
-                        + i + File.separator
-                        + j + ".png";
-                URL url1 = getClass().getClassLoader().getResource(fileName);
-
-                try {
-                    //tmpImg = ImageIO.read(new File(fileName));
-                    tmpImg = ImageIO.read(url1);
-                    g2.drawImage(tmpImg, i * 256, j * 256, null);
-                } catch (IOException ex) {
-                    Exceptions.printStackTrace(ex);
-                }
-            }
-        }
-    }
-
     private void drawDirectionalPie() {
 
         azImg = new BufferedImage(imSize, imSize, BufferedImage.TYPE_INT_ARGB);
@@ -382,44 +351,8 @@ public class StationAzimuthView extends JPanel {
 
         Graphics2D innerG2 = tmpImg2.createGraphics();
 
-        for (int i = 0; i < warpedImgSize; i++) {
-            for (int j = 0; j < warpedImgSize; j++) {
-                int rgb;
-                double azi;
-                double lat, lon;
-                double px, py;
-
-                double dist = Math.sqrt((double) ((i - warpedImgSize / 2)
-                        * (i - warpedImgSize / 2)
-                        + (j - warpedImgSize / 2)
-                        * (j - warpedImgSize / 2)));
-
-                if (dist > warpedImgSize / 2) {
-                    tmpImg1.setRGB(i, j, 0xFF000000);
-                } else {
-                    azi = rad2deg * Math.atan2(i - warpedImgSize / 2, warpedImgSize / 2 - j);
-                    if (azi < 0.0) {
-                        azi = azi + 360.0;
-                    }
-
-                    //calculate the lat and lon
-                    lat = SeisUtils.LatFromAziDelta(ph.getLat(), ph.getLon(), azi, dist * mapDegree / (warpedImgSize / 2));
-                    lon = SeisUtils.LonFromAziDelta(ph.getLat(), ph.getLon(), azi, dist * mapDegree / (warpedImgSize / 2));
-                    if (lon > 180.0) {
-                        lon = lon - 360;
-                    } else if (lon < -180.0) {
-                        lon = lon + 360;
-                    }
-
-                    //getting the level
-                    int samplingLevel = (int) (Math.log(srcImgSize / warpedImgSize) / Math.log(2));
-                    px = OsmMercator.LonToX(lon, samplingLevel);
-                    py = OsmMercator.LatToY(lat, samplingLevel);
-                    rgb = srcImg.getRGB((int) px, (int) py);
-                    tmpImg1.setRGB(i, j, rgb);
-                }
-            }
-        }
+        AzimuthalWarp.getInstance(warpedImgSize, mapDegree)
+                .warp(ph.getLat(), ph.getLon(), srcImg, tmpImg1, 0xFF000000);
 
         AffineTransform at = new AffineTransform();
         double scaleLevel = (double) (imSize * 0.75) / (double) warpedImgSize;
@@ -429,7 +362,8 @@ public class StationAzimuthView extends JPanel {
 
         // draw the station positions
         // calculate the position and draw all the stations       
-        innerG2.setPaint(new Color(0, 154, 205)); // sky color    
+        GlyphSprite staSprite = GlyphSprite.getSprite(new Color(0, 154, 205), stationIconSize, GlyphSprite.CIRCLE); // sky color    
+        int[] innerPixels = GlyphSprite.getPixels(tmpImg2);
         for (Station sta : staList) {
             //distance on pixel
             if (sta.getDelta() <= mapDegree) {
@@ -439,7 +373,8 @@ public class StationAzimuthView extends JPanel {
                 double y = tmpImg2.getWidth() / 2 - d1 * Math.cos(azi);
                 double x = tmpImg2.getWidth() / 2 + d1 * Math.sin(azi);
 
-                innerG2.fillOval((int) (x - stationIconSize / 2), (int) (y - stationIconSize / 2), stationIconSize, stationIconSize);
+                staSprite.draw(innerPixels, tmpImg2.getWidth(), tmpImg2.getHeight(),
+                        (int) (x - stationIconSize / 2), (int) (y - stationIconSize / 2));
             }
         }
 
@@ -515,6 +450,21 @@ public class StationAzimuthView extends JPanel {
         return combined;
     }
 
+    @Override
+    public BufferedImage renderImage(int width, int height) {
+        if (azImg == null) {
+            return null;
+        }
+
+        BufferedImage combined = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2 = combined.createGraphics();
+        g2.drawImage(azImg, 0, 0, width, height, null);
+        g2.setClip(new Ellipse2D.Double(width / 8.0, height / 8.0, width * 0.75, height * 0.75));
+        g2.drawImage(dstImg, 0, 0, width, height, null);
+        g2.dispose();
+        return combined;
+    }
+
     public int getViewWidth() {
         return viewWidth;
     }
@@ -7,10 +7,10 @@ import java.awt.Font;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.RenderingHints;
+import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
-import java.net.URL;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -23,11 +23,13 @@ import org.jfree.chart.plot.XYPlot;
 import org.jfree.chart.renderer.xy.StandardXYBarPainter;
 import org.jfree.chart.renderer.xy.XYBarRenderer;
 import org.jfree.data.statistics.HistogramDataset;
-import org.openide.util.Exceptions;
-import org.openstreetmap.gui.jmapviewer.OsmMercator;
+import uk.ac.isc.seisdata.AzimuthalWarp;
+import uk.ac.isc.seisdata.BaseMapCache;
+import uk.ac.isc.seisdata.GlyphSprite;
 import uk.ac.isc.seisdata.Hypocentre;
 import uk.ac.isc.seisdata.HypocentresList;
-import uk.ac.isc.seisdatainterface.SeisDataDAO;
+import uk.ac.isc.seisdata.OffscreenView;
+import uk.ac.isc.seisdatainterface.SeisEventDataCache;
 import uk.ac.isc.seisdata.SeisUtils;
 import uk.ac.isc.seisdata.Station;
 import uk.ac.isc.seisdata.VBASLogger;
@@ -36,7 +38,7 @@ import uk.ac.isc.seisdata.VBASLogger;
  * The station Magnitude view
  *
  */
-public class StationMagnitudeView extends JPanel {
+public class StationMagnitudeView extends JPanel implements OffscreenView {
 
     //image size of the source
     private final int srcImgSize = 512;
@@ -73,7 +75,7 @@ public class StationMagnitudeView extends JPanel {
     private final int stationIconSize = 10;
 
     //buffer images of the maps
-    private final BufferedImage srcBufferedImage = new BufferedImage(srcImgSize, srcImgSize, BufferedImage.TYPE_INT_ARGB);
+    private final BufferedImage srcBufferedImage = BaseMapCache.getBaseMap(srcImgSize, getClass().getClassLoader());
     private final BufferedImage dstMbBufferedImage = new BufferedImage(mapSize, mapSize, BufferedImage.TYPE_INT_ARGB);
     private final BufferedImage dstMsBufferedImage = new BufferedImage(mapSize, mapSize, BufferedImage.TYPE_INT_ARGB);
     // draw the two histograms
@@ -109,7 +111,7 @@ public class StationMagnitudeView extends JPanel {
 
         //fill the data
         allStaMag = new ArrayList<Station>();
-        SeisDataDAO.retrieveStationMags(ph.getHypid(), allStaMag, isAssess);
+        SeisEventDataCache.retrieveStationMags(ph.getHypid(), allStaMag, isAssess);
 
         //this.ph = ph;
         if (ph.getMagnitude().get("mb") != null) {
@@ -204,8 +206,6 @@ public class StationMagnitudeView extends JPanel {
         }
 
         //draw the two figures
-        loadSrcImage();
-
         //when drawing the figure, build the histogram as well
         drawBufferedImageMb();
         drawBufferedImageMs();
@@ -223,7 +223,7 @@ public class StationMagnitudeView extends JPanel {
 
         //fill the data
         allStaMag.clear();
-        SeisDataDAO.retrieveStationMags(ph.getHypid(), allStaMag, isAssess);
+        SeisEventDataCache.retrieveStationMags(ph.getHypid(), allStaMag, isAssess);
 
         //this.ph = ph;
         if (ph.getMagnitude().get("mb") != null) {
@@ -322,8 +322,6 @@ public class StationMagnitudeView extends JPanel {
         }
 
         //draw the two figures
-        loadSrcImage();
-
         //when drawing the figure, build the histogram as well
         drawBufferedImageMb();
         drawBufferedImageMs();
@@ -331,33 +329,6 @@ public class StationMagnitudeView extends JPanel {
         drawHist();
     }
 
-    private void loadSrcImage() {
-
-        Graphics2D g2 = srcBufferedImage.createGraphics();
-
-        //Tile tile;
-        int zoom = 1;//(int) (Math.log(srcImgSize/imSize)/Math.log(2));
-        BufferedImage tmpImg;
-        for (int i = 0; i < zoom * 2; i++) {
-            for (int j = 0; j < zoom * 2; j++) {
-                //String fileName = "/export/home/hui/perl/" + zoom + "/" + i + "/" + j + ".png";
-                String fileName = "resources" + File.separator
-                        + zoom + File.separator
-                        + i + File.separator
-                        + j + ".png";
-                URL url1 = getClass().getClassLoader().getResource(fileName);
-                VBASLogger.logDebug(fileName);
-                try {
-                    tmpImg = ImageIO.read(url1); //tmpImg = ImageIO.read(new File(fileName));
-                    g2.drawImage(tmpImg, i * 256, j * 256, Color.yellow, null);
-                } catch (IOException ex) {
-                    Exceptions.printStackTrace(ex);
-                }
-            }
-        }
-
-    }
-
     //get the color of each station based on the residual against the mean
     private Color getColor(double residual) {
         Color retColor;
@@ -398,48 +369,17 @@ public class StationMagnitudeView extends JPanel {
         /*
          * draw the map (circle)
          */
-        for (int i = 0; i < mapSize; i++) {
-            for (int j = 0; j < mapSize; j++) {
-                int rgb;
-                double azi;
-                double lat, lon;
-                double px, py;
-
-                double dist = Math.sqrt((double) ((i - mapSize / 2) * (i - mapSize / 2) + (j - mapSize / 2) * (j - mapSize / 2)));
-
-                if (dist > mapSize / 2) {
-                    //dstMbBufferedImage.setRGB(i, j, 0xFF888888);
-                    dstMbBufferedImage.setRGB(i, j, 0xF4E012);  // Issue #15 remove the gray area, color code(?)
-                } else {
-                    azi = rad2deg * Math.atan2(i - mapSize / 2, mapSize / 2 - j);
-                    if (azi < 0.0) {
-                        azi = azi + 360.0;
-                    }
-
-                    //calculate the lat and lon
-                    lat = SeisUtils.LatFromAziDelta(ph.getLat(), ph.getLon(), azi, dist * mapDegree / (mapSize / 2));
-                    lon = SeisUtils.LonFromAziDelta(ph.getLat(), ph.getLon(), azi, dist * mapDegree / (mapSize / 2));
-                    if (lon > 180.0) {
-                        lon = lon - 360;
-                    } else if (lon < -180.0) {
-                        lon = lon + 360;
-                    }
-
-                    //getting the level
-                    int samplingLevel = (int) (Math.log(srcImgSize / imSize) / Math.log(2));
-                    px = OsmMercator.LonToX(lon, samplingLevel);
-                    py = OsmMercator.LatToY(lat, samplingLevel);
-                    rgb = srcBufferedImage.getRGB((int) px, (int) py);
-                    dstMbBufferedImage.setRGB(i, j, rgb);
-                }
-            }
-        }
+        // Issue #15 remove the gray area, color code(?)
+        AzimuthalWarp.getInstance(mapSize, mapDegree)
+                .warp(ph.getLat(), ph.getLon(), srcBufferedImage, dstMbBufferedImage, 0xF4E012);
 
         /*
          * draw the station positions 
          * calculate the position and draw all the stations       
          */
-        g2.setPaint(new Color(0, 154, 205));//orig:(0,240,240)     
+        // one sprite, coloured by residual
+        GlyphSprite staSprite = GlyphSprite.getSprite(Color.BLACK, stationIconSize, GlyphSprite.CIRCLE);
+        int[] pixels = GlyphSprite.getPixels(dstMbBufferedImage);
         for (Station sta : mbList) {
             //distance on pixel
             if (sta.getDelta() <= mapDegree && null != sta.getStaMb()) {
@@ -449,9 +389,9 @@ public class StationMagnitudeView extends JPanel {
                 double y = dstMbBufferedImage.getWidth() / 2 - d1 * Math.cos(azi);
                 double x = dstMbBufferedImage.getWidth() / 2 + d1 * Math.sin(azi);
                 if (sta.getMbRes() != null) {
-                    g2.setPaint(getColor(sta.getMbRes()));
                     //g2.drawRect((int)(x-stationIconSize/2), (int)(y-stationIconSize/2), stationIconSize, stationIconSize);
-                    g2.fillOval((int) (x - stationIconSize / 2), (int) (y - stationIconSize / 2), stationIconSize, stationIconSize);
+                    staSprite.draw(pixels, mapSize, mapSize, (int) (x - stationIconSize / 2), (int) (y - stationIconSize / 2),
+                            getColor(sta.getMbRes()).getRGB());
 
                 }
             }
@@ -480,48 +420,14 @@ public class StationMagnitudeView extends JPanel {
 
         Graphics2D g2 = dstMsBufferedImage.createGraphics();
 
-        for (int i = 0; i < mapSize; i++) {
-            for (int j = 0; j < mapSize; j++) {
-                int rgb;
-                double azi;
-                double lat, lon;
-                double px, py;
-
-                double dist = Math.sqrt((double) ((i - mapSize / 2) * (i - mapSize / 2) + (j - mapSize / 2) * (j - mapSize / 2)));
-                if (dist > mapSize / 2) {
-                    //dstMsBufferedImage.setRGB(i, j, 0xFF888888);
-                    dstMbBufferedImage.setRGB(i, j, 0xF4E012);  // Issue #15 remove the gray area, color code(?)
-
-                } else {
-                    azi = rad2deg * Math.atan2(i - mapSize / 2, mapSize / 2 - j);
-                    if (azi < 0.0) {
-                        azi = azi + 360.0;
-                    }
-
-                    //calculate the lat and lon
-                    lat = SeisUtils.LatFromAziDelta(ph.getLat(), ph.getLon(), azi, dist * mapDegree / (mapSize / 2));
-                    lon = SeisUtils.LonFromAziDelta(ph.getLat(), ph.getLon(), azi, dist * mapDegree / (mapSize / 2));
-                    if (lon > 180.0) {
-                        lon = lon - 360;
-                    } else if (lon < -180.0) {
-                        lon = lon + 360;
-                    }
-
-                    //getting the level
-                    int samplingLevel = (int) (Math.log(srcImgSize / imSize) / Math.log(2));
-                    px = OsmMercator.LonToX(lon, samplingLevel);
-                    py = OsmMercator.LatToY(lat, samplingLevel);
-                    rgb = srcBufferedImage.getRGB((int) px, (int) py);
-                    dstMsBufferedImage.setRGB(i, j, rgb);
-                }
-            }
-        }
-
+        // Issue #15 remove the gray area, color code(?)
+        AzimuthalWarp.getInstance(mapSize, mapDegree)
+                .warp(ph.getLat(), ph.getLon(), srcBufferedImage, dstMsBufferedImage, 0xF4E012);
 
         //draw the station positions
         //calculate the position and draw all the stations       
-        g2.setPaint(new Color(0, 154, 205));//orig:(0,240,240)     
-
+        GlyphSprite staSprite = GlyphSprite.getSprite(Color.BLACK, stationIconSize, GlyphSprite.CIRCLE);
+        int[] pixels = GlyphSprite.getPixels(dstMsBufferedImage);
         for (Station sta : msList) {
             //distance on pixel
             if (sta.getDelta() <= mapDegree && null != sta.getStaMs()) {
@@ -531,13 +437,15 @@ public class StationMagnitudeView extends JPanel {
                 double y = dstMsBufferedImage.getWidth() / 2 - d1 * Math.cos(azi);
                 double x = dstMsBufferedImage.getWidth() / 2 + d1 * Math.sin(azi);
 
+                Color colour;
                 if (sta.getMsRes() != null) {
-                    g2.setPaint(getColor(sta.getMsRes()));
+                    colour = getColor(sta.getMsRes());
                 } else {
-                    g2.setPaint(new Color(164, 164, 164));
+                    colour = new Color(164, 164, 164);
                 }
                 //innerG2.drawRect((int)(x-stationIconSize/2), (int)(y-stationIconSize/2), stationIconSize, stationIconSize);
-                g2.fillOval((int) (x - stationIconSize / 2), (int) (y - stationIconSize / 2), stationIconSize, stationIconSize);
+                staSprite.draw(pixels, mapSize, mapSize, (int) (x - stationIconSize / 2), (int) (y - stationIconSize / 2),
+                        colour.getRGB());
             }
         }
 
@@ -693,6 +601,32 @@ public class StationMagnitudeView extends JPanel {
         return combined;
     }
 
+    /*
+     * The maps scaled to the image, the histograms drawn at their size in it.
+     */
+    @Override
+    public BufferedImage renderImage(int width, int height) {
+        if (freeChartMb == null || freeChartMs == null) {
+            return null;
+        }
+
+        double sx = (double) width / getViewWidth();
+        double sy = (double) height / getViewHeight();
+        int mapWidth = (int) (mapSize * sx);
+        int mapHeight = (int) (mapSize * sy);
+        int x2 = (int) ((mapSize + 20) * sx);
+        int y2 = (int) ((mapSize + 20) * sy);
+
+        BufferedImage combined = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2 = combined.createGraphics();
+        g2.drawImage(dstMbBufferedImage, 0, 0, mapWidth, mapHeight, null);
+        g2.drawImage(dstMsBufferedImage, x2, 0, width - x2, mapHeight, null);
+        freeChartMb.draw(g2, new Rectangle2D.Double(0, y2, mapWidth, height - y2));
+        freeChartMs.draw(g2, new Rectangle2D.Double(x2, y2, width - x2, height - y2));
+        g2.dispose();
+        return combined;
+    }
+
     public int getViewWidth() {
         return mapSize + 20 + mapSize;
     }